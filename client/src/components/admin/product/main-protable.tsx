@@ -34,9 +34,22 @@ const ProductAdminMain: React.FC = () => {
     null
   );
 
-  const handleOpenDetailModal = (record: ProductDTO) => {
-    setIsOpenDetailModal(true);
-    setDataDetailModal(record);
+  // Dòng trong bảng chỉ là card rút gọn (không có mô tả, thông số, người tạo...),
+  // nên nạp bản đầy đủ theo id rồi mới mở drawer chi tiết
+  const handleOpenDetailModal = async (record: ProductDTO) => {
+    try {
+      const product = await productService.getProductById(record.id);
+      setDataDetailModal(product);
+      setIsOpenDetailModal(true);
+    } catch (error: unknown) {
+      const { message, errorCode } = extractErrorMessage(error);
+      api.error({
+        message: errorCode || "Không tải được chi tiết sản phẩm",
+        description: message,
+        placement: "topRight",
+        duration: 5,
+      });
+    }
   };
 
   const [isOpenCreateModal, setIsOpenCreateModal] = useState<boolean>(false);
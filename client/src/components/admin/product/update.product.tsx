@@ -55,6 +55,10 @@ const ProductUpdate: React.FC<ProductUpdateProps> = ({
   const [categories, setCategories] = useState<CategoryDTO[]>([]);
   const [loadingCategories, setLoadingCategories] = useState(false);
   const [isVariantManagerVisible, setIsVariantManagerVisible] = useState(false);
+  // Bản đầy đủ của sản phẩm; chưa có thì không cho lưu để không ghi đè mô tả/thông số/ảnh bằng giá trị rỗng
+  const [fullProduct, setFullProduct] = useState<ProductDTO | null>(null);
+  const [loadingProduct, setLoadingProduct] = useState(false);
+  const [loadError, setLoadError] = useState<string | null>(null);
 
   useEffect(() => {
     const fetchCategories = async () => {
@@ -79,45 +83,80 @@ const ProductUpdate: React.FC<ProductUpdateProps> = ({
     }
   }, [isOpenUpdateModal]);
 
-  useEffect(() => {
-    if (dataDetailModal) {
-      form.setFieldsValue({
-        name: dataDetailModal.name,
-        sku: dataDetailModal.sku,
-        brand: dataDetailModal.brand,
-        description: dataDetailModal.description,
-        price: dataDetailModal.price,
-        color: dataDetailModal.color,
-        size: dataDetailModal.size,
-        weight: dataDetailModal.weight,
-        dimensions: dataDetailModal.dimensions,
-        specifications: dataDetailModal.specifications,
-        isActive: dataDetailModal.isActive,
-        isFeatured: dataDetailModal.isFeatured,
-        categoryIds: dataDetailModal.categories?.map((cat) => cat.id) || [],
-        thumbnailUrl: dataDetailModal.thumbnailUrl,
-      });
+  const fillForm = (product: ProductDTO) => {
+    form.setFieldsValue({
+      name: product.name,
+      sku: product.sku,
+      brand: product.brand,
+      description: product.description,
+      price: product.price,
+      color: product.color,
+      size: product.size,
+      weight: product.weight,
+      dimensions: product.dimensions,
+      specifications: product.specifications,
+      isActive: product.isActive,
+      isFeatured: product.isFeatured,
+      categoryIds: product.categories?.map((cat) => cat.id) || [],
+      thumbnailUrl: product.thumbnailUrl,
+    });
+
+    // Load images từ images array hoặc thumbnailUrl
+    const allImages: string[] = [];
+    if (product.images && product.images.length > 0) {
+      allImages.push(...product.images.map((img) => img.imageUrl));
+    } else if (product.thumbnailUrl) {
+      allImages.push(product.thumbnailUrl);
+    }
 
-      // Load images từ images array hoặc thumbnailUrl
-      const allImages: string[] = [];
-      if (dataDetailModal.images && dataDetailModal.images.length > 0) {
-        allImages.push(...dataDetailModal.images.map((img) => img.imageUrl));
-      } else if (dataDetailModal.thumbnailUrl) {
-        allImages.push(dataDetailModal.thumbnailUrl);
-      }
+    setImageUrls(allImages);
 
-      setImageUrls(allImages);
+    // Set fileList cho Upload component
+    const uploadFiles: UploadFile[] = allImages.map((url, index) => ({
+      uid: `-${index}`,
+      name: `image-${index}.png`,
+      status: "done" as const,
+      url: url,
+    }));
+    setFileList(uploadFiles);
+  };
 
-      // Set fileList cho Upload component
-      const uploadFiles: UploadFile[] = allImages.map((url, index) => ({
-        uid: `-${index}`,
-        name: `image-${index}.png`,
-        status: "done" as const,
-        url: url,
-      }));
-      setFileList(uploadFiles);
+  useEffect(() => {
+    if (!dataDetailModal || !isOpenUpdateModal) {
+      return;
     }
-  }, [dataDetailModal, form]);
+    // Dòng trong bảng chỉ là card rút gọn (không có description/specifications, chỉ ảnh chính)
+    // nên chỉ đổ vào form bản đầy đủ; trong lúc chờ (hoặc khi lỗi) form bị khóa
+    form.resetFields();
+    setFileList([]);
+    setImageUrls([]);
+    setFullProduct(null);
+    setLoadError(null);
+    setLoadingProduct(true);
+    let cancelled = false;
+    productService
+      .getProductById(dataDetailModal.id)
+      .then((product) => {
+        if (!cancelled) {
+          fillForm(product);
+          setFullProduct(product);
+        }
+      })
+      .catch((error: unknown) => {
+        if (!cancelled) {
+          setLoadError(extractErrorMessage(error).message);
+        }
+      })
+      .finally(() => {
+        if (!cancelled) {
+          setLoadingProduct(false);
+        }
+      });
+    return () => {
+      cancelled = true;
+    };
+    // eslint-disable-next-line react-hooks/exhaustive-deps
+  }, [dataDetailModal, isOpenUpdateModal, form]);
 
   const handleUpload = async (file: File): Promise<string | null> => {
     try {
@@ -230,7 +269,7 @@ const ProductUpdate: React.FC<ProductUpdateProps> = ({
   };
 
   const onFinish = async (values: UpdateProductRequest) => {
-    if (!dataDetailModal) return;
+    if (!dataDetailModal || !fullProduct) return;
 
     try {
       // Lấy ảnh đầu tiên làm thumbnail, các ảnh còn lại lưu vào images
@@ -289,12 +328,22 @@ const ProductUpdate: React.FC<ProductUpdateProps> = ({
           )
         }
       >
+        {loadError && (
+          <Alert
+            type="error"
+            showIcon
+            style={{ marginBottom: 16 }}
+            message="Không tải được dữ liệu đầy đủ của sản phẩm"
+            description={`${loadError}. Đóng và mở lại để thử lại; chưa thể lưu thay đổi.`}
+          />
+        )}
 
         <Form
           {...layout}
           form={form}
           name="update-product-form"
           onFinish={onFinish}
+          disabled={!fullProduct}
         >
           <Form.Item
             label="Tên"
@@ -397,10 +446,17 @@ const ProductUpdate: React.FC<ProductUpdateProps> = ({
 
           <Form.Item {...tailLayout}>
             <Space>
-              <Button type="primary" htmlType="submit" loading={uploading}>
+              <Button
+                type="primary"
+                htmlType="submit"
+                loading={uploading || loadingProduct}
+              >
                 Cập nhật
               </Button>
-              <Button htmlType="button" onClick={() => form.resetFields()}>
+              <Button
+                htmlType="button"
+                onClick={() => fullProduct && fillForm(fullProduct)}
+              >
                 Reset
               </Button>
             </Space>
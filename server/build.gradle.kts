@@ -2,6 +2,10 @@ plugins {
 	java
 	id("org.springframework.boot") version "3.5.4"
 	id("io.spring.dependency-management") version "1.1.7"
+	// Bytecode enhancement cho entity (cùng version Hibernate mà Spring Boot 3.5.4 dùng)
+	id("org.hibernate.orm") version "6.6.22.Final"
+	// Benchmark JMH trong src/jmh (chạy: ./gradlew jmh)
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.example"
@@ -20,6 +24,13 @@ repositories {
 	mavenCentral()
 }
 
+// Cho phép cột @Basic(fetch = LAZY) (Product.description/specifications) thật sự được load lười
+hibernate {
+	enhancement {
+		enableLazyInitialization.set(true)
+	}
+}
+
 dependencies {	
 	// Swagger OpenAPI UI - phiên bản 2.7.0 hỗ trợ Spring Boot 3.5.x
 	implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.7.0")
@@ -47,14 +58,60 @@ dependencies {
 	// OkHttp for ChromaDB REST API calls
 	implementation("com.squareup.okhttp3:okhttp:4.12.0")
 
+	// Roaring bitmaps cho facet index (đếm facet bằng phép giao bitmap)
+	implementation("org.roaringbitmap:RoaringBitmap:1.3.0")
+
+	// Caffeine cho các cache trong bộ nhớ (version do Spring Boot quản lý)
+	implementation("com.github.ben-manes.caffeine:caffeine")
+
+	// Đọc CSV dạng streaming cho import sản phẩm (version do Spring Boot quản lý)
+	implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-csv")
+
     testImplementation("org.springframework.boot:spring-boot-starter-test")
+	// DB nhúng cho các test @DataJpaTest đếm số câu SQL (version do Spring Boot quản lý)
+	testRuntimeOnly("com.h2database:h2")
+	// Server HTTP giả cho test client Gemini (cùng version OkHttp ở trên)
+	testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+// Vector API (SIMD) cho VectorMath; chạy jar không có cờ này thì tự dùng vòng lặp thường
+val vectorApiArgs = listOf("--add-modules", "jdk.incubator.vector")
+
+// Chỉ SimdVectorOps dùng module incubator: tách ra source set riêng để chỉ nó được biên dịch với cờ này
+// (javac luôn in cảnh báo "using incubating module(s)", không tắt riêng được) và code chính không phụ thuộc module
+val simd: SourceSet by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output
+}
+sourceSets.main { runtimeClasspath += simd.output }
+sourceSets.test { runtimeClasspath += simd.output }
+sourceSets.named("jmh") { runtimeClasspath += simd.output }
+
 tasks.withType<Test> {
 	useJUnitPlatform()
+	jvmArgs(vectorApiArgs)
 }
 
 tasks.withType<JavaCompile> {
     options.compilerArgs.add("-parameters")
+}
+
+tasks.named<JavaCompile>("compileSimdJava") {
+    options.compilerArgs.addAll(vectorApiArgs)
+    // Source set chỉ có một lớp; cảnh báo duy nhất là cảnh báo module incubator ở trên
+    options.compilerArgs.add("-nowarn")
+}
+
+// bootJar/bootRun lấy runtimeClasspath của main (đã gồm simd); jar thường cần thêm tay
+tasks.jar { from(simd.output) }
+
+tasks.named<org.springframework.boot.gradle.tasks.run.BootRun>("bootRun") {
+    jvmArgs(vectorApiArgs)
+}
+
+jmh {
+	jvmArgs.addAll(vectorApiArgs)
+	fork.set(1)
+	warmupIterations.set(3)
+	iterations.set(5)
 }
\ No newline at end of file
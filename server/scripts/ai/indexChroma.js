@@ -1,4 +1,6 @@
 // Index sản phẩm vào ChromaDB bằng Gemini embedding + Chroma SDK (JS).
+// Lưu ý: server đã tự index khi sản phẩm thay đổi (ProductEmbeddingIndexer); reindex toàn bộ dùng
+// POST /products/vector-index/reindex. Script này chỉ còn dùng khi cần index mà không chạy server.
 // Yêu cầu:
 // - Node 18+
 // - npm install chromadb
@@ -0,0 +1,99 @@
+package com.example.learnspring1.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trung bình và tích vô hướng của embedding: List&lt;Double&gt; (cách cũ trong AiVectorService),
+ * float[] vòng lặp thường và float[] qua {@link VectorMath} (SIMD khi chạy với jdk.incubator.vector).
+ * Chạy: {@code ./gradlew jmh}; thêm {@code profilers.add("gc")} vào khối {@code jmh} để xem byte cấp phát mỗi lần.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VectorMathBenchmark {
+
+    @Param({ "768" })
+    private int dimension;
+
+    @Param({ "20" })
+    private int count;
+
+    private List<float[]> vectors;
+    private List<List<Double>> boxed;
+    private final VectorMath.Ops scalar = new VectorMath.ScalarOps();
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        vectors = new ArrayList<>(count);
+        boxed = new ArrayList<>(count);
+        for (int v = 0; v < count; v++) {
+            float[] vector = new float[dimension];
+            List<Double> values = new ArrayList<>(dimension);
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = (float) random.nextGaussian();
+                values.add((double) vector[i]);
+            }
+            vectors.add(vector);
+            boxed.add(values);
+        }
+    }
+
+    @Benchmark
+    public List<Double> averageBoxed() {
+        int size = boxed.get(0).size();
+        List<Double> average = new ArrayList<>(Collections.nCopies(size, 0.0));
+        for (List<Double> vector : boxed) {
+            for (int i = 0; i < size; i++) {
+                average.set(i, average.get(i) + vector.get(i));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            average.set(i, average.get(i) / boxed.size());
+        }
+        double magnitude = Math.sqrt(average.stream().mapToDouble(d -> d * d).sum());
+        for (int i = 0; i < size; i++) {
+            average.set(i, average.get(i) / magnitude);
+        }
+        return average;
+    }
+
+    @Benchmark
+    public float[] averageScalar() {
+        float[] sum = Arrays.copyOf(vectors.get(0), dimension);
+        for (int v = 1; v < vectors.size(); v++) {
+            scalar.addTo(sum, vectors.get(v));
+        }
+        scalar.scale(sum, (float) (1.0 / Math.sqrt(scalar.dot(sum, sum))));
+        return sum;
+    }
+
+    @Benchmark
+    public float[] averageVectorMath() {
+        return VectorMath.average(vectors);
+    }
+
+    @Benchmark
+    public float dotScalar() {
+        return scalar.dot(vectors.get(0), vectors.get(1));
+    }
+
+    @Benchmark
+    public float dotVectorMath() {
+        return VectorMath.dot(vectors.get(0), vectors.get(1));
+    }
+}
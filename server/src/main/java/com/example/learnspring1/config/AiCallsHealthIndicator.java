@@ -0,0 +1,42 @@
+package com.example.learnspring1.config;
+
+import com.example.learnspring1.service.AiCallGuard;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trạng thái các lane gọi AI ({@link AiCallGuard}) trong /actuator/health, thành phần {@code aiCalls}.
+ * Luôn UP: mạch mở chỉ làm gợi ý/tìm kiếm rơi về fallback, ứng dụng vẫn phục vụ được;
+ * lane đang mở hoặc nửa mở được liệt kê ở {@code degraded}.
+ */
+@Component
+public class AiCallsHealthIndicator implements HealthIndicator {
+
+    private final AiCallGuard aiCallGuard;
+
+    public AiCallsHealthIndicator(AiCallGuard aiCallGuard) {
+        this.aiCallGuard = aiCallGuard;
+    }
+
+    @Override
+    public Health health() {
+        List<AiCallGuard.LaneStatus> lanes = aiCallGuard.status();
+        Map<String, AiCallGuard.LaneStatus> byLane = new LinkedHashMap<>();
+        for (AiCallGuard.LaneStatus lane : lanes) {
+            byLane.put(lane.lane(), lane);
+        }
+        return Health.up()
+                .withDetail("degraded", lanes.stream()
+                        .filter(lane -> !"CLOSED".equals(lane.state()))
+                        .map(AiCallGuard.LaneStatus::lane)
+                        .toList())
+                .withDetail("lanes", byLane)
+                .build();
+    }
+}
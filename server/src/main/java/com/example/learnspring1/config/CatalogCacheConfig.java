@@ -0,0 +1,21 @@
+package com.example.learnspring1.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class CatalogCacheConfig implements WebMvcConfigurer {
+
+    private final CatalogConditionalGetInterceptor catalogConditionalGetInterceptor;
+
+    public CatalogCacheConfig(CatalogConditionalGetInterceptor catalogConditionalGetInterceptor) {
+        this.catalogConditionalGetInterceptor = catalogConditionalGetInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(catalogConditionalGetInterceptor)
+                .addPathPatterns("/products/**", "/categories/**", "/promotions/**");
+    }
+}
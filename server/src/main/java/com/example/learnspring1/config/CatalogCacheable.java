@@ -0,0 +1,24 @@
+package com.example.learnspring1.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Đánh dấu endpoint GET công khai của catalog hỗ trợ conditional GET (ETag/Last-Modified)
+ * và Cache-Control. Xử lý bởi {@link CatalogConditionalGetInterceptor}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CatalogCacheable {
+
+    Resource value();
+
+    enum Resource {
+        // Chi tiết một product, lấy id từ path variable "id"
+        PRODUCT,
+        CATEGORIES,
+        PROMOTIONS
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.learnspring1.config;
+
+import com.example.learnspring1.service.CatalogVersionService;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conditional GET cho các endpoint gắn {@link CatalogCacheable}.
+ * ETag/Last-Modified tính từ dữ liệu đã lưu qua {@link CatalogVersionService} (cache ngắn, không load entity),
+ * nên request có If-None-Match/If-Modified-Since còn khớp được trả 304 trước khi vào controller.
+ */
+@Component
+public class CatalogConditionalGetInterceptor implements HandlerInterceptor {
+
+    private final CatalogVersionService catalogVersionService;
+    private final CacheControl cacheControl;
+
+    public CatalogConditionalGetInterceptor(CatalogVersionService catalogVersionService,
+            @Value("${catalog.http-cache.max-age-seconds:60}") long maxAgeSeconds,
+            @Value("${catalog.http-cache.cdn-max-age-seconds:300}") long cdnMaxAgeSeconds) {
+        this.catalogVersionService = catalogVersionService;
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS)
+                .sMaxAge(cdnMaxAgeSeconds, TimeUnit.SECONDS)
+                .cachePublic();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+        CatalogCacheable cacheable = handlerMethod.getMethodAnnotation(CatalogCacheable.class);
+        if (cacheable == null || !("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod()))) {
+            return true;
+        }
+
+        String etag;
+        long lastModified;
+        switch (cacheable.value()) {
+            case PRODUCT -> {
+                Long productId = productId(request);
+                if (productId == null) {
+                    return true;
+                }
+                // Chi tiết product có kèm category nên phụ thuộc cả phiên bản category
+                CatalogVersionService.Stamp product = catalogVersionService.product(productId);
+                if (product == null) {
+                    return true;
+                }
+                CatalogVersionService.Stamp categories = catalogVersionService.categories();
+                etag = "W/\"p" + productId + "-" + product.version() + "-" + categories.version() + "\"";
+                lastModified = Math.max(product.lastModified(), categories.lastModified());
+            }
+            case CATEGORIES -> {
+                CatalogVersionService.Stamp categories = catalogVersionService.categories();
+                etag = "W/\"c-" + categories.version() + "\"";
+                lastModified = categories.lastModified();
+            }
+            case PROMOTIONS -> {
+                // Phiên bản promotion đã gồm mốc startDate/endDate vừa qua; promotion trả kèm product
+                CatalogVersionService.Stamp promotions = catalogVersionService.promotions();
+                CatalogVersionService.Stamp products = catalogVersionService.products();
+                etag = "W/\"m-" + promotions.version() + "-" + products.version() + "\"";
+                lastModified = Math.max(promotions.lastModified(), products.lastModified());
+            }
+            default -> {
+                return true;
+            }
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        // checkNotModified tự set ETag/Last-Modified và status 304 khi còn khớp
+        return !new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    private static Long productId(HttpServletRequest request) {
+        Object attribute = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (!(attribute instanceof Map<?, ?> variables)) {
+            return null;
+        }
+        Object id = variables.get("id");
+        try {
+            return id != null ? Long.valueOf(id.toString()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
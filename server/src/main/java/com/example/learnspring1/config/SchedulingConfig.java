@@ -0,0 +1,23 @@
+package com.example.learnspring1.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// Bật @Scheduled cho các job nền (cập nhật leaderboard, flush buffer, ...)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Mặc định mọi @Scheduled dùng chung 1 thread: job gọi AI hoặc dựng index lâu làm trễ các job khác.
+    // Mỗi job vẫn không chạy chồng lên chính nó (fixedDelay), chỉ các job khác nhau chạy song song
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${catalog.scheduling.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("scheduled-");
+        return scheduler;
+    }
+}
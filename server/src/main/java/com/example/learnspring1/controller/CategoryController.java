@@ -20,6 +20,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import com.example.learnspring1.config.CatalogCacheable;
 import com.example.learnspring1.domain.Category;
 import com.example.learnspring1.domain.dto.CategoryDTO;
 import com.example.learnspring1.domain.dto.PaginatedResponseDTO;
@@ -126,6 +127,7 @@ public class CategoryController {
     @ApiResponse(responseCode = "200", description = "Thành công",
         content = @Content(schema = @Schema(implementation = CategoryDTO.class)))
     @GetMapping("/nested")
+    @CatalogCacheable(CatalogCacheable.Resource.CATEGORIES)
     public List<CategoryDTO> getNestedCategories(
             @Parameter(description = "Trạng thái active", example = "true") @RequestParam(name = "isActive", required = false) Boolean isActive) 
     {
@@ -140,6 +142,7 @@ public class CategoryController {
             content = @Content(schema = @Schema(implementation = APIResponse.class)))
     })
     @GetMapping("/{id}")
+    @CatalogCacheable(CatalogCacheable.Resource.CATEGORIES)
     public CategoryDTO getCategoryById(@Parameter(description = "ID của category", example = "1") @PathVariable("id") Long id) {
         Category category = categoryService.getCategoryById(id)
                 .orElseThrow(() -> new NoSuchElementException("Category not found with id " + id));
@@ -12,18 +12,36 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.Optional;
 
 import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.config.CatalogCacheable;
 import com.example.learnspring1.domain.dto.PaginatedResponseDTO;
+import com.example.learnspring1.domain.dto.ProductAutocompleteDTO;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
+import com.example.learnspring1.domain.dto.ProductFacetsDTO;
+import com.example.learnspring1.domain.dto.ProductImportResponse;
 import com.example.learnspring1.domain.dto.ProductResponseDTO;
 import com.example.learnspring1.domain.dto.MetadataDTO;
+import com.example.learnspring1.service.ProductAutocompleteService;
+import com.example.learnspring1.service.ProductEmbeddingIndexer;
+import com.example.learnspring1.service.ProductEmbeddingStore;
+import com.example.learnspring1.service.ProductFacetService;
+import com.example.learnspring1.service.ProductImportService;
+import com.example.learnspring1.service.ProductListingProjector;
 import com.example.learnspring1.service.ProductService;
+import com.example.learnspring1.service.ProductVectorIndex;
+import com.example.learnspring1.service.SynonymExpander;
 import com.example.learnspring1.service.UserProductHistoryService;
+import com.example.learnspring1.service.VectorQueryCache;
 import com.example.learnspring1.utils.SecurityUtil;
 
 import jakarta.validation.Valid;
@@ -37,10 +55,33 @@ public class ProductController {
 
     private final ProductService productService;
     private final UserProductHistoryService userProductHistoryService;
+    private final ProductFacetService productFacetService;
+    private final ProductImportService productImportService;
+    private final ProductListingProjector productListingProjector;
+    private final ProductAutocompleteService productAutocompleteService;
+    private final ProductVectorIndex productVectorIndex;
+    private final VectorQueryCache vectorQueryCache;
+    private final ProductEmbeddingIndexer productEmbeddingIndexer;
+    private final ProductEmbeddingStore productEmbeddingStore;
+    private final SynonymExpander synonymExpander;
 
-    public ProductController(ProductService productService, UserProductHistoryService userProductHistoryService) {
+    public ProductController(ProductService productService, UserProductHistoryService userProductHistoryService,
+            ProductFacetService productFacetService, ProductImportService productImportService,
+            ProductListingProjector productListingProjector, ProductAutocompleteService productAutocompleteService,
+            ProductVectorIndex productVectorIndex, VectorQueryCache vectorQueryCache,
+            ProductEmbeddingIndexer productEmbeddingIndexer, ProductEmbeddingStore productEmbeddingStore,
+            SynonymExpander synonymExpander) {
         this.productService = productService;
         this.userProductHistoryService = userProductHistoryService;
+        this.productFacetService = productFacetService;
+        this.productImportService = productImportService;
+        this.productListingProjector = productListingProjector;
+        this.productAutocompleteService = productAutocompleteService;
+        this.productVectorIndex = productVectorIndex;
+        this.vectorQueryCache = vectorQueryCache;
+        this.productEmbeddingIndexer = productEmbeddingIndexer;
+        this.productEmbeddingStore = productEmbeddingStore;
+        this.synonymExpander = synonymExpander;
     }
 
     @Operation(summary = "Tạo mới product")
@@ -52,18 +93,88 @@ public class ProductController {
         return productService.createProduct(input);
     }
 
+    @Operation(summary = "Import sản phẩm hàng loạt từ file JSON/CSV", description = "Đọc file dạng streaming, ghi theo lô bằng JDBC batch và trả về lỗi theo từng dòng.")
+    @ApiResponse(responseCode = "403", description = "Không có quyền", content = @Content(schema = @Schema(implementation = com.example.learnspring1.domain.APIResponse.class)))
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLOYEE')")
+    public ProductImportResponse importProducts(
+            @RequestParam("file") MultipartFile file,
+            @Parameter(description = "JSON hoặc CSV; mặc định đoán theo tên file") @RequestParam(name = "format", required = false) ProductImportService.Format format)
+            throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File import trống");
+        }
+        ProductImportService.Format resolved = format != null ? format
+                : ProductImportService.detectFormat(file.getOriginalFilename(), file.getContentType());
+        try (InputStream input = file.getInputStream()) {
+            return productImportService.importProducts(input, resolved);
+        }
+    }
+
+    @Operation(summary = "Dựng lại toàn bộ bảng đọc product_listing", description = "Tính lại giá thực, tồn kho, số lượng đã bán, đánh giá và category chính của mọi sản phẩm; trả về số dòng.")
+    @PostMapping("/listing/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public long rebuildListing() {
+        return productListingProjector.rebuildAll();
+    }
+
+    @Operation(summary = "Đồng bộ lại index vector từ ChromaDB", description = "Tải toàn bộ embedding, ghi đè file vector và dựng lại đồ thị HNSW; trả về số sản phẩm.")
+    @PostMapping("/vector-index/sync")
+    @PreAuthorize("hasRole('ADMIN')")
+    public int syncVectorIndex() throws IOException {
+        return productVectorIndex.syncFromChroma();
+    }
+
+    @Operation(summary = "Tạo lại embedding cho toàn bộ sản phẩm", description = "Đưa mọi sản phẩm chưa xóa vào hàng đợi index; embedding được tạo dần theo lô ở nền. Trả về số sản phẩm đã đưa vào hàng đợi.")
+    @PostMapping("/vector-index/reindex")
+    @PreAuthorize("hasRole('ADMIN')")
+    public int reindexEmbeddings() {
+        return productEmbeddingIndexer.reindexAll();
+    }
+
+    @Operation(summary = "Đo recall và QPS của index vector", description = "So sánh HNSW với tìm vét cạn trên chính các vector trong index.")
+    @GetMapping("/vector-index/benchmark")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ProductVectorIndex.BenchmarkResult benchmarkVectorIndex(
+            @RequestParam(name = "queries", defaultValue = "200") int queries,
+            @RequestParam(name = "k", defaultValue = "10") int k) {
+        return productVectorIndex.benchmark(Math.max(1, Math.min(queries, 5000)), Math.max(1, Math.min(k, 100)));
+    }
+
+    @Operation(summary = "Nạp lại từ điển đồng nghĩa cho tìm kiếm", description = "Đọc lại file search.synonyms.path (hoặc từ điển mặc định); trả về số từ khóa.")
+    @PostMapping("/synonyms/reload")
+    @PreAuthorize("hasRole('ADMIN')")
+    public int reloadSynonyms() {
+        return synonymExpander.reload();
+    }
+
+    @Operation(summary = "Đo sai số lượng tử hóa int8 của bản sao embedding", description = "Lượng tử hóa mẫu embedding của catalog rồi so với vector float gốc: cosine, sai số tích vô hướng trên các cặp ngẫu nhiên và recall@10 của tìm vét cạn.")
+    @GetMapping("/embedding-store/accuracy")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ProductEmbeddingStore.QuantizationReport embeddingStoreAccuracy(
+            @RequestParam(name = "samples", defaultValue = "500") int samples) {
+        return productEmbeddingStore.accuracyReport(Math.max(1, Math.min(samples, 5000)));
+    }
+
+    @Operation(summary = "Thống kê cache embedding/kết quả tìm kiếm vector", description = "Số entry và tỉ lệ hit của từng tầng; số liệu tương tự có trong /actuator/metrics (cache.gets).")
+    @GetMapping("/vector-cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public VectorQueryCache.Stats vectorCacheStats() {
+        return vectorQueryCache.stats();
+    }
+
     @Operation(summary = "Lấy product phân trang")
     @GetMapping("/page")
-    public Page<Product> getPage(
+    public Page<ProductCardDTO> getPage(
             @Parameter(description = "Trang hiện tại", example = "1") @RequestParam(name = "page", defaultValue = "1") int page,
             @Parameter(description = "Số lượng mỗi trang", example = "10") @RequestParam(name = "size", defaultValue = "10") int size) {
         Pageable pageable = PageRequest.of(page - 1, size);
-        return productService.getProductsPage(pageable);
+        return productService.getProductCardsPage(pageable);
     }
 
-    @Operation(summary = "Phân trang + lọc nâng cao")
+    @Operation(summary = "Phân trang + lọc nâng cao", description = "Sort theo minPrice/maxPrice/totalStock/avgRating/reviewCount hoặc lọc inStock sẽ đọc từ bảng product_listing.")
     @GetMapping("/advanced")
-    public PaginatedResponseDTO<Product> getAdvanced(
+    public PaginatedResponseDTO<ProductCardDTO> getAdvanced(
             @RequestParam(name = "page", defaultValue = "1") int page,
             @RequestParam(name = "size", defaultValue = "10") int size,
             @RequestParam(name = "sort", defaultValue = "id") String sortField,
@@ -77,6 +188,7 @@ public class ProductController {
             @RequestParam(name = "isActive", required = false) Boolean isActive,
             @RequestParam(name = "minPrice", required = false) BigDecimal minPrice,
             @RequestParam(name = "maxPrice", required = false) BigDecimal maxPrice,
+            @Parameter(description = "Chỉ lấy sản phẩm còn/hết hàng") @RequestParam(name = "inStock", required = false) Boolean inStock,
             @RequestParam(name = "search", required = false) String search) {
         Sort.Direction direction = Sort.Direction.fromString(sortDirection);
         if (direction == null) {
@@ -84,8 +196,8 @@ public class ProductController {
         }
         Sort sort = Sort.by(direction, sortField);
         Pageable pageable = PageRequest.of(page - 1, size, sort);
-        Page<Product> result = productService.getProductsPageWithFilters(pageable, id, name, sku, brand, categoryId,
-                isFeatured, isActive, minPrice, maxPrice, search);
+        Page<ProductCardDTO> result = productService.getProductCardsPageWithFilters(pageable, id, name, sku, brand,
+                categoryId, isFeatured, isActive, minPrice, maxPrice, inStock, search);
         MetadataDTO metadata = MetadataDTO.builder()
                 .page(page)
                 .size(size)
@@ -94,28 +206,68 @@ public class ProductController {
                 .sortField(sortField)
                 .sortDirection(sortDirection)
                 .build();
-        return PaginatedResponseDTO.<Product>builder()
+        return PaginatedResponseDTO.<ProductCardDTO>builder()
                 .metadata(metadata)
                 .result(result.getContent())
                 .build();
     }
 
+    @Operation(summary = "Đếm facet (brand, category, khoảng giá, còn hàng) cho bộ lọc của /advanced")
+    @GetMapping("/facets")
+    public ProductFacetsDTO getFacets(
+            @RequestParam(name = "id", required = false) Long id,
+            @RequestParam(name = "name", required = false) String name,
+            @RequestParam(name = "sku", required = false) String sku,
+            @RequestParam(name = "brand", required = false) String brand,
+            @RequestParam(name = "categoryId", required = false) Long categoryId,
+            @RequestParam(name = "isFeatured", required = false) Boolean isFeatured,
+            @RequestParam(name = "isActive", required = false) Boolean isActive,
+            @RequestParam(name = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(name = "maxPrice", required = false) BigDecimal maxPrice,
+            @RequestParam(name = "search", required = false) String search) {
+        return productFacetService.getFacets(id, name, sku, brand, categoryId, isFeatured, isActive, minPrice,
+                maxPrice, search);
+    }
+
     @Operation(summary = "Gợi ý sản phẩm cho trang chủ / tìm kiếm nhanh")
     @GetMapping("/suggestions")
-    public List<Product> getSuggestions(
+    public List<ProductCardDTO> getSuggestions(
             @RequestParam(name = "q", required = false) String query,
             @RequestParam(name = "categoryId", required = false) Long categoryId,
             @RequestParam(name = "limit", defaultValue = "8") int limit) {
-        return productService.suggestProducts(query, categoryId, limit);
+        return productService.suggestProductCards(query, categoryId, limit);
+    }
+
+    @Operation(summary = "Gợi ý khi gõ ô tìm kiếm (tên sản phẩm, thương hiệu, category)", description = "Khớp tiền tố không dấu, trả lời từ index trong bộ nhớ, không query database.")
+    @GetMapping("/autocomplete")
+    public ProductAutocompleteDTO autocomplete(
+            @RequestParam(name = "q", required = false) String query,
+            @RequestParam(name = "limit", defaultValue = "8") int limit) {
+        return productAutocompleteService.autocomplete(query, limit);
     }
 
-    @Operation(summary = "Gợi ý sản phẩm bằng vector (Gemini + ChromaDB)")
+    @Operation(summary = "Tìm kiếm lai: từ khóa (BM25) + vector, gộp bằng Reciprocal Rank Fusion")
     @GetMapping("/vector-suggest")
-    public List<Product> getVectorSuggestions(
+    public List<ProductCardDTO> getVectorSuggestions(
             @RequestParam(name = "q") String query,
             @RequestParam(name = "categoryId", required = false) Long categoryId,
             @RequestParam(name = "limit", defaultValue = "8") int limit) {
-        return productService.suggestProductsByVector(query, categoryId, limit);
+        return productService.suggestProductCardsByVector(query, categoryId, limit);
+    }
+
+    @Operation(summary = "Sản phẩm tương tự theo embedding", description = "Trả lời từ danh sách láng giềng tính sẵn trong bộ nhớ, không gọi AI.")
+    @GetMapping("/{id}/similar")
+    public List<ProductCardDTO> getSimilarProducts(
+            @PathVariable("id") Long productId,
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return productService.getSimilarProductCards(productId, limit);
+    }
+
+    @Operation(summary = "Sản phẩm đang hot", description = "Tăng đột biến lượt xem/thêm giỏ so với bình thường; đọc snapshot trong bộ nhớ, làm mới vài giây một lần.")
+    @GetMapping("/trending")
+    public List<ProductCardDTO> getTrendingProducts(
+            @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return productService.getTrendingProductCards(Math.min(limit, 50));
     }
 
     @Operation(summary = "Track sản phẩm người dùng đã xem/click")
@@ -129,30 +281,34 @@ public class ProductController {
 
     @Operation(summary = "Gợi ý sản phẩm dựa trên lịch sử click/view của người dùng")
     @GetMapping("/history-suggest")
-    public List<Product> getHistoryBasedSuggestions(
+    public List<ProductCardDTO> getHistoryBasedSuggestions(
             @RequestParam(name = "categoryId", required = false) Long categoryId,
             @RequestParam(name = "limit", defaultValue = "8") int limit) {
         Optional<String> currentUser = SecurityUtil.getCurrentUserLogin();
         if (currentUser.isEmpty()) {
-            return productService.getBestSellers(PageRequest.of(0, limit)).getContent();
+            return productService.getBestSellerCards(PageRequest.of(0, limit)).getContent();
         }
 
         List<Long> viewedProductIds = userProductHistoryService.getUserHistory(currentUser.get(), 20);
         if (viewedProductIds.isEmpty()) {
-            return productService.getBestSellers(PageRequest.of(0, limit)).getContent();
+            return productService.getBestSellerCards(PageRequest.of(0, limit)).getContent();
         }
 
-        return productService.suggestProductsByUserHistory(viewedProductIds, categoryId, limit);
+        float[] tasteVector = userProductHistoryService.getTasteVector(currentUser.get());
+        if (tasteVector == null) {
+            return productService.suggestProductCardsByUserHistory(viewedProductIds, categoryId, limit);
+        }
+        return productService.suggestProductCardsByTaste(tasteVector, viewedProductIds, categoryId, limit);
     }
 
     @Operation(summary = "Lấy danh sách sản phẩm bán chạy / nổi bật")
     @GetMapping("/best-sellers")
-    public PaginatedResponseDTO<Product> getBestSellers(
+    public PaginatedResponseDTO<ProductCardDTO> getBestSellers(
             @RequestParam(name = "size", defaultValue = "8") int size) {
         int page = 1;
         Pageable pageable = PageRequest.of(page - 1, size);
 
-        Page<Product> result = productService.getBestSellers(pageable);
+        Page<ProductCardDTO> result = productService.getBestSellerCards(pageable);
         MetadataDTO metadata = MetadataDTO.builder()
                 .page(page)
                 .size(size)
@@ -162,7 +318,7 @@ public class ProductController {
                 .sortDirection("DESC")
                 .build();
 
-        return PaginatedResponseDTO.<Product>builder()
+        return PaginatedResponseDTO.<ProductCardDTO>builder()
                 .metadata(metadata)
                 .result(result.getContent())
                 .build();
@@ -170,6 +326,7 @@ public class ProductController {
 
     @Operation(summary = "Lấy product theo id")
     @GetMapping("/{id}")
+    @CatalogCacheable(CatalogCacheable.Resource.PRODUCT)
     public ProductResponseDTO getById(@PathVariable("id") Long id) {
         return productService.getProductByIdWithImagesAndSoldCount(id)
                 .orElseThrow(() -> new java.util.NoSuchElementException("Product not found with id " + id));
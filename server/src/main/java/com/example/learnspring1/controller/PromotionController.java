@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.learnspring1.domain.Promotion;
+import com.example.learnspring1.config.CatalogCacheable;
 import com.example.learnspring1.domain.dto.PaginatedResponseDTO;
 import com.example.learnspring1.domain.dto.MetadataDTO;
 import com.example.learnspring1.domain.dto.PromotionRequestDTO;
@@ -71,6 +72,7 @@ public class PromotionController {
 
     @Operation(summary = "Phân trang + lọc nâng cao")
     @GetMapping("/advanced")
+    @CatalogCacheable(CatalogCacheable.Resource.PROMOTIONS)
     public PaginatedResponseDTO<PromotionResponseDTO> getAdvanced(
             @Parameter(description = "Trang hiện tại", example = "1") @RequestParam(name = "page", defaultValue = "1") int page,
             @Parameter(description = "Số lượng mỗi trang", example = "10") @RequestParam(name = "size", defaultValue = "10") int size,
@@ -106,6 +108,7 @@ public class PromotionController {
 
     @Operation(summary = "Get promotion details")
     @GetMapping("/{id}")
+    @CatalogCacheable(CatalogCacheable.Resource.PROMOTIONS)
     public PromotionResponseDTO getPromotion(@PathVariable("id") Long id) {
         Promotion promotion = promotionService.getPromotion(id);
         return PromotionResponseDTO.fromEntity(promotion);
@@ -113,6 +116,7 @@ public class PromotionController {
 
     @Operation(summary = "Get promotion details by slug")
     @GetMapping("/slug/{slug}")
+    @CatalogCacheable(CatalogCacheable.Resource.PROMOTIONS)
     public PromotionResponseDTO getPromotionBySlug(@PathVariable("slug") String slug) {
         Promotion promotion = promotionService.getPromotionBySlug(slug);
         return PromotionResponseDTO.fromEntity(promotion);
@@ -120,6 +124,7 @@ public class PromotionController {
 
     @Operation(summary = "Get active promotions")
     @GetMapping("/active")
+    @CatalogCacheable(CatalogCacheable.Resource.PROMOTIONS)
     public List<PromotionResponseDTO> getActivePromotions() {
         return promotionService.getActivePromotions().stream()
                 .map(PromotionResponseDTO::fromEntity)
@@ -6,6 +6,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.LazyGroup;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -30,6 +31,10 @@ public class Product {
     @Column(nullable = false, length = 200)
     private String name;
 
+    // Cột lớn chỉ trang chi tiết cần: load lười (cần bytecode enhancement, xem build.gradle.kts),
+    // cả hai cột cùng nhóm nên được đọc trong một câu SELECT khi truy cập lần đầu
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("text")
     @Column(columnDefinition = "MEDIUMTEXT")
     private String description;
 
@@ -57,6 +62,8 @@ public class Product {
     @Column(length = 100)
     private String dimensions;
 
+    @Basic(fetch = FetchType.LAZY)
+    @LazyGroup("text")
     @Column(columnDefinition = "MEDIUMTEXT")
     private String specifications;
 
@@ -80,6 +87,11 @@ public class Product {
     @Column(name = "is_featured", nullable = false)
     private Boolean isFeatured = false;
 
+    // Bộ đếm đã bán, chỉ được cập nhật bằng ProductRepository.addSoldCount
+    @Column(name = "sold_count", insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long soldCount;
+
     @Builder.Default
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt = Instant.now();
@@ -0,0 +1,95 @@
+package com.example.learnspring1.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.hibernate.annotations.Immutable;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Bảng đọc phẳng cho trang danh sách: mỗi sản phẩm chưa xóa một dòng, gom sẵn giá thực
+ * (theo variant), tồn kho, số lượng đã bán, điểm đánh giá và đường dẫn category chính.
+ * Chỉ {@link com.example.learnspring1.service.ProductListingProjector} ghi bảng này (bằng SQL),
+ * JPA chỉ đọc.
+ */
+@Entity
+@Immutable
+@Table(name = "product_listing", indexes = {
+        @Index(name = "idx_product_listing_active_created", columnList = "is_active, created_at"),
+        @Index(name = "idx_product_listing_active_min_price", columnList = "is_active, min_price"),
+        @Index(name = "idx_product_listing_active_sold", columnList = "is_active, sold_count"),
+        @Index(name = "idx_product_listing_active_rating", columnList = "is_active, avg_rating"),
+        @Index(name = "idx_product_listing_active_stock", columnList = "is_active, has_stock, min_price"),
+        @Index(name = "idx_product_listing_featured", columnList = "is_featured, is_active"),
+        @Index(name = "idx_product_listing_brand", columnList = "brand"),
+        @Index(name = "idx_product_listing_primary_category", columnList = "primary_category_id")
+})
+@Getter
+@NoArgsConstructor
+public class ProductListing {
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(nullable = false, length = 200)
+    private String name;
+
+    @Column(length = 100)
+    private String sku;
+
+    // Cùng độ dài với products.brand
+    @Column(length = 150)
+    private String brand;
+
+    @Column(precision = 19, scale = 4)
+    private BigDecimal price;
+
+    @Column(name = "discount_price", precision = 19, scale = 4)
+    private BigDecimal discountPrice;
+
+    // Giá thấp/cao nhất trong các variant active (hoặc giá product khi không có variant)
+    @Column(name = "min_price", precision = 19, scale = 4)
+    private BigDecimal minPrice;
+
+    @Column(name = "max_price", precision = 19, scale = 4)
+    private BigDecimal maxPrice;
+
+    @Column(name = "total_stock", nullable = false)
+    private Long totalStock;
+
+    @Column(name = "has_stock", nullable = false)
+    private Boolean hasStock;
+
+    @Column(name = "sold_count", nullable = false)
+    private Long soldCount;
+
+    @Column(name = "avg_rating", nullable = false, precision = 3, scale = 2)
+    private BigDecimal avgRating;
+
+    @Column(name = "review_count", nullable = false)
+    private Long reviewCount;
+
+    @Column(name = "primary_category_id")
+    private Long primaryCategoryId;
+
+    @Column(name = "category_path", length = 500)
+    private String categoryPath;
+
+    @Column(name = "is_active", nullable = false)
+    private Boolean isActive;
+
+    @Column(name = "is_featured", nullable = false)
+    private Boolean isFeatured;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    @Column(name = "refreshed_at", nullable = false)
+    private Instant refreshedAt;
+}
@@ -11,7 +11,8 @@ import java.time.Instant;
        indexes = {
            @Index(name = "idx_user_product_history_user_id", columnList = "user_id"),
            @Index(name = "idx_user_product_history_product_id", columnList = "product_id"),
-           @Index(name = "idx_user_product_history_viewed_at", columnList = "viewed_at")
+           @Index(name = "idx_user_product_history_viewed_at", columnList = "viewed_at"),
+           @Index(name = "idx_user_product_history_user_viewed", columnList = "user_id, viewed_at, id")
        })
 @Getter
 @Setter
@@ -0,0 +1,35 @@
+package com.example.learnspring1.domain;
+
+import java.time.Instant;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * Vector sở thích của người dùng: trung bình có suy giảm theo cấp số nhân của embedding các sản phẩm đã xem,
+ * lưu gọn dạng float16. Chỉ {@link com.example.learnspring1.service.UserTasteVectorService} ghi bảng này
+ * (upsert bằng SQL), JPA chỉ đọc.
+ */
+@Entity
+@Table(name = "user_taste_vector")
+@Getter
+@NoArgsConstructor
+public class UserTasteVector {
+    @Id
+    @Column(name = "user_id", length = 100)
+    private String userId;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "BLOB")
+    private byte[] vector;
+
+    @Column(nullable = false)
+    private double weight;
+
+    @Column(name = "view_count", nullable = false)
+    private long viewCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,37 @@
+package com.example.learnspring1.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductAutocompleteDTO {
+    // Mỗi nhóm đã sắp theo độ phổ biến (đã bán / số sản phẩm) giảm dần
+    private List<ProductSuggestion> products;
+    private List<String> brands;
+    private List<CategorySuggestion> categories;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ProductSuggestion {
+        private Long id;
+        private String name;
+        private String brand;
+        private String thumbnailUrl;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CategorySuggestion {
+        private Long id;
+        private String name;
+    }
+}
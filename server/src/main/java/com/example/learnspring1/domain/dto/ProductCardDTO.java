@@ -0,0 +1,73 @@
+package com.example.learnspring1.domain.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Dữ liệu rút gọn của sản phẩm cho các trang danh sách (thẻ sản phẩm, bảng admin).
+ * Không chứa description/specifications; variants, ảnh chính và category được nạp theo lô cho cả trang.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductCardDTO {
+    private Long id;
+    private String name;
+    private BigDecimal price;
+    private BigDecimal discountPrice;
+    private String sku;
+    private String brand;
+    private String thumbnailUrl;
+    private Boolean isActive;
+    private Boolean isFeatured;
+    private Long soldCount;
+    private Instant createdAt;
+    private Instant updatedAt;
+    private Integer totalStockQuantity;
+    private Boolean hasStock;
+    private List<CategoryRef> categories = new ArrayList<>();
+    // Chỉ gồm ảnh chính (nếu có) để client hiển thị thẻ
+    private List<ImageRef> images = new ArrayList<>();
+    private List<ProductVariantDTO> variants = new ArrayList<>();
+
+    // Constructor cho JPQL projection (SELECT new ...)
+    public ProductCardDTO(Long id, String name, BigDecimal price, BigDecimal discountPrice, String sku,
+            String brand, String thumbnailUrl, Boolean isActive, Boolean isFeatured, Long soldCount,
+            Instant createdAt, Instant updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.discountPrice = discountPrice;
+        this.sku = sku;
+        this.brand = brand;
+        this.thumbnailUrl = thumbnailUrl;
+        this.isActive = isActive;
+        this.isFeatured = isFeatured;
+        this.soldCount = soldCount;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CategoryRef {
+        private Long id;
+        private String name;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ImageRef {
+        private Long id;
+        private String imageUrl;
+        private Boolean isPrimary;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.learnspring1.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductFacetsDTO {
+    // Tổng số sản phẩm khớp bộ lọc
+    private long total;
+    private long inStockCount;
+    private List<FacetValue> brands;
+    private List<FacetValue> categories;
+    private List<FacetValue> priceRanges;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FacetValue {
+        private String key;
+        private String label;
+        private long count;
+    }
+}
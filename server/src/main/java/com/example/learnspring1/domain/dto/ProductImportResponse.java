@@ -0,0 +1,30 @@
+package com.example.learnspring1.domain.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductImportResponse {
+    private int totalRows;
+    private int successCount;
+    private int failedCount;
+    // Chỉ giữ tối đa một số lỗi đầu tiên để response không phình theo kích thước file
+    private List<RowError> errors;
+    private boolean errorsTruncated;
+    private String message;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        private int row;
+        private String sku;
+        private String name;
+        private String message;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.learnspring1.event;
+
+/**
+ * Phát ra sau khi cây category được dựng lại (category tạo/sửa/xóa).
+ */
+public record CategoryTreeChangedEvent() {
+}
@@ -0,0 +1,32 @@
+package com.example.learnspring1.event;
+
+import com.example.learnspring1.domain.Order;
+
+import java.time.Instant;
+
+/**
+ * Phát ra trong transaction đổi trạng thái đơn hàng.
+ * {@code orderCreatedAt} dùng cho các thống kê theo cửa sổ thời gian (best seller).
+ */
+public record OrderStatusChangedEvent(Long orderId, Order.OrderStatus oldStatus, Order.OrderStatus newStatus,
+        Instant orderCreatedAt) {
+
+    /**
+     * Trạng thái được tính là "đã bán" (giống điều kiện cũ trong query soldCount).
+     */
+    public static boolean countsAsSold(Order.OrderStatus status) {
+        return status == Order.OrderStatus.DELIVERED || status == Order.OrderStatus.COMPLETED;
+    }
+
+    /**
+     * +1 khi đơn vừa vào nhóm đã bán, -1 khi rời nhóm (refund/hủy), 0 nếu không đổi.
+     */
+    public int soldDirection() {
+        boolean before = countsAsSold(oldStatus);
+        boolean after = countsAsSold(newStatus);
+        if (before == after) {
+            return 0;
+        }
+        return after ? 1 : -1;
+    }
+}
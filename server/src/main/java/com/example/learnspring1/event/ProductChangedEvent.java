@@ -0,0 +1,20 @@
+package com.example.learnspring1.event;
+
+/**
+ * Phát ra sau khi dữ liệu của một sản phẩm thay đổi (product, variant, ảnh hoặc tồn kho).
+ * Các index/cache trong bộ nhớ lắng nghe event này để cập nhật riêng sản phẩm đó.
+ */
+public record ProductChangedEvent(Long productId, ChangeType changeType) {
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED,
+        VARIANT_CHANGED,
+        IMAGE_CHANGED
+    }
+
+    public boolean isDeleted() {
+        return changeType == ChangeType.DELETED;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.learnspring1.event;
+
+import java.util.List;
+
+/**
+ * Phát ra khi vector của sản phẩm trong index vector trong tiến trình thay đổi (thêm, thay hoặc xóa).
+ * {@code fullReload} = true khi cả index được nạp/đồng bộ lại; khi đó {@code productIds} rỗng.
+ */
+public record ProductEmbeddingsChangedEvent(List<Long> productIds, boolean fullReload) {
+
+    public static ProductEmbeddingsChangedEvent of(Long productId) {
+        return new ProductEmbeddingsChangedEvent(List.of(productId), false);
+    }
+
+    public static ProductEmbeddingsChangedEvent reloaded() {
+        return new ProductEmbeddingsChangedEvent(List.of(), true);
+    }
+}
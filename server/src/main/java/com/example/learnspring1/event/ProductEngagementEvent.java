@@ -0,0 +1,20 @@
+package com.example.learnspring1.event;
+
+/**
+ * Phát ra khi người dùng tương tác với một sản phẩm (xem chi tiết, thêm vào giỏ); dùng cho phát hiện xu hướng.
+ */
+public record ProductEngagementEvent(Long productId, Kind kind) {
+
+    public enum Kind {
+        VIEW,
+        ADD_TO_CART
+    }
+
+    public static ProductEngagementEvent view(Long productId) {
+        return new ProductEngagementEvent(productId, Kind.VIEW);
+    }
+
+    public static ProductEngagementEvent addedToCart(Long productId) {
+        return new ProductEngagementEvent(productId, Kind.ADD_TO_CART);
+    }
+}
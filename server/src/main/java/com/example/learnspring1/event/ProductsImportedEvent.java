@@ -0,0 +1,11 @@
+package com.example.learnspring1.event;
+
+import java.util.List;
+
+/**
+ * Phát ra sau mỗi lô sản phẩm được import hàng loạt (đã commit).
+ * Thay cho hàng nghìn {@link ProductChangedEvent} riêng lẻ: listener nên cập nhật theo lô
+ * hoặc đánh dấu index cần dựng lại.
+ */
+public record ProductsImportedEvent(List<Long> productIds) {
+}
@@ -0,0 +1,7 @@
+package com.example.learnspring1.event;
+
+/**
+ * Phát ra khi một promotion được tạo, sửa hoặc xóa.
+ */
+public record PromotionChangedEvent(Long promotionId) {
+}
@@ -0,0 +1,7 @@
+package com.example.learnspring1.event;
+
+/**
+ * Phát ra khi review của một sản phẩm được tạo hoặc xóa (điểm đánh giá trung bình thay đổi).
+ */
+public record ReviewChangedEvent(Long productId) {
+}
@@ -65,6 +65,14 @@ public interface CategoryRepository extends JpaRepository<Category, Long>, JpaSp
        List<Category> findChildrenByParentId(@Param("parentId") Long parentId,
                      @Param("isActive") Boolean isActive);
 
+       // Load toàn bộ category kèm parent (dùng để dựng CategoryTreeSnapshot)
+       @Query("SELECT c FROM Category c LEFT JOIN FETCH c.parent")
+       List<Category> findAllWithParent();
+
+       // Validator HTTP của cây category: [count, max updatedAt]
+       @Query("SELECT COUNT(c), MAX(c.updatedAt) FROM Category c")
+       List<Object[]> findValidatorRow();
+
        // Check if category has children
        @Query("SELECT COUNT(c) > 0 FROM Category c WHERE c.parent.id = :parentId AND c.deletedBy IS NULL")
        boolean hasChildren(@Param("parentId") Long parentId);
@@ -11,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.List;
 
 @Repository
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
@@ -28,4 +29,44 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     Page<Product> findBestSellers(@Param("status") Order.OrderStatus status,
             @Param("fromDate") Instant fromDate,
             Pageable pageable);
+
+    /**
+     * Giống {@link #findBestSellers} nhưng chỉ trả về id sản phẩm theo thứ hạng.
+     */
+    @Query(value = "SELECT oi.product.id FROM OrderItem oi " +
+            "JOIN oi.order o " +
+            "WHERE o.status = :status " +
+            "AND o.createdAt >= :fromDate " +
+            "AND oi.product IS NOT NULL " +
+            "GROUP BY oi.product.id " +
+            "ORDER BY SUM(oi.quantity) DESC",
+            countQuery = "SELECT COUNT(DISTINCT oi.product.id) FROM OrderItem oi " +
+                    "JOIN oi.order o " +
+                    "WHERE o.status = :status " +
+                    "AND o.createdAt >= :fromDate " +
+                    "AND oi.product IS NOT NULL")
+    Page<Long> findBestSellerIds(@Param("status") Order.OrderStatus status,
+            @Param("fromDate") Instant fromDate,
+            Pageable pageable);
+
+    /**
+     * Tổng quantity theo product của một đơn hàng: [productId, SUM(quantity)].
+     */
+    @Query("SELECT oi.product.id, SUM(oi.quantity) FROM OrderItem oi " +
+            "WHERE oi.order.id = :orderId AND oi.product IS NOT NULL " +
+            "GROUP BY oi.product.id")
+    List<Object[]> sumQuantityByProductForOrder(@Param("orderId") Long orderId);
+
+    /**
+     * Số lượng theo (product, đơn hàng) của các đơn có trạng thái cho trước từ fromDate:
+     * [productId, order.createdAt, SUM(quantity), order.id]. Dùng để dựng leaderboard best seller.
+     */
+    @Query("SELECT oi.product.id, o.createdAt, SUM(oi.quantity), o.id FROM OrderItem oi " +
+            "JOIN oi.order o " +
+            "WHERE o.status = :status " +
+            "AND o.createdAt >= :fromDate " +
+            "AND oi.product IS NOT NULL " +
+            "GROUP BY oi.product.id, o.id, o.createdAt")
+    List<Object[]> findQuantitiesByProductAndOrderSince(@Param("status") Order.OrderStatus status,
+            @Param("fromDate") Instant fromDate);
 }
@@ -2,6 +2,8 @@ package com.example.learnspring1.repository;
 
 import com.example.learnspring1.domain.ProductImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,6 +11,12 @@ import java.util.List;
 @Repository
 public interface ProductImageRepository extends JpaRepository<ProductImage, Long> {
     List<ProductImage> findByProduct_IdAndDeletedByIsNullOrderBySortOrderAsc(Long productId);
+
+    // Ảnh chính của nhiều sản phẩm trong 1 query: [productId, imageId, imageUrl]
+    @Query("SELECT i.product.id, i.id, i.imageUrl FROM ProductImage i " +
+            "WHERE i.product.id IN :productIds AND i.isPrimary = true AND i.deletedBy IS NULL " +
+            "ORDER BY i.product.id, i.sortOrder, i.id")
+    List<Object[]> findPrimaryImageRowsByProductIds(@Param("productIds") List<Long> productIds);
 }
 
 
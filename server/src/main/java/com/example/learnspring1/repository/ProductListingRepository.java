@@ -0,0 +1,45 @@
+package com.example.learnspring1.repository;
+
+import com.example.learnspring1.domain.ProductListing;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface ProductListingRepository extends JpaRepository<ProductListing, Long> {
+
+       // Cùng bộ lọc với ProductRepository.CARD_FILTER (giá theo ProductRepository.EFFECTIVE_MIN_PRICE, đã gom sẵn
+       // ở min_price) và có thêm lọc còn hàng; chỉ lấy id, card được nạp theo lô sau đó
+       String LISTING_FILTER = "FROM ProductListing l WHERE " +
+                     "(:name IS NULL OR l.name LIKE %:name%) AND " +
+                     "(:sku IS NULL OR l.sku LIKE %:sku%) AND " +
+                     "(:brand IS NULL OR l.brand LIKE %:brand%) AND " +
+                     "(:categoryId IS NULL OR l.productId IN (SELECT cp.id FROM Product cp JOIN cp.categories c " +
+                     "WHERE c.id IN :categoryIds)) AND " +
+                     "(:isFeatured IS NULL OR l.isFeatured = :isFeatured) AND " +
+                     "(:isActive IS NULL OR l.isActive = :isActive) AND " +
+                     "(:inStock IS NULL OR l.hasStock = :inStock) AND " +
+                     "(:minPrice IS NULL OR l.minPrice >= :minPrice) AND " +
+                     "(:maxPrice IS NULL OR l.minPrice <= :maxPrice) AND " +
+                     "(:search IS NULL OR l.name LIKE %:search% OR l.sku LIKE %:search% OR l.brand LIKE %:search% OR CAST(l.productId AS string) LIKE %:search%)";
+
+       @Query(value = "SELECT l.productId " + LISTING_FILTER, countQuery = "SELECT COUNT(l) " + LISTING_FILTER)
+       Page<Long> findProductIdsWithFilters(@Param("name") String name,
+                     @Param("sku") String sku,
+                     @Param("brand") String brand,
+                     @Param("categoryId") Long categoryId,
+                     @Param("categoryIds") List<Long> categoryIds,
+                     @Param("isFeatured") Boolean isFeatured,
+                     @Param("isActive") Boolean isActive,
+                     @Param("inStock") Boolean inStock,
+                     @Param("minPrice") BigDecimal minPrice,
+                     @Param("maxPrice") BigDecimal maxPrice,
+                     @Param("search") String search,
+                     Pageable pageable);
+}
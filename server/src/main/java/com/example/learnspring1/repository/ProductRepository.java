@@ -1,28 +1,39 @@
 package com.example.learnspring1.repository;
 
 import com.example.learnspring1.domain.Product;
-import com.example.learnspring1.domain.dto.ProductResponseDTO;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
 
+       // Giá lọc giống product_listing.min_price (ProductListingProjector): giá variant active thấp nhất,
+       // không có variant thì giá giảm rồi giá gốc; lọc giá cho cùng kết quả dù request đi đường nào
+       String EFFECTIVE_MIN_PRICE = "COALESCE((SELECT MIN(pv.price) FROM ProductVariant pv WHERE pv.product = p " +
+                     "AND pv.isActive = true AND pv.deletedBy IS NULL), p.discountPrice, p.price)";
+
        Optional<Product> findBySku(String sku);
 
        boolean existsBySku(String sku);
 
+       // SKU đã tồn tại trong một lô (dùng khi import hàng loạt)
+       @Query("SELECT p.sku FROM Product p WHERE p.sku IN :skus")
+       List<String> findExistingSkus(@Param("skus") Collection<String> skus);
+
        List<Product> findByIsActiveTrue();
 
        Page<Product> findByIsActiveTrue(Pageable pageable);
@@ -50,8 +61,8 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
                      "(:categoryId IS NULL OR c.id IN :categoryIds) AND " +
                      "(:isFeatured IS NULL OR p.isFeatured = :isFeatured) AND " +
                      "(:isActive IS NULL OR p.isActive = :isActive) AND " +
-                     "(:minPrice IS NULL OR p.price >= :minPrice) AND " +
-                     "(:maxPrice IS NULL OR p.price <= :maxPrice) AND " +
+                     "(:minPrice IS NULL OR " + EFFECTIVE_MIN_PRICE + " >= :minPrice) AND " +
+                     "(:maxPrice IS NULL OR " + EFFECTIVE_MIN_PRICE + " <= :maxPrice) AND " +
                      "(:search IS NULL OR p.name LIKE %:search% OR p.sku LIKE %:search% OR p.brand LIKE %:search% OR CAST(p.id AS string) LIKE %:search%) AND "
                      +
                      "(p.deletedBy IS NULL)")
@@ -72,15 +83,120 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
                      "(p.deletedBy IS NULL)")
        Page<Product> findProductsByIdOnly(@Param("id") String id, Pageable pageable);
 
+       // Projection cho thẻ sản phẩm: chỉ các cột ngắn, không đụng tới description/specifications
+       String CARD_SELECT = "SELECT new com.example.learnspring1.domain.dto.ProductCardDTO(" +
+                     "p.id, p.name, p.price, p.discountPrice, p.sku, p.brand, p.thumbnailUrl, " +
+                     "p.isActive, p.isFeatured, p.soldCount, p.createdAt, p.updatedAt) ";
+
+       // Cùng điều kiện với findProductsWithFiltersPaged; category lọc bằng subquery nên không cần DISTINCT
+       String CARD_FILTER = "FROM Product p WHERE " +
+                     "(:name IS NULL OR p.name LIKE %:name%) AND " +
+                     "(:sku IS NULL OR p.sku LIKE %:sku%) AND " +
+                     "(:brand IS NULL OR p.brand LIKE %:brand%) AND " +
+                     "(:categoryId IS NULL OR p.id IN (SELECT cp.id FROM Product cp JOIN cp.categories c " +
+                     "WHERE c.id IN :categoryIds)) AND " +
+                     "(:isFeatured IS NULL OR p.isFeatured = :isFeatured) AND " +
+                     "(:isActive IS NULL OR p.isActive = :isActive) AND " +
+                     "(:minPrice IS NULL OR " + EFFECTIVE_MIN_PRICE + " >= :minPrice) AND " +
+                     "(:maxPrice IS NULL OR " + EFFECTIVE_MIN_PRICE + " <= :maxPrice) AND " +
+                     "(:search IS NULL OR p.name LIKE %:search% OR p.sku LIKE %:search% OR p.brand LIKE %:search% OR CAST(p.id AS string) LIKE %:search%) AND " +
+                     "(p.deletedBy IS NULL)";
+
+       @Query(value = CARD_SELECT + CARD_FILTER, countQuery = "SELECT COUNT(p) " + CARD_FILTER)
+       Page<ProductCardDTO> findProductCardsWithFilters(@Param("name") String name,
+                     @Param("sku") String sku,
+                     @Param("brand") String brand,
+                     @Param("categoryId") Long categoryId,
+                     @Param("categoryIds") List<Long> categoryIds,
+                     @Param("isFeatured") Boolean isFeatured,
+                     @Param("isActive") Boolean isActive,
+                     @Param("minPrice") BigDecimal minPrice,
+                     @Param("maxPrice") BigDecimal maxPrice,
+                     @Param("search") String search,
+                     Pageable pageable);
+
+       @Query(value = CARD_SELECT + "FROM Product p WHERE CAST(p.id AS string) LIKE %:id% AND p.deletedBy IS NULL",
+                     countQuery = "SELECT COUNT(p) FROM Product p WHERE CAST(p.id AS string) LIKE %:id% AND p.deletedBy IS NULL")
+       Page<ProductCardDTO> findProductCardsByIdOnly(@Param("id") String id, Pageable pageable);
+
+       @Query(value = CARD_SELECT + "FROM Product p WHERE p.isActive = true",
+                     countQuery = "SELECT COUNT(p) FROM Product p WHERE p.isActive = true")
+       Page<ProductCardDTO> findActiveProductCards(Pageable pageable);
+
+       @Query(CARD_SELECT + "FROM Product p WHERE p.id IN :ids")
+       List<ProductCardDTO> findProductCardsByIds(@Param("ids") List<Long> ids);
+
+       // Category của các sản phẩm trong trang: [productId, categoryId, categoryName]
+       @Query("SELECT p.id, c.id, c.name FROM Product p JOIN p.categories c WHERE p.id IN :productIds")
+       List<Object[]> findCategoryRefsByProductIds(@Param("productIds") List<Long> productIds);
+
+       // Dữ liệu phẳng cho facet index: id, name, sku, brand, price, isActive, isFeatured
+       @Query("SELECT p.id, p.name, p.sku, p.brand, p.price, p.isActive, p.isFeatured FROM Product p " +
+                     "WHERE p.deletedBy IS NULL")
+       List<Object[]> findFacetRows();
+
+       @Query("SELECT p.id, p.name, p.sku, p.brand, p.price, p.isActive, p.isFeatured FROM Product p " +
+                     "WHERE p.id = :id AND p.deletedBy IS NULL")
+       List<Object[]> findFacetRowById(@Param("id") Long id);
+
+       // Cặp (productId, categoryId) của các sản phẩm chưa bị xóa
+       @Query("SELECT p.id, c.id FROM Product p JOIN p.categories c WHERE p.deletedBy IS NULL")
+       List<Object[]> findProductCategoryPairs();
+
+       // Dữ liệu cho index autocomplete: id, name, brand, thumbnailUrl, soldCount (chỉ sản phẩm đang bán)
+       @Query("SELECT p.id, p.name, p.brand, p.thumbnailUrl, p.soldCount FROM Product p " +
+                     "WHERE p.isActive = true AND p.deletedBy IS NULL")
+       List<Object[]> findAutocompleteRows();
+
+       @Query("SELECT p.id, p.name, p.brand, p.thumbnailUrl, p.soldCount FROM Product p " +
+                     "WHERE p.id IN :ids AND p.isActive = true AND p.deletedBy IS NULL")
+       List<Object[]> findAutocompleteRowsByIds(@Param("ids") Collection<Long> ids);
+
+       @Query("SELECT p.id, c.id FROM Product p JOIN p.categories c WHERE p.isActive = true AND p.deletedBy IS NULL")
+       List<Object[]> findActiveProductCategoryPairs();
+
+       @Query("SELECT p.id, c.id FROM Product p JOIN p.categories c WHERE p.id IN :ids")
+       List<Object[]> findProductCategoryPairsByIds(@Param("ids") Collection<Long> ids);
+
+       // Dữ liệu để dựng document embedding; category chính = category có id nhỏ nhất (giống product_listing)
+       @Query("SELECT p.id, p.name, p.brand, p.specifications, p.description, p.price, p.thumbnailUrl, " +
+                     "(SELECT MIN(c.id) FROM Product p2 JOIN p2.categories c WHERE p2.id = p.id) FROM Product p " +
+                     "WHERE p.id IN :ids AND p.deletedBy IS NULL")
+       List<Object[]> findEmbeddingSourceRows(@Param("ids") Collection<Long> ids);
+
+       @Query("SELECT p.id FROM Product p WHERE p.deletedBy IS NULL ORDER BY p.id")
+       List<Long> findAllIdsForIndexing();
+
+       // Số sản phẩm đang bán trực tiếp trong mỗi category: [categoryId, count]
+       @Query("SELECT c.id, COUNT(p) FROM Product p JOIN p.categories c " +
+                     "WHERE p.isActive = true AND p.deletedBy IS NULL GROUP BY c.id")
+       List<Object[]> countActiveProductsByCategory();
+
+       @Query("SELECT c.id FROM Product p JOIN p.categories c WHERE p.id = :productId")
+       List<Long> findCategoryIdsByProductId(@Param("productId") Long productId);
+
+       // Validator HTTP của trang chi tiết: [updatedAt, soldCount, số category, max updatedAt variant, số variant,
+       // max updatedAt ảnh, số ảnh]; đếm để bắt cả bản ghi bị xóa hẳn
+       @Query("SELECT p.updatedAt, p.soldCount, " +
+                     "(SELECT COUNT(c) FROM Product p2 JOIN p2.categories c WHERE p2.id = p.id), " +
+                     "(SELECT MAX(v.updatedAt) FROM ProductVariant v WHERE v.product.id = p.id), " +
+                     "(SELECT COUNT(v) FROM ProductVariant v WHERE v.product.id = p.id), " +
+                     "(SELECT MAX(i.updatedAt) FROM ProductImage i WHERE i.product.id = p.id), " +
+                     "(SELECT COUNT(i) FROM ProductImage i WHERE i.product.id = p.id) " +
+                     "FROM Product p WHERE p.id = :id")
+       List<Object[]> findDetailValidatorRow(@Param("id") Long id);
+
+       // Validator chung của mọi product: [count, max updatedAt, tổng soldCount]
+       @Query("SELECT COUNT(p), MAX(p.updatedAt), SUM(p.soldCount) FROM Product p")
+       List<Object[]> findValidatorRow();
+
        @EntityGraph(attributePaths = "images")
-       @Query("""
-                         select p as product,
-                                coalesce(sum(case when o.status in ('DELIVERED','COMPLETED') then oi.quantity else 0 end), 0) as soldCount
-                         from Product p
-                         left join OrderItem oi on oi.product = p
-                         left join oi.order o
-                         where p.id = :id
-                         group by p
-                     """)
-       Optional<ProductResponseDTO> findByIdWithImagesAndSold(@Param("id") Long id);
+       @Query("SELECT p FROM Product p WHERE p.id = :id")
+       Optional<Product> findByIdWithImages(@Param("id") Long id);
+
+       // Cộng dồn số lượng đã bán (delta âm khi refund), không cho xuống dưới 0
+       @Modifying
+       @Query(value = "UPDATE products SET sold_count = GREATEST(sold_count + :delta, 0) WHERE id = :id",
+                     nativeQuery = true)
+       int addSoldCount(@Param("id") Long id, @Param("delta") long delta);
 }
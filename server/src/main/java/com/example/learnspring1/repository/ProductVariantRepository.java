@@ -5,10 +5,13 @@ import com.example.learnspring1.domain.VariantType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,6 +30,31 @@ public interface ProductVariantRepository extends JpaRepository<ProductVariant,
 
     boolean existsBySku(String sku);
 
+    // SKU variant đã tồn tại trong một lô (dùng khi import hàng loạt)
+    @Query("SELECT v.sku FROM ProductVariant v WHERE v.sku IN :skus")
+    List<String> findExistingSkus(@Param("skus") Collection<String> skus);
+
+    // Các product có ít nhất 1 variant active còn hàng
+    @Query("SELECT DISTINCT v.product.id FROM ProductVariant v WHERE v.isActive = true " +
+            "AND v.deletedBy IS NULL AND v.stockQuantity > 0")
+    List<Long> findProductIdsWithStock();
+
+    @Query("SELECT COUNT(v) > 0 FROM ProductVariant v WHERE v.product.id = :productId " +
+            "AND v.isActive = true AND v.deletedBy IS NULL AND v.stockQuantity > 0")
+    boolean existsInStockByProductId(@Param("productId") Long productId);
+
+    // Soft delete mọi variant chưa xóa của product bằng 1 câu UPDATE (tương đương ProductVariant.softDelete)
+    @Modifying
+    @Query("UPDATE ProductVariant v SET v.deletedBy = :user, v.isActive = false, v.updatedBy = :user, " +
+            "v.updatedAt = :now WHERE v.product.id = :productId AND v.deletedBy IS NULL")
+    int softDeleteByProductId(@Param("productId") Long productId, @Param("user") String user,
+            @Param("now") Instant now);
+
+    // Variants chưa xóa của nhiều sản phẩm trong 1 query (thẻ sản phẩm của một trang)
+    @Query("SELECT v FROM ProductVariant v WHERE v.product.id IN :productIds AND v.deletedBy IS NULL " +
+            "ORDER BY v.product.id, v.sortOrder, v.id")
+    List<ProductVariant> findUndeletedByProductIds(@Param("productIds") List<Long> productIds);
+
     @Query("SELECT v FROM ProductVariant v WHERE " +
             "(:productId IS NULL OR v.product.id = :productId) AND " +
             "(:variantType IS NULL OR v.variantType = :variantType) AND " +
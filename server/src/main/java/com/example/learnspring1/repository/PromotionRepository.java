@@ -23,6 +23,12 @@ public interface PromotionRepository extends JpaRepository<Promotion, Long>, Jpa
            "AND (p.endDate IS NULL OR p.endDate >= :now)")
     List<Promotion> findActiveAndValidPromotions(@Param("now") Instant now);
 
+    // Validator HTTP: [count, max updatedAt, mốc bắt đầu/kết thúc gần nhất đã qua tính đến :now]
+    @Query("SELECT COUNT(p), MAX(p.updatedAt), " +
+           "MAX(CASE WHEN p.startDate <= :now THEN p.startDate END), " +
+           "MAX(CASE WHEN p.endDate <= :now THEN p.endDate END) FROM Promotion p")
+    List<Object[]> findValidatorRow(@Param("now") Instant now);
+
     @Query("SELECT p FROM Promotion p WHERE " +
            "(:id IS NULL OR p.id = :id) AND " +
            "(:name IS NULL OR p.name LIKE %:name%) AND " +
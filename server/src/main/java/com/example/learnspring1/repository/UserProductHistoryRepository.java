@@ -30,6 +30,12 @@ public interface UserProductHistoryRepository extends JpaRepository<UserProductH
     @Query("SELECT h FROM UserProductHistory h WHERE h.userId = :userId ORDER BY h.viewedAt DESC")
     List<UserProductHistory> findByUserIdOrderByViewedAtDesc(@Param("userId") String userId, org.springframework.data.domain.Pageable pageable);
     
+    /**
+     * Id sản phẩm trong lịch sử của user, mới nhất trước (không nạp entity)
+     */
+    @Query("SELECT h.product.id FROM UserProductHistory h WHERE h.userId = :userId ORDER BY h.viewedAt DESC, h.id DESC")
+    List<Long> findRecentProductIds(@Param("userId") String userId, org.springframework.data.domain.Pageable pageable);
+    
     /**
      * Xóa các history cũ hơn một thời điểm nhất định (để giữ số lượng hợp lý)
      */
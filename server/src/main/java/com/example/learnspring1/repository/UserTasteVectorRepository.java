@@ -0,0 +1,16 @@
+package com.example.learnspring1.repository;
+
+import com.example.learnspring1.domain.UserTasteVector;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserTasteVectorRepository extends JpaRepository<UserTasteVector, String> {
+
+    @Modifying
+    @Query("DELETE FROM UserTasteVector t WHERE t.userId = :userId")
+    int deleteByUserId(@Param("userId") String userId);
+}
@@ -0,0 +1,394 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.utils.CircuitBreaker;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lớp bảo vệ mọi lời gọi ra ngoài tới Gemini và ChromaDB, chia theo lane (mỗi loại lời gọi một lane):
+ * <ul>
+ * <li>bulkhead: tối đa {@code max-concurrent} lời gọi cùng lúc, quá thì từ chối ngay thay vì xếp hàng;</li>
+ * <li>deadline: lời gọi chạy trên virtual thread, caller chỉ chờ {@code timeout-ms} rồi bỏ (và ngắt) nó;</li>
+ * <li>hedge (chỉ lane đọc, idempotent): quá p95 độ trễ gần đây mà chưa xong thì gửi thêm một bản, lấy bản về trước;</li>
+ * <li>circuit breaker ({@link CircuitBreaker}): lỗi nhiều thì trả lỗi ngay, caller rơi thẳng về fallback;
+ * request bị bên kia từ chối ({@link RequestRejectedException}) không tính là lỗi.</li>
+ * </ul>
+ * Lời gọi bị chặn ném {@link AiUnavailableException}. Cấu hình {@code ai.resilience.<lane>.*} và
+ * {@code ai.resilience.circuit.*}; trạng thái xem ở actuator health ({@code aiCalls}) và metrics ai.call.*.
+ */
+@Component
+public class AiCallGuard {
+
+    public static final String GEMINI = "gemini";
+    public static final String CHROMA_QUERY = "chroma-query";
+    public static final String CHROMA_GET = "chroma-get";
+    public static final String CHROMA_SYNC = "chroma-sync";
+    public static final String CHROMA_WRITE = "chroma-write";
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    public AiCallGuard(Environment environment, MeterRegistry meterRegistry) {
+        // lane, timeout mặc định (ms), số lời gọi đồng thời, hedge.
+        // GEMINI chặn từng request HTTP; ngân sách cả lô kể cả thử lại là ai.embedding.timeout-ms của client
+        addLane(environment, meterRegistry, GEMINI, 8000, 8, false);
+        addLane(environment, meterRegistry, CHROMA_QUERY, 1500, 16, true);
+        addLane(environment, meterRegistry, CHROMA_GET, 3000, 8, true);
+        addLane(environment, meterRegistry, CHROMA_SYNC, 30000, 2, false);
+        addLane(environment, meterRegistry, CHROMA_WRITE, 10000, 4, false);
+    }
+
+    /**
+     * Chạy {@code call} trong lane. Lỗi của chính lời gọi được ném lại nguyên (checked thì bọc
+     * IllegalStateException); mạch mở, bulkhead đầy hay quá deadline thì ném {@link AiUnavailableException}.
+     */
+    public <T> T call(String laneName, Callable<T> call) {
+        Lane lane = lane(laneName);
+        if (!lane.breaker.tryAcquire()) {
+            lane.shortCircuited.increment();
+            throw new AiUnavailableException(laneName, "circuit open for another "
+                    + lane.breaker.remainingOpenMillis() + " ms");
+        }
+        if (!lane.bulkhead.tryAcquire()) {
+            lane.breaker.onIgnored();
+            lane.rejected.increment();
+            throw new AiUnavailableException(laneName, "bulkhead full (" + lane.maxConcurrent + " calls in flight)");
+        }
+
+        long started = System.nanoTime();
+        Attempts<T> attempts = new Attempts<>();
+        try {
+            start(lane, attempts, call, false);
+            long hedgeDelay = lane.hedgeDelayNanos();
+            if (hedgeDelay > 0 && hedgeDelay < lane.timeoutNanos) {
+                try {
+                    return succeeded(lane, started, attempts.result.get(hedgeDelay, TimeUnit.NANOSECONDS));
+                } catch (TimeoutException slow) {
+                    // Bản hedge chỉ gửi khi còn chỗ trong bulkhead, không bao giờ làm caller bị từ chối
+                    if (lane.bulkhead.tryAcquire()) {
+                        lane.hedged.increment();
+                        start(lane, attempts, call, true);
+                    }
+                }
+            }
+            long remaining = lane.timeoutNanos - (System.nanoTime() - started);
+            return succeeded(lane, started, attempts.result.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            lane.timedOut.increment();
+            lane.latencies.record(lane.timeoutNanos);
+            lane.breaker.onFailure();
+            throw new AiUnavailableException(laneName, "deadline of "
+                    + TimeUnit.NANOSECONDS.toMillis(lane.timeoutNanos) + " ms exceeded");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RequestRejectedException) {
+                // Bên kia vẫn trả lời bình thường, chỉ request này sai: không làm mở mạch cho các request khác
+                lane.clientErrors.increment();
+                lane.breaker.onIgnored();
+            } else {
+                lane.failed.increment();
+                lane.breaker.onFailure();
+            }
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            lane.breaker.onIgnored();
+            Thread.currentThread().interrupt();
+            throw new AiUnavailableException(laneName, "interrupted");
+        } catch (RejectedExecutionException e) {
+            lane.breaker.onIgnored();
+            throw new AiUnavailableException(laneName, "shutting down");
+        } finally {
+            attempts.cancel();
+        }
+    }
+
+    public void run(String laneName, Runnable call) {
+        call(laneName, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Lane có đang nhận lời gọi không (mạch không mở); dùng để bỏ qua hẳn nhánh AI và đi thẳng fallback.
+     */
+    public boolean isAvailable(String laneName) {
+        return lane(laneName).breaker.state() != CircuitBreaker.State.OPEN;
+    }
+
+    public List<LaneStatus> status() {
+        List<LaneStatus> result = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes.values()) {
+            long hedgeDelay = lane.hedgeDelayNanos();
+            result.add(new LaneStatus(lane.name, lane.breaker.state().name(), lane.breaker.failureRate(),
+                    lane.breaker.recordedCalls(), lane.breaker.remainingOpenMillis(),
+                    lane.maxConcurrent - lane.bulkhead.availablePermits(), lane.maxConcurrent,
+                    TimeUnit.NANOSECONDS.toMillis(lane.timeoutNanos), lane.hedge,
+                    hedgeDelay > 0 ? TimeUnit.NANOSECONDS.toMillis(hedgeDelay) : -1,
+                    (long) lane.succeeded.count(), (long) lane.failed.count(), (long) lane.timedOut.count(),
+                    (long) lane.rejected.count(), (long) lane.shortCircuited.count(),
+                    (long) lane.hedged.count(), (long) lane.hedgeWins.count()));
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T succeeded(Lane lane, long started, T value) {
+        lane.succeeded.increment();
+        lane.latency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        lane.breaker.onSuccess();
+        return value;
+    }
+
+    // Mỗi bản chạy trên virtual thread riêng và trả permit bulkhead khi tự kết thúc, kể cả sau khi caller đã bỏ
+    private <T> void start(Lane lane, Attempts<T> attempts, Callable<T> call, boolean hedge) {
+        attempts.pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!attempts.register(Thread.currentThread())) {
+                        return;
+                    }
+                    long attemptStarted = System.nanoTime();
+                    T value = call.call();
+                    lane.latencies.record(System.nanoTime() - attemptStarted);
+                    if (attempts.result.complete(value) && hedge) {
+                        lane.hedgeWins.increment();
+                    }
+                } catch (Throwable e) {
+                    if (attempts.pending.decrementAndGet() == 0) {
+                        attempts.result.completeExceptionally(e);
+                    }
+                } finally {
+                    lane.bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            attempts.pending.decrementAndGet();
+            lane.bulkhead.release();
+            throw e;
+        }
+    }
+
+    private Lane lane(String name) {
+        Lane lane = lanes.get(name);
+        if (lane == null) {
+            throw new IllegalArgumentException("Unknown AI call lane: " + name);
+        }
+        return lane;
+    }
+
+    private void addLane(Environment environment, MeterRegistry meterRegistry, String name, long timeoutMs,
+            int maxConcurrent, boolean hedge) {
+        String prefix = "ai.resilience." + name + ".";
+        Lane lane = new Lane(name,
+                environment.getProperty(prefix + "timeout-ms", Long.class, timeoutMs),
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                environment.getProperty(prefix + "hedge", Boolean.class, hedge),
+                environment.getProperty("ai.resilience.hedge.min-delay-ms", Long.class, 20L),
+                environment.getProperty("ai.resilience.hedge.min-samples", Integer.class, 20),
+                new CircuitBreaker(
+                        environment.getProperty("ai.resilience.circuit.window-size", Integer.class, 20),
+                        environment.getProperty("ai.resilience.circuit.min-calls", Integer.class, 10),
+                        environment.getProperty("ai.resilience.circuit.failure-rate", Double.class, 0.5),
+                        environment.getProperty("ai.resilience.circuit.open-ms", Long.class, 30000L)),
+                meterRegistry);
+        lanes.put(name, lane);
+    }
+
+    /**
+     * Lời gọi AI không được thực hiện hoặc không xong kịp: caller nên dùng fallback.
+     */
+    public static class AiUnavailableException extends IllegalStateException {
+        private final String lane;
+
+        public AiUnavailableException(String lane, String reason) {
+            super("AI call '" + lane + "' unavailable: " + reason);
+            this.lane = lane;
+        }
+
+        public String getLane() {
+            return lane;
+        }
+    }
+
+    /**
+     * Bên kia từ chối chính request (4xx trừ 429): dịch vụ vẫn khỏe nên không tính là lỗi cho circuit breaker,
+     * và gửi lại nguyên request cũng vô ích.
+     */
+    public static class RequestRejectedException extends IllegalStateException {
+        private final String lane;
+
+        public RequestRejectedException(String lane, String message) {
+            super(message);
+            this.lane = lane;
+        }
+
+        public String getLane() {
+            return lane;
+        }
+    }
+
+    public record LaneStatus(String lane, String state, double failureRate, int windowCalls, long openRemainingMs,
+            int inFlight, int maxConcurrent, long timeoutMs, boolean hedge, long hedgeDelayMs, long succeeded,
+            long failed, long timedOut, long rejected, long shortCircuited, long hedged, long hedgeWins) {
+    }
+
+    // Các bản (gốc + hedge) của một lời gọi: bản thành công đầu tiên thắng, lỗi chỉ báo khi mọi bản đều lỗi
+    private static final class Attempts<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger();
+        private final List<Thread> threads = new ArrayList<>(2);
+        private boolean cancelled;
+
+        synchronized boolean register(Thread thread) {
+            if (cancelled) {
+                return false;
+            }
+            threads.add(thread);
+            return true;
+        }
+
+        // Ngắt các bản còn chạy (socket đang chờ trên virtual thread bị đóng), bản chưa bắt đầu thì không chạy nữa
+        synchronized void cancel() {
+            cancelled = true;
+            result.cancel(false);
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static final class Lane {
+        final String name;
+        final long timeoutNanos;
+        final int maxConcurrent;
+        final boolean hedge;
+        final long minHedgeDelayNanos;
+        final int minHedgeSamples;
+        final Semaphore bulkhead;
+        final CircuitBreaker breaker;
+        final LatencyWindow latencies = new LatencyWindow(128);
+
+        final Timer latency;
+        final Counter succeeded;
+        final Counter failed;
+        final Counter clientErrors;
+        final Counter timedOut;
+        final Counter rejected;
+        final Counter shortCircuited;
+        final Counter hedged;
+        final Counter hedgeWins;
+
+        Lane(String name, long timeoutMs, int maxConcurrent, boolean hedge, long minHedgeDelayMs,
+                int minHedgeSamples, CircuitBreaker breaker, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMs));
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.hedge = hedge;
+            this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, minHedgeDelayMs));
+            this.minHedgeSamples = Math.max(1, minHedgeSamples);
+            this.bulkhead = new Semaphore(this.maxConcurrent);
+            this.breaker = breaker;
+
+            this.latency = Timer.builder("ai.call.latency")
+                    .description("Thời gian caller chờ một lời gọi AI thành công (gồm hedge)")
+                    .tag("lane", name)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            this.succeeded = outcome(meterRegistry, "success");
+            this.failed = outcome(meterRegistry, "failure");
+            this.clientErrors = outcome(meterRegistry, "client_error");
+            this.timedOut = outcome(meterRegistry, "timeout");
+            this.rejected = outcome(meterRegistry, "rejected");
+            this.shortCircuited = outcome(meterRegistry, "short_circuited");
+            this.hedged = Counter.builder("ai.call.hedged").tag("lane", name)
+                    .description("Số lần gửi thêm bản hedge").register(meterRegistry);
+            this.hedgeWins = Counter.builder("ai.call.hedge.wins").tag("lane", name)
+                    .description("Số lần bản hedge về trước bản gốc").register(meterRegistry);
+            Gauge.builder("ai.call.circuit.state", breaker, b -> b.state().ordinal())
+                    .description("0 = đóng, 1 = mở, 2 = nửa mở")
+                    .tag("lane", name)
+                    .register(meterRegistry);
+            Gauge.builder("ai.call.in-flight", bulkhead, b -> this.maxConcurrent - b.availablePermits())
+                    .tag("lane", name)
+                    .register(meterRegistry);
+        }
+
+        private Counter outcome(MeterRegistry meterRegistry, String outcome) {
+            return Counter.builder("ai.call").tag("lane", name).tag("outcome", outcome).register(meterRegistry);
+        }
+
+        // p95 độ trễ một bản gần đây; -1 nếu lane không hedge hoặc chưa đủ mẫu
+        long hedgeDelayNanos() {
+            if (!hedge) {
+                return -1;
+            }
+            long p95 = latencies.percentile(0.95, minHedgeSamples);
+            return p95 < 0 ? -1 : Math.max(minHedgeDelayNanos, p95);
+        }
+    }
+
+    // Vòng độ trễ (ns) gần nhất; phân vị tính lại mỗi 16 mẫu mới, đọc giữa chừng dùng giá trị đã tính
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int position;
+        private int count;
+        private int sinceComputed;
+        private double computedFor = Double.NaN;
+        private long computed = -1;
+
+        LatencyWindow(int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(long nanos) {
+            samples[position] = nanos;
+            position = (position + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        }
+
+        synchronized long percentile(double quantile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            if (computed < 0 || sinceComputed >= 16 || quantile != computedFor) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                computed = sorted[Math.min(count - 1, (int) Math.ceil(quantile * count) - 1)];
+                computedFor = quantile;
+                sinceComputed = 0;
+            }
+            return computed;
+        }
+    }
+}
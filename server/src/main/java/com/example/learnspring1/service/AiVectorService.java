@@ -9,28 +9,34 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+
+import com.example.learnspring1.utils.VectorMath;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
+/**
+ * Truy cập ChromaDB và embedding Gemini. Mọi lời gọi ra ngoài đi qua {@link AiCallGuard} (deadline, bulkhead,
+ * hedge, circuit breaker); timeout của OkHttp chỉ là chốt chặn cuối cho lời gọi đã bị guard bỏ.
+ */
 @Service
 public class AiVectorService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .readTimeout(Duration.ofSeconds(30))
+            .writeTimeout(Duration.ofSeconds(30))
+            .callTimeout(Duration.ofSeconds(60))
+            .build();
     private final ObjectMapper objectMapper = new ObjectMapper();
-
-    @Value("${ai.gemini.api-key:}")
-    private String geminiApiKey;
+    private final GeminiEmbeddingClient geminiEmbeddingClient;
+    private final AiCallGuard aiCallGuard;
 
     @Value("${ai.chroma.url:http://127.0.0.1:8000}")
     private String chromaUrl;
@@ -38,15 +44,18 @@ public class AiVectorService {
     @Value("${ai.chroma.collection:products}")
     private String chromaCollectionName;
 
+    @Value("${ai.chroma.collection-id:c628af00-596c-4dd6-877d-67ca7aaca57f}")
+    private String chromaCollectionId;
+
     @Value("${ai.chroma.distance-threshold:0.7}")
     private double distanceThreshold;
 
     @Value("${ai.chroma.distance-metric:cosine}")
     private String distanceMetric;
 
-    private String getEnv(String key, String defaultValue) {
-        String v = System.getenv(key);
-        return v != null ? v : defaultValue;
+    public AiVectorService(GeminiEmbeddingClient geminiEmbeddingClient, AiCallGuard aiCallGuard) {
+        this.geminiEmbeddingClient = geminiEmbeddingClient;
+        this.aiCallGuard = aiCallGuard;
     }
 
     public double getDistanceThreshold() {
@@ -54,113 +63,67 @@ public class AiVectorService {
     }
 
     /**
-     * Expands Vietnamese search queries with related terms for better semantic matching
-     * @param query Original search query
-     * @return Expanded query with synonyms and related terms
+     * Embedding của một truy vấn; các lời gọi đồng thời được gom lô trong {@link GeminiEmbeddingClient}.
      */
-    private String expandQuery(String query) {
-        if (query == null || query.isBlank()) {
-            return query;
-        }
-
-        String lowerQuery = query.toLowerCase().trim();
-        
-        // Vietnamese stationery term expansions
-        Map<String, String> expansions = Map.ofEntries(
-            // Books & Notebooks
-            Map.entry("sách", "sách vở tập truyện giáo khoa sách giáo khoa sách tham khảo"),
-            Map.entry("vở", "vở tập vở viết vở học sinh vở sinh viên"),
-            Map.entry("tập", "tập vở tập viết tập học"),
-            Map.entry("truyện", "truyện sách truyện tranh truyện thiếu nhi"),
-            
-            // Pens & Writing Tools
-            Map.entry("bút", "bút viết bút bi bút chì bút lông bút mực bút gel"),
-            Map.entry("viết", "bút viết dụng cụ viết"),
-            Map.entry("chì", "bút chì bút chì kim bút chì màu"),
-            Map.entry("bi", "bút bi bút bi nước bút bi gel"),
-            Map.entry("mực", "bút mực mực viết bút lông mực"),
-            Map.entry("gel", "bút gel bút bi gel"),
-            
-            // Bags & Cases
-            Map.entry("bóp", "bóp viết bóp bút hộp bút túi đựng bút"),
-            Map.entry("cặp", "cặp sách ba lô túi đựng sách"),
-            Map.entry("balo", "ba lô cặp sách túi đựng"),
-            Map.entry("túi", "túi đựng bao bì hộp"),
-            
-            // School Supplies
-            Map.entry("thước", "thước kẻ thước đo"),
-            Map.entry("tẩy", "tẩy xóa gôm tẩy"),
-            Map.entry("kéo", "kéo cắt dụng cụ cắt"),
-            Map.entry("hồ", "hồ dán keo dán"),
-            Map.entry("giấy", "giấy note giấy viết giấy in"),
-            
-            // Art Supplies  
-            Map.entry("vẽ", "vẽ tranh màu vẽ bút vẽ"),
-            Map.entry("màu", "bút màu sáp màu màu vẽ bút chì màu"),
-            Map.entry("sáp", "sáp màu bút sáp")
-        );
-        
-
-        StringBuilder expandedQuery = new StringBuilder(lowerQuery);
-        
-        // Check for matching keywords and expand
-        for (Map.Entry<String, String> entry : expansions.entrySet()) {
-            String keyword = entry.getKey();
-            String expansion = entry.getValue();
-            
-            // Use contains instead of regex for better Vietnamese support
-            // Check if keyword exists as a standalone word
-            if (lowerQuery.equals(keyword) || 
-                lowerQuery.contains(" " + keyword + " ") ||
-                lowerQuery.startsWith(keyword + " ") ||
-                lowerQuery.endsWith(" " + keyword)) {
-                
-                // Don't add duplicates
-                if (!expandedQuery.toString().contains(expansion)) {
-                    expandedQuery.append(" ").append(expansion);
-                }
-            }
-        }
-
-        return expandedQuery.toString().trim();
+    public float[] embedWithGemini(String text) {
+        return geminiEmbeddingClient.embed(text);
     }
 
-    public List<Double> embedWithGemini(String text) {
-        String apiKey = geminiApiKey != null && !geminiApiKey.isEmpty() 
-                ? geminiApiKey 
-                : getEnv("GEMINI_API_KEY", "");
-        if (apiKey.isEmpty()) {
-            throw new IllegalStateException("GEMINI_API_KEY is not configured. Set ai.gemini.api-key in application.properties or GEMINI_API_KEY environment variable");
-        }
-        if (text == null || text.isBlank()) {
-            throw new IllegalArgumentException("Text cannot be empty");
-        }
-
-        // Use original text directly (no query expansion)
-        // String expandedText = expandQuery(text);
-
-        String url = "https://generativelanguage.googleapis.com/v1beta/models/text-embedding-004:embedContent?key=" + apiKey;
+    /**
+     * Embedding cho nhiều văn bản (batchEmbedContents), kết quả theo đúng thứ tự đầu vào.
+     */
+    public List<float[]> embedBatchWithGemini(List<String> texts) {
+        return geminiEmbeddingClient.embedBatch(texts);
+    }
 
+    /**
+     * Ghi (thêm hoặc thay) embedding, metadata và document của các sản phẩm vào collection.
+     */
+    public void upsertChroma(List<String> ids, List<float[]> embeddings, List<Map<String, Object>> metadatas,
+            List<String> documents) {
         Map<String, Object> body = Map.of(
-                "model", "models/text-embedding-004",
-                "content", Map.of(
-                        "parts", Collections.singletonList(Map.of("text", text))
-                )
+            "ids", ids,
+            "embeddings", embeddings,
+            "metadatas", metadatas,
+            "documents", documents
         );
+        postToCollection("upsert", body);
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    public void deleteFromChroma(List<String> ids) {
+        postToCollection("delete", Map.of("ids", ids));
+    }
 
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(body, headers);
+    private void postToCollection(String operation, Map<String, Object> body) {
+        aiCallGuard.run(AiCallGuard.CHROMA_WRITE, () -> doPostToCollection(operation, body));
+    }
 
-        GeminiEmbedResponse resp = restTemplate.postForObject(url, entity, GeminiEmbedResponse.class);
-        if (resp == null || resp.embedding == null || resp.embedding.values == null) {
-            throw new IllegalStateException("Invalid embedding response from Gemini");
+    private void doPostToCollection(String operation, Map<String, Object> body) {
+        try {
+            RequestBody requestBody = RequestBody.create(objectMapper.writeValueAsString(body),
+                    okhttp3.MediaType.parse("application/json"));
+            Request request = new Request.Builder()
+                    .url(collectionUrl(chromaBaseUrl(), operation))
+                    .post(requestBody)
+                    .addHeader("Content-Type", "application/json")
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    String responseBody = response.body() != null ? response.body().string() : null;
+                    throw new IllegalStateException("ChromaDB " + operation + " failed. Code: " + response.code()
+                            + ", Body: " + (responseBody != null ? responseBody.substring(0, Math.min(200, responseBody.length())) : "[no body]"));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to " + operation + " ChromaDB records: " + e.getMessage(), e);
         }
-        return resp.embedding.values;
     }
 
-    public ChromaQueryResponse queryChroma(List<Double> embedding, Long categoryId, int limit) {
+    public ChromaQueryResponse queryChroma(float[] embedding, Long categoryId, int limit) {
+        return aiCallGuard.call(AiCallGuard.CHROMA_QUERY, () -> doQueryChroma(embedding, categoryId, limit));
+    }
+
+    private ChromaQueryResponse doQueryChroma(float[] embedding, Long categoryId, int limit) {
         String url = chromaUrl != null && !chromaUrl.isEmpty() 
                 ? chromaUrl 
                 : System.getenv("CHROMA_URL");
@@ -198,10 +161,9 @@ public class AiVectorService {
         }
         RequestBody requestBody = RequestBody.create(jsonBody, okhttp3.MediaType.parse("application/json"));
         String lastError = "No attempt made";
-        String collectionId = "c628af00-596c-4dd6-877d-67ca7aaca57f";
-        
+
         try {
-            String queryUrl = baseUrl + "/api/v2/tenants/default_tenant/databases/default_database/collections/" + collectionId + "/query";
+            String queryUrl = collectionUrl(baseUrl, "query");
             Request request = new Request.Builder()
                     .url(queryUrl)
                     .post(requestBody)
@@ -209,13 +171,13 @@ public class AiVectorService {
                     .build();
 
             try (Response response = httpClient.newCall(request).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : null;
-                if (response.isSuccessful() && responseBody != null) {
-                    ChromaQueryResponse result = objectMapper.readValue(responseBody, ChromaQueryResponse.class);
+                if (response.isSuccessful() && response.body() != null) {
+                    ChromaQueryResponse result = objectMapper.readValue(response.body().byteStream(), ChromaQueryResponse.class);
                     if (result.ids == null) result.ids = Collections.emptyList();
                     if (result.distances == null) result.distances = Collections.emptyList();
                     return result;
                 } else {
+                    String responseBody = response.body() != null ? response.body().string() : null;
                     lastError = "v2 API (correct endpoint): " + response.code() + " " + response.message() + " - " + (responseBody != null ? responseBody : "[no body]");
                 }
             }
@@ -226,35 +188,40 @@ public class AiVectorService {
         throw new IllegalStateException("Failed to query ChromaDB. Last error: " + lastError);
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    public static class GeminiEmbedResponse {
-        public Embedding embedding;
-
-        @JsonIgnoreProperties(ignoreUnknown = true)
-        public static class Embedding {
-            public List<Double> values;
+    /**
+     * Embedding theo id sản phẩm (bỏ qua id chưa có trong collection); Chroma không giữ thứ tự đầu vào.
+     */
+    public Map<Long, float[]> getEmbeddingsById(List<Long> productIds) {
+        ChromaGetResponse resp = getFromChroma(productIds.stream().map(String::valueOf).collect(Collectors.toList()));
+        Map<Long, float[]> result = new HashMap<>();
+        for (int i = 0; resp.ids != null && i < resp.ids.size() && i < resp.embeddings.size(); i++) {
+            float[] embedding = resp.embeddings.get(i);
+            if (embedding == null || embedding.length == 0) {
+                continue;
+            }
+            try {
+                result.put(Long.parseLong(resp.ids.get(i)), embedding);
+            } catch (NumberFormatException ignored) {
+            }
         }
+        return result;
     }
 
-    public List<List<Double>> getEmbeddingsByProductIds(List<String> productIds) {
-        String url = chromaUrl != null && !chromaUrl.isEmpty() 
-                ? chromaUrl 
-                : System.getenv("CHROMA_URL");
-        if (url == null || url.isEmpty()) {
-            url = "http://127.0.0.1:8000";
-        }
+    private ChromaGetResponse getFromChroma(List<String> productIds) {
+        return aiCallGuard.call(AiCallGuard.CHROMA_GET, () -> doGetFromChroma(productIds));
+    }
 
-        String baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    private ChromaGetResponse doGetFromChroma(List<String> productIds) {
+        String baseUrl = chromaBaseUrl();
         Map<String, Object> body = Map.of(
             "ids", productIds,
             "include", List.of("embeddings")
         );
-        String collectionId = "c628af00-596c-4dd6-877d-67ca7aaca57f";
 
         try {
             String jsonBody = objectMapper.writeValueAsString(body);
             RequestBody requestBody = RequestBody.create(jsonBody, okhttp3.MediaType.parse("application/json"));
-            String getUrl = baseUrl + "/api/v2/tenants/default_tenant/databases/default_database/collections/" + collectionId + "/get";
+            String getUrl = collectionUrl(baseUrl, "get");
             Request request = new Request.Builder()
                     .url(getUrl)
                     .post(requestBody)
@@ -262,18 +229,15 @@ public class AiVectorService {
                     .build();
 
             try (Response response = httpClient.newCall(request).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : null;
-                if (response.isSuccessful() && responseBody != null) {
-                    ChromaGetResponse resp = objectMapper.readValue(responseBody, ChromaGetResponse.class);
+                if (response.isSuccessful() && response.body() != null) {
+                    ChromaGetResponse resp = objectMapper.readValue(response.body().byteStream(), ChromaGetResponse.class);
                     if (resp != null && resp.embeddings != null) {
-                        return resp.embeddings.stream()
-                                .filter(Objects::nonNull)
-                                .collect(Collectors.toList());
+                        return resp;
                     } else {
-                        String errorMsg = "ChromaDB response has no embeddings. Response: " + (responseBody != null ? responseBody.substring(0, Math.min(200, responseBody.length())) : "[no body]");
-                        throw new IllegalStateException(errorMsg);
+                        throw new IllegalStateException("ChromaDB response has no embeddings");
                     }
                 } else {
+                    String responseBody = response.body() != null ? response.body().string() : null;
                     String errorMsg = "ChromaDB get failed. Code: " + response.code() + ", Body: " + (responseBody != null ? responseBody.substring(0, Math.min(200, responseBody.length())) : "[no body]");
                     throw new IllegalStateException(errorMsg);
                 }
@@ -285,41 +249,65 @@ public class AiVectorService {
         }
     }
 
-    public List<Double> averageVectors(List<List<Double>> vectors) {
-        if (vectors == null || vectors.isEmpty()) {
-            throw new IllegalArgumentException("Vectors list cannot be empty");
-        }
-
-        List<List<Double>> validVectors = vectors.stream()
-                .filter(v -> v != null && !v.isEmpty())
-                .filter(v -> v.size() == vectors.get(0).size())
-                .collect(Collectors.toList());
-
-        if (validVectors.isEmpty()) {
-            throw new IllegalArgumentException("No valid vectors found");
-        }
-
-        int dimension = validVectors.get(0).size();
-        List<Double> average = new java.util.ArrayList<>(Collections.nCopies(dimension, 0.0));
+    /**
+     * Đọc một trang (id, embedding, metadata) của collection, dùng để đồng bộ index vector trong bộ nhớ.
+     */
+    public ChromaGetResponse getEmbeddingsPage(int offset, int limit) {
+        return aiCallGuard.call(AiCallGuard.CHROMA_SYNC, () -> doGetEmbeddingsPage(offset, limit));
+    }
 
-        for (List<Double> vector : validVectors) {
-            for (int i = 0; i < dimension; i++) {
-                average.set(i, average.get(i) + vector.get(i));
+    private ChromaGetResponse doGetEmbeddingsPage(int offset, int limit) {
+        Map<String, Object> body = Map.of(
+            "offset", offset,
+            "limit", limit,
+            "include", List.of("embeddings", "metadatas")
+        );
+        try {
+            RequestBody requestBody = RequestBody.create(objectMapper.writeValueAsString(body),
+                    okhttp3.MediaType.parse("application/json"));
+            Request request = new Request.Builder()
+                    .url(collectionUrl(chromaBaseUrl(), "get"))
+                    .post(requestBody)
+                    .addHeader("Content-Type", "application/json")
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IllegalStateException("ChromaDB get failed. Code: " + response.code());
+                }
+                ChromaGetResponse resp = objectMapper.readValue(response.body().byteStream(), ChromaGetResponse.class);
+                if (resp.ids == null) resp.ids = Collections.emptyList();
+                if (resp.embeddings == null) resp.embeddings = Collections.emptyList();
+                if (resp.metadatas == null) resp.metadatas = Collections.emptyList();
+                return resp;
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read embeddings page from ChromaDB: " + e.getMessage(), e);
         }
+    }
 
-        int count = validVectors.size();
-        for (int i = 0; i < dimension; i++) {
-            average.set(i, average.get(i) / count);
-        }
-        double magnitude = Math.sqrt(average.stream().mapToDouble(d -> d * d).sum());
-        if (magnitude > 0) {
-            for (int i = 0; i < dimension; i++) {
-                average.set(i, average.get(i) / magnitude);
-            }
+    private String chromaBaseUrl() {
+        String url = chromaUrl != null && !chromaUrl.isEmpty()
+                ? chromaUrl
+                : System.getenv("CHROMA_URL");
+        if (url == null || url.isEmpty()) {
+            url = "http://127.0.0.1:8000";
         }
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private String collectionUrl(String baseUrl, String operation) {
+        return baseUrl + "/api/v2/tenants/default_tenant/databases/default_database/collections/"
+                + chromaCollectionId + "/" + operation;
+    }
 
-        return average;
+    /**
+     * Vector trung bình (đã chuẩn hóa) của các embedding cùng số chiều.
+     */
+    public float[] averageVectors(List<float[]> vectors) {
+        if (vectors == null || vectors.isEmpty()) {
+            throw new IllegalArgumentException("Vectors list cannot be empty");
+        }
+        return VectorMath.average(vectors);
     }
 
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -366,6 +354,9 @@ public class AiVectorService {
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class ChromaGetResponse {
-        public List<List<Double>> embeddings;
+        public List<String> ids;
+        // Jackson đọc thẳng mảng số JSON vào float[], không qua List<Double>
+        public List<float[]> embeddings;
+        public List<Map<String, Object>> metadatas;
     }
 }
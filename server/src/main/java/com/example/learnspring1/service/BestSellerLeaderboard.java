@@ -0,0 +1,425 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.Order;
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.repository.OrderItemRepository;
+import com.example.learnspring1.utils.collection.LongLongHashMap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Leaderboard best seller tính sẵn trong bộ nhớ.
+ * Giữ 90 bucket theo ngày (UTC), mỗi bucket là map productId -> quantity của các đơn COMPLETED
+ * tạo trong ngày đó, cộng với tổng trượt của cả cửa sổ. Mỗi đơn chỉ dịch chuyển các sản phẩm của nó
+ * trong mảng top-K (O(K)); chỉ khi load, sang ngày mới, hoặc một sản phẩm trong top tụt xuống cuối
+ * (có thể có sản phẩm ngoài top vượt lên) thì top-K mới được tính lại từ đầu bằng min-heap.
+ * Mỗi lần đổi publish thành {@link Snapshot} bất biến.
+ */
+@Slf4j
+@Service
+public class BestSellerLeaderboard {
+
+    public static final int WINDOW_DAYS = 90;
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    private final OrderItemRepository orderItemRepository;
+    private final int topK;
+
+    // buckets[day % WINDOW_DAYS] giữ số lượng của ngày đó
+    private final LongLongHashMap[] buckets = new LongLongHashMap[WINDOW_DAYS];
+    private final LongLongHashMap totals = new LongLongHashMap(1024);
+    // Số sản phẩm có tổng > 0
+    private int positiveCount;
+    // Top-K hiện tại theo thứ tự xếp hạng; luôn có topSize = min(topK, positiveCount)
+    private final long[] topIds;
+    private final long[] topQty;
+    private int topSize;
+    private long currentDay = Long.MIN_VALUE;
+    private volatile Snapshot snapshot;
+
+    // Event đến trong lúc đang load lần đầu: loader tự áp dụng sau khi đọc xong
+    private final Object pendingLock = new Object();
+    private final List<OrderStatusChangedEvent> pending = new ArrayList<>();
+    private boolean loading;
+
+    public BestSellerLeaderboard(OrderItemRepository orderItemRepository,
+            @Value("${catalog.best-sellers.top-k:200}") int topK) {
+        this.orderItemRepository = orderItemRepository;
+        this.topK = Math.max(1, topK);
+        this.topIds = new long[this.topK];
+        this.topQty = new long[this.topK];
+        for (int i = 0; i < WINDOW_DAYS; i++) {
+            buckets[i] = new LongLongHashMap();
+        }
+    }
+
+    /**
+     * Top-K hiện tại; load từ database ở lần gọi đầu tiên và tự trượt cửa sổ nếu đã sang ngày mới.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.day() != today()) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    load();
+                } else if (currentDay != today()) {
+                    advanceTo(today());
+                    publish();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    @Scheduled(cron = "0 0 0 * * *", zone = "UTC")
+    public void advanceDay() {
+        synchronized (this) {
+            if (snapshot == null) {
+                return;
+            }
+            advanceTo(today());
+            publish();
+        }
+    }
+
+    /**
+     * Cộng/trừ số lượng của đơn khi đơn vào hoặc rời trạng thái COMPLETED.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        boolean before = event.oldStatus() == Order.OrderStatus.COMPLETED;
+        boolean after = event.newStatus() == Order.OrderStatus.COMPLETED;
+        if (before == after || event.orderId() == null || event.orderCreatedAt() == null) {
+            return;
+        }
+        if (snapshot == null) {
+            synchronized (pendingLock) {
+                if (snapshot == null) {
+                    // Chưa ai load: đơn đã commit nên lần load đầu sẽ đọc thấy. Đang load: để loader quyết định
+                    if (loading) {
+                        pending.add(event);
+                    }
+                    return;
+                }
+            }
+        }
+        List<Object[]> items = orderItemRepository.sumQuantityByProductForOrder(event.orderId());
+
+        synchronized (this) {
+            advanceTo(Math.max(today(), currentDay));
+            if (apply(event, items) && !updateTop(items)) {
+                rebuildTop();
+            }
+            publish();
+        }
+    }
+
+    // Cộng/trừ số lượng của đơn vào bucket ngày tạo đơn; false nếu ngày đó nằm ngoài cửa sổ
+    private boolean apply(OrderStatusChangedEvent event, List<Object[]> items) {
+        long day = dayOf(event.orderCreatedAt());
+        if (day <= currentDay - WINDOW_DAYS || day > currentDay) {
+            return false;
+        }
+        long direction = event.newStatus() == Order.OrderStatus.COMPLETED ? 1 : -1;
+        LongLongHashMap bucket = buckets[bucketIndex(day)];
+        for (Object[] row : items) {
+            long productId = (Long) row[0];
+            long quantity = direction * ((Number) row[1]).longValue();
+            bucket.addTo(productId, quantity);
+            addToTotal(productId, quantity);
+        }
+        return true;
+    }
+
+    private void load() {
+        synchronized (pendingLock) {
+            loading = true;
+            pending.clear();
+        }
+        long day = today();
+        Instant from = Instant.ofEpochSecond((day - WINDOW_DAYS + 1) * SECONDS_PER_DAY);
+        List<Object[]> rows;
+        try {
+            rows = orderItemRepository.findQuantitiesByProductAndOrderSince(Order.OrderStatus.COMPLETED, from);
+        } catch (RuntimeException e) {
+            synchronized (pendingLock) {
+                loading = false;
+                pending.clear();
+            }
+            throw e;
+        }
+
+        for (LongLongHashMap bucket : buckets) {
+            bucket.clear();
+        }
+        totals.clear();
+        positiveCount = 0;
+        currentDay = day;
+        // Đơn đã COMPLETED lúc đọc, để biết event nào trong lúc load đã có sẵn trong dữ liệu
+        LongLongHashMap loadedOrders = new LongLongHashMap(Math.max(16, rows.size()));
+        for (Object[] row : rows) {
+            long productId = (Long) row[0];
+            long rowDay = dayOf((Instant) row[1]);
+            long quantity = ((Number) row[2]).longValue();
+            loadedOrders.put((Long) row[3], 1);
+            if (rowDay <= day - WINDOW_DAYS || rowDay > day) {
+                continue;
+            }
+            buckets[bucketIndex(rowDay)].addTo(productId, quantity);
+            addToTotal(productId, quantity);
+        }
+
+        synchronized (pendingLock) {
+            for (OrderStatusChangedEvent event : pending) {
+                // Đơn vào COMPLETED mà lúc đọc chưa thấy, hoặc rời COMPLETED mà lúc đọc vẫn thấy: chưa có trong dữ liệu
+                boolean counted = loadedOrders.containsKey(event.orderId());
+                boolean completed = event.newStatus() == Order.OrderStatus.COMPLETED;
+                if (completed == counted) {
+                    continue;
+                }
+                apply(event, orderItemRepository.sumQuantityByProductForOrder(event.orderId()));
+                if (completed) {
+                    loadedOrders.put(event.orderId(), 1);
+                } else {
+                    loadedOrders.remove(event.orderId());
+                }
+            }
+            pending.clear();
+            rebuildTop();
+            publish();
+            loading = false;
+        }
+        log.info("Best seller leaderboard loaded: {} products in {}-day window", totals.size(), WINDOW_DAYS);
+    }
+
+    // Trượt cửa sổ tới ngày mới: bucket rơi ra khỏi cửa sổ bị trừ khỏi tổng và làm rỗng
+    private void advanceTo(long day) {
+        if (day <= currentDay) {
+            return;
+        }
+        long steps = Math.min(day - currentDay, WINDOW_DAYS);
+        for (long d = day - steps + 1; d <= day; d++) {
+            LongLongHashMap expired = buckets[bucketIndex(d)];
+            expired.forEach((productId, quantity) -> addToTotal(productId, -quantity));
+            expired.clear();
+        }
+        currentDay = day;
+        rebuildTop();
+    }
+
+    private void addToTotal(long productId, long delta) {
+        long before = totals.get(productId);
+        long after = totals.addTo(productId, delta);
+        if (before <= 0 && after > 0) {
+            positiveCount++;
+        } else if (before > 0 && after <= 0) {
+            positiveCount--;
+        }
+    }
+
+    // Dời từng sản phẩm của đơn tới vị trí mới trong top-K; false nếu cần tính lại từ đầu
+    private boolean updateTop(List<Object[]> items) {
+        for (Object[] row : items) {
+            if (!updateTop((Long) row[0])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean updateTop(long productId) {
+        long quantity = totals.get(productId);
+        int index = -1;
+        for (int i = 0; i < topSize; i++) {
+            if (topIds[i] == productId) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            if (quantity <= 0) {
+                return true;
+            }
+            if (topSize == topK) {
+                if (!ranksHigher(quantity, productId, topQty[topSize - 1], topIds[topSize - 1])) {
+                    return true;
+                }
+            } else {
+                topSize++;
+            }
+            // Ghi vào ô cuối (đẩy phần tử cuối ra nếu top đã đầy) rồi nổi lên
+            topIds[topSize - 1] = productId;
+            topQty[topSize - 1] = quantity;
+            moveUp(topSize - 1);
+            return true;
+        }
+
+        long previous = topQty[index];
+        topQty[index] = quantity;
+        if (quantity > previous) {
+            moveUp(index);
+            return true;
+        }
+        if (quantity <= 0) {
+            System.arraycopy(topIds, index + 1, topIds, index, topSize - index - 1);
+            System.arraycopy(topQty, index + 1, topQty, index, topSize - index - 1);
+            topSize--;
+            return positiveCount <= topSize;
+        }
+        // Tụt xuống cuối trong khi còn sản phẩm ngoài top: chưa biết ai đứng thứ K
+        return moveDown(index) < topSize - 1 || positiveCount <= topSize;
+    }
+
+    private void moveUp(int index) {
+        while (index > 0 && ranksHigher(topQty[index], topIds[index], topQty[index - 1], topIds[index - 1])) {
+            swap(topIds, topQty, index, index - 1);
+            index--;
+        }
+    }
+
+    private int moveDown(int index) {
+        while (index < topSize - 1
+                && ranksHigher(topQty[index + 1], topIds[index + 1], topQty[index], topIds[index])) {
+            swap(topIds, topQty, index, index + 1);
+            index++;
+        }
+        return index;
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(currentDay, Arrays.copyOf(topIds, topSize), Arrays.copyOf(topQty, topSize),
+                positiveCount);
+    }
+
+    // Tính lại top-K từ totals bằng min-heap kích thước K
+    private void rebuildTop() {
+        int capacity = Math.min(topK, totals.size());
+        long[] heapIds = new long[capacity];
+        long[] heapQty = new long[capacity];
+        int[] size = { 0 };
+        totals.forEach((productId, quantity) -> {
+            if (quantity <= 0) {
+                return;
+            }
+            if (size[0] < capacity) {
+                heapIds[size[0]] = productId;
+                heapQty[size[0]] = quantity;
+                siftUp(heapIds, heapQty, size[0]++);
+            } else if (capacity > 0 && ranksHigher(quantity, productId, heapQty[0], heapIds[0])) {
+                heapIds[0] = productId;
+                heapQty[0] = quantity;
+                siftDown(heapIds, heapQty, 0, size[0]);
+            }
+        });
+
+        int n = size[0];
+        // Lấy dần phần tử nhỏ nhất ra cuối mảng => kết quả giảm dần
+        for (int i = n - 1; i >= 0; i--) {
+            topIds[i] = heapIds[0];
+            topQty[i] = heapQty[0];
+            int last = i;
+            heapIds[0] = heapIds[last];
+            heapQty[0] = heapQty[last];
+            siftDown(heapIds, heapQty, 0, last);
+        }
+        topSize = n;
+    }
+
+    // Thứ tự xếp hạng: quantity giảm dần, hòa thì id nhỏ hơn đứng trước
+    private static boolean ranksHigher(long qtyA, long idA, long qtyB, long idB) {
+        return qtyA != qtyB ? qtyA > qtyB : idA < idB;
+    }
+
+    private static void siftUp(long[] ids, long[] qty, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksHigher(qty[parent], ids[parent], qty[index], ids[index])) {
+                break;
+            }
+            swap(ids, qty, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] ids, long[] qty, int index, int size) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int right = left + 1;
+            int lowest = right < size && ranksHigher(qty[left], ids[left], qty[right], ids[right]) ? right : left;
+            if (!ranksHigher(qty[index], ids[index], qty[lowest], ids[lowest])) {
+                return;
+            }
+            swap(ids, qty, index, lowest);
+            index = lowest;
+        }
+    }
+
+    private static void swap(long[] ids, long[] qty, int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        long q = qty[a];
+        qty[a] = qty[b];
+        qty[b] = q;
+    }
+
+    private static long today() {
+        return dayOf(Instant.now());
+    }
+
+    private static long dayOf(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_DAY);
+    }
+
+    private static int bucketIndex(long day) {
+        return (int) Math.floorMod(day, WINDOW_DAYS);
+    }
+
+    /**
+     * Top-K bất biến, sắp xếp theo số lượng đã bán giảm dần.
+     *
+     * @param distinctProducts số sản phẩm có lượt bán trong cửa sổ (có thể lớn hơn K)
+     */
+    public record Snapshot(long day, long[] productIds, long[] quantities, int distinctProducts) {
+
+        public int size() {
+            return productIds.length;
+        }
+
+        /**
+         * Kiểm tra trang [offset, offset + limit) có nằm gọn trong top-K không.
+         */
+        public boolean covers(long offset, int limit) {
+            return offset + limit <= productIds.length || productIds.length >= distinctProducts;
+        }
+
+        public List<Long> slice(long offset, int limit) {
+            if (offset >= productIds.length) {
+                return Collections.emptyList();
+            }
+            int from = (int) offset;
+            int to = Math.min(productIds.length, from + limit);
+            List<Long> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(productIds[i]);
+            }
+            return result;
+        }
+    }
+}
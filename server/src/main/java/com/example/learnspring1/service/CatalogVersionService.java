@@ -0,0 +1,141 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.event.PromotionChangedEvent;
+import com.example.learnspring1.repository.CategoryRepository;
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.repository.PromotionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Phiên bản (ETag/Last-Modified) của dữ liệu catalog công khai (product, category, promotion),
+ * tính từ dữ liệu đã lưu: số bản ghi, max(updatedAt) và các cột đổi không qua entity (soldCount).
+ * Nhờ vậy ETag giữ nguyên qua restart và giống nhau giữa các instance.
+ * Kết quả được cache ngắn ({@code validator-ttl-seconds}) để không query mỗi request;
+ * các hàm invalidate gọi sau commit để thay đổi có hiệu lực ngay, TTL là lưới an toàn
+ * (kể cả lần đọc chen giữa lúc ghi và lúc commit).
+ */
+@Component
+public class CatalogVersionService {
+
+    private enum Aggregate { PRODUCTS, CATEGORIES, PROMOTIONS }
+
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final PromotionRepository promotionRepository;
+    private final Cache<Long, Stamp> productStamps;
+    private final Cache<Aggregate, Stamp> aggregateStamps;
+
+    public CatalogVersionService(ProductRepository productRepository,
+            CategoryRepository categoryRepository,
+            PromotionRepository promotionRepository,
+            @Value("${catalog.http-cache.validator-ttl-seconds:5}") long ttlSeconds,
+            @Value("${catalog.http-cache.validator-max-size:5000}") long maxSize) {
+        this.productRepository = productRepository;
+        this.categoryRepository = categoryRepository;
+        this.promotionRepository = promotionRepository;
+        Duration ttl = Duration.ofSeconds(Math.max(1, ttlSeconds));
+        this.productStamps = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.aggregateStamps = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Phiên bản của một product (kèm variant, ảnh, category gắn với nó); null nếu product không tồn tại.
+     */
+    public Stamp product(Long productId) {
+        if (productId == null) {
+            return null;
+        }
+        return productStamps.get(productId, id -> {
+            List<Object[]> rows = productRepository.findDetailValidatorRow(id);
+            return rows.isEmpty() ? null : stamp(rows.get(0));
+        });
+    }
+
+    /**
+     * Phiên bản chung của toàn bộ product.
+     */
+    public Stamp products() {
+        return aggregateStamps.get(Aggregate.PRODUCTS, key -> stamp(productRepository.findValidatorRow().get(0)));
+    }
+
+    public Stamp categories() {
+        return aggregateStamps.get(Aggregate.CATEGORIES, key -> stamp(categoryRepository.findValidatorRow().get(0)));
+    }
+
+    /**
+     * Promotion bật/tắt theo startDate/endDate dù không có thao tác ghi, nên phiên bản gồm cả mốc
+     * bắt đầu/kết thúc gần nhất đã qua; mốc mới được nhận ra chậm nhất sau một TTL.
+     */
+    public Stamp promotions() {
+        return aggregateStamps.get(Aggregate.PROMOTIONS,
+                key -> stamp(promotionRepository.findValidatorRow(Instant.now()).get(0)));
+    }
+
+    public void invalidateProduct(Long productId) {
+        if (productId != null) {
+            productStamps.invalidate(productId);
+        }
+        aggregateStamps.invalidate(Aggregate.PRODUCTS);
+    }
+
+    public void invalidateCategories() {
+        aggregateStamps.invalidate(Aggregate.CATEGORIES);
+    }
+
+    public void invalidatePromotions() {
+        aggregateStamps.invalidate(Aggregate.PROMOTIONS);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        invalidatePromotions();
+    }
+
+    // Product mới import chưa có ETag nào ở client, chỉ cần bỏ phiên bản chung (promotion trả kèm product)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        invalidateProduct(null);
+    }
+
+    // Ghép các giá trị của dòng validator thành version; Last-Modified = mốc thời gian lớn nhất trong dòng
+    private static Stamp stamp(Object[] row) {
+        StringBuilder version = new StringBuilder();
+        long lastModified = 0;
+        for (Object value : row) {
+            if (!version.isEmpty()) {
+                version.append('.');
+            }
+            if (value instanceof Instant instant) {
+                long millis = instant.toEpochMilli();
+                version.append(millis);
+                lastModified = Math.max(lastModified, millis);
+            } else {
+                version.append(value != null ? value : 0);
+            }
+        }
+        return new Stamp(version.toString(), lastModified);
+    }
+
+    /**
+     * @param version      giá trị ghép từ dữ liệu đã lưu, đổi khi dữ liệu đổi
+     * @param lastModified epoch millis của lần sửa gần nhất theo updatedAt (0 nếu chưa có bản ghi)
+     */
+    public record Stamp(String version, long lastModified) {
+    }
+}
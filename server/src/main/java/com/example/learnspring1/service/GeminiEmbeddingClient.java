@@ -0,0 +1,282 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.utils.MicroBatcher;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client embedding Gemini dùng chung cho tìm kiếm và indexer.
+ * Các {@link #embed} đồng thời được gom trong vài ms (hoặc đến khi đủ lô) thành một request
+ * batchEmbedContents ({@link MicroBatcher}), nên khi tải cao mỗi truy vấn không phải trả trọn một round-trip
+ * và không tốn một lượt rate limit. HTTP qua OkHttp với pool kết nối keep-alive; 429/503 được thử lại với
+ * backoff lũy thừa (tôn trọng Retry-After). Metrics: ai.embedding.latency (thời gian caller chờ),
+ * ai.embedding.request (mỗi request HTTP), ai.embedding.batch.size, ai.embedding.throttled.
+ * Mỗi request HTTP chạy trong lane {@link AiCallGuard#GEMINI} (deadline của lane chặn một lần gửi), còn
+ * {@code ai.embedding.timeout-ms} là ngân sách của cả lô: lần thử lại không vừa phần còn lại thì bỏ luôn.
+ * Mạch mở thì {@link #embed} lỗi ngay thay vì chờ. {@code ai.gemini.base-url} trỏ được sang server giả để chạy thử.
+ */
+@Slf4j
+@Component
+public class GeminiEmbeddingClient {
+
+    private static final String MODEL = "models/text-embedding-004";
+    private static final okhttp3.MediaType JSON = okhttp3.MediaType.get("application/json");
+    // Giới hạn của batchEmbedContents
+    private static final int API_MAX_BATCH = 100;
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MicroBatcher<String, float[]> batcher;
+    private final AiCallGuard aiCallGuard;
+    private final String apiKey;
+    private final String baseUrl;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long timeoutMs;
+
+    private final Timer latencyTimer;
+    private final Timer requestTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter throttledCounter;
+
+    public GeminiEmbeddingClient(MeterRegistry meterRegistry, AiCallGuard aiCallGuard,
+            @Value("${ai.gemini.api-key:}") String apiKey,
+            @Value("${ai.gemini.base-url:https://generativelanguage.googleapis.com}") String baseUrl,
+            @Value("${ai.embedding.batch.max-size:32}") int maxBatch,
+            @Value("${ai.embedding.batch.linger-ms:5}") long lingerMs,
+            @Value("${ai.embedding.batch.max-concurrent:4}") int maxConcurrent,
+            @Value("${ai.embedding.max-attempts:4}") int maxAttempts,
+            @Value("${ai.embedding.backoff-ms:200}") long backoffMs,
+            @Value("${ai.embedding.timeout-ms:10000}") long timeoutMs) {
+        this.aiCallGuard = aiCallGuard;
+        this.apiKey = apiKey;
+        this.baseUrl = baseUrl;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = backoffMs;
+        this.timeoutMs = timeoutMs;
+        this.httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(Math.max(2, maxConcurrent * 2), 5, TimeUnit.MINUTES))
+                .connectTimeout(Duration.ofSeconds(5))
+                .readTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        this.batcher = new MicroBatcher<>("gemini-embed", Math.min(maxBatch, API_MAX_BATCH), lingerMs,
+                maxConcurrent, this::postBatch);
+
+        this.latencyTimer = Timer.builder("ai.embedding.latency")
+                .description("Thời gian caller chờ một embedding (gồm thời gian gom lô)")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.requestTimer = Timer.builder("ai.embedding.request")
+                .description("Thời gian một request batchEmbedContents")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("ai.embedding.batch.size")
+                .description("Số văn bản mỗi request")
+                .register(meterRegistry);
+        this.throttledCounter = Counter.builder("ai.embedding.throttled")
+                .description("Số lần bị 429/503 và phải thử lại")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Embedding của một văn bản, đi chung lô với các lời gọi đồng thời khác.
+     */
+    public float[] embed(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Text cannot be empty");
+        }
+        if (!aiCallGuard.isAvailable(AiCallGuard.GEMINI)) {
+            throw new AiCallGuard.AiUnavailableException(AiCallGuard.GEMINI, "circuit open");
+        }
+        long started = System.nanoTime();
+        try {
+            return batcher.submit(text).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Gemini embedding timed out after " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for embedding");
+        } finally {
+            latencyTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Embedding cho nhiều văn bản (đã là lô sẵn, gửi thẳng, chia theo giới hạn của API), theo thứ tự đầu vào.
+     */
+    public List<float[]> embedBatch(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<float[]> result = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += API_MAX_BATCH) {
+            result.addAll(postBatch(texts.subList(from, Math.min(texts.size(), from + API_MAX_BATCH))));
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void close() {
+        batcher.close();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    // Mỗi request HTTP là một lời gọi trong lane GEMINI (deadline của lane chặn từng lần gửi); cả lô kể cả các lần
+    // thử lại và thời gian chờ Retry-After nằm trong timeoutMs, chờ thì không giữ chỗ bulkhead của lane
+    private List<float[]> postBatch(List<String> texts) {
+        batchSizeSummary.record(texts.size());
+        Request request = buildRequest(texts);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (int attempt = 1;; attempt++) {
+            long remainingMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            try {
+                return aiCallGuard.call(AiCallGuard.GEMINI, () -> send(request, texts.size(), remainingMs));
+            } catch (RetryableException e) {
+                long delay = retryDelay(attempt, e.retryAfter);
+                // Retry-After dài hơn phần ngân sách còn lại thì bỏ luôn, không chờ rồi mới hết giờ
+                if (attempt >= maxAttempts || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) >= deadline) {
+                    throw e;
+                }
+                if (e.throttled) {
+                    throttledCounter.increment();
+                }
+                sleep(delay);
+            }
+        }
+    }
+
+    private Request buildRequest(List<String> texts) {
+        List<Map<String, Object>> requests = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            requests.add(Map.of("model", MODEL, "content", Map.of("parts", List.of(Map.of("text", text)))));
+        }
+        try {
+            return new Request.Builder()
+                    .url(baseUrl + "/v1beta/" + MODEL + ":batchEmbedContents?key=" + apiKey())
+                    .post(RequestBody.create(objectMapper.writeValueAsBytes(Map.of("requests", requests)), JSON))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize embedding request: " + e.getMessage(), e);
+        }
+    }
+
+    // Một lần gửi: 429/503 và lỗi mạng được thử lại, 4xx khác là lỗi của chính request (không tính cho breaker)
+    private List<float[]> send(Request request, int expected, long timeoutMs) {
+        Call call = httpClient.newCall(request);
+        call.timeout().timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        long started = System.nanoTime();
+        try (Response response = call.execute()) {
+            requestTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            if (response.isSuccessful() && response.body() != null) {
+                return parse(objectMapper.readValue(response.body().byteStream(), BatchEmbedResponse.class), expected);
+            }
+            String body = response.body() != null ? response.body().string() : "";
+            String message = "Gemini embedding failed. Code: " + response.code() + ", Body: "
+                    + body.substring(0, Math.min(200, body.length()));
+            if (response.code() == 429 || response.code() == 503) {
+                throw new RetryableException(message, response.header("Retry-After"), true, null);
+            }
+            if (response.code() >= 400 && response.code() < 500) {
+                throw new AiCallGuard.RequestRejectedException(AiCallGuard.GEMINI, message);
+            }
+            throw new IllegalStateException(message);
+        } catch (IOException e) {
+            throw new RetryableException("Gemini embedding request failed: " + e.getMessage(), null, false, e);
+        }
+    }
+
+    private static List<float[]> parse(BatchEmbedResponse response, int expected) {
+        if (response == null || response.embeddings == null || response.embeddings.size() != expected) {
+            throw new IllegalStateException("Invalid batch embedding response from Gemini");
+        }
+        List<float[]> result = new ArrayList<>(expected);
+        for (Embedding embedding : response.embeddings) {
+            if (embedding == null || embedding.values == null || embedding.values.length == 0) {
+                throw new IllegalStateException("Gemini returned an empty embedding");
+            }
+            result.add(embedding.values);
+        }
+        return result;
+    }
+
+    // Retry-After (giây) nếu server gửi, không thì backoff * 2^(attempt-1) cộng jitter tới 50%
+    private long retryDelay(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(30_000L, Long.parseLong(retryAfter.trim()) * 1000L);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        long delay = backoffMs << Math.min(attempt - 1, 10);
+        return delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", e);
+        }
+    }
+
+    private String apiKey() {
+        String key = apiKey != null && !apiKey.isEmpty() ? apiKey : System.getenv().getOrDefault("GEMINI_API_KEY", "");
+        if (key.isEmpty()) {
+            throw new IllegalStateException("GEMINI_API_KEY is not configured. Set ai.gemini.api-key in application.properties or GEMINI_API_KEY environment variable");
+        }
+        return key;
+    }
+
+    // Lỗi có thể thử lại; hết lượt hoặc hết ngân sách thì ném nguyên cho caller
+    private static final class RetryableException extends IllegalStateException {
+        private final String retryAfter;
+        private final boolean throttled;
+
+        RetryableException(String message, String retryAfter, boolean throttled, Throwable cause) {
+            super(message, cause);
+            this.retryAfter = retryAfter;
+            this.throttled = throttled;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class BatchEmbedResponse {
+        public List<Embedding> embeddings;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Embedding {
+        public float[] values;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.learnspring1.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Tìm kiếm lai: chạy song song truy hồi từ khóa (BM25, {@link ProductLexicalIndex}) và truy hồi vector
+ * (embedding + HNSW/ChromaDB), gộp thứ hạng bằng Reciprocal Rank Fusion rồi cộng thêm độ phổ biến (đã bán).
+ * Toàn bộ nằm trong một ngân sách thời gian: bên nào quá hạn hoặc lỗi thì bỏ, vẫn trả kết quả bên còn lại.
+ * Bên vector quá hạn vẫn chạy tiếp ở nền và ghi vào {@link VectorQueryCache} cho lần sau.
+ */
+@Slf4j
+@Service
+public class HybridSearchService {
+
+    private final ProductLexicalIndex productLexicalIndex;
+    private final ProductSearchRows productSearchRows;
+    private final AiVectorService aiVectorService;
+    private final ProductVectorIndex productVectorIndex;
+    private final VectorQueryCache vectorQueryCache;
+    private final SynonymExpander synonymExpander;
+    private final long budgetMs;
+    private final int rrfK;
+    private final double popularityWeight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public HybridSearchService(ProductLexicalIndex productLexicalIndex,
+            ProductSearchRows productSearchRows,
+            AiVectorService aiVectorService,
+            ProductVectorIndex productVectorIndex,
+            VectorQueryCache vectorQueryCache,
+            SynonymExpander synonymExpander,
+            @Value("${search.hybrid.budget-ms:800}") long budgetMs,
+            @Value("${search.hybrid.rrf-k:60}") int rrfK,
+            @Value("${search.hybrid.popularity-weight:0.2}") double popularityWeight) {
+        this.productLexicalIndex = productLexicalIndex;
+        this.productSearchRows = productSearchRows;
+        this.aiVectorService = aiVectorService;
+        this.productVectorIndex = productVectorIndex;
+        this.vectorQueryCache = vectorQueryCache;
+        this.synonymExpander = synonymExpander;
+        this.budgetMs = budgetMs;
+        this.rrfK = rrfK;
+        this.popularityWeight = popularityWeight;
+    }
+
+    /**
+     * Id sản phẩm đã xếp hạng. BM25 dùng đúng truy vấn người dùng nhập, phía vector dùng truy vấn
+     * đã mở rộng đồng nghĩa ({@link SynonymExpander}).
+     */
+    public List<Long> search(String query, Long categoryId, int limit) {
+        // Lấy nhiều ứng viên hơn limit để hợp nhất có ý nghĩa
+        int candidates = Math.max(limit * 3, 30);
+        String vectorQuery = synonymExpander.expand(query);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        CompletableFuture<List<Long>> lexical = CompletableFuture.supplyAsync(
+                () -> productLexicalIndex.search(query, categoryId, candidates), executor);
+        CompletableFuture<List<Long>> vector = CompletableFuture.supplyAsync(
+                () -> vectorQueryCache.getResults(vectorQuery, categoryId, candidates,
+                        text -> searchIdsByVector(text, categoryId, candidates)),
+                executor);
+
+        List<Long> lexicalIds = await("lexical", lexical, deadline);
+        List<Long> vectorIds = await("vector", vector, deadline);
+        return fuse(List.of(lexicalIds, vectorIds), limit);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Điểm = Σ 1/(k + hạng) trên các danh sách, nhân (1 + w * log(1+đã bán)/log(1+max đã bán))
+    private List<Long> fuse(List<List<Long>> rankings, int limit) {
+        Map<Long, Double> scores = new HashMap<>();
+        for (List<Long> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        if (scores.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, Long> soldCounts = new HashMap<>();
+        long maxSold = 0;
+        for (Long productId : scores.keySet()) {
+            ProductSearchRows.Row row = productSearchRows.get(productId);
+            long sold = row != null ? row.soldCount() : 0L;
+            soldCounts.put(productId, sold);
+            maxSold = Math.max(maxSold, sold);
+        }
+        if (maxSold > 0 && popularityWeight > 0) {
+            double scale = Math.log1p(maxSold);
+            scores.replaceAll((productId, score) ->
+                    score * (1 + popularityWeight * Math.log1p(soldCounts.get(productId)) / scale));
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private List<Long> await(String retriever, CompletableFuture<List<Long>> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            log.debug("{} retriever exceeded {} ms budget, using the other side only", retriever, budgetMs);
+        } catch (ExecutionException e) {
+            log.warn("{} retriever failed: {}", retriever, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    // Id đã xếp hạng theo khoảng cách (đã lọc ngưỡng); rỗng nếu không có kết quả đủ gần
+    private List<Long> searchIdsByVector(String text, Long categoryId, int size) {
+        float[] embedding = vectorQueryCache.getEmbedding(text, aiVectorService::embedWithGemini);
+        double threshold = aiVectorService.getDistanceThreshold();
+        if (productVectorIndex.isReady()) {
+            // Index trong tiến trình: không gọi ChromaDB, lọc category ngay khi duyệt đồ thị
+            List<Long> ids = new ArrayList<>();
+            for (ProductVectorIndex.Hit hit : productVectorIndex.search(embedding, categoryId, size)) {
+                if (hit.distance() <= threshold) {
+                    ids.add(hit.productId());
+                }
+            }
+            return ids;
+        }
+
+        var chromaResp = aiVectorService.queryChroma(embedding, categoryId, size);
+        if (chromaResp == null || chromaResp.ids == null || chromaResp.ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Filter and rerank by distance threshold (auto-filters low quality matches)
+        return chromaResp.getFilteredAndRankedIds(threshold).stream()
+                .map(id -> {
+                    try {
+                        return Long.parseLong(id);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                })
+                .filter(v -> v != null)
+                .collect(Collectors.toList());
+    }
+}
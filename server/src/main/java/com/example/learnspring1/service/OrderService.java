@@ -4,7 +4,10 @@ import com.example.learnspring1.domain.*;
 import com.example.learnspring1.domain.dto.BulkOrderRequest;
 import com.example.learnspring1.domain.dto.BulkOrderResponse;
 import com.example.learnspring1.domain.dto.CheckoutRequestDTO;
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.event.ProductChangedEvent;
 import com.example.learnspring1.repository.*;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -41,6 +44,7 @@ public class OrderService {
     private final PromotionCalculator promotionCalculator;
     private final ObjectMapper objectMapper;
     private final OrderAuditLogService orderAuditLogService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public OrderService(
             OrderRepository orderRepository,
@@ -53,7 +57,8 @@ public class OrderService {
             PromotionService promotionService,
             PromotionCalculator promotionCalculator,
             ObjectMapper objectMapper,
-            OrderAuditLogService orderAuditLogService) {
+            OrderAuditLogService orderAuditLogService,
+            ApplicationEventPublisher eventPublisher) {
         this.orderRepository = orderRepository;
         this.orderItemRepository = orderItemRepository;
         this.userRepository = userRepository;
@@ -65,6 +70,7 @@ public class OrderService {
         this.promotionCalculator = promotionCalculator;
         this.objectMapper = objectMapper;
         this.orderAuditLogService = orderAuditLogService;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -131,12 +137,20 @@ public class OrderService {
 
             // Log to history
             orderAuditLogService.logStatusChange(order, oldStatus, newStatus, note, ipAddress);
+            publishStatusChanged(savedOrder, oldStatus, newStatus);
 
             return savedOrder;
         }
         throw new RuntimeException("Order not found with code: " + orderCode);
     }
 
+    private void publishStatusChanged(Order order, Order.OrderStatus oldStatus, Order.OrderStatus newStatus) {
+        if (oldStatus != newStatus) {
+            eventPublisher.publishEvent(
+                    new OrderStatusChangedEvent(order.getId(), oldStatus, newStatus, order.getCreatedAt()));
+        }
+    }
+
     @Transactional
     public Order updatePaymentLinkId(String orderCode, String paymentLinkId) {
         Optional<Order> orderOpt = orderRepository.findByOrderCode(orderCode);
@@ -295,6 +309,8 @@ public class OrderService {
             }
             variant.setStockQuantity(variant.getStockQuantity() - cartItem.getQuantity());
             productVariantRepository.save(variant);
+            eventPublisher.publishEvent(
+                    new ProductChangedEvent(product.getId(), ProductChangedEvent.ChangeType.VARIANT_CHANGED));
         }
 
         // Tính tổng tiền từ các items được chọn
@@ -751,6 +767,7 @@ public class OrderService {
                                 newStatus,
                                 null,
                                 null);
+                        publishStatusChanged(order, oldStatus, newStatus);
 
                         results.add(new BulkOrderResponse.BulkOrderResult(
                                 orderId, orderCode, true, "Status updated to " + newStatus));
@@ -0,0 +1,244 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.dto.CategoryDTO;
+import com.example.learnspring1.domain.dto.ProductAutocompleteDTO;
+import com.example.learnspring1.event.CategoryTreeChangedEvent;
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.utils.TextNormalizer;
+import com.example.learnspring1.utils.collection.PrefixTrie;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gợi ý khi gõ ô tìm kiếm: tên sản phẩm, thương hiệu và tên category, khớp theo tiền tố không dấu
+ * của cả chuỗi hoặc của từng từ. Mỗi node của {@link PrefixTrie} giữ sẵn top-K theo độ phổ biến
+ * nên một lần tra không chạm database và không duyệt subtree.
+ * Dữ liệu nguồn là {@link ProductSearchRows} (cập nhật theo event từng sản phẩm); trie được dựng lại
+ * từ bộ nhớ theo chu kỳ ngắn khi tên/thương hiệu/ảnh/category đổi. Đơn hàng chỉ đổi số đã bán (trọng số
+ * xếp hạng) nên chỉ được gom lại và xếp hạng lại theo chu kỳ dài hơn.
+ */
+@Slf4j
+@Service
+public class ProductAutocompleteService {
+
+    // Số gợi ý tối đa mỗi loại (sản phẩm, thương hiệu, category); trie giữ sẵn top-K này cho mỗi tiền tố
+    public static final int MAX_PRODUCTS = 20;
+    // Số từ đầu tiên được dùng làm điểm bắt đầu khớp ("gel" khớp "Bút gel ...")
+    private static final int MAX_WORD_STARTS = 6;
+
+    private final ProductRepository productRepository;
+    private final ProductSearchRows productSearchRows;
+    private final CategoryTreeCache categoryTreeCache;
+    private final long rankRefreshMs;
+
+    private volatile List<CategoryRow> categoryRows = List.of();
+    private volatile Snapshot snapshot;
+    private volatile boolean loaded = false;
+    private volatile boolean dirty = false;
+    private volatile long builtVersion = -1;
+    private volatile long builtContentVersion = -1;
+    private volatile long builtAt;
+
+    public ProductAutocompleteService(ProductRepository productRepository,
+            ProductSearchRows productSearchRows,
+            CategoryTreeCache categoryTreeCache,
+            @Value("${catalog.autocomplete.rank-refresh-ms:60000}") long rankRefreshMs) {
+        this.productRepository = productRepository;
+        this.productSearchRows = productSearchRows;
+        this.categoryTreeCache = categoryTreeCache;
+        this.rankRefreshMs = rankRefreshMs;
+    }
+
+    public ProductAutocompleteDTO autocomplete(String query, int limit) {
+        ensureLoaded();
+        String prefix = TextNormalizer.fold(query);
+        List<ProductAutocompleteDTO.ProductSuggestion> products = new ArrayList<>();
+        List<String> brands = new ArrayList<>();
+        List<ProductAutocompleteDTO.CategorySuggestion> categories = new ArrayList<>();
+        if (prefix.isEmpty()) {
+            return new ProductAutocompleteDTO(products, brands, categories);
+        }
+
+        Snapshot current = snapshot;
+        int size = Math.max(1, Math.min(limit, MAX_PRODUCTS));
+        int[] productHits = current.productTrie.topK(prefix);
+        for (int i = 0; i < productHits.length && i < size; i++) {
+            ProductSearchRows.Row row = current.products[productHits[i]];
+            products.add(new ProductAutocompleteDTO.ProductSuggestion(row.id(), row.name(), row.brand(),
+                    row.thumbnailUrl()));
+        }
+        int[] brandHits = current.brandTrie.topK(prefix);
+        for (int i = 0; i < brandHits.length && i < size; i++) {
+            brands.add(current.brands[brandHits[i]]);
+        }
+        int[] categoryHits = current.categoryTrie.topK(prefix);
+        for (int i = 0; i < categoryHits.length && i < size; i++) {
+            CategoryRow row = current.categories[categoryHits[i]];
+            categories.add(new ProductAutocompleteDTO.CategorySuggestion(row.id(), row.name()));
+        }
+        return new ProductAutocompleteDTO(products, brands, categories);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCategoryTreeChanged(CategoryTreeChangedEvent event) {
+        if (!loaded) {
+            return;
+        }
+        try {
+            categoryRows = loadCategoryRows();
+            dirty = true;
+        } catch (Exception e) {
+            log.warn("Không cập nhật được category cho autocomplete: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Dựng lại trie từ dữ liệu trong bộ nhớ nếu có thay đổi (không query database).
+     * Thay đổi chỉ ở số đã bán đợi đủ {@code rank-refresh-ms} kể từ lần dựng trước.
+     */
+    @Scheduled(fixedDelayString = "${catalog.autocomplete.rebuild-delay-ms:2000}")
+    public void rebuildIfDirty() {
+        if (!loaded) {
+            return;
+        }
+        boolean contentChanged = dirty || builtContentVersion != productSearchRows.contentVersion();
+        boolean rankDue = builtVersion != productSearchRows.version()
+                && System.currentTimeMillis() - builtAt >= rankRefreshMs;
+        if (!contentChanged && !rankDue) {
+            return;
+        }
+        dirty = false;
+        snapshot = buildSnapshot();
+    }
+
+    /**
+     * Load lại category từ database và dựng trie.
+     */
+    public synchronized void reload() {
+        categoryRows = loadCategoryRows();
+        dirty = false;
+        snapshot = buildSnapshot();
+        loaded = true;
+        log.info("Autocomplete index loaded with {} products, {} categories", snapshot.products.length,
+                categoryRows.size());
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    private List<CategoryRow> loadCategoryRows() {
+        Map<Long, Long> productCounts = new HashMap<>();
+        for (Object[] raw : productRepository.countActiveProductsByCategory()) {
+            productCounts.put((Long) raw[0], ((Number) raw[1]).longValue());
+        }
+        List<CategoryRow> result = new ArrayList<>();
+        collectCategories(categoryTreeCache.get().getNestedCategories(true), productCounts, result);
+        return result;
+    }
+
+    private static void collectCategories(List<CategoryDTO> nodes, Map<Long, Long> productCounts,
+            List<CategoryRow> result) {
+        if (nodes == null) {
+            return;
+        }
+        for (CategoryDTO node : nodes) {
+            result.add(new CategoryRow(node.getId(), node.getName(), productCounts.getOrDefault(node.getId(), 0L)));
+            collectCategories(node.getChildren(), productCounts, result);
+        }
+    }
+
+    private Snapshot buildSnapshot() {
+        long started = System.nanoTime();
+        // Đọc version trước snapshot: thay đổi xen giữa sẽ khiến lần chạy sau dựng lại
+        long contentVersion = productSearchRows.contentVersion();
+        long version = productSearchRows.version();
+        ProductSearchRows.Row[] products = productSearchRows.snapshot();
+        long[] productWeights = new long[products.length];
+        for (int i = 0; i < products.length; i++) {
+            productWeights[i] = products[i].soldCount();
+        }
+        PrefixTrie.Builder productBuilder = PrefixTrie.builder(MAX_PRODUCTS, productWeights);
+
+        // Thương hiệu gộp theo dạng không dấu; trọng số = tổng đã bán + số sản phẩm
+        Map<String, Integer> brandIndex = new LinkedHashMap<>();
+        List<String> brandLabels = new ArrayList<>();
+        List<Long> brandWeights = new ArrayList<>();
+
+        for (int i = 0; i < products.length; i++) {
+            ProductSearchRows.Row row = products[i];
+            for (String key : TextNormalizer.wordStarts(TextNormalizer.fold(row.name()), MAX_WORD_STARTS)) {
+                productBuilder.add(key, i);
+            }
+            String brandKey = TextNormalizer.fold(row.brand());
+            if (!brandKey.isEmpty()) {
+                Integer index = brandIndex.get(brandKey);
+                if (index == null) {
+                    index = brandLabels.size();
+                    brandIndex.put(brandKey, index);
+                    brandLabels.add(row.brand().trim());
+                    brandWeights.add(0L);
+                }
+                brandWeights.set(index, brandWeights.get(index) + row.soldCount() + 1);
+            }
+        }
+
+        long[] brandWeightArray = new long[brandWeights.size()];
+        for (int i = 0; i < brandWeightArray.length; i++) {
+            brandWeightArray[i] = brandWeights.get(i);
+        }
+        PrefixTrie.Builder brandBuilder = PrefixTrie.builder(MAX_PRODUCTS, brandWeightArray);
+        for (Map.Entry<String, Integer> entry : brandIndex.entrySet()) {
+            for (String key : TextNormalizer.wordStarts(entry.getKey(), MAX_WORD_STARTS)) {
+                brandBuilder.add(key, entry.getValue());
+            }
+        }
+
+        CategoryRow[] categories = categoryRows.toArray(new CategoryRow[0]);
+        long[] categoryWeights = new long[categories.length];
+        for (int i = 0; i < categories.length; i++) {
+            categoryWeights[i] = categories[i].productCount();
+        }
+        PrefixTrie.Builder categoryBuilder = PrefixTrie.builder(MAX_PRODUCTS, categoryWeights);
+        for (int i = 0; i < categories.length; i++) {
+            for (String key : TextNormalizer.wordStarts(TextNormalizer.fold(categories[i].name()), MAX_WORD_STARTS)) {
+                categoryBuilder.add(key, i);
+            }
+        }
+
+        Snapshot built = new Snapshot(products, productBuilder.build(), brandLabels.toArray(new String[0]),
+                brandBuilder.build(), categories, categoryBuilder.build());
+        builtContentVersion = contentVersion;
+        builtVersion = version;
+        builtAt = System.currentTimeMillis();
+        log.debug("Autocomplete trie rebuilt: {} products, {} nodes in {} ms", products.length,
+                built.productTrie.nodeCount(), (System.nanoTime() - started) / 1_000_000);
+        return built;
+    }
+
+    private record CategoryRow(Long id, String name, long productCount) {
+    }
+
+    private record Snapshot(ProductSearchRows.Row[] products, PrefixTrie productTrie, String[] brands, PrefixTrie brandTrie,
+            CategoryRow[] categories, PrefixTrie categoryTrie) {
+    }
+}
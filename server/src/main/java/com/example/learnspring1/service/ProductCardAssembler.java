@@ -0,0 +1,127 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.ProductVariant;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
+import com.example.learnspring1.domain.dto.ProductVariantDTO;
+import com.example.learnspring1.repository.ProductImageRepository;
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.repository.ProductVariantRepository;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gắn variants/tồn kho, ảnh chính và category cho một trang {@link ProductCardDTO}.
+ * Mỗi phần là đúng một query theo lô id của trang, nên số câu SQL mỗi trang
+ * không đổi dù kích thước trang tăng (không còn N+1 do lazy collection).
+ */
+@Component
+public class ProductCardAssembler {
+
+    private final ProductRepository productRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final ProductImageRepository productImageRepository;
+
+    public ProductCardAssembler(ProductRepository productRepository,
+            ProductVariantRepository productVariantRepository,
+            ProductImageRepository productImageRepository) {
+        this.productRepository = productRepository;
+        this.productVariantRepository = productVariantRepository;
+        this.productImageRepository = productImageRepository;
+    }
+
+    /**
+     * Điền dữ liệu lô cho các card (giữ nguyên thứ tự) và trả lại chính danh sách đó.
+     */
+    public List<ProductCardDTO> assemble(List<ProductCardDTO> cards) {
+        if (cards.isEmpty()) {
+            return cards;
+        }
+        Map<Long, ProductCardDTO> byId = new HashMap<>(cards.size() * 2);
+        for (ProductCardDTO card : cards) {
+            byId.put(card.getId(), card);
+            card.setTotalStockQuantity(0);
+            card.setHasStock(false);
+        }
+        List<Long> ids = new ArrayList<>(byId.keySet());
+
+        for (ProductVariant variant : productVariantRepository.findUndeletedByProductIds(ids)) {
+            // getProduct().getId() đọc id từ proxy, không kích hoạt lazy load
+            ProductCardDTO card = byId.get(variant.getProduct().getId());
+            if (card == null) {
+                continue;
+            }
+            card.getVariants().add(toVariantDTO(variant, card));
+            if (Boolean.TRUE.equals(variant.getIsActive())) {
+                int stock = variant.getStockQuantity() != null ? variant.getStockQuantity() : 0;
+                card.setTotalStockQuantity(card.getTotalStockQuantity() + stock);
+                if (stock > 0) {
+                    card.setHasStock(true);
+                }
+            }
+        }
+
+        for (Object[] row : productImageRepository.findPrimaryImageRowsByProductIds(ids)) {
+            ProductCardDTO card = byId.get((Long) row[0]);
+            if (card != null && card.getImages().isEmpty()) {
+                card.getImages().add(new ProductCardDTO.ImageRef((Long) row[1], (String) row[2], true));
+            }
+        }
+
+        for (Object[] row : productRepository.findCategoryRefsByProductIds(ids)) {
+            ProductCardDTO card = byId.get((Long) row[0]);
+            if (card != null) {
+                card.getCategories().add(new ProductCardDTO.CategoryRef((Long) row[1], (String) row[2]));
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * Nạp card theo danh sách id và trả về theo đúng thứ tự id (bỏ qua id không tồn tại).
+     */
+    public List<ProductCardDTO> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, ProductCardDTO> byId = new HashMap<>(ids.size() * 2);
+        for (ProductCardDTO card : productRepository.findProductCardsByIds(ids)) {
+            byId.put(card.getId(), card);
+        }
+        List<ProductCardDTO> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ProductCardDTO card = byId.remove(id);
+            if (card != null) {
+                ordered.add(card);
+            }
+        }
+        return assemble(ordered);
+    }
+
+    private static ProductVariantDTO toVariantDTO(ProductVariant variant, ProductCardDTO card) {
+        return ProductVariantDTO.builder()
+                .id(variant.getId())
+                .productId(card.getId())
+                .productName(card.getName())
+                .variantType(variant.getVariantType())
+                .variantValue(variant.getVariantValue())
+                .colorCode(variant.getColorCode())
+                .imageUrl(variant.getImageUrl())
+                .price(variant.getPrice())
+                .stockQuantity(variant.getStockQuantity())
+                .sku(variant.getSku())
+                .sortOrder(variant.getSortOrder())
+                .isDefault(variant.getIsDefault())
+                .isActive(variant.getIsActive())
+                .createdAt(variant.getCreatedAt())
+                .updatedAt(variant.getUpdatedAt())
+                .createdBy(variant.getCreatedBy())
+                .updatedBy(variant.getUpdatedBy())
+                .deletedBy(variant.getDeletedBy())
+                .build();
+    }
+}
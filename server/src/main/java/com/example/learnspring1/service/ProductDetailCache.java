@@ -0,0 +1,64 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.dto.ProductResponseDTO;
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Cache có giới hạn cho ProductResponseDTO của trang chi tiết sản phẩm.
+ * Bị xóa theo product khi product/variant/ảnh thay đổi hoặc khi số lượng đã bán đổi;
+ * mỗi lần xóa cũng bỏ phiên bản (ETag) đã cache của product trong {@link CatalogVersionService}.
+ * Load chạy trong compute của Caffeine nên lệnh xóa sau commit sẽ chờ lần load đang chạy xong rồi xóa luôn
+ * kết quả đó, không để bản cũ (đọc trước commit) nằm lại; TTL {@code ttl-minutes} là lưới an toàn cuối.
+ */
+@Component
+public class ProductDetailCache {
+
+    private final Cache<Long, ProductResponseDTO> cache;
+    private final CatalogVersionService catalogVersionService;
+
+    public ProductDetailCache(@Value("${catalog.product-detail-cache.max-size:2000}") long maxSize,
+            @Value("${catalog.product-detail-cache.ttl-minutes:30}") long ttlMinutes,
+            CatalogVersionService catalogVersionService) {
+        this.catalogVersionService = catalogVersionService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(Math.max(1, ttlMinutes)))
+                .build();
+    }
+
+    // Loader trả về rỗng thì không cache
+    public Optional<ProductResponseDTO> get(Long productId, Function<Long, Optional<ProductResponseDTO>> loader) {
+        return Optional.ofNullable(cache.get(productId, id -> loader.apply(id).orElse(null)));
+    }
+
+    // Gọi sau commit: xóa cache trước rồi mới bỏ phiên bản để ETag mới luôn đi kèm dữ liệu mới
+    public void evict(Long productId) {
+        cache.invalidate(productId);
+        catalogVersionService.invalidateProduct(productId);
+    }
+
+    public void evictAll(Collection<Long> productIds) {
+        cache.invalidateAll(productIds);
+        for (Long productId : productIds) {
+            catalogVersionService.invalidateProduct(productId);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.productId() != null) {
+            evict(event.productId());
+        }
+    }
+}
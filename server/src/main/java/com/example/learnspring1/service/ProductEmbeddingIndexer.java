@@ -0,0 +1,341 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.repository.ProductRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Tạo embedding cho sản phẩm ngay trong ứng dụng, thay cho script indexChroma.js chạy tay.
+ * Sản phẩm tạo/sửa/xóa được đánh dấu "bẩn" sau commit; job định kỳ gom các sản phẩm bẩn,
+ * gọi Gemini theo lô (batchEmbedContents) với số request đồng thời có giới hạn,
+ * rồi upsert vào ChromaDB và vào {@link ProductVectorIndex}. Mỗi lần chạy chỉ xử lý tối đa
+ * {@code ai.indexer.max-batches-per-flush} lô để không giữ thread của scheduler quá lâu khi reindex toàn bộ.
+ * Thử lại: lỗi Gemini đã được {@link GeminiEmbeddingClient} thử lại (429/503, lỗi mạng) nên ở đây không lặp lại;
+ * ghi/xóa ChromaDB không có lớp thử lại nào khác nên được thử lại ở đây.
+ * Độ trễ index (tuổi của sản phẩm bẩn lâu nhất) được đưa ra Micrometer: vector.indexer.lag.
+ */
+@Slf4j
+@Component
+public class ProductEmbeddingIndexer {
+
+    private static final int DOCUMENT_MAX_LENGTH = 1200;
+    // Giới hạn số văn bản mỗi request batchEmbedContents của Gemini
+    private static final int MAX_EMBED_BATCH = 100;
+
+    private final ProductRepository productRepository;
+    private final AiVectorService aiVectorService;
+    private final ProductVectorIndex productVectorIndex;
+    private final int batchSize;
+    private final int embedBatchSize;
+    private final int maxBatchesPerFlush;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final Semaphore embedPermits;
+    private final ExecutorService embedExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // productId -> thời điểm (ms) được đánh dấu bẩn lần đầu; giữ nguyên khi đánh dấu lại để đo lag đúng
+    private final Map<Long, Long> dirtySince = new ConcurrentHashMap<>();
+    private final Map<Long, Boolean> pendingDeletes = new ConcurrentHashMap<>();
+    private final Counter indexedCounter;
+    private final Counter failedCounter;
+
+    public ProductEmbeddingIndexer(ProductRepository productRepository,
+            AiVectorService aiVectorService,
+            ProductVectorIndex productVectorIndex,
+            MeterRegistry meterRegistry,
+            @Value("${ai.indexer.batch-size:200}") int batchSize,
+            @Value("${ai.indexer.embed-batch-size:50}") int embedBatchSize,
+            @Value("${ai.indexer.max-batches-per-flush:5}") int maxBatchesPerFlush,
+            @Value("${ai.indexer.concurrency:2}") int concurrency,
+            @Value("${ai.indexer.max-attempts:3}") int maxAttempts,
+            @Value("${ai.indexer.retry-backoff-ms:500}") long retryBackoffMs) {
+        this.productRepository = productRepository;
+        this.aiVectorService = aiVectorService;
+        this.productVectorIndex = productVectorIndex;
+        this.batchSize = Math.max(1, batchSize);
+        this.embedBatchSize = Math.max(1, Math.min(embedBatchSize, MAX_EMBED_BATCH));
+        this.maxBatchesPerFlush = Math.max(1, maxBatchesPerFlush);
+        this.embedPermits = new Semaphore(Math.max(1, concurrency));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+        this.indexedCounter = Counter.builder("vector.indexer.indexed").register(meterRegistry);
+        this.failedCounter = Counter.builder("vector.indexer.failed").register(meterRegistry);
+        Gauge.builder("vector.indexer.pending", dirtySince, Map::size).register(meterRegistry);
+        Gauge.builder("vector.indexer.lag", this, ProductEmbeddingIndexer::lagSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.productId() == null) {
+            return;
+        }
+        switch (event.changeType()) {
+            case DELETED -> {
+                dirtySince.remove(event.productId());
+                pendingDeletes.put(event.productId(), Boolean.TRUE);
+            }
+            // Variant không nằm trong document embedding
+            case VARIANT_CHANGED -> {
+            }
+            default -> markDirty(List.of(event.productId()));
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        markDirty(event.productIds());
+    }
+
+    /**
+     * Đưa toàn bộ sản phẩm chưa xóa vào hàng đợi index; job định kỳ xử lý dần theo lô.
+     *
+     * @return số sản phẩm được đưa vào hàng đợi
+     */
+    public int reindexAll() {
+        List<Long> ids = productRepository.findAllIdsForIndexing();
+        markDirty(ids);
+        log.info("Queued {} products for embedding reindex", ids.size());
+        return ids.size();
+    }
+
+    public int pendingCount() {
+        return dirtySince.size();
+    }
+
+    public double lagSeconds() {
+        long oldest = Long.MAX_VALUE;
+        for (Long since : dirtySince.values()) {
+            oldest = Math.min(oldest, since);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : (System.currentTimeMillis() - oldest) / 1000.0;
+    }
+
+    @Scheduled(fixedDelayString = "${ai.indexer.flush-delay-ms:2000}")
+    public void flush() {
+        flushDeletes();
+        // Tối đa maxBatchesPerFlush lô (và không quá hàng đợi lúc bắt đầu); phần còn lại và id lỗi chờ lần chạy sau
+        int batches = Math.min(maxBatchesPerFlush, (dirtySince.size() + batchSize - 1) / batchSize);
+        for (int i = 0; i < batches; i++) {
+            Map<Long, Long> batch = drain();
+            if (batch.isEmpty() || !indexBatch(batch)) {
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        embedExecutor.shutdownNow();
+    }
+
+    private void markDirty(Collection<Long> productIds) {
+        if (productIds == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Long productId : productIds) {
+            if (productId != null) {
+                pendingDeletes.remove(productId);
+                dirtySince.putIfAbsent(productId, now);
+            }
+        }
+    }
+
+    private Map<Long, Long> drain() {
+        Map<Long, Long> batch = new LinkedHashMap<>();
+        for (Long productId : dirtySince.keySet()) {
+            if (batch.size() >= batchSize) {
+                break;
+            }
+            Long since = dirtySince.remove(productId);
+            if (since != null) {
+                batch.put(productId, since);
+            }
+        }
+        return batch;
+    }
+
+    // Trả về false khi cả lô thất bại (dịch vụ ngoài lỗi) để dừng vòng lặp, chờ lần chạy sau
+    private boolean indexBatch(Map<Long, Long> batch) {
+        List<Object[]> rows;
+        try {
+            rows = productRepository.findEmbeddingSourceRows(batch.keySet());
+        } catch (Exception e) {
+            log.warn("Could not load products for embedding: {}", e.getMessage());
+            requeue(batch, batch.keySet());
+            return false;
+        }
+
+        List<Source> sources = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            sources.add(toSource(row));
+        }
+
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int from = 0; from < sources.size(); from += embedBatchSize) {
+            List<Source> chunk = sources.subList(from, Math.min(sources.size(), from + embedBatchSize));
+            futures.add(embedExecutor.submit(() -> indexChunk(chunk)));
+        }
+        List<Long> failed = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            try {
+                failed.addAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requeue(batch, batch.keySet());
+                return false;
+            } catch (ExecutionException e) {
+                log.warn("Embedding batch failed: {}", e.getMessage());
+                requeue(batch, batch.keySet());
+                return false;
+            }
+        }
+        if (!failed.isEmpty()) {
+            requeue(batch, failed);
+        }
+        return failed.size() < sources.size() || sources.isEmpty();
+    }
+
+    // Một request embedding + một upsert ChromaDB cho tối đa embedBatchSize sản phẩm; trả về id thất bại
+    private List<Long> indexChunk(List<Source> chunk) {
+        List<String> documents = chunk.stream().map(Source::document).toList();
+        try {
+            embedPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return chunk.stream().map(Source::productId).toList();
+        }
+        try {
+            // GeminiEmbeddingClient đã tự thử lại khi bị giới hạn tốc độ hoặc lỗi mạng
+            List<float[]> embeddings = aiVectorService.embedBatchWithGemini(documents);
+            List<String> ids = chunk.stream().map(source -> String.valueOf(source.productId())).toList();
+            List<Map<String, Object>> metadatas = chunk.stream().map(Source::metadata).toList();
+            withRetry("upsert", () -> {
+                aiVectorService.upsertChroma(ids, embeddings, metadatas, documents);
+                return null;
+            });
+            for (int i = 0; i < chunk.size(); i++) {
+                upsertLocal(chunk.get(i), embeddings.get(i));
+            }
+            indexedCounter.increment(chunk.size());
+            return List.of();
+        } catch (Exception e) {
+            log.warn("Embedding batch of {} products failed: {}", chunk.size(), e.getMessage());
+            failedCounter.increment(chunk.size());
+            return chunk.stream().map(Source::productId).toList();
+        } finally {
+            embedPermits.release();
+        }
+    }
+
+    // Index chưa nạp xong thì tự giữ lại thay đổi, nên luôn gọi upsert
+    private void upsertLocal(Source source, float[] embedding) {
+        try {
+            productVectorIndex.upsert(source.productId(), source.categoryId(), embedding);
+        } catch (Exception e) {
+            log.warn("Could not update vector index for product {}: {}", source.productId(), e.getMessage());
+        }
+    }
+
+    private void flushDeletes() {
+        if (pendingDeletes.isEmpty()) {
+            return;
+        }
+        List<Long> productIds = List.copyOf(pendingDeletes.keySet());
+        try {
+            withRetry("delete", () -> {
+                aiVectorService.deleteFromChroma(productIds.stream().map(String::valueOf).toList());
+                return null;
+            });
+            productIds.forEach(pendingDeletes::remove);
+        } catch (Exception e) {
+            log.warn("Could not delete {} products from ChromaDB: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    private <T> T withRetry(String operation, Supplier<T> call) throws InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                long backoff = retryBackoffMs << (attempt - 1);
+                log.debug("{} attempt {} failed, retrying in {} ms: {}", operation, attempt, backoff, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    // Đưa lại vào hàng đợi với thời điểm bẩn cũ (nếu chưa bị đánh dấu lại hoặc đã bị xóa trong lúc xử lý)
+    private void requeue(Map<Long, Long> batch, Collection<Long> productIds) {
+        for (Long productId : productIds) {
+            if (!pendingDeletes.containsKey(productId)) {
+                dirtySince.merge(productId, batch.get(productId), Math::min);
+            }
+        }
+    }
+
+    private static Source toSource(Object[] row) {
+        Long productId = (Long) row[0];
+        String name = row[1] != null ? (String) row[1] : "";
+        String brand = (String) row[2];
+        String specifications = row[3] != null ? (String) row[3] : "";
+        String description = row[4] != null ? (String) row[4] : "";
+        Long categoryId = row[7] != null ? ((Number) row[7]).longValue() : null;
+
+        // Cùng định dạng document với scripts/ai/indexChroma.js để embedding cũ và mới so sánh được
+        String document = name + "\nBrand: " + (brand != null ? brand : "N/A") + "\nSpecs: " + specifications
+                + "\nDesc: " + description;
+        if (document.length() > DOCUMENT_MAX_LENGTH) {
+            document = document.substring(0, DOCUMENT_MAX_LENGTH);
+        }
+
+        // ChromaDB không nhận metadata null
+        Map<String, Object> metadata = new HashMap<>();
+        putIfNotNull(metadata, "categoryId", categoryId);
+        putIfNotNull(metadata, "name", row[1]);
+        putIfNotNull(metadata, "brand", brand);
+        putIfNotNull(metadata, "price", row[5] != null ? ((Number) row[5]).doubleValue() : null);
+        putIfNotNull(metadata, "thumbnailUrl", row[6]);
+        return new Source(productId, categoryId, document, metadata);
+    }
+
+    private static void putIfNotNull(Map<String, Object> metadata, String key, Object value) {
+        if (value != null) {
+            metadata.put(key, value);
+        }
+    }
+
+    private record Source(Long productId, Long categoryId, String document, Map<String, Object> metadata) {
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductEmbeddingsChangedEvent;
+import com.example.learnspring1.utils.VectorMath;
+import com.example.learnspring1.utils.collection.QuantizedVectorStore;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Tra embedding sản phẩm (đã chuẩn hóa) theo lô. Khi {@link ProductVectorIndex} đã sẵn sàng thì đọc thẳng
+ * vector float từ index, không giữ thêm bản sao nào. Khi index chưa phục vụ được (đang dựng đồ thị lúc khởi động,
+ * lần đầu đồng bộ từ ChromaDB, hoặc nạp lỗi) thì vector lấy từ ChromaDB được giữ lại trong file int8 memory-mapped
+ * ({@link QuantizedVectorStore}, ~1 byte mỗi chiều) để không gọi lại ChromaDB cho cùng sản phẩm; file này chỉ là
+ * cache của các lần gọi ChromaDB đó nên thường nhỏ, không phải bản sao thứ ba của cả catalog.
+ * Bản ghi bị bỏ khi sản phẩm đổi hoặc embedding được index lại.
+ */
+@Slf4j
+@Component
+public class ProductEmbeddingStore {
+
+    private static final int RECALL_QUERIES = 100;
+    private static final int RECALL_K = 10;
+
+    private final AiVectorService aiVectorService;
+    private final ProductVectorIndex productVectorIndex;
+    private final Path storePath;
+
+    private QuantizedVectorStore store;
+    private boolean storeDisabled;
+    private final Map<Long, Integer> recordByProduct = new HashMap<>();
+
+    public ProductEmbeddingStore(AiVectorService aiVectorService,
+            ProductVectorIndex productVectorIndex,
+            @Value("${ai.embedding-store.path:data/product-embeddings-q8.bin}") String storePath) {
+        this.aiVectorService = aiVectorService;
+        this.productVectorIndex = productVectorIndex;
+        this.storePath = Path.of(storePath);
+    }
+
+    /**
+     * Embedding (đã chuẩn hóa) của các sản phẩm theo thứ tự đầu vào, bỏ qua sản phẩm không có embedding.
+     */
+    public Map<Long, float[]> getEmbeddings(Collection<Long> productIds) {
+        Map<Long, float[]> result = new LinkedHashMap<>();
+        if (productIds.isEmpty()) {
+            return result;
+        }
+        if (productVectorIndex.isReady()) {
+            // Vector float chính xác, index đã có sẵn trong bộ nhớ nên không ghi vào file
+            for (Long productId : productIds) {
+                float[] vector = indexVector(productId);
+                if (vector != null) {
+                    result.put(productId, vector);
+                }
+            }
+            return result;
+        }
+
+        List<Long> missing = new ArrayList<>();
+        synchronized (this) {
+            for (Long productId : productIds) {
+                float[] stored = readStored(productId);
+                result.put(productId, stored);
+                if (stored == null) {
+                    missing.add(productId);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, float[]> fetched = aiVectorService.getEmbeddingsById(missing);
+            synchronized (this) {
+                fetched.forEach((productId, embedding) -> {
+                    float[] normalized = VectorMath.normalize(embedding);
+                    result.put(productId, normalized);
+                    writeStored(productId, normalized);
+                });
+            }
+        }
+        result.values().removeIf(vector -> vector == null);
+        return result;
+    }
+
+    /**
+     * Độ chính xác mất đi do lượng tử hóa int8 trên tối đa {@code samples} embedding của catalog: lấy ngẫu nhiên
+     * từ index nếu sẵn sàng, không thì các sản phẩm đang có trong file (vector gốc lấy lại từ ChromaDB).
+     * Mỗi vector được lượng tử hóa đúng như khi ghi file rồi so với bản gốc: cosine, sai số tích vô hướng trên các
+     * cặp ngẫu nhiên và recall@10 của tìm vét cạn trên vector lượng tử so với vector gốc.
+     */
+    public QuantizationReport accuracyReport(int samples) {
+        List<float[]> originals = sampleCatalog(samples);
+        int dimension = originals.isEmpty() ? 0 : originals.get(0).length;
+        List<float[]> restored = new ArrayList<>(originals.size());
+        for (float[] original : originals) {
+            restored.add(QuantizedVectorStore.roundTrip(original));
+        }
+        int compared = originals.size();
+        if (compared == 0) {
+            return new QuantizationReport(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        double cosineSum = 0;
+        double cosineMin = 1;
+        for (int i = 0; i < compared; i++) {
+            float[] vector = restored.get(i);
+            double cosine = VectorMath.dot(originals.get(i), vector)
+                    / Math.sqrt(Math.max(1e-12, VectorMath.dot(vector, vector)));
+            cosineSum += cosine;
+            cosineMin = Math.min(cosineMin, cosine);
+        }
+
+        // Sai số tích vô hướng trên các cặp ngẫu nhiên: chính là sai số điểm tương đồng khi xếp hạng
+        SplittableRandom random = new SplittableRandom(42);
+        int pairs = compared < 2 ? 0 : Math.min(10_000, compared * 10);
+        double dotErrorSum = 0;
+        double dotErrorMax = 0;
+        for (int p = 0; p < pairs; p++) {
+            int a = random.nextInt(compared);
+            int b = random.nextInt(compared);
+            double error = Math.abs(VectorMath.dot(originals.get(a), originals.get(b))
+                    - VectorMath.dot(restored.get(a), restored.get(b)));
+            dotErrorSum += error;
+            dotErrorMax = Math.max(dotErrorMax, error);
+        }
+
+        int queries = Math.min(RECALL_QUERIES, compared);
+        double recall = queries == 0 ? 0 : recallAtK(originals, restored, queries, RECALL_K);
+        return new QuantizationReport(compared, dimension, cosineSum / compared, cosineMin,
+                pairs, pairs == 0 ? 0 : dotErrorSum / pairs, dotErrorMax, queries, recall,
+                4L * dimension, dimension + 20L);
+    }
+
+    /**
+     * Trung bình tỉ lệ top-k (tìm vét cạn bằng tích vô hướng, trừ chính nó) trên {@code restored} trùng với
+     * top-k trên {@code originals}, với {@code queries} truy vấn đầu tiên.
+     */
+    static double recallAtK(List<float[]> originals, List<float[]> restored, int queries, int k) {
+        double recallSum = 0;
+        for (int q = 0; q < queries; q++) {
+            List<Integer> expected = topK(originals, originals.get(q), q, k);
+            List<Integer> actual = topK(restored, originals.get(q), q, k);
+            if (!expected.isEmpty()) {
+                recallSum += (double) actual.stream().filter(expected::contains).count() / expected.size();
+            }
+        }
+        return recallSum / queries;
+    }
+
+    private static List<Integer> topK(List<float[]> vectors, float[] query, int skip, int k) {
+        List<Integer> order = new ArrayList<>(vectors.size());
+        double[] scores = new double[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            if (i != skip) {
+                scores[i] = VectorMath.dot(query, vectors.get(i));
+                order.add(i);
+            }
+        }
+        order.sort((a, b) -> Double.compare(scores[b], scores[a]));
+        return order.subList(0, Math.min(k, order.size()));
+    }
+
+    private List<float[]> sampleCatalog(int samples) {
+        List<float[]> vectors = new ArrayList<>();
+        if (productVectorIndex.isReady()) {
+            ProductVectorIndex.LiveVectors live = productVectorIndex.liveVectors();
+            List<float[]> all = new ArrayList<>(List.of(live.vectors()));
+            Collections.shuffle(all, new Random(42));
+            return all.subList(0, Math.min(samples, all.size()));
+        }
+        List<Long> ids;
+        synchronized (this) {
+            openStore();
+            ids = recordByProduct.keySet().stream().limit(samples).toList();
+        }
+        if (!ids.isEmpty()) {
+            aiVectorService.getEmbeddingsById(ids).values().forEach(v -> vectors.add(VectorMath.normalize(v)));
+        }
+        return vectors;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.productId() != null && (event.isDeleted()
+                || event.changeType() == ProductChangedEvent.ChangeType.UPDATED)) {
+            invalidate(List.of(event.productId()));
+        }
+    }
+
+    // Reload toàn bộ index không đổi embedding đã lưu; chỉ sản phẩm được index lại mới bị bỏ
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEmbeddingsChanged(ProductEmbeddingsChangedEvent event) {
+        if (!event.fullReload()) {
+            invalidate(event.productIds());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private float[] indexVector(Long productId) {
+        List<float[]> vectors = productVectorIndex.getVectors(List.of(productId));
+        return vectors.isEmpty() ? null : vectors.get(0);
+    }
+
+    private synchronized void invalidate(Collection<Long> productIds) {
+        openStore();
+        if (store == null) {
+            return;
+        }
+        for (Long productId : productIds) {
+            Integer record = recordByProduct.get(productId);
+            if (record != null && !store.isDeleted(record)) {
+                store.markDeleted(record);
+            }
+        }
+    }
+
+    private float[] readStored(Long productId) {
+        openStore();
+        Integer record = recordByProduct.get(productId);
+        if (store == null || record == null || store.isDeleted(record)) {
+            return null;
+        }
+        return store.read(record);
+    }
+
+    // Ghi đè bản ghi cũ của sản phẩm (kể cả đã đánh dấu xóa) để file không phình theo số lần đổi
+    private void writeStored(Long productId, float[] vector) {
+        openStore();
+        if (store == null) {
+            return;
+        }
+        try {
+            if (store.dimension() != vector.length) {
+                // Đổi model: file mới thay file cũ bằng rename, file cũ chỉ đóng sau khi thay xong
+                QuantizedVectorStore previous = store;
+                store = QuantizedVectorStore.create(storePath, vector.length, created -> {
+                });
+                recordByProduct.clear();
+                previous.close();
+            }
+            Integer record = recordByProduct.get(productId);
+            if (record != null) {
+                store.write(record, productId, vector);
+            } else {
+                recordByProduct.put(productId, store.append(productId, vector));
+            }
+        } catch (IOException e) {
+            log.warn("Could not write quantized embedding for product {}: {}", productId, e.getMessage());
+        }
+    }
+
+    private void openStore() {
+        if (store != null || storeDisabled) {
+            return;
+        }
+        try {
+            store = QuantizedVectorStore.open(storePath);
+            for (int record = 0; record < store.count(); record++) {
+                recordByProduct.put(store.key(record), record);
+            }
+            log.info("Quantized embedding store opened at {}: {} records", storePath, recordByProduct.size());
+        } catch (IOException e) {
+            storeDisabled = true;
+            log.warn("Quantized embedding store disabled ({}): {}", storePath, e.getMessage());
+        }
+    }
+
+    public record QuantizationReport(int samples, int dimension, double meanCosine, double minCosine,
+            int pairs, double meanDotError, double maxDotError, int recallQueries, double recallAt10,
+            long floatBytesPerVector, long quantizedBytesPerVector) {
+    }
+}
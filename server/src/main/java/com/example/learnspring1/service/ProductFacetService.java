@@ -0,0 +1,496 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.dto.ProductFacetsDTO;
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.repository.ProductVariantRepository;
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.service.impl.CategoryTreeSnapshot;
+import com.example.learnspring1.utils.TextNormalizer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Facet index trong bộ nhớ cho danh sách sản phẩm.
+ * Mỗi giá trị facet (brand, category, khoảng giá, còn hàng) giữ một RoaringBitmap
+ * các product id; số đếm facet cho một bộ lọc = cardinality của phép giao bitmap.
+ * Index được load lười ở lần gọi đầu tiên và cập nhật theo từng sản phẩm qua
+ * {@link ProductChangedEvent}; event đến khi index đang dựng lại được giữ trong {@code pendingIds}
+ * và áp dụng ngay sau khi dựng xong.
+ */
+@Slf4j
+@Service
+public class ProductFacetService {
+
+    private static final int MAX_BRAND_FACETS = 30;
+
+    private final ProductRepository productRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final CategoryService categoryService;
+    private final CategoryTreeCache categoryTreeCache;
+
+    // Mốc giá tăng dần; bucket i = [bounds[i-1], bounds[i]), bucket cuối không có cận trên
+    private final BigDecimal[] priceBounds;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded = false;
+    // Sản phẩm đã đổi nhưng chưa áp dụng vào index (index chưa load hoặc đang dựng lại)
+    private final Set<Long> pendingIds = ConcurrentHashMap.newKeySet();
+
+    private final Map<Integer, FacetRow> rows = new HashMap<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final RoaringBitmap active = new RoaringBitmap();
+    private final RoaringBitmap featured = new RoaringBitmap();
+    private final RoaringBitmap inStock = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> byBrand = new HashMap<>();
+    private final Map<String, String> brandLabels = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byCategory = new HashMap<>();
+    private final RoaringBitmap[] byPriceBucket;
+
+    public ProductFacetService(ProductRepository productRepository,
+            ProductVariantRepository productVariantRepository,
+            CategoryService categoryService,
+            CategoryTreeCache categoryTreeCache,
+            @Value("${catalog.facets.price-bounds:20000,50000,100000,200000,500000}") String priceBounds) {
+        this.productRepository = productRepository;
+        this.productVariantRepository = productVariantRepository;
+        this.categoryService = categoryService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.priceBounds = Arrays.stream(priceBounds.split(","))
+                .map(String::trim)
+                .filter(v -> !v.isEmpty())
+                .map(BigDecimal::new)
+                .sorted()
+                .toArray(BigDecimal[]::new);
+        this.byPriceBucket = new RoaringBitmap[this.priceBounds.length + 1];
+        for (int i = 0; i < byPriceBucket.length; i++) {
+            byPriceBucket[i] = new RoaringBitmap();
+        }
+    }
+
+    /**
+     * Đếm facet cho tập sản phẩm khớp cùng bộ lọc với
+     * {@link ProductService#getProductsPageWithFilters}.
+     */
+    public ProductFacetsDTO getFacets(Long id, String name, String sku, String brand, Long categoryId,
+            Boolean isFeatured, Boolean isActive, BigDecimal minPrice, BigDecimal maxPrice, String search) {
+        ensureLoaded();
+        List<Long> categoryIds = categoryId != null ? categoryService.getAllDescendantIds(categoryId) : null;
+        CategoryTreeSnapshot tree = categoryTreeCache.get();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matched = id != null
+                    ? filterById(id)
+                    : filter(name, sku, brand, categoryIds, isFeatured, isActive, minPrice, maxPrice, search);
+
+            return ProductFacetsDTO.builder()
+                    .total(matched.getLongCardinality())
+                    .inStockCount(RoaringBitmap.andCardinality(matched, inStock))
+                    .brands(brandFacets(matched))
+                    .categories(categoryFacets(matched, categoryId, tree))
+                    .priceRanges(priceFacets(matched))
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Tương đương: CAST(p.id AS string) LIKE %id% AND p.deletedBy IS NULL
+    private RoaringBitmap filterById(Long id) {
+        String needle = String.valueOf(id);
+        RoaringBitmap result = new RoaringBitmap();
+        IntIterator it = all.getIntIterator();
+        while (it.hasNext()) {
+            int productId = it.next();
+            if (String.valueOf(productId).contains(needle)) {
+                result.add(productId);
+            }
+        }
+        return result;
+    }
+
+    private RoaringBitmap filter(String name, String sku, String brand, List<Long> categoryIds,
+            Boolean isFeatured, Boolean isActive, BigDecimal minPrice, BigDecimal maxPrice, String search) {
+        RoaringBitmap result = all.clone();
+
+        if (isActive != null) {
+            if (isActive) {
+                result.and(active);
+            } else {
+                result.andNot(active);
+            }
+        }
+        if (isFeatured != null) {
+            if (isFeatured) {
+                result.and(featured);
+            } else {
+                result.andNot(featured);
+            }
+        }
+        if (categoryIds != null) {
+            List<RoaringBitmap> parts = new ArrayList<>();
+            for (Long cid : categoryIds) {
+                RoaringBitmap bitmap = byCategory.get(cid);
+                if (bitmap != null) {
+                    parts.add(bitmap);
+                }
+            }
+            result.and(RoaringBitmap.or(parts.iterator()));
+        }
+        if (minPrice != null || maxPrice != null) {
+            result.and(priceRange(minPrice, maxPrice));
+        }
+
+        String nameLc = TextNormalizer.foldCase(name);
+        String skuLc = TextNormalizer.foldCase(sku);
+        String brandLc = TextNormalizer.foldCase(brand);
+        String searchLc = TextNormalizer.foldCase(search);
+        if (nameLc == null && skuLc == null && brandLc == null && searchLc == null) {
+            return result;
+        }
+
+        // Lọc LIKE chỉ chạy trên tập đã thu hẹp bằng bitmap
+        RoaringBitmap textMatched = new RoaringBitmap();
+        IntIterator it = result.getIntIterator();
+        while (it.hasNext()) {
+            int productId = it.next();
+            FacetRow row = rows.get(productId);
+            if (row != null && row.matches(nameLc, skuLc, brandLc, searchLc)) {
+                textMatched.add(productId);
+            }
+        }
+        return textMatched;
+    }
+
+    private RoaringBitmap priceRange(BigDecimal minPrice, BigDecimal maxPrice) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            BigDecimal lower = bucket == 0 ? null : priceBounds[bucket - 1];
+            BigDecimal upper = bucket == priceBounds.length ? null : priceBounds[bucket];
+            boolean belowMin = minPrice != null && upper != null && upper.compareTo(minPrice) <= 0;
+            boolean aboveMax = maxPrice != null && lower != null && lower.compareTo(maxPrice) > 0;
+            if (belowMin || aboveMax) {
+                continue;
+            }
+            boolean fullyInside = (minPrice == null || (lower != null && lower.compareTo(minPrice) >= 0))
+                    && (maxPrice == null || (upper != null && upper.compareTo(maxPrice) <= 0));
+            if (fullyInside) {
+                result.or(byPriceBucket[bucket]);
+                continue;
+            }
+            // Bucket nằm ở biên: kiểm tra giá từng sản phẩm
+            IntIterator it = byPriceBucket[bucket].getIntIterator();
+            while (it.hasNext()) {
+                int productId = it.next();
+                BigDecimal price = rows.get(productId).price;
+                if ((minPrice == null || price.compareTo(minPrice) >= 0)
+                        && (maxPrice == null || price.compareTo(maxPrice) <= 0)) {
+                    result.add(productId);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<ProductFacetsDTO.FacetValue> brandFacets(RoaringBitmap matched) {
+        List<ProductFacetsDTO.FacetValue> result = new ArrayList<>();
+        for (Map.Entry<String, RoaringBitmap> entry : byBrand.entrySet()) {
+            long count = RoaringBitmap.andCardinality(matched, entry.getValue());
+            if (count > 0) {
+                result.add(new ProductFacetsDTO.FacetValue(entry.getKey(), brandLabels.get(entry.getKey()), count));
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return result.size() > MAX_BRAND_FACETS ? new ArrayList<>(result.subList(0, MAX_BRAND_FACETS)) : result;
+    }
+
+    // Đếm theo subtree của các category con trực tiếp (hoặc các root nếu không lọc category)
+    private List<ProductFacetsDTO.FacetValue> categoryFacets(RoaringBitmap matched, Long categoryId,
+            CategoryTreeSnapshot tree) {
+        List<ProductFacetsDTO.FacetValue> result = new ArrayList<>();
+        for (Long childId : tree.getVisibleChildIds(categoryId)) {
+            List<RoaringBitmap> parts = new ArrayList<>();
+            for (Long descendantId : tree.getDescendantIds(childId)) {
+                RoaringBitmap bitmap = byCategory.get(descendantId);
+                if (bitmap != null) {
+                    parts.add(bitmap);
+                }
+            }
+            if (parts.isEmpty()) {
+                continue;
+            }
+            long count = RoaringBitmap.andCardinality(matched, RoaringBitmap.or(parts.iterator()));
+            if (count > 0) {
+                result.add(new ProductFacetsDTO.FacetValue(String.valueOf(childId), tree.getName(childId), count));
+            }
+        }
+        return result;
+    }
+
+    private List<ProductFacetsDTO.FacetValue> priceFacets(RoaringBitmap matched) {
+        List<ProductFacetsDTO.FacetValue> result = new ArrayList<>();
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            long count = RoaringBitmap.andCardinality(matched, byPriceBucket[bucket]);
+            if (count == 0) {
+                continue;
+            }
+            String from = bucket == 0 ? "0" : priceBounds[bucket - 1].toPlainString();
+            String to = bucket == priceBounds.length ? "" : priceBounds[bucket].toPlainString();
+            String key = from + "-" + to;
+            result.add(new ProductFacetsDTO.FacetValue(key, key, count));
+        }
+        return result;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.productId() == null) {
+            return;
+        }
+        // Ghi nhận trước rồi mới xem index đã load chưa: nếu chưa, lần rebuild đang chạy sẽ áp dụng sau khi dựng xong
+        pendingIds.add(event.productId());
+        if (loaded) {
+            applyPending();
+        }
+    }
+
+    // Import hàng loạt: cập nhật từng product sẽ tốn 1 query/product, nên chỉ đánh dấu để dựng lại lười
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        loaded = false;
+    }
+
+    /**
+     * Load lại toàn bộ index (4 query), rồi áp dụng các sản phẩm đổi trong lúc đang load.
+     */
+    public void rebuild() {
+        // Thay đổi trước thời điểm này đã nằm trong dữ liệu sắp đọc
+        pendingIds.clear();
+        List<Object[]> rawRows = productRepository.findFacetRows();
+        Map<Integer, List<Long>> categoriesByProduct = new HashMap<>();
+        for (Object[] pair : productRepository.findProductCategoryPairs()) {
+            categoriesByProduct.computeIfAbsent(((Long) pair[0]).intValue(), k -> new ArrayList<>())
+                    .add((Long) pair[1]);
+        }
+        Set<Long> stocked = new HashSet<>(productVariantRepository.findProductIdsWithStock());
+
+        List<FacetRow> built = new ArrayList<>(rawRows.size());
+        for (Object[] raw : rawRows) {
+            Long productId = (Long) raw[0];
+            built.add(toRow(raw, categoriesByProduct.getOrDefault(productId.intValue(), List.of()),
+                    stocked.contains(productId)));
+        }
+
+        lock.writeLock().lock();
+        try {
+            rows.clear();
+            all.clear();
+            active.clear();
+            featured.clear();
+            inStock.clear();
+            byBrand.clear();
+            brandLabels.clear();
+            byCategory.clear();
+            for (RoaringBitmap bucket : byPriceBucket) {
+                bucket.clear();
+            }
+            for (FacetRow row : built) {
+                addRow(row);
+            }
+            all.runOptimize();
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Facet index loaded with {} products", built.size());
+        applyPending();
+    }
+
+    // Đọc lại từng sản phẩm trong pendingIds (sản phẩm đã xóa hoặc không còn thì bị bỏ khỏi index)
+    private void applyPending() {
+        for (Long productId : pendingIds) {
+            if (!pendingIds.remove(productId)) {
+                continue;
+            }
+            try {
+                FacetRow row = loadRow(productId);
+                lock.writeLock().lock();
+                try {
+                    removeRow(productId.intValue());
+                    if (row != null) {
+                        addRow(row);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (Exception e) {
+                log.warn("Không cập nhật được facet index cho product {}: {}", productId, e.getMessage());
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    private FacetRow loadRow(Long productId) {
+        List<Object[]> raw = productRepository.findFacetRowById(productId);
+        if (raw.isEmpty()) {
+            return null;
+        }
+        return toRow(raw.get(0), productRepository.findCategoryIdsByProductId(productId),
+                productVariantRepository.existsInStockByProductId(productId));
+    }
+
+    private FacetRow toRow(Object[] raw, List<Long> categoryIds, boolean hasStock) {
+        FacetRow row = new FacetRow();
+        row.id = ((Long) raw[0]).intValue();
+        row.name = (String) raw[1];
+        row.sku = (String) raw[2];
+        row.brand = (String) raw[3];
+        row.price = (BigDecimal) raw[4];
+        row.active = Boolean.TRUE.equals(raw[5]);
+        row.featured = Boolean.TRUE.equals(raw[6]);
+        row.categoryIds = categoryIds.stream().mapToLong(Long::longValue).toArray();
+        row.inStock = hasStock;
+        row.nameLc = TextNormalizer.foldCase(row.name);
+        row.skuLc = TextNormalizer.foldCase(row.sku);
+        row.brandLc = TextNormalizer.foldCase(row.brand);
+        return row;
+    }
+
+    // Phải giữ write lock khi gọi
+    private void addRow(FacetRow row) {
+        rows.put(row.id, row);
+        all.add(row.id);
+        if (row.active) {
+            active.add(row.id);
+        }
+        if (row.featured) {
+            featured.add(row.id);
+        }
+        if (row.inStock) {
+            inStock.add(row.id);
+        }
+        String brandKey = brandKey(row.brand);
+        if (brandKey != null) {
+            byBrand.computeIfAbsent(brandKey, k -> new RoaringBitmap()).add(row.id);
+            brandLabels.putIfAbsent(brandKey, row.brand.trim());
+        }
+        for (long categoryId : row.categoryIds) {
+            byCategory.computeIfAbsent(categoryId, k -> new RoaringBitmap()).add(row.id);
+        }
+        if (row.price != null) {
+            byPriceBucket[bucketOf(row.price)].add(row.id);
+        }
+    }
+
+    // Phải giữ write lock khi gọi
+    private void removeRow(int productId) {
+        FacetRow row = rows.remove(productId);
+        if (row == null) {
+            return;
+        }
+        all.remove(productId);
+        active.remove(productId);
+        featured.remove(productId);
+        inStock.remove(productId);
+        String brandKey = brandKey(row.brand);
+        if (brandKey != null) {
+            RoaringBitmap bitmap = byBrand.get(brandKey);
+            if (bitmap != null) {
+                bitmap.remove(productId);
+                if (bitmap.isEmpty()) {
+                    byBrand.remove(brandKey);
+                    brandLabels.remove(brandKey);
+                }
+            }
+        }
+        for (long categoryId : row.categoryIds) {
+            RoaringBitmap bitmap = byCategory.get(categoryId);
+            if (bitmap != null) {
+                bitmap.remove(productId);
+            }
+        }
+        for (RoaringBitmap bucket : byPriceBucket) {
+            bucket.remove(productId);
+        }
+    }
+
+    private int bucketOf(BigDecimal price) {
+        int bucket = 0;
+        while (bucket < priceBounds.length && price.compareTo(priceBounds[bucket]) >= 0) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String brandKey(String brand) {
+        if (brand == null || brand.isBlank()) {
+            return null;
+        }
+        return TextNormalizer.foldCase(brand.trim());
+    }
+
+    private static final class FacetRow {
+        int id;
+        String name;
+        String sku;
+        String brand;
+        String nameLc;
+        String skuLc;
+        String brandLc;
+        BigDecimal price;
+        boolean active;
+        boolean featured;
+        boolean inStock;
+        long[] categoryIds;
+
+        // Tương đương các điều kiện LIKE %x% trong findProductsWithFiltersPaged: hai vế đều qua
+        // TextNormalizer.foldCase như collation không phân biệt hoa thường/dấu của DB
+        boolean matches(String name, String sku, String brand, String search) {
+            if (name != null && (nameLc == null || !nameLc.contains(name))) {
+                return false;
+            }
+            if (sku != null && (skuLc == null || !skuLc.contains(sku))) {
+                return false;
+            }
+            if (brand != null && (brandLc == null || !brandLc.contains(brand))) {
+                return false;
+            }
+            if (search != null) {
+                return (nameLc != null && nameLc.contains(search))
+                        || (skuLc != null && skuLc.contains(search))
+                        || (brandLc != null && brandLc.contains(search))
+                        || String.valueOf(id).contains(search);
+            }
+            return true;
+        }
+    }
+}
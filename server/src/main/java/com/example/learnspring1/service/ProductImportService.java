@@ -0,0 +1,692 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.Category;
+import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.domain.dto.ProductImportResponse;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.repository.CategoryRepository;
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.repository.ProductVariantRepository;
+import com.example.learnspring1.utils.SecurityUtil;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Import sản phẩm hàng loạt từ file JSON/CSV.
+ * File được đọc dạng streaming theo từng lô (chunk): mỗi lô được validate song song,
+ * category lấy từ map nạp sẵn, rồi product/variant/category/ảnh được ghi bằng JDBC batch
+ * trong một transaction riêng. Bộ nhớ chỉ phụ thuộc kích thước lô, không phụ thuộc kích thước file.
+ *
+ * JSON nhận cả định dạng của scraper ({@code base_name}, {@code category_id}, {@code variants[]})
+ * lẫn định dạng của {@code POST /products} ({@code name}, {@code categoryIds}, ...).
+ */
+@Slf4j
+@Service
+public class ProductImportService {
+
+    public enum Format {
+        JSON,
+        CSV
+    }
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final String INSERT_PRODUCT = "INSERT INTO products (name, description, price, discount_price, "
+            + "sku, brand, color, size, weight, dimensions, specifications, thumbnail_url, is_active, is_featured, "
+            + "created_at, updated_at, created_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_VARIANT = "INSERT INTO product_variants (product_id, variant_type, "
+            + "variant_value, color_code, image_url, price, stock_quantity, sku, sort_order, is_default, is_active, "
+            + "created_at, updated_at, created_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_PRODUCT_CATEGORY = "INSERT INTO product_categories (product_id, category_id) "
+            + "VALUES (?, ?)";
+    private static final String INSERT_IMAGE = "INSERT INTO product_images (product_id, image_url, sort_order, "
+            + "is_primary, created_at, updated_at, created_by) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductRepository productRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final CategoryRepository categoryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public ProductImportService(JdbcTemplate jdbcTemplate,
+            ProductRepository productRepository,
+            ProductVariantRepository productVariantRepository,
+            CategoryRepository categoryRepository,
+            ApplicationEventPublisher eventPublisher,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${catalog.import.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productRepository = productRepository;
+        this.productVariantRepository = productVariantRepository;
+        this.categoryRepository = categoryRepository;
+        this.eventPublisher = eventPublisher;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Đoán định dạng từ tên file; mặc định JSON.
+     */
+    public static Format detectFormat(String filename, String contentType) {
+        String name = filename != null ? filename.toLowerCase(Locale.ROOT) : "";
+        String type = contentType != null ? contentType.toLowerCase(Locale.ROOT) : "";
+        if (name.endsWith(".csv") || type.contains("csv")) {
+            return Format.CSV;
+        }
+        return Format.JSON;
+    }
+
+    public ProductImportResponse importProducts(InputStream input, Format format) {
+        CategoryLookup categories = loadCategories();
+        String user = SecurityUtil.getCurrentUserLogin().orElse("system");
+        Report report = new Report();
+
+        try (RowSource source = format == Format.CSV ? new CsvRowSource(input) : new JsonRowSource(input)) {
+            List<RawRow> chunk = new ArrayList<>(chunkSize);
+            RawRow raw;
+            while ((raw = source.next()) != null) {
+                chunk.add(raw);
+                if (chunk.size() >= chunkSize) {
+                    processChunk(chunk, categories, user, report);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, categories, user, report);
+            }
+        } catch (IOException e) {
+            // File hỏng giữa chừng: các lô trước đó đã được ghi, báo lỗi tại vị trí đang đọc
+            report.error(report.total + 1, null, null, "Không đọc được file: " + e.getMessage());
+            report.total++;
+        }
+
+        log.info("Product import finished: {} rows, {} imported, {} failed", report.total, report.success,
+                report.failed);
+        return report.toResponse();
+    }
+
+    private void processChunk(List<RawRow> chunk, CategoryLookup categories, String user, Report report) {
+        report.total += chunk.size();
+
+        // Validate song song: mỗi dòng độc lập, map category chỉ đọc
+        List<Parsed> parsed = chunk.parallelStream()
+                .map(raw -> parse(raw, categories))
+                .toList();
+
+        List<ImportRecord> valid = new ArrayList<>(parsed.size());
+        Set<String> chunkSkus = new HashSet<>();
+        Set<String> chunkVariantSkus = new HashSet<>();
+        for (Parsed p : parsed) {
+            if (p.error() != null) {
+                report.error(p.row(), p.sku(), p.name(), p.error());
+            } else if (p.record().sku() != null && chunkSkus.contains(p.record().sku())) {
+                report.error(p.row(), p.sku(), p.name(), "SKU bị trùng trong file");
+            } else {
+                List<String> rowVariantSkus = variantSkus(p.record());
+                String duplicate = firstDuplicate(rowVariantSkus, chunkVariantSkus);
+                if (duplicate != null) {
+                    report.error(p.row(), p.sku(), p.name(), "SKU variant bị trùng trong file: " + duplicate);
+                    continue;
+                }
+                if (p.record().sku() != null) {
+                    chunkSkus.add(p.record().sku());
+                }
+                chunkVariantSkus.addAll(rowVariantSkus);
+                valid.add(p.record());
+            }
+        }
+
+        // SKU trùng với dữ liệu đã có (kể cả các lô đã import trước đó): 1 query cho cả lô
+        if (!chunkSkus.isEmpty()) {
+            Set<String> existing = new HashSet<>(productRepository.findExistingSkus(chunkSkus));
+            if (!existing.isEmpty()) {
+                List<ImportRecord> remaining = new ArrayList<>(valid.size());
+                for (ImportRecord record : valid) {
+                    if (record.sku() != null && existing.contains(record.sku())) {
+                        report.error(record.row(), record.sku(), record.name(), "SKU đã tồn tại");
+                    } else {
+                        remaining.add(record);
+                    }
+                }
+                valid = remaining;
+            }
+        }
+
+        // Tương tự với SKU variant: 1 dòng trùng chỉ làm hỏng dòng đó, không làm rollback cả lô
+        if (!chunkVariantSkus.isEmpty() && !valid.isEmpty()) {
+            Set<String> existing = new HashSet<>(productVariantRepository.findExistingSkus(chunkVariantSkus));
+            if (!existing.isEmpty()) {
+                List<ImportRecord> remaining = new ArrayList<>(valid.size());
+                for (ImportRecord record : valid) {
+                    String taken = variantSkus(record).stream().filter(existing::contains).findFirst().orElse(null);
+                    if (taken != null) {
+                        report.error(record.row(), record.sku(), record.name(), "SKU variant đã tồn tại: " + taken);
+                    } else {
+                        remaining.add(record);
+                    }
+                }
+                valid = remaining;
+            }
+        }
+
+        if (valid.isEmpty()) {
+            return;
+        }
+        List<ImportRecord> toWrite = valid;
+        try {
+            List<Long> ids = transactionTemplate.execute(status -> writeChunk(toWrite, user));
+            report.success += toWrite.size();
+            eventPublisher.publishEvent(new ProductsImportedEvent(ids));
+        } catch (RuntimeException e) {
+            log.warn("Import chunk of {} products failed: {}", toWrite.size(), e.getMessage());
+            for (ImportRecord record : toWrite) {
+                report.error(record.row(), record.sku(), record.name(), "Lỗi ghi dữ liệu: " + rootMessage(e));
+            }
+        }
+    }
+
+    // Ghi cả lô bằng JDBC batch: products (lấy id sinh ra) -> variants -> category -> ảnh
+    private List<Long> writeChunk(List<ImportRecord> records, String user) {
+        Timestamp now = Timestamp.from(Instant.now());
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                con -> con.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ImportRecord r = records.get(i);
+                        ps.setString(1, r.name());
+                        ps.setString(2, r.description());
+                        ps.setBigDecimal(3, r.price());
+                        ps.setBigDecimal(4, r.discountPrice());
+                        ps.setString(5, r.sku());
+                        ps.setString(6, r.brand());
+                        ps.setString(7, r.color());
+                        ps.setString(8, r.size());
+                        ps.setString(9, r.weight());
+                        ps.setString(10, r.dimensions());
+                        ps.setString(11, r.specifications());
+                        ps.setString(12, r.thumbnailUrl());
+                        ps.setBoolean(13, r.isActive());
+                        ps.setBoolean(14, r.isFeatured());
+                        ps.setTimestamp(15, now);
+                        ps.setTimestamp(16, now);
+                        ps.setString(17, user);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return records.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != records.size()) {
+            throw new IllegalStateException("Số id sinh ra (" + keys.size() + ") không khớp số sản phẩm ("
+                    + records.size() + ")");
+        }
+        List<Long> ids = new ArrayList<>(records.size());
+        for (Map<String, Object> key : keys) {
+            ids.add(((Number) key.values().iterator().next()).longValue());
+        }
+
+        List<Object[]> variantRows = new ArrayList<>();
+        List<Object[]> categoryRows = new ArrayList<>();
+        List<Object[]> imageRows = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            ImportRecord r = records.get(i);
+            Long productId = ids.get(i);
+            List<VariantRecord> variants = r.variants().isEmpty() ? List.of(defaultVariant(r)) : r.variants();
+            for (int v = 0; v < variants.size(); v++) {
+                VariantRecord variant = variants.get(v);
+                String sku = variant.sku() != null ? variant.sku() : defaultVariantSku(r, productId, v, variants.size());
+                BigDecimal price = variant.price() != null ? variant.price() : defaultVariant(r).price();
+                variantRows.add(new Object[] { productId, variant.type().name(), variant.value(), variant.colorCode(),
+                        variant.imageUrl(), price, variant.stockQuantity(), sku, v + 1, v == 0, true,
+                        now, now, user });
+            }
+            for (Long categoryId : r.categoryIds()) {
+                categoryRows.add(new Object[] { productId, categoryId });
+            }
+            if (r.thumbnailUrl() != null) {
+                imageRows.add(new Object[] { productId, r.thumbnailUrl(), 1, true, now, now, user });
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_VARIANT, variantRows, new int[] { Types.BIGINT, Types.VARCHAR,
+                Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DECIMAL, Types.INTEGER, Types.VARCHAR,
+                Types.INTEGER, Types.BOOLEAN, Types.BOOLEAN, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR });
+        if (!categoryRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT_CATEGORY, categoryRows);
+        }
+        if (!imageRows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_IMAGE, imageRows, new int[] { Types.BIGINT, Types.VARCHAR,
+                    Types.INTEGER, Types.BOOLEAN, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR });
+        }
+        return ids;
+    }
+
+    // Giống ProductVariantSync.createDefault: giá ưu tiên discountPrice, tồn kho 0
+    private static VariantRecord defaultVariant(ImportRecord r) {
+        BigDecimal price = r.discountPrice() != null ? r.discountPrice()
+                : (r.price() != null ? r.price() : BigDecimal.ZERO);
+        return new VariantRecord(VariantType.OTHER, "Default", null, r.thumbnailUrl(), price, 0, null);
+    }
+
+    // SKU variant biết trước khi ghi (cùng quy tắc với writeChunk): SKU khai báo, hoặc SKU sinh từ SKU sản phẩm.
+    // SKU sinh từ id sản phẩm ("SKU-<id>") chỉ có sau khi insert nên không kiểm tra trước được.
+    private static List<String> variantSkus(ImportRecord r) {
+        List<VariantRecord> variants = r.variants().isEmpty() ? List.of(defaultVariant(r)) : r.variants();
+        List<String> skus = new ArrayList<>(variants.size());
+        for (int v = 0; v < variants.size(); v++) {
+            VariantRecord variant = variants.get(v);
+            if (variant.sku() != null) {
+                skus.add(variant.sku());
+            } else if (r.sku() != null) {
+                skus.add(defaultVariantSku(r, null, v, variants.size()));
+            }
+        }
+        return skus;
+    }
+
+    // SKU đầu tiên bị trùng trong chính dòng đó hoặc với các dòng trước của lô
+    private static String firstDuplicate(List<String> rowSkus, Set<String> seen) {
+        Set<String> inRow = new HashSet<>();
+        for (String sku : rowSkus) {
+            if (seen.contains(sku) || !inRow.add(sku)) {
+                return sku;
+            }
+        }
+        return null;
+    }
+
+    private static String defaultVariantSku(ImportRecord r, Long productId, int index, int count) {
+        String base = r.sku() != null ? r.sku() : "SKU-" + productId;
+        return count == 1 ? base : base + "-" + (index + 1);
+    }
+
+    // ---------------------------------------------------------------- parse + validate
+
+    private Parsed parse(RawRow raw, CategoryLookup categories) {
+        JsonNode node = raw.node();
+        String name = text(node, "name", "base_name");
+        String sku = text(node, "sku");
+        try {
+            List<String> errors = new ArrayList<>();
+            if (name == null) {
+                errors.add("name is required");
+            } else if (name.length() > 200) {
+                errors.add("name dài quá 200 ký tự");
+            }
+            checkLength(errors, "sku", sku, 100);
+            String brand = text(node, "brand");
+            checkLength(errors, "brand", brand, 150);
+            String color = text(node, "color");
+            checkLength(errors, "color", color, 100);
+            String size = text(node, "size");
+            checkLength(errors, "size", size, 50);
+            String weight = text(node, "weight");
+            checkLength(errors, "weight", weight, 50);
+            String dimensions = text(node, "dimensions");
+            checkLength(errors, "dimensions", dimensions, 100);
+
+            List<VariantRecord> variants = parseVariants(node.get("variants"), errors);
+            BigDecimal price = decimal(node, errors, "price");
+            BigDecimal discountPrice = decimal(node, errors, "discountPrice", "discount_price");
+            String thumbnailUrl = text(node, "thumbnailUrl", "thumbnail_url");
+            // Định dạng scraper không có giá/ảnh ở cấp product: lấy từ variant đầu tiên
+            if (!variants.isEmpty()) {
+                JsonNode first = node.get("variants").get(0);
+                if (price == null) {
+                    price = variants.get(0).price();
+                }
+                if (discountPrice == null) {
+                    discountPrice = decimal(first, errors, "discountPrice", "discount_price");
+                }
+                if (thumbnailUrl == null) {
+                    thumbnailUrl = variants.get(0).imageUrl();
+                }
+            }
+            if (price != null && price.signum() < 0) {
+                errors.add("price không được âm");
+            }
+
+            List<Long> categoryIds = resolveCategories(node, categories, errors);
+
+            if (!errors.isEmpty()) {
+                return Parsed.failed(raw.row(), sku, name, String.join("; ", errors));
+            }
+            return Parsed.ok(new ImportRecord(raw.row(), name, text(node, "description"), price, discountPrice,
+                    sku, brand, color, size, weight, dimensions, text(node, "specifications"), thumbnailUrl,
+                    bool(node, true, "isActive", "is_active"), bool(node, false, "isFeatured", "is_featured"),
+                    categoryIds, variants));
+        } catch (RuntimeException e) {
+            return Parsed.failed(raw.row(), sku, name, e.getMessage());
+        }
+    }
+
+    private List<VariantRecord> parseVariants(JsonNode variantsNode, List<String> errors) {
+        if (variantsNode == null || !variantsNode.isArray() || variantsNode.isEmpty()) {
+            return List.of();
+        }
+        List<VariantRecord> variants = new ArrayList<>(variantsNode.size());
+        int index = 0;
+        for (JsonNode v : variantsNode) {
+            index++;
+            String typeText = text(v, "variantType", "variant_type");
+            VariantType type = VariantType.OTHER;
+            if (typeText != null) {
+                try {
+                    type = VariantType.valueOf(typeText.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    errors.add("variant " + index + ": variantType không hợp lệ '" + typeText + "'");
+                }
+            }
+            String value = text(v, "variantValue", "variant_value");
+            if (value == null) {
+                value = "Default";
+            } else if (value.length() > 200) {
+                errors.add("variant " + index + ": variantValue dài quá 200 ký tự");
+            }
+            String colorCode = text(v, "colorCode", "color_code");
+            if (colorCode != null && colorCode.length() > 7) {
+                errors.add("variant " + index + ": colorCode dài quá 7 ký tự");
+            }
+            String variantSku = text(v, "sku");
+            if (variantSku != null && variantSku.length() > 100) {
+                errors.add("variant " + index + ": sku dài quá 100 ký tự");
+            }
+            BigDecimal price = decimal(v, errors, "price");
+            if (price != null && price.signum() < 0) {
+                errors.add("variant " + index + ": price không được âm");
+            }
+            Integer stock = integer(v, errors, "stockQuantity", "stock_quantity");
+            variants.add(new VariantRecord(type, value, colorCode, text(v, "imageUrl", "image_url"),
+                    price, stock != null ? stock : 0, variantSku));
+        }
+        return variants;
+    }
+
+    private static List<Long> resolveCategories(JsonNode node, CategoryLookup categories, List<String> errors) {
+        Set<Long> ids = new LinkedHashSet<>();
+        List<String> requestedIds = new ArrayList<>();
+        JsonNode list = node.get("categoryIds");
+        if (list != null && list.isArray()) {
+            list.forEach(n -> requestedIds.add(n.asText()));
+        } else {
+            // CSV: "1|2|3"; scraper: category_id đơn
+            String joined = text(node, "categoryIds", "category_ids", "category_id", "categoryId");
+            if (joined != null) {
+                for (String part : joined.split("[|;,]")) {
+                    if (!part.isBlank()) {
+                        requestedIds.add(part.trim());
+                    }
+                }
+            }
+        }
+        for (String value : requestedIds) {
+            Long id;
+            try {
+                id = Long.valueOf(value);
+            } catch (NumberFormatException e) {
+                errors.add("categoryId không hợp lệ '" + value + "'");
+                continue;
+            }
+            if (categories.ids().contains(id)) {
+                ids.add(id);
+            } else {
+                errors.add("Không tìm thấy category " + id);
+            }
+        }
+        String names = text(node, "categoryNames", "category_names", "category");
+        if (names != null) {
+            for (String part : names.split("[|;]")) {
+                if (part.isBlank()) {
+                    continue;
+                }
+                Long id = categories.idsByName().get(part.trim().toLowerCase(Locale.ROOT));
+                if (id != null) {
+                    ids.add(id);
+                } else {
+                    errors.add("Không tìm thấy category '" + part.trim() + "'");
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private CategoryLookup loadCategories() {
+        Set<Long> ids = new HashSet<>();
+        Map<String, Long> idsByName = new HashMap<>();
+        for (Category category : categoryRepository.findAll()) {
+            if (category.getDeletedBy() != null) {
+                continue;
+            }
+            ids.add(category.getId());
+            if (category.getName() != null) {
+                idsByName.putIfAbsent(category.getName().trim().toLowerCase(Locale.ROOT), category.getId());
+            }
+        }
+        return new CategoryLookup(ids, idsByName);
+    }
+
+    private static void checkLength(List<String> errors, String field, String value, int max) {
+        if (value != null && value.length() > max) {
+            errors.add(field + " dài quá " + max + " ký tự");
+        }
+    }
+
+    private static String text(JsonNode node, String... fields) {
+        for (String field : fields) {
+            JsonNode value = node.get(field);
+            if (value != null && !value.isNull() && !value.isContainerNode()) {
+                String text = value.asText().trim();
+                if (!text.isEmpty()) {
+                    return text;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static BigDecimal decimal(JsonNode node, List<String> errors, String... fields) {
+        String text = text(node, fields);
+        if (text == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            errors.add(fields[0] + " không phải số '" + text + "'");
+            return null;
+        }
+    }
+
+    private static Integer integer(JsonNode node, List<String> errors, String... fields) {
+        String text = text(node, fields);
+        if (text == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(text).intValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            errors.add(fields[0] + " không phải số nguyên '" + text + "'");
+            return null;
+        }
+    }
+
+    private static boolean bool(JsonNode node, boolean defaultValue, String... fields) {
+        String text = text(node, fields);
+        if (text == null) {
+            return defaultValue;
+        }
+        return "true".equalsIgnoreCase(text) || "1".equals(text) || "yes".equalsIgnoreCase(text);
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    // ---------------------------------------------------------------- sources
+
+    private interface RowSource extends Closeable {
+        // null khi hết dữ liệu
+        RawRow next() throws IOException;
+    }
+
+    // Duyệt mảng JSON top-level, mỗi lần chỉ dựng cây cho một phần tử
+    private final class JsonRowSource implements RowSource {
+        private final JsonParser parser;
+        private int row;
+
+        JsonRowSource(InputStream input) throws IOException {
+            this.parser = objectMapper.getFactory().createParser(input);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("File JSON phải là một mảng sản phẩm");
+            }
+        }
+
+        @Override
+        public RawRow next() throws IOException {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return null;
+            }
+            row++;
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return new RawRow(row, objectMapper.createObjectNode());
+            }
+            return new RawRow(row, objectMapper.readTree(parser));
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    // CSV có dòng header; mỗi dòng được chuyển thành ObjectNode để dùng chung logic với JSON
+    private final class CsvRowSource implements RowSource {
+        private final MappingIterator<Map<String, String>> iterator;
+        private int row;
+
+        CsvRowSource(InputStream input) throws IOException {
+            CsvMapper csvMapper = new CsvMapper();
+            CsvSchema schema = CsvSchema.emptySchema().withHeader();
+            this.iterator = csvMapper.readerForMapOf(String.class).with(schema).readValues(input);
+        }
+
+        @Override
+        public RawRow next() throws IOException {
+            if (!iterator.hasNextValue()) {
+                return null;
+            }
+            row++;
+            Map<String, String> values = iterator.nextValue();
+            ObjectNode node = objectMapper.createObjectNode();
+            values.forEach((key, value) -> node.put(key.trim(), value));
+            return new RawRow(row, node);
+        }
+
+        @Override
+        public void close() throws IOException {
+            iterator.close();
+        }
+    }
+
+    // ---------------------------------------------------------------- records
+
+    private record RawRow(int row, JsonNode node) {
+    }
+
+    private record CategoryLookup(Set<Long> ids, Map<String, Long> idsByName) {
+    }
+
+    private record VariantRecord(VariantType type, String value, String colorCode, String imageUrl,
+            BigDecimal price, int stockQuantity, String sku) {
+    }
+
+    private record ImportRecord(int row, String name, String description, BigDecimal price,
+            BigDecimal discountPrice, String sku, String brand, String color, String size, String weight,
+            String dimensions, String specifications, String thumbnailUrl, boolean isActive, boolean isFeatured,
+            List<Long> categoryIds, List<VariantRecord> variants) {
+    }
+
+    private record Parsed(int row, String sku, String name, ImportRecord record, String error) {
+        static Parsed ok(ImportRecord record) {
+            return new Parsed(record.row(), record.sku(), record.name(), record, null);
+        }
+
+        static Parsed failed(int row, String sku, String name, String error) {
+            return new Parsed(row, sku, name, null, error);
+        }
+    }
+
+    private static final class Report {
+        private int total;
+        private int success;
+        private int failed;
+        private final List<ProductImportResponse.RowError> errors = new ArrayList<>();
+
+        void error(int row, String sku, String name, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ProductImportResponse.RowError(row, sku, name, message));
+            }
+        }
+
+        ProductImportResponse toResponse() {
+            String message = "Đã import " + success + "/" + total + " sản phẩm";
+            return new ProductImportResponse(total, success, failed, errors, failed > errors.size(), message);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.service.impl.CategoryTreeSnapshot;
+import com.example.learnspring1.utils.TextNormalizer;
+import com.example.learnspring1.utils.collection.Bm25Index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Tìm kiếm từ khóa chấm điểm BM25 trên tên và thương hiệu (không dấu) của sản phẩm đang bán.
+ * Dựng từ {@link ProductSearchRows} trong bộ nhớ, không query database khi tìm;
+ * được dựng lại theo chu kỳ ngắn khi nội dung nguồn đổi (số đã bán không ảnh hưởng điểm BM25).
+ */
+@Slf4j
+@Component
+public class ProductLexicalIndex {
+
+    private final ProductSearchRows productSearchRows;
+    private final CategoryTreeCache categoryTreeCache;
+
+    private volatile Snapshot snapshot;
+
+    public ProductLexicalIndex(ProductSearchRows productSearchRows, CategoryTreeCache categoryTreeCache) {
+        this.productSearchRows = productSearchRows;
+        this.categoryTreeCache = categoryTreeCache;
+    }
+
+    /**
+     * Id sản phẩm theo điểm BM25 giảm dần, chỉ trong category và các category con nếu có.
+     */
+    public List<Long> search(String query, Long categoryId, int k) {
+        List<String> terms = TextNormalizer.tokens(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        Snapshot current = current();
+        List<Long> ids = new ArrayList<>(k);
+        for (Bm25Index.Hit hit : current.index.search(terms, k, categoryFilter(current, categoryId))) {
+            ids.add(current.rows[hit.doc()].id());
+        }
+        return ids;
+    }
+
+    @Scheduled(fixedDelayString = "${search.lexical.rebuild-delay-ms:2000}")
+    public void rebuildIfChanged() {
+        Snapshot current = snapshot;
+        if (current != null && current.version != productSearchRows.contentVersion()) {
+            snapshot = build();
+        }
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = build();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot build() {
+        long started = System.nanoTime();
+        // Đọc version trước snapshot: thay đổi xen giữa sẽ khiến lần chạy sau dựng lại
+        long version = productSearchRows.contentVersion();
+        ProductSearchRows.Row[] rows = productSearchRows.snapshot();
+        Bm25Index.Builder builder = Bm25Index.builder(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            List<String> terms = new ArrayList<>(TextNormalizer.tokens(rows[i].name()));
+            terms.addAll(TextNormalizer.tokens(rows[i].brand()));
+            builder.add(i, terms);
+        }
+        Bm25Index index = builder.build();
+        log.debug("BM25 index rebuilt: {} products, {} terms in {} ms", rows.length, index.termCount(),
+                (System.nanoTime() - started) / 1_000_000);
+        return new Snapshot(rows, index, version);
+    }
+
+    private IntPredicate categoryFilter(Snapshot current, Long categoryId) {
+        if (categoryId == null) {
+            return null;
+        }
+        CategoryTreeSnapshot tree = categoryTreeCache.get();
+        return doc -> {
+            for (long category : current.rows[doc].categoryIds()) {
+                if (tree.isAncestorOrSelf(categoryId, category)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private record Snapshot(ProductSearchRows.Row[] rows, Bm25Index index, long version) {
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.CategoryTreeChangedEvent;
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.event.ReviewChangedEvent;
+import com.example.learnspring1.repository.OrderItemRepository;
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.service.impl.CategoryTreeSnapshot;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Duy trì bảng đọc {@code product_listing} (xem {@link com.example.learnspring1.domain.ProductListing}).
+ * Mỗi lần cập nhật tính lại cả dòng từ bảng gốc bằng một câu INSERT ... SELECT ... ON DUPLICATE KEY UPDATE
+ * theo lô id, nên event lặp hoặc đến trễ không làm lệch dữ liệu. Chạy sau commit, ngoài transaction nghiệp vụ;
+ * nếu một lần cập nhật lỗi thì dòng đó cũ cho tới event kế tiếp hoặc lần rebuild.
+ */
+@Slf4j
+@Component
+public class ProductListingProjector {
+
+    private static final String PATH_SEPARATOR = " > ";
+    private static final int MAX_PATH_LENGTH = 500;
+
+    // {ids} được thay bằng điều kiện theo id (IN danh sách hoặc BETWEEN khoảng)
+    private static final String UPSERT_TEMPLATE = """
+            INSERT INTO product_listing (product_id, name, sku, brand, price, discount_price, min_price, max_price,
+                total_stock, has_stock, sold_count, avg_rating, review_count, primary_category_id,
+                is_active, is_featured, created_at, updated_at, refreshed_at)
+            SELECT p.id, p.name, p.sku, p.brand, p.price, p.discount_price,
+                COALESCE(v.min_price, p.discount_price, p.price),
+                COALESCE(v.max_price, p.discount_price, p.price),
+                COALESCE(v.total_stock, 0), COALESCE(v.has_stock, 0), p.sold_count,
+                COALESCE(r.avg_rating, 0), COALESCE(r.review_count, 0), pc.category_id,
+                p.is_active, p.is_featured, p.created_at, p.updated_at, NOW(6)
+            FROM products p
+            LEFT JOIN (SELECT product_id, MIN(price) AS min_price, MAX(price) AS max_price,
+                    SUM(COALESCE(stock_quantity, 0)) AS total_stock, MAX(stock_quantity > 0) AS has_stock
+                FROM product_variants
+                WHERE is_active = 1 AND deleted_by IS NULL AND product_id {ids}
+                GROUP BY product_id) v ON v.product_id = p.id
+            LEFT JOIN (SELECT product_id, ROUND(AVG(rating), 2) AS avg_rating, COUNT(*) AS review_count
+                FROM product_reviews
+                WHERE is_active = 1 AND deleted_by IS NULL AND product_id {ids}
+                GROUP BY product_id) r ON r.product_id = p.id
+            LEFT JOIN (SELECT product_id, MIN(category_id) AS category_id
+                FROM product_categories
+                WHERE product_id {ids}
+                GROUP BY product_id) pc ON pc.product_id = p.id
+            WHERE p.deleted_by IS NULL AND p.id {ids}
+            ON DUPLICATE KEY UPDATE name = VALUES(name), sku = VALUES(sku), brand = VALUES(brand),
+                price = VALUES(price), discount_price = VALUES(discount_price),
+                min_price = VALUES(min_price), max_price = VALUES(max_price),
+                total_stock = VALUES(total_stock), has_stock = VALUES(has_stock),
+                sold_count = VALUES(sold_count), avg_rating = VALUES(avg_rating),
+                review_count = VALUES(review_count), primary_category_id = VALUES(primary_category_id),
+                is_active = VALUES(is_active), is_featured = VALUES(is_featured),
+                created_at = VALUES(created_at), updated_at = VALUES(updated_at),
+                refreshed_at = VALUES(refreshed_at)
+            """;
+
+    private static final String UPSERT_BY_IDS = UPSERT_TEMPLATE.replace("{ids}", "IN (:ids)");
+    private static final String UPSERT_BY_RANGE = UPSERT_TEMPLATE.replace("{ids}", "BETWEEN :fromId AND :toId");
+
+    // Product đã bị xóa (mềm hoặc cứng) thì bỏ khỏi bảng đọc
+    private static final String DELETE_GONE_BY_IDS = "DELETE FROM product_listing WHERE product_id IN (:ids) "
+            + "AND NOT EXISTS (SELECT 1 FROM products p WHERE p.id = product_listing.product_id AND p.deleted_by IS NULL)";
+    private static final String DELETE_GONE_ALL = "DELETE FROM product_listing "
+            + "WHERE NOT EXISTS (SELECT 1 FROM products p WHERE p.id = product_listing.product_id AND p.deleted_by IS NULL)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final OrderItemRepository orderItemRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final int rebuildChunkSize;
+
+    public ProductListingProjector(NamedParameterJdbcTemplate jdbcTemplate,
+            OrderItemRepository orderItemRepository,
+            CategoryTreeCache categoryTreeCache,
+            @Value("${catalog.listing.rebuild-chunk-size:2000}") int rebuildChunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderItemRepository = orderItemRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.rebuildChunkSize = Math.max(100, rebuildChunkSize);
+    }
+
+    /**
+     * Tính lại các dòng của những product này (thêm, sửa, hoặc xóa nếu product không còn).
+     */
+    public void refresh(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", ids);
+        jdbcTemplate.update(UPSERT_BY_IDS, params);
+        jdbcTemplate.update(DELETE_GONE_BY_IDS, params);
+        updateCategoryPaths(ids);
+    }
+
+    /**
+     * Dựng lại toàn bộ bảng đọc từ bảng gốc, theo từng khoảng id để mỗi câu lệnh giữ khóa ngắn.
+     * Bảng vẫn phục vụ đọc trong lúc dựng (dòng cũ được ghi đè tại chỗ).
+     *
+     * @return số product đang có trong bảng đọc sau khi dựng
+     */
+    public synchronized long rebuildAll() {
+        long started = System.currentTimeMillis();
+        jdbcTemplate.getJdbcTemplate().update(DELETE_GONE_ALL);
+
+        Map<String, Object> bounds = jdbcTemplate.getJdbcTemplate()
+                .queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM products");
+        Number minId = (Number) bounds.get("min_id");
+        Number maxId = (Number) bounds.get("max_id");
+        if (minId != null && maxId != null) {
+            for (long from = minId.longValue(); from <= maxId.longValue(); from += rebuildChunkSize) {
+                jdbcTemplate.update(UPSERT_BY_RANGE, new MapSqlParameterSource()
+                        .addValue("fromId", from)
+                        .addValue("toId", from + rebuildChunkSize - 1));
+            }
+        }
+        updateAllCategoryPaths();
+
+        Long rows = jdbcTemplate.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM product_listing", Long.class);
+        log.info("Rebuilt product_listing with {} rows in {} ms", rows, System.currentTimeMillis() - started);
+        return rows != null ? rows : 0L;
+    }
+
+    // Lần chạy đầu (bảng vừa tạo, rỗng): dựng toàn bộ để /advanced có dữ liệu ngay
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        try {
+            Long rows = jdbcTemplate.getJdbcTemplate()
+                    .queryForObject("SELECT COUNT(*) FROM product_listing", Long.class);
+            if (rows == null || rows == 0) {
+                rebuildAll();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not initialize product_listing: {}", e.getMessage());
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        safeRefresh(List.of(event.productId()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        safeRefresh(event.productIds());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onReviewChanged(ReviewChangedEvent event) {
+        safeRefresh(List.of(event.productId()));
+    }
+
+    // sold_count đã được SoldCountService cập nhật trong cùng transaction; tồn kho đi qua ProductChangedEvent
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (event.soldDirection() == 0 || event.orderId() == null) {
+            return;
+        }
+        List<Long> productIds = new ArrayList<>();
+        for (Object[] row : orderItemRepository.sumQuantityByProductForOrder(event.orderId())) {
+            productIds.add((Long) row[0]);
+        }
+        safeRefresh(productIds);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCategoryTreeChanged(CategoryTreeChangedEvent event) {
+        try {
+            updateAllCategoryPaths();
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh product_listing category paths: {}", e.getMessage());
+        }
+    }
+
+    private void safeRefresh(Collection<Long> productIds) {
+        try {
+            refresh(productIds);
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh product_listing for {} products: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    // Đường dẫn category lấy từ snapshot trong bộ nhớ, không cần CTE đệ quy trên database
+    private void updateCategoryPaths(List<Long> productIds) {
+        CategoryTreeSnapshot tree = categoryTreeCache.get();
+        List<SqlParameterSource> batch = new ArrayList<>(productIds.size());
+        jdbcTemplate.query("SELECT product_id, primary_category_id FROM product_listing WHERE product_id IN (:ids)",
+                new MapSqlParameterSource("ids", productIds), rs -> {
+                    long categoryId = rs.getLong("primary_category_id");
+                    String path = rs.wasNull() ? null : pathOf(tree, categoryId);
+                    batch.add(new MapSqlParameterSource()
+                            .addValue("path", path)
+                            .addValue("productId", rs.getLong("product_id")));
+                });
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE product_listing SET category_path = :path WHERE product_id = :productId",
+                    batch.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    // Một UPDATE cho mỗi category đang được dùng làm category chính (số category nhỏ hơn nhiều số product)
+    private void updateAllCategoryPaths() {
+        CategoryTreeSnapshot tree = categoryTreeCache.get();
+        List<SqlParameterSource> batch = new ArrayList<>();
+        jdbcTemplate.getJdbcTemplate().query(
+                "SELECT DISTINCT primary_category_id FROM product_listing WHERE primary_category_id IS NOT NULL",
+                rs -> {
+                    long categoryId = rs.getLong(1);
+                    batch.add(new MapSqlParameterSource()
+                            .addValue("path", pathOf(tree, categoryId))
+                            .addValue("categoryId", categoryId));
+                });
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE product_listing SET category_path = :path WHERE primary_category_id = :categoryId",
+                    batch.toArray(new SqlParameterSource[0]));
+        }
+    }
+
+    private static String pathOf(CategoryTreeSnapshot tree, long categoryId) {
+        String path = tree.getPath(categoryId, PATH_SEPARATOR);
+        if (path != null && path.length() > MAX_PATH_LENGTH) {
+            path = path.substring(0, MAX_PATH_LENGTH);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.repository.OrderItemRepository;
+import com.example.learnspring1.repository.ProductRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Một dòng nhỏ cho mỗi sản phẩm đang bán (tên, thương hiệu, ảnh, đã bán, category), giữ trong bộ nhớ
+ * làm nguồn cho các index tìm kiếm trong tiến trình (autocomplete, BM25).
+ * Load toàn bộ lần đầu được dùng, sau đó cập nhật theo event từng sản phẩm; mỗi thay đổi tăng
+ * {@link #version()} để index phía sau biết cần dựng lại. Thay đổi chỉ ở số đã bán (đơn hàng) không tăng
+ * {@link #contentVersion()}, nên index chỉ dựa vào tên/thương hiệu/category không phải dựng lại theo đơn hàng.
+ */
+@Slf4j
+@Component
+public class ProductSearchRows {
+
+    private static final long[] NO_CATEGORIES = new long[0];
+
+    private final ProductRepository productRepository;
+    private final OrderItemRepository orderItemRepository;
+
+    private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong contentVersion = new AtomicLong();
+    private volatile boolean loaded = false;
+
+    public ProductSearchRows(ProductRepository productRepository, OrderItemRepository orderItemRepository) {
+        this.productRepository = productRepository;
+        this.orderItemRepository = orderItemRepository;
+    }
+
+    /**
+     * Bản sao các dòng hiện tại (load từ database nếu chưa load).
+     */
+    public Row[] snapshot() {
+        ensureLoaded();
+        return rows.values().toArray(new Row[0]);
+    }
+
+    public Row get(Long productId) {
+        ensureLoaded();
+        return rows.get(productId);
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Version chỉ tăng khi có sản phẩm thêm/bớt hoặc đổi tên, thương hiệu, ảnh, category.
+     */
+    public long contentVersion() {
+        return contentVersion.get();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (!loaded || event.productId() == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            if (rows.remove(event.productId()) != null) {
+                contentVersion.incrementAndGet();
+            }
+            version.incrementAndGet();
+            return;
+        }
+        reloadRows(List.of(event.productId()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        if (loaded) {
+            reloadRows(event.productIds());
+        }
+    }
+
+    // Số lượng đã bán là trọng số xếp hạng
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (!loaded || event.soldDirection() == 0 || event.orderId() == null) {
+            return;
+        }
+        List<Long> productIds = new ArrayList<>();
+        for (Object[] row : orderItemRepository.sumQuantityByProductForOrder(event.orderId())) {
+            productIds.add((Long) row[0]);
+        }
+        reloadRows(productIds);
+    }
+
+    /**
+     * Load lại toàn bộ từ database (2 query).
+     */
+    public synchronized void reload() {
+        Map<Long, List<Long>> categories = groupCategories(productRepository.findActiveProductCategoryPairs());
+        Map<Long, Row> fresh = new HashMap<>();
+        for (Object[] raw : productRepository.findAutocompleteRows()) {
+            Row row = toRow(raw, categories);
+            fresh.put(row.id(), row);
+        }
+        rows.clear();
+        rows.putAll(fresh);
+        loaded = true;
+        contentVersion.incrementAndGet();
+        version.incrementAndGet();
+        log.info("Product search rows loaded: {} products", fresh.size());
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    reload();
+                }
+            }
+        }
+    }
+
+    private void reloadRows(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        try {
+            Map<Long, List<Long>> categories = groupCategories(
+                    productRepository.findProductCategoryPairsByIds(productIds));
+            Map<Long, Row> found = new HashMap<>();
+            for (Object[] raw : productRepository.findAutocompleteRowsByIds(productIds)) {
+                Row row = toRow(raw, categories);
+                found.put(row.id(), row);
+            }
+            boolean contentChanged = false;
+            for (Long productId : productIds) {
+                Row row = found.get(productId);
+                // Không còn trong kết quả nghĩa là đã ẩn hoặc đã xóa
+                Row previous = row != null ? rows.put(productId, row) : rows.remove(productId);
+                if (!sameContent(previous, row)) {
+                    contentChanged = true;
+                }
+            }
+            if (contentChanged) {
+                contentVersion.incrementAndGet();
+            }
+            version.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Không cập nhật được dữ liệu tìm kiếm cho {} product: {}", productIds.size(), e.getMessage());
+        }
+    }
+
+    // So mọi trường trừ soldCount
+    private static boolean sameContent(Row a, Row b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return Objects.equals(a.name(), b.name()) && Objects.equals(a.brand(), b.brand())
+                && Objects.equals(a.thumbnailUrl(), b.thumbnailUrl())
+                && Arrays.equals(a.categoryIds(), b.categoryIds());
+    }
+
+    private static Map<Long, List<Long>> groupCategories(List<Object[]> pairs) {
+        Map<Long, List<Long>> result = new HashMap<>();
+        for (Object[] pair : pairs) {
+            result.computeIfAbsent((Long) pair[0], id -> new ArrayList<>(2)).add((Long) pair[1]);
+        }
+        return result;
+    }
+
+    private static Row toRow(Object[] raw, Map<Long, List<Long>> categories) {
+        Long id = (Long) raw[0];
+        long soldCount = raw[4] != null ? ((Number) raw[4]).longValue() : 0L;
+        List<Long> categoryIds = categories.get(id);
+        long[] categoryArray = NO_CATEGORIES;
+        if (categoryIds != null) {
+            categoryArray = new long[categoryIds.size()];
+            for (int i = 0; i < categoryArray.length; i++) {
+                categoryArray[i] = categoryIds.get(i);
+            }
+        }
+        return new Row(id, (String) raw[1], (String) raw[2], (String) raw[3], Math.max(0L, soldCount),
+                categoryArray);
+    }
+
+    public record Row(Long id, String name, String brand, String thumbnailUrl, long soldCount, long[] categoryIds) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.learnspring1.service;
 
 import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
 import com.example.learnspring1.domain.dto.ProductResponseDTO;
 
 import org.springframework.data.domain.Page;
@@ -19,6 +20,27 @@ public interface ProductService {
         Page<Product> getProductsPage(Pageable pageable);
 
         Page<Product> getProductsPageWithFilters(Pageable pageable,
+                        Long id,
+                        String name,
+                        String sku,
+                        String brand,
+                        Long categoryId,
+                        Boolean isFeatured,
+                        Boolean isActive,
+                        BigDecimal minPrice,
+                        BigDecimal maxPrice,
+                        Boolean inStock,
+                        String search);
+
+        /**
+         * Giống {@link #getProductsPage(Pageable)} nhưng trả về card rút gọn cho trang danh sách.
+         */
+        Page<ProductCardDTO> getProductCardsPage(Pageable pageable);
+
+        /**
+         * Giống {@link #getProductsPageWithFilters} nhưng trả về card rút gọn cho trang danh sách.
+         */
+        Page<ProductCardDTO> getProductCardsPageWithFilters(Pageable pageable,
                         Long id,
                         String name,
                         String sku,
@@ -49,19 +71,43 @@ public interface ProductService {
          */
         Page<Product> getBestSellers(Pageable pageable);
 
+        Page<ProductCardDTO> getBestSellerCards(Pageable pageable);
+
         /**
          * Gợi ý sản phẩm cho người dùng (ưu tiên nổi bật + phù hợp truy vấn).
          */
         List<Product> suggestProducts(String query, Long categoryId, int limit);
 
+        List<ProductCardDTO> suggestProductCards(String query, Long categoryId, int limit);
+
+        /**
+         * Sản phẩm tương tự (gần nhất trước) từ danh sách láng giềng tính sẵn theo embedding;
+         * rỗng khi chưa tính xong hoặc sản phẩm chưa có embedding.
+         */
+        List<ProductCardDTO> getSimilarProductCards(Long productId, int limit);
+
+        /**
+         * Sản phẩm đang hot (tăng đột biến lượt xem/thêm giỏ so với bình thường) từ snapshot mới nhất;
+         * bỏ sản phẩm đã ẩn.
+         */
+        List<ProductCardDTO> getTrendingProductCards(int limit);
+
         /**
          * Gợi ý sản phẩm bằng vector search (Gemini embedding + ChromaDB).
          */
-        List<Product> suggestProductsByVector(String query, Long categoryId, int limit);
+        List<ProductCardDTO> suggestProductCardsByVector(String query, Long categoryId, int limit);
 
         /**
          * Gợi ý sản phẩm dựa trên lịch sử click/view của người dùng.
          * Tính vector trung bình từ các sản phẩm đã xem và query ChromaDB.
          */
-        List<Product> suggestProductsByUserHistory(List<Long> viewedProductIds, Long categoryId, int limit);
+        List<ProductCardDTO> suggestProductCardsByUserHistory(List<Long> viewedProductIds, Long categoryId,
+                int limit);
+
+        /**
+         * Gợi ý sản phẩm gần vector sở thích của người dùng (một lần tìm láng giềng),
+         * bỏ qua các sản phẩm trong {@code excludedProductIds}.
+         */
+        List<ProductCardDTO> suggestProductCardsByTaste(float[] tasteVector, List<Long> excludedProductIds,
+                Long categoryId, int limit);
 }
@@ -0,0 +1,532 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductEmbeddingsChangedEvent;
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.service.impl.CategoryTreeSnapshot;
+import com.example.learnspring1.utils.VectorMath;
+import com.example.learnspring1.utils.collection.HnswIndex;
+import com.example.learnspring1.utils.collection.MappedVectorStore;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Index vector sản phẩm chạy trong tiến trình (HNSW), thay cho việc gọi HTTP sang ChromaDB mỗi request.
+ * Vector được lưu trong file memory-mapped nên lần khởi động sau chỉ đọc file và dựng lại đồ thị,
+ * không tải lại từ ChromaDB; ChromaDB chỉ còn là nguồn đồng bộ (lần đầu hoặc khi admin yêu cầu).
+ * Lọc category (gồm cả category con) được áp dụng ngay trong lúc duyệt đồ thị.
+ * Khoảng cách là L2² trên vector đã chuẩn hóa, cùng thang với ChromaDB nên dùng chung ngưỡng
+ * {@code ai.chroma.distance-threshold}. Node bị xóa chỉ được đánh dấu; khi tỉ lệ node đã xóa vượt
+ * {@code ai.vector.hnsw.compact-ratio}, file và đồ thị được dựng lại chỉ từ vector còn sống.
+ * Trước khi index sẵn sàng, caller dùng lại đường ChromaDB cũ.
+ */
+@Slf4j
+@Component
+public class ProductVectorIndex {
+
+    private static final long NO_CATEGORY = -1L;
+    // Dưới số node đã xóa này không đáng dựng lại
+    private static final int MIN_DELETED_TO_COMPACT = 64;
+
+    private final AiVectorService aiVectorService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Path storePath;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int syncPageSize;
+    private final double compactRatio;
+
+    private volatile Index index;
+    // Thay đổi đến khi index chưa nạp xong; áp dụng ngay sau khi nạp (chỉ truy cập khi giữ monitor).
+    // Một sản phẩm chỉ nằm ở một trong hai: thay đổi sau ghi đè thay đổi trước
+    private final Set<Long> pendingRemovals = new HashSet<>();
+    private final Map<Long, PendingUpsert> pendingUpserts = new LinkedHashMap<>();
+
+    public ProductVectorIndex(AiVectorService aiVectorService,
+            CategoryTreeCache categoryTreeCache,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${ai.vector.index-path:data/product-vectors.bin}") String storePath,
+            @Value("${ai.vector.hnsw.m:16}") int m,
+            @Value("${ai.vector.hnsw.ef-construction:100}") int efConstruction,
+            @Value("${ai.vector.hnsw.ef-search:64}") int efSearch,
+            @Value("${ai.vector.sync-page-size:200}") int syncPageSize,
+            @Value("${ai.vector.hnsw.compact-ratio:0.3}") double compactRatio) {
+        this.aiVectorService = aiVectorService;
+        this.categoryTreeCache = categoryTreeCache;
+        this.eventPublisher = eventPublisher;
+        this.storePath = Path.of(storePath);
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.syncPageSize = Math.max(10, syncPageSize);
+        this.compactRatio = compactRatio;
+    }
+
+    /**
+     * Index đã nạp và có ít nhất một vector.
+     */
+    public boolean isReady() {
+        Index current = index;
+        return current != null && current.graph.liveCount() > 0;
+    }
+
+    public int size() {
+        Index current = index;
+        return current != null ? current.graph.liveCount() : 0;
+    }
+
+    /**
+     * k sản phẩm gần nhất (khoảng cách L2² tăng dần), chỉ trong category và các category con nếu có.
+     */
+    public List<Hit> search(float[] query, Long categoryId, int k) {
+        Index current = index;
+        if (current == null || query == null || query.length != current.graph.dimension()) {
+            return List.of();
+        }
+        List<Hit> hits = new ArrayList<>(k);
+        for (HnswIndex.Neighbor neighbor : current.graph.search(VectorMath.normalize(query), k, Math.max(efSearch, k),
+                categoryFilter(current, categoryId))) {
+            hits.add(new Hit(current.productByNode[neighbor.node()], neighbor.distance()));
+        }
+        return hits;
+    }
+
+    /**
+     * Bản chụp mọi vector còn sống (đã chuẩn hóa, không được sửa), dùng cho các job tính toán offline.
+     */
+    public LiveVectors liveVectors() {
+        Index current = index;
+        if (current == null) {
+            return new LiveVectors(new long[0], new float[0][]);
+        }
+        List<Map.Entry<Long, Integer>> entries = new ArrayList<>(current.nodeByProduct.entrySet());
+        long[] productIds = new long[entries.size()];
+        float[][] vectors = new float[entries.size()][];
+        for (int i = 0; i < entries.size(); i++) {
+            productIds[i] = entries.get(i).getKey();
+            vectors[i] = current.graph.vector(entries.get(i).getValue());
+        }
+        return new LiveVectors(productIds, vectors);
+    }
+
+    /**
+     * Vector đã lưu của các sản phẩm (bỏ qua sản phẩm chưa có), theo thứ tự đầu vào.
+     */
+    public List<float[]> getVectors(List<Long> productIds) {
+        Index current = index;
+        List<float[]> result = new ArrayList<>();
+        if (current == null) {
+            return result;
+        }
+        for (Long productId : productIds) {
+            Integer node = current.nodeByProduct.get(productId);
+            if (node != null) {
+                result.add(current.graph.vector(node));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Thêm hoặc thay vector của một sản phẩm (ghi file và cập nhật đồ thị ngay).
+     * Khi index chưa nạp xong, thay đổi được giữ lại và áp dụng sau khi nạp.
+     */
+    public synchronized void upsert(Long productId, Long categoryId, float[] vector) throws IOException {
+        Index current = index;
+        float[] normalized = VectorMath.normalize(vector);
+        long tag = categoryId != null ? categoryId : NO_CATEGORY;
+        if (current == null) {
+            // File (hoặc ChromaDB lúc nạp) có thể chỉ có vector cũ hay chưa có sản phẩm này
+            pendingRemovals.remove(productId);
+            pendingUpserts.put(productId, new PendingUpsert(tag, normalized));
+            return;
+        }
+        if (vector.length != current.graph.dimension()) {
+            throw new IllegalStateException("Vector dimension " + vector.length + " does not match index dimension "
+                    + current.graph.dimension());
+        }
+        writeVector(current, productId, tag, normalized);
+        eventPublisher.publishEvent(ProductEmbeddingsChangedEvent.of(productId));
+    }
+
+    private void writeVector(Index current, Long productId, long tag, float[] normalized) throws IOException {
+        Integer record = current.recordByProduct.get(productId);
+        if (record != null) {
+            current.store.write(record, productId, tag, normalized);
+        } else {
+            current.recordByProduct.put(productId, current.store.append(productId, tag, normalized));
+        }
+        addNode(current, productId, tag, normalized);
+    }
+
+    public synchronized void remove(Long productId) {
+        Index current = index;
+        if (current == null) {
+            // Chưa nạp (hoặc nạp lỗi): file vẫn còn vector này nên phải xóa sau khi nạp
+            pendingUpserts.remove(productId);
+            pendingRemovals.add(productId);
+            return;
+        }
+        if (removeFrom(current, productId)) {
+            eventPublisher.publishEvent(ProductEmbeddingsChangedEvent.of(productId));
+        }
+    }
+
+    /**
+     * Dựng lại file và đồ thị chỉ từ vector còn sống khi tỉ lệ node đã xóa (xóa sản phẩm, ghi đè embedding)
+     * vượt ngưỡng: node đã xóa vẫn bị duyệt qua khi tìm và vẫn chiếm bộ nhớ.
+     */
+    @Scheduled(fixedDelayString = "${ai.vector.hnsw.compact-check-ms:600000}")
+    public synchronized void compactIfNeeded() {
+        Index current = index;
+        if (current == null) {
+            return;
+        }
+        int size = current.graph.size();
+        int deleted = size - current.graph.liveCount();
+        if (deleted < MIN_DELETED_TO_COMPACT || deleted < compactRatio * size) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        List<Long> productIds = new ArrayList<>(size - deleted);
+        List<Long> tags = new ArrayList<>(size - deleted);
+        List<float[]> vectors = new ArrayList<>(size - deleted);
+        for (Map.Entry<Long, Integer> entry : current.nodeByProduct.entrySet()) {
+            int node = entry.getValue();
+            productIds.add(entry.getKey());
+            tags.add(current.categoryByNode[node]);
+            vectors.add(current.graph.vector(node));
+        }
+        try {
+            // Cùng tập vector, chỉ đổi số node: không cần báo cho các bảng tính từ embedding
+            install(rebuild(current.graph.dimension(), productIds, tags, vectors));
+            log.info("Vector index compacted: {} deleted of {} nodes dropped in {} ms", deleted, size,
+                    System.currentTimeMillis() - started);
+        } catch (IOException e) {
+            log.warn("Could not compact vector index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tải lại toàn bộ vector từ ChromaDB, ghi đè file và dựng lại đồ thị.
+     * Request đang chạy vẫn dùng đồ thị cũ cho tới khi đồ thị mới dựng xong.
+     *
+     * @return số vector đã nạp
+     */
+    public synchronized int syncFromChroma() throws IOException {
+        List<Long> productIds = new ArrayList<>();
+        List<Long> tags = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int offset = 0;; offset += syncPageSize) {
+            AiVectorService.ChromaGetResponse page = aiVectorService.getEmbeddingsPage(offset, syncPageSize);
+            for (int i = 0; i < page.ids.size() && i < page.embeddings.size(); i++) {
+                Long productId = parseLong(page.ids.get(i));
+                float[] embedding = page.embeddings.get(i);
+                if (productId == null || embedding == null || embedding.length == 0) {
+                    continue;
+                }
+                Map<String, Object> metadata = i < page.metadatas.size() ? page.metadatas.get(i) : null;
+                Object category = metadata != null ? metadata.get("categoryId") : null;
+                productIds.add(productId);
+                tags.add(category instanceof Number number ? number.longValue() : NO_CATEGORY);
+                vectors.add(VectorMath.normalize(embedding));
+            }
+            if (page.ids.size() < syncPageSize) {
+                break;
+            }
+        }
+        if (vectors.isEmpty()) {
+            log.warn("ChromaDB returned no embeddings, vector index left unchanged");
+            return 0;
+        }
+
+        int dimension = vectors.get(0).length;
+        Index built = rebuild(dimension, productIds, tags, vectors);
+        applyPendingChanges(built);
+        install(built);
+        eventPublisher.publishEvent(ProductEmbeddingsChangedEvent.reloaded());
+        log.info("Vector index synced from ChromaDB: {} products, dimension {}", built.graph.liveCount(), dimension);
+        return built.graph.liveCount();
+    }
+
+    /**
+     * Đo recall@k và QPS của HNSW so với tìm vét cạn, dùng vector của chính các sản phẩm làm truy vấn.
+     */
+    public BenchmarkResult benchmark(int queries, int k) {
+        Index current = index;
+        if (current == null || current.graph.size() == 0) {
+            return new BenchmarkResult(0, 0, 0, k, efSearch, 0, 0, 0);
+        }
+        int size = current.graph.size();
+        SplittableRandom random = new SplittableRandom(7);
+        List<float[]> samples = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            samples.add(current.graph.vector(random.nextInt(size)));
+        }
+
+        long hnswNanos = 0;
+        long bruteNanos = 0;
+        double recallSum = 0;
+        for (float[] query : samples) {
+            long started = System.nanoTime();
+            List<HnswIndex.Neighbor> approximate = current.graph.search(query, k, Math.max(efSearch, k), null);
+            hnswNanos += System.nanoTime() - started;
+
+            started = System.nanoTime();
+            List<HnswIndex.Neighbor> exact = current.graph.bruteForce(query, k, null);
+            bruteNanos += System.nanoTime() - started;
+
+            Set<Integer> expected = new HashSet<>();
+            for (HnswIndex.Neighbor neighbor : exact) {
+                expected.add(neighbor.node());
+            }
+            int found = 0;
+            for (HnswIndex.Neighbor neighbor : approximate) {
+                if (expected.contains(neighbor.node())) {
+                    found++;
+                }
+            }
+            recallSum += expected.isEmpty() ? 1.0 : (double) found / expected.size();
+        }
+        return new BenchmarkResult(current.graph.liveCount(), current.graph.dimension(), samples.size(), k, efSearch,
+                recallSum / Math.max(1, samples.size()),
+                samples.size() / Math.max(1e-9, hnswNanos / 1e9),
+                samples.size() / Math.max(1e-9, bruteNanos / 1e9));
+    }
+
+    // Dựng đồ thị ở luồng nền để không chặn khởi động; trong lúc đó request dùng ChromaDB
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (VectorMath.isSimd()) {
+            log.info("Vector math uses the JDK Vector API (SIMD)");
+        } else {
+            log.warn("jdk.incubator.vector is not available, vector math falls back to scalar loops "
+                    + "(start the JVM with --add-modules jdk.incubator.vector to enable SIMD)");
+        }
+        Thread.ofPlatform().daemon().name("vector-index-loader").start(() -> {
+            try {
+                load();
+            } catch (Exception e) {
+                log.warn("Could not load vector index, falling back to ChromaDB: {}", e.getMessage());
+            }
+        });
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.isDeleted() && event.productId() != null) {
+            remove(event.productId());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        Index current = index;
+        if (current != null) {
+            current.store.close();
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        MappedVectorStore stored = MappedVectorStore.open(storePath);
+        if (stored.count() == 0 || stored.dimension() == 0) {
+            stored.close();
+            syncFromChroma();
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Index built = new Index(new HnswIndex(stored.dimension(), m, efConstruction, stored.count()), stored,
+                stored.count());
+        try {
+            stored.forEach((recordIndex, productId, tag, vector) -> {
+                // Bản ghi sau của cùng product thay bản trước (addNode đánh dấu xóa node cũ)
+                built.recordByProduct.put(productId, recordIndex);
+                addNode(built, productId, tag, vector);
+            });
+            applyPendingChanges(built);
+        } catch (IOException | RuntimeException e) {
+            stored.close();
+            throw e;
+        }
+        install(built);
+        eventPublisher.publishEvent(ProductEmbeddingsChangedEvent.reloaded());
+        log.info("Vector index loaded from {}: {} products in {} ms", storePath, built.graph.liveCount(),
+                System.currentTimeMillis() - started);
+    }
+
+    // Dựng file mới (ghi file tạm rồi rename thay file cũ) và đồ thị mới từ các vector (đã chuẩn hóa) cho trước.
+    // Index hiện tại và file nó đang ánh xạ không bị động tới; lỗi giữa chừng thì index cũ vẫn dùng được
+    private Index rebuild(int dimension, List<Long> productIds, List<Long> tags, List<float[]> vectors)
+            throws IOException {
+        HnswIndex graph = new HnswIndex(dimension, m, efConstruction, vectors.size());
+        Map<Long, Integer> recordByProduct = new HashMap<>();
+        MappedVectorStore rebuilt = MappedVectorStore.create(storePath, dimension, target -> {
+            for (int i = 0; i < vectors.size(); i++) {
+                if (vectors.get(i).length != dimension) {
+                    continue;
+                }
+                Long productId = productIds.get(i);
+                Integer existing = recordByProduct.get(productId);
+                if (existing != null) {
+                    target.write(existing, productId, tags.get(i), vectors.get(i));
+                } else {
+                    recordByProduct.put(productId, target.append(productId, tags.get(i), vectors.get(i)));
+                }
+            }
+        });
+        Index built = new Index(graph, rebuilt, vectors.size());
+        built.recordByProduct.putAll(recordByProduct);
+        for (int i = 0; i < vectors.size(); i++) {
+            if (vectors.get(i).length == dimension) {
+                addNode(built, productIds.get(i), tags.get(i), vectors.get(i));
+            }
+        }
+        return built;
+    }
+
+    // Thay index (cùng file của nó) rồi mới đóng file cũ; file cũ đã bị rename đè nên không còn ai ghi vào
+    private void install(Index built) {
+        Index previous = index;
+        index = built;
+        if (previous != null && previous.store != built.store) {
+            try {
+                previous.store.close();
+            } catch (IOException e) {
+                log.warn("Could not close previous vector file: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void applyPendingChanges(Index target) throws IOException {
+        for (Long productId : pendingRemovals) {
+            removeFrom(target, productId);
+        }
+        pendingRemovals.clear();
+        for (Map.Entry<Long, PendingUpsert> entry : pendingUpserts.entrySet()) {
+            PendingUpsert pending = entry.getValue();
+            if (pending.vector().length != target.graph.dimension()) {
+                log.warn("Dropping queued vector of product {}: dimension {} does not match index dimension {}",
+                        entry.getKey(), pending.vector().length, target.graph.dimension());
+                continue;
+            }
+            writeVector(target, entry.getKey(), pending.tag(), pending.vector());
+        }
+        pendingUpserts.clear();
+    }
+
+    private boolean removeFrom(Index target, Long productId) {
+        Integer node = target.nodeByProduct.remove(productId);
+        if (node != null) {
+            target.graph.markDeleted(node);
+        }
+        Integer record = target.recordByProduct.remove(productId);
+        if (record != null) {
+            target.store.markDeleted(record);
+        }
+        return node != null;
+    }
+
+    // Node mới luôn là graph.size(), nên mảng tra ngược được gán trước khi node xuất hiện với reader
+    private static void addNode(Index target, Long productId, long tag, float[] normalized) {
+        int node = target.graph.size();
+        target.ensureCapacity(node + 1);
+        target.productByNode[node] = productId;
+        target.categoryByNode[node] = tag;
+        Integer previous = target.nodeByProduct.get(productId);
+        target.graph.add(normalized);
+        target.nodeByProduct.put(productId, node);
+        if (previous != null) {
+            target.graph.markDeleted(previous);
+        }
+    }
+
+    private IntPredicate categoryFilter(Index current, Long categoryId) {
+        if (categoryId == null) {
+            return null;
+        }
+        CategoryTreeSnapshot tree = categoryTreeCache.get();
+        // Đọc mảng ở mỗi lần gọi: writer có thể thay mảng lớn hơn (ensureCapacity) trong lúc đang duyệt,
+        // node mới chỉ có trong mảng mới. Mảng được gán trước khi node vào đồ thị (dưới khóa của HnswIndex)
+        return node -> {
+            long[] categories = current.categoryByNode;
+            if (node >= categories.length) {
+                return false;
+            }
+            long category = categories[node];
+            return category != NO_CATEGORY && tree.isAncestorOrSelf(categoryId, category);
+        };
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Đồ thị, file vector của nó và các bảng tra id; được thay nguyên khối khi đồng bộ lại
+    private static final class Index {
+        private final HnswIndex graph;
+        // Chỉ truy cập khi giữ monitor của ProductVectorIndex
+        private final MappedVectorStore store;
+        private final Map<Long, Integer> nodeByProduct = new ConcurrentHashMap<>();
+        private final Map<Long, Integer> recordByProduct = new HashMap<>();
+        private volatile long[] productByNode;
+        private volatile long[] categoryByNode;
+
+        private Index(HnswIndex graph, MappedVectorStore store, int expectedSize) {
+            this.graph = graph;
+            this.store = store;
+            this.productByNode = new long[Math.max(16, expectedSize)];
+            this.categoryByNode = new long[Math.max(16, expectedSize)];
+        }
+
+        private void ensureCapacity(int required) {
+            if (required > productByNode.length) {
+                int capacity = Math.max(required, productByNode.length * 2);
+                productByNode = Arrays.copyOf(productByNode, capacity);
+                categoryByNode = Arrays.copyOf(categoryByNode, capacity);
+            }
+        }
+    }
+
+    private record PendingUpsert(long tag, float[] vector) {
+    }
+
+    public record Hit(Long productId, double distance) {
+    }
+
+    public record LiveVectors(long[] productIds, float[][] vectors) {
+    }
+
+    public record BenchmarkResult(int size, int dimension, int queries, int k, int efSearch, double recall,
+            double hnswQps, double bruteForceQps) {
+    }
+}
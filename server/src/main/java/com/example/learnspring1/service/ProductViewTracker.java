@@ -0,0 +1,281 @@
+package com.example.learnspring1.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ghi lượt xem sản phẩm kiểu write-behind: {@link #record} chỉ thêm vào một hàng đợi lock-free và trả về ngay,
+ * không chạm DB. Job định kỳ rút hết hàng đợi, gộp theo (user, sản phẩm) giữ lần xem mới nhất, rồi ghi bằng
+ * một batch upsert ({@code INSERT ... SELECT FROM products}, sản phẩm không tồn tại tự bị bỏ) và một câu DELETE
+ * cắt lịch sử mỗi user còn {@link UserProductHistoryService#MAX_HISTORY_PER_USER} dòng mới nhất.
+ * Vector sở thích được cập nhật sau đó, cũng theo lô. Lịch sử đọc trong phiên đã có lượt xem ngay
+ * (vòng trong {@link UserProductHistoryService}); khi hàng đợi đầy, lượt mới bị bỏ và đếm ở product.views.dropped.
+ * Lô ghi lỗi vì dữ liệu được chia nhỏ tới từng dòng để chỉ dòng hỏng phải thử lại.
+ */
+@Slf4j
+@Component
+public class ProductViewTracker {
+
+    private static final String UPSERT_VIEW = "INSERT INTO user_product_history "
+            + "(user_id, product_id, viewed_at, created_at, updated_at) "
+            + "SELECT :userId, p.id, :viewedAt, :viewedAt, :viewedAt FROM products p WHERE p.id = :productId "
+            + "ON DUPLICATE KEY UPDATE viewed_at = GREATEST(viewed_at, VALUES(viewed_at)), "
+            + "updated_at = VALUES(updated_at)";
+    private static final String TRIM_HISTORY = "DELETE h FROM user_product_history h JOIN ("
+            + "SELECT id FROM (SELECT id, ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY viewed_at DESC, id DESC) AS rn "
+            + "FROM user_product_history WHERE user_id IN (:userIds)) ranked WHERE rn > :keep"
+            + ") old ON old.id = h.id";
+    // Giới hạn số user trong mệnh đề IN của câu cắt lịch sử
+    private static final int TRIM_CHUNK = 500;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserTasteVectorService userTasteVectorService;
+    // UserProductHistoryService phụ thuộc lại vào tracker nên lấy muộn
+    private final ObjectProvider<UserProductHistoryService> userProductHistoryService;
+    private final int maxBuffered;
+    private final int maxAttempts;
+
+    private final ConcurrentLinkedQueue<View> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+
+    private final Counter recordedCounter;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer flushTimer;
+
+    public ProductViewTracker(NamedParameterJdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            UserTasteVectorService userTasteVectorService,
+            ObjectProvider<UserProductHistoryService> userProductHistoryService,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.views.max-buffered:200000}") int maxBuffered,
+            @Value("${recommendation.views.max-attempts:3}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.userTasteVectorService = userTasteVectorService;
+        this.userProductHistoryService = userProductHistoryService;
+        this.maxBuffered = Math.max(1000, maxBuffered);
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        this.recordedCounter = Counter.builder("product.views.recorded")
+                .description("Lượt xem nhận vào hàng đợi")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("product.views.dropped")
+                .description("Lượt xem bị bỏ vì hàng đợi đầy")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("product.views.written")
+                .description("Dòng (user, sản phẩm) ghi xuống DB sau khi gộp")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("product.views.failed")
+                .description("Lượt xem bị bỏ sau nhiều lần ghi lỗi vì dữ liệu")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("product.views.flush")
+                .description("Thời gian một lần flush")
+                .register(meterRegistry);
+        Gauge.builder("product.views.buffered", buffered, AtomicInteger::get)
+                .description("Lượt xem đang chờ flush")
+                .register(meterRegistry);
+    }
+
+    public void record(String userId, Long productId) {
+        if (userId == null || productId == null) {
+            return;
+        }
+        if (buffered.incrementAndGet() > maxBuffered) {
+            buffered.decrementAndGet();
+            droppedCounter.increment();
+            return;
+        }
+        buffer.offer(new View(userId, productId, Instant.now()));
+        recordedCounter.increment();
+    }
+
+    /**
+     * Bỏ các lượt xem chưa flush của user (khi user xóa lịch sử), để lần flush sau không ghi lại.
+     * Cùng khóa với {@link #flush}: nếu đang flush thì chờ xong, để lượt đã rút khỏi hàng đợi không bị ghi
+     * (lịch sử và vector sở thích) sau khi lịch sử đã bị xóa.
+     */
+    public synchronized void discard(String userId) {
+        buffer.removeIf(view -> {
+            if (view.userId().equals(userId)) {
+                buffered.decrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.views.flush-delay-ms:1000}")
+    public synchronized void flush() {
+        Map<Key, View> latest = new LinkedHashMap<>();
+        View view;
+        while ((view = buffer.poll()) != null) {
+            buffered.decrementAndGet();
+            latest.merge(new Key(view.userId(), view.productId()), view, View::merge);
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        List<Key> written = new ArrayList<>(latest.size());
+        List<Key> failed = new ArrayList<>();
+        try {
+            writeIsolated(new ArrayList<>(latest.keySet()), latest, written, failed);
+        } catch (RuntimeException e) {
+            // Lỗi không do dữ liệu (DB không kết nối được, ...): đưa lại phần chưa ghi, không tính lần thử
+            Map<Key, View> pending = new LinkedHashMap<>(latest);
+            pending.keySet().removeAll(written);
+            pending.keySet().removeAll(failed);
+            log.warn("Could not flush {} product views, retrying next cycle: {}", pending.size(), e.getMessage());
+            pending.values().forEach(this::requeue);
+        } finally {
+            flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        writtenCounter.increment(written.size());
+
+        if (!written.isEmpty()) {
+            updateTasteVectors(written, latest);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Ghi {@code keys}; nếu lô lỗi vì dữ liệu thì chia đôi và ghi từng nửa, tới từng dòng, để một dòng hỏng
+     * (product vừa bị xóa, user vi phạm khóa ngoại, ...) không chặn cả lô. Dòng lỗi được đưa lại hàng đợi và bị bỏ
+     * sau {@code maxAttempts} lần (đếm ở product.views.failed). Lỗi tạm thời của DB thì ném ra ngay, không chia.
+     */
+    private void writeIsolated(List<Key> keys, Map<Key, View> latest, List<Key> written, List<Key> failed) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(keys, latest));
+            written.addAll(keys);
+            return;
+        } catch (TransientDataAccessException | DataAccessResourceFailureException
+                | CannotCreateTransactionException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (keys.size() == 1) {
+                failed.add(keys.get(0));
+                retryOrDrop(latest.get(keys.get(0)), e);
+                return;
+            }
+        }
+        int middle = keys.size() / 2;
+        writeIsolated(keys.subList(0, middle), latest, written, failed);
+        writeIsolated(keys.subList(middle, keys.size()), latest, written, failed);
+    }
+
+    private void retryOrDrop(View view, RuntimeException error) {
+        View retry = view.failedOnce();
+        if (retry.attempts() >= maxAttempts) {
+            failedCounter.increment();
+            log.warn("Dropping product view (user {}, product {}) after {} failed writes: {}", view.userId(),
+                    view.productId(), retry.attempts(), error.getMessage());
+            return;
+        }
+        requeue(retry);
+    }
+
+    // Đưa lại vào hàng đợi (trong giới hạn) để thử ở lần flush sau
+    private void requeue(View view) {
+        if (buffered.incrementAndGet() > maxBuffered) {
+            buffered.decrementAndGet();
+            droppedCounter.increment();
+        } else {
+            buffer.offer(view);
+        }
+    }
+
+    private void write(List<Key> keys, Map<Key, View> latest) {
+        SqlParameterSource[] rows = new SqlParameterSource[keys.size()];
+        LinkedHashSet<String> userIds = new LinkedHashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            rows[i] = new MapSqlParameterSource()
+                    .addValue("userId", key.userId())
+                    .addValue("productId", key.productId())
+                    .addValue("viewedAt", Timestamp.from(latest.get(key).viewedAt()));
+            userIds.add(key.userId());
+        }
+        jdbcTemplate.batchUpdate(UPSERT_VIEW, rows);
+
+        List<String> users = new ArrayList<>(userIds);
+        for (int from = 0; from < users.size(); from += TRIM_CHUNK) {
+            jdbcTemplate.update(TRIM_HISTORY, new MapSqlParameterSource()
+                    .addValue("userIds", users.subList(from, Math.min(users.size(), from + TRIM_CHUNK)))
+                    .addValue("keep", UserProductHistoryService.MAX_HISTORY_PER_USER));
+        }
+    }
+
+    // Gộp theo thứ tự thời gian xem để lượt mới nhất nặng ký nhất; cả lần flush một transaction,
+    // embedding của các sản phẩm được lấy một lần và vector ghi bằng một batch
+    private void updateTasteVectors(List<Key> keys, Map<Key, View> latest) {
+        Map<String, List<Long>> viewsByUser = new LinkedHashMap<>();
+        keys.stream()
+                .sorted((a, b) -> latest.get(a).viewedAt().compareTo(latest.get(b).viewedAt()))
+                .forEach(key -> viewsByUser.computeIfAbsent(key.userId(), user -> new ArrayList<>())
+                        .add(key.productId()));
+        try {
+            transactionTemplate.executeWithoutResult(status -> userTasteVectorService.recordViews(viewsByUser,
+                    userId -> userProductHistoryService.getObject().getUserHistory(userId, 20)));
+        } catch (RuntimeException e) {
+            log.warn("Could not update taste vectors of {} users: {}", viewsByUser.size(), e.getMessage());
+        }
+    }
+
+    // attempts: số lần ghi lỗi vì dữ liệu của lượt xem này
+    private record View(String userId, Long productId, Instant viewedAt, int attempts) {
+
+        View(String userId, Long productId, Instant viewedAt) {
+            this(userId, productId, viewedAt, 0);
+        }
+
+        View failedOnce() {
+            return new View(userId, productId, viewedAt, attempts + 1);
+        }
+
+        // Cùng (user, sản phẩm): giữ lần xem mới nhất và số lần lỗi lớn nhất
+        static View merge(View a, View b) {
+            return new View(a.userId, a.productId, a.viewedAt.isAfter(b.viewedAt) ? a.viewedAt : b.viewedAt,
+                    Math.max(a.attempts, b.attempts));
+        }
+    }
+
+    private record Key(String userId, Long productId) {
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductEmbeddingsChangedEvent;
+import com.example.learnspring1.utils.collection.NeighborTable;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Danh sách "sản phẩm tương tự" tính sẵn từ embedding trong {@link ProductVectorIndex}: top-K láng giềng
+ * cosine của mọi sản phẩm, giữ trong bộ nhớ dạng mảng nguyên thủy nên mỗi lượt xem trang chỉ là một lần tra map.
+ * Job định kỳ tính lại: toàn bộ sau khi index được nạp/đồng bộ lại, còn lại chỉ các sản phẩm có embedding đổi
+ * (và các hàng bị chúng ảnh hưởng).
+ */
+@Slf4j
+@Service
+public class SimilarProductsService {
+
+    private final ProductVectorIndex productVectorIndex;
+    private final int k;
+    // Quá tỉ lệ này số sản phẩm đổi thì tính lại toàn bộ (rẻ hơn so từng hàng)
+    private final double fullRecomputeRatio;
+
+    private final Set<Long> changedProducts = ConcurrentHashMap.newKeySet();
+    private volatile boolean fullRecomputeRequested = true;
+    private volatile NeighborTable table;
+
+    public SimilarProductsService(ProductVectorIndex productVectorIndex,
+            @Value("${catalog.similar.k:20}") int k,
+            @Value("${catalog.similar.full-recompute-ratio:0.2}") double fullRecomputeRatio) {
+        this.productVectorIndex = productVectorIndex;
+        this.k = Math.max(1, k);
+        this.fullRecomputeRatio = fullRecomputeRatio;
+    }
+
+    /**
+     * Id các sản phẩm tương tự (gần nhất trước); rỗng khi chưa tính xong hoặc sản phẩm chưa có embedding.
+     */
+    public List<Long> getSimilarIds(Long productId, int limit) {
+        NeighborTable current = table;
+        if (current == null || productId == null) {
+            return List.of();
+        }
+        long[] neighbors = current.neighbors(productId, Math.min(limit, k));
+        List<Long> ids = new ArrayList<>(neighbors.length);
+        for (long neighbor : neighbors) {
+            ids.add(neighbor);
+        }
+        return ids;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEmbeddingsChanged(ProductEmbeddingsChangedEvent event) {
+        if (event.fullReload()) {
+            fullRecomputeRequested = true;
+        } else {
+            changedProducts.addAll(event.productIds());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.similar.refresh-delay-ms:60000}")
+    public void refresh() {
+        if (!productVectorIndex.isReady() || (!fullRecomputeRequested && changedProducts.isEmpty())) {
+            return;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            Set<Long> changed = new HashSet<>(changedProducts);
+            changedProducts.removeAll(changed);
+            boolean full = fullRecomputeRequested;
+            fullRecomputeRequested = false;
+
+            ProductVectorIndex.LiveVectors live = productVectorIndex.liveVectors();
+            NeighborTable current = table;
+            if (full || current == null || changed.size() > live.productIds().length * fullRecomputeRatio) {
+                table = NeighborTable.compute(live.productIds(), live.vectors(), k);
+                log.info("Similar products computed for {} products in {} ms", live.productIds().length,
+                        System.currentTimeMillis() - started);
+            } else {
+                table = current.update(live.productIds(), live.vectors(), changed);
+                log.info("Similar products updated for {} changed products in {} ms", changed.size(),
+                        System.currentTimeMillis() - started);
+            }
+        } catch (Exception e) {
+            fullRecomputeRequested = true;
+            log.warn("Could not compute similar products: {}", e.getMessage());
+        }
+    }
+}
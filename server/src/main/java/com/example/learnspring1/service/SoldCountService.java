@@ -0,0 +1,68 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.repository.OrderItemRepository;
+import com.example.learnspring1.repository.ProductRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Duy trì cột products.sold_count theo từng lần đổi trạng thái đơn hàng,
+ * thay cho việc SUM toàn bộ order_items mỗi lần xem chi tiết sản phẩm.
+ */
+@Service
+public class SoldCountService {
+
+    private final OrderItemRepository orderItemRepository;
+    private final ProductRepository productRepository;
+    private final ProductDetailCache productDetailCache;
+
+    public SoldCountService(OrderItemRepository orderItemRepository,
+            ProductRepository productRepository,
+            ProductDetailCache productDetailCache) {
+        this.orderItemRepository = orderItemRepository;
+        this.productRepository = productRepository;
+        this.productDetailCache = productDetailCache;
+    }
+
+    /**
+     * Chạy đồng bộ trong transaction đổi trạng thái để bộ đếm commit cùng đơn hàng.
+     */
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        int direction = event.soldDirection();
+        if (direction == 0 || event.orderId() == null) {
+            return;
+        }
+
+        List<Long> touched = new ArrayList<>();
+        for (Object[] row : orderItemRepository.sumQuantityByProductForOrder(event.orderId())) {
+            Long productId = (Long) row[0];
+            long quantity = ((Number) row[1]).longValue();
+            if (quantity == 0) {
+                continue;
+            }
+            productRepository.addSoldCount(productId, direction * quantity);
+            touched.add(productId);
+        }
+
+        if (touched.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    productDetailCache.evictAll(touched);
+                }
+            });
+        } else {
+            productDetailCache.evictAll(touched);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.utils.TextNormalizer;
+import com.example.learnspring1.utils.collection.AhoCorasick;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mở rộng truy vấn bằng từ đồng nghĩa trước khi embedding: "bút" -> "bút bút viết bút bi ...".
+ * Từ điển ({@code từ khóa = mở rộng} mỗi dòng) đọc từ file {@code search.synonyms.path} nếu có,
+ * không thì từ {@code classpath:search/synonyms.txt}; file ngoài được nạp lại khi đổi, không cần restart.
+ * Từ khóa khớp trọn từ trên chuỗi không dấu qua một automaton Aho-Corasick, nên chi phí chỉ tỉ lệ
+ * với độ dài truy vấn dù từ điển lớn đến đâu. Người dùng gõ có dấu thì dấu phải khớp ("có" không kích hoạt "cọ").
+ */
+@Slf4j
+@Component
+public class SynonymExpander {
+
+    private static final String DEFAULT_RESOURCE = "/search/synonyms.txt";
+
+    private final Path externalPath;
+    private volatile Dictionary dictionary;
+    private volatile long loadedModified = Long.MIN_VALUE;
+
+    public SynonymExpander(@Value("${search.synonyms.path:}") String externalPath) {
+        this.externalPath = externalPath.isBlank() ? null : Path.of(externalPath);
+        reload();
+    }
+
+    /**
+     * Truy vấn gốc nối thêm phần mở rộng của mọi từ khóa xuất hiện (mỗi từ khóa một lần, theo thứ tự gặp).
+     */
+    public String expand(String query) {
+        if (query == null || query.isBlank()) {
+            return query;
+        }
+        String trimmed = query.trim();
+        Dictionary current = dictionary;
+        String folded = TextNormalizer.fold(trimmed);
+        if (folded.isEmpty() || current.size == 0) {
+            return trimmed;
+        }
+
+        String[] typedWords = words(trimmed);
+        int[] wordAt = wordIndexByPosition(folded);
+        Set<Entry> used = new HashSet<>();
+        StringBuilder expanded = new StringBuilder(trimmed);
+        current.automaton.forEachMatch(folded, (pattern, start, end) -> {
+            boolean wholeWords = (start == 0 || folded.charAt(start - 1) == ' ')
+                    && (end == folded.length() || folded.charAt(end) == ' ');
+            if (!wholeWords) {
+                return;
+            }
+            for (Entry entry : current.entriesByPattern.get(pattern)) {
+                if (accentsMatch(entry, typedWords, wordAt[start]) && used.add(entry)) {
+                    expanded.append(' ').append(entry.expansion());
+                }
+            }
+        });
+        return expanded.toString();
+    }
+
+    public int size() {
+        return dictionary.size;
+    }
+
+    /**
+     * Đọc lại từ điển; giữ bản cũ nếu đọc lỗi. Trả về số từ khóa.
+     */
+    public synchronized int reload() {
+        try {
+            long modified = Long.MIN_VALUE;
+            Dictionary loaded;
+            if (externalPath != null && Files.isRegularFile(externalPath)) {
+                modified = Files.getLastModifiedTime(externalPath).toMillis();
+                try (Reader reader = Files.newBufferedReader(externalPath, StandardCharsets.UTF_8)) {
+                    loaded = parse(reader);
+                }
+            } else {
+                try (InputStream in = SynonymExpander.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                    if (in == null) {
+                        throw new IOException(DEFAULT_RESOURCE + " not found");
+                    }
+                    loaded = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+                }
+            }
+            dictionary = loaded;
+            loadedModified = modified;
+            log.info("Synonym dictionary loaded from {}: {} keywords",
+                    modified != Long.MIN_VALUE ? externalPath : "classpath:" + DEFAULT_RESOURCE, loaded.size);
+        } catch (IOException | RuntimeException e) {
+            if (dictionary == null) {
+                dictionary = new Dictionary(List.of(), 0, AhoCorasick.build(List.of()));
+            }
+            log.warn("Could not load synonym dictionary, keeping previous one: {}", e.getMessage());
+        }
+        return dictionary.size;
+    }
+
+    @Scheduled(fixedDelayString = "${search.synonyms.reload-delay-ms:30000}")
+    public void reloadIfChanged() {
+        if (externalPath == null) {
+            return;
+        }
+        try {
+            long modified = Files.isRegularFile(externalPath)
+                    ? Files.getLastModifiedTime(externalPath).toMillis()
+                    : Long.MIN_VALUE;
+            if (modified != loadedModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            log.debug("Could not check synonym dictionary {}: {}", externalPath, e.getMessage());
+        }
+    }
+
+    private static Dictionary parse(Reader source) throws IOException {
+        Map<String, Entry> byKeyword = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                int separator = line.indexOf('=');
+                if (line.isEmpty() || line.startsWith("#") || separator <= 0) {
+                    continue;
+                }
+                String keyword = line.substring(0, separator).strip();
+                String expansion = line.substring(separator + 1).strip();
+                String folded = TextNormalizer.fold(keyword);
+                if (folded.isEmpty() || expansion.isEmpty()) {
+                    continue;
+                }
+                // Cùng dạng không dấu nhưng khác dấu ("hồ"/"họ") là hai từ khóa riêng
+                String[] keywordWords = words(keyword);
+                byKeyword.merge(String.join(" ", keywordWords), new Entry(folded, keywordWords, expansion),
+                        (old, added) -> new Entry(old.folded(), old.words(), old.expansion() + " " + added.expansion()));
+            }
+        }
+        // Từ khóa cùng dạng không dấu dùng chung một mẫu trong automaton
+        Map<String, List<Entry>> byFolded = new LinkedHashMap<>();
+        for (Entry entry : byKeyword.values()) {
+            byFolded.computeIfAbsent(entry.folded(), folded -> new ArrayList<>(1)).add(entry);
+        }
+        return new Dictionary(new ArrayList<>(byFolded.values()), byKeyword.size(),
+                AhoCorasick.build(new ArrayList<>(byFolded.keySet())));
+    }
+
+    // Từ người dùng gõ có dấu phải trùng từ khóa; từ gõ không dấu khớp mọi từ khóa cùng dạng không dấu
+    private static boolean accentsMatch(Entry entry, String[] typedWords, int firstWord) {
+        if (firstWord < 0 || firstWord + entry.words().length > typedWords.length) {
+            return true;
+        }
+        for (int i = 0; i < entry.words().length; i++) {
+            String typed = typedWords[firstWord + i];
+            if (!typed.equals(TextNormalizer.fold(typed)) && !typed.equals(entry.words()[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Tách từ giống TextNormalizer.fold nhưng giữ dấu, để từ thứ i khớp với từ thứ i của chuỗi đã fold
+    private static String[] words(String text) {
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        List<String> result = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < composed.length(); i++) {
+            char c = composed.charAt(i);
+            if (Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK) {
+                word.append(c);
+            } else if (!word.isEmpty()) {
+                result.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) {
+            result.add(word.toString());
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static int[] wordIndexByPosition(String folded) {
+        int[] wordAt = new int[folded.length() + 1];
+        int word = 0;
+        for (int i = 0; i < folded.length(); i++) {
+            if (folded.charAt(i) == ' ') {
+                wordAt[i] = -1;
+                word++;
+            } else {
+                wordAt[i] = word;
+            }
+        }
+        wordAt[folded.length()] = -1;
+        return wordAt;
+    }
+
+    private record Entry(String folded, String[] words, String expansion) {
+    }
+
+    private record Dictionary(List<List<Entry>> entriesByPattern, int size, AhoCorasick automaton) {
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.event.ProductEngagementEvent;
+import com.example.learnspring1.utils.collection.DecayingCountMinSketch;
+import com.example.learnspring1.utils.collection.HeavyHitters;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Phát hiện sản phẩm "đang hot" từ luồng lượt xem và thêm vào giỏ ({@link ProductEngagementEvent}).
+ * Hai count-min sketch có suy giảm theo cấp số nhân: gần đây (half-life {@code trending.recent-half-life-minutes})
+ * và nền (half-life {@code trending.baseline-half-life-hours}); một tập heavy hitter cố định giữ các sản phẩm
+ * có số đếm gần đây cao nhất làm ứng viên. Bộ nhớ cố định, không phụ thuộc số sản phẩm.
+ * Vài giây một lần, mỗi ứng viên được chấm {@code (r - e) / sqrt(e + 1)}: r là số đếm gần đây, e là số đếm
+ * "kỳ vọng" nếu sản phẩm giữ đúng tốc độ nền. Tăng đột biến so với bình thường mới được điểm cao, sản phẩm
+ * luôn đông khách thì không; điểm dưới {@code trending.min-score} coi là nhiễu.
+ * Kết quả publish thành {@link Snapshot} bất biến; đọc không khóa. Không lưu xuống DB: sau khi khởi động
+ * lại, danh sách trống cho tới khi có đủ tương tác.
+ */
+@Service
+public class TrendingProductsService {
+
+    private final DecayingCountMinSketch recent;
+    private final DecayingCountMinSketch baseline;
+    private final HeavyHitters candidates;
+    private final long recentHalfLifeMillis;
+    private final long baselineHalfLifeMillis;
+    private final double viewWeight;
+    private final double cartWeight;
+    private final double minRecentEvents;
+    private final double minScore;
+    private final int maxResults;
+
+    private long lastDecayAt = System.currentTimeMillis();
+    // Thời gian quan sát có cùng suy giảm với từng sketch: tốc độ = số đếm / thời gian quan sát, đúng cả lúc
+    // vừa khởi động (chưa đủ vài half-life), không chỉ ở trạng thái ổn định
+    private double recentExposureMillis;
+    private double baselineExposureMillis;
+    private volatile Snapshot snapshot = new Snapshot(Instant.now(), new long[0], new double[0]);
+
+    public TrendingProductsService(
+            @Value("${trending.sketch.depth:4}") int depth,
+            @Value("${trending.sketch.width:4096}") int width,
+            @Value("${trending.candidates:512}") int candidateCount,
+            @Value("${trending.recent-half-life-minutes:15}") long recentHalfLifeMinutes,
+            @Value("${trending.baseline-half-life-hours:24}") long baselineHalfLifeHours,
+            @Value("${trending.view-weight:1}") double viewWeight,
+            @Value("${trending.cart-weight:3}") double cartWeight,
+            @Value("${trending.min-recent-events:5}") double minRecentEvents,
+            @Value("${trending.min-score:4}") double minScore,
+            @Value("${trending.max-results:50}") int maxResults) {
+        this.recent = new DecayingCountMinSketch(depth, width);
+        this.baseline = new DecayingCountMinSketch(depth, width);
+        this.candidates = new HeavyHitters(Math.max(candidateCount, maxResults));
+        this.recentHalfLifeMillis = Math.max(1, recentHalfLifeMinutes) * 60_000L;
+        this.baselineHalfLifeMillis = Math.max(1, baselineHalfLifeHours) * 3_600_000L;
+        this.viewWeight = viewWeight;
+        this.cartWeight = cartWeight;
+        this.minRecentEvents = minRecentEvents;
+        this.minScore = minScore;
+        this.maxResults = Math.max(1, maxResults);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEngagement(ProductEngagementEvent event) {
+        if (event.productId() == null || event.productId() <= 0) {
+            return;
+        }
+        record(event.productId(), event.kind() == ProductEngagementEvent.Kind.ADD_TO_CART ? cartWeight : viewWeight);
+    }
+
+    public synchronized void record(long productId, double weight) {
+        double recentCount = recent.add(productId, weight);
+        baseline.add(productId, weight);
+        candidates.offer(productId, recentCount);
+    }
+
+    /**
+     * Tối đa {@code limit} id sản phẩm đang hot, điểm cao nhất trước.
+     */
+    public List<Long> getTrendingIds(int limit) {
+        long[] ids = snapshot.productIds();
+        int count = Math.min(Math.max(0, limit), ids.length);
+        List<Long> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${trending.refresh-ms:5000}")
+    public void refresh() {
+        long[] ids;
+        double[] recentCounts;
+        double[] baselineCounts;
+        double recentExposure;
+        double baselineExposure;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long elapsed = now - lastDecayAt;
+            lastDecayAt = now;
+            double recentFactor = decayFactor(elapsed, recentHalfLifeMillis);
+            double baselineFactor = decayFactor(elapsed, baselineHalfLifeMillis);
+            recent.decay(recentFactor);
+            baseline.decay(baselineFactor);
+            candidates.decay(recentFactor);
+            recentExposureMillis = recentExposureMillis * recentFactor + Math.max(0, elapsed);
+            baselineExposureMillis = baselineExposureMillis * baselineFactor + Math.max(0, elapsed);
+            recentExposure = recentExposureMillis;
+            baselineExposure = baselineExposureMillis;
+
+            int size = candidates.size();
+            ids = new long[size];
+            recentCounts = new double[size];
+            baselineCounts = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = candidates.keyAt(i);
+                recentCounts[i] = recent.estimate(ids[i]);
+                baselineCounts[i] = baseline.estimate(ids[i]);
+            }
+        }
+
+        if (recentExposure <= 0 || baselineExposure <= 0) {
+            return;
+        }
+        double[] scores = new double[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            double expected = baselineCounts[i] * recentExposure / baselineExposure;
+            double score = (recentCounts[i] - expected) / Math.sqrt(expected + 1);
+            scores[i] = recentCounts[i] < minRecentEvents || score < minScore ? Double.NaN : score;
+        }
+
+        int[] order = IntStream.range(0, ids.length)
+                .filter(i -> !Double.isNaN(scores[i]))
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(i -> scores[i]).reversed()
+                        .thenComparingLong(i -> ids[i]))
+                .limit(maxResults)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        long[] topIds = new long[order.length];
+        double[] topScores = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            topIds[i] = ids[order[i]];
+            topScores[i] = scores[order[i]];
+        }
+        snapshot = new Snapshot(Instant.now(), topIds, topScores);
+    }
+
+    private static double decayFactor(long elapsedMillis, long halfLifeMillis) {
+        return elapsedMillis <= 0 ? 1.0 : Math.pow(0.5, (double) elapsedMillis / halfLifeMillis);
+    }
+
+    /**
+     * Danh sách đang hot tại {@code generatedAt}, giảm dần theo {@code scores}.
+     */
+    public record Snapshot(Instant generatedAt, long[] productIds, double[] scores) {
+
+        public int size() {
+            return productIds.length;
+        }
+    }
+}
@@ -1,94 +1,88 @@
 package com.example.learnspring1.service;
 
-import com.example.learnspring1.domain.Product;
 import com.example.learnspring1.domain.UserProductHistory;
-import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.event.ProductEngagementEvent;
 import com.example.learnspring1.repository.UserProductHistoryRepository;
+import com.example.learnspring1.utils.collection.RecentIdRing;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Service để lưu trữ lịch sử click/view sản phẩm của người dùng.
- * Lưu vào database để persist qua các lần restart server.
+ * Lưu vào database để persist qua các lần restart server; với user đang hoạt động, lịch sử đọc từ một vòng
+ * {@code long[MAX_HISTORY_PER_USER]} ({@link RecentIdRing}) trong Caffeine (giới hạn số user, bỏ khi lâu không
+ * dùng), nạp từ bảng ở lần truy cập đầu và ghi xuống bất đồng bộ qua {@link ProductViewTracker}.
  */
 @Service
 public class UserProductHistoryService {
 
     private final UserProductHistoryRepository historyRepository;
-    private final ProductRepository productRepository;
-    private static final int MAX_HISTORY_PER_USER = 50; // Giới hạn 50 sản phẩm gần nhất
+    private final UserTasteVectorService userTasteVectorService;
+    private final ProductViewTracker productViewTracker;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Cache<String, RecentIdRing> recentViews;
+    static final int MAX_HISTORY_PER_USER = 50; // Giới hạn 50 sản phẩm gần nhất
 
     public UserProductHistoryService(
             UserProductHistoryRepository historyRepository,
-            ProductRepository productRepository) {
+            UserTasteVectorService userTasteVectorService,
+            ProductViewTracker productViewTracker,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.recent-views.cache-max-size:50000}") long cacheMaxSize,
+            @Value("${recommendation.recent-views.idle-minutes:30}") long idleMinutes) {
         this.historyRepository = historyRepository;
-        this.productRepository = productRepository;
+        this.userTasteVectorService = userTasteVectorService;
+        this.productViewTracker = productViewTracker;
+        this.eventPublisher = eventPublisher;
+        this.recentViews = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentViews, "user.recent-views");
     }
 
     /**
-     * Thêm sản phẩm vào lịch sử của người dùng
-     * Nếu đã tồn tại thì cập nhật viewedAt
+     * Thêm sản phẩm vào lịch sử của người dùng (nếu đã có thì cập nhật viewedAt).
+     * Cập nhật vòng trong bộ nhớ rồi đưa vào bộ đệm của {@link ProductViewTracker}, ghi xuống DB
+     * (và cắt bớt) ở lần flush kế tiếp.
      */
-    @Transactional
     public void addProductView(String userId, Long productId) {
         if (userId == null || productId == null) {
             return;
         }
+        ringOf(userId).add(productId);
+        productViewTracker.record(userId, productId);
+        eventPublisher.publishEvent(ProductEngagementEvent.view(productId));
+    }
 
-        // Kiểm tra product có tồn tại không
-        Product product = productRepository.findById(productId).orElse(null);
-        if (product == null) {
-            return;
-        }
-
-        // Tìm xem đã có history chưa
-        UserProductHistory existing = historyRepository.findByUserIdAndProductId(userId, productId);
-        
-        if (existing != null) {
-            // Nếu đã có thì chỉ cập nhật viewedAt
-            existing.setViewedAt(Instant.now());
-            existing.setUpdatedAt(Instant.now());
-            historyRepository.save(existing);
-        } else {
-            // Nếu chưa có thì tạo mới
-            UserProductHistory history = UserProductHistory.builder()
-                    .userId(userId)
-                    .product(product)
-                    .viewedAt(Instant.now())
-                    .build();
-            historyRepository.save(history);
-            
-            // Giữ số lượng history không quá MAX_HISTORY_PER_USER
-            long count = historyRepository.countByUserId(userId);
-            if (count > MAX_HISTORY_PER_USER) {
-                // Lấy danh sách tất cả history, sắp xếp theo viewedAt
-                List<UserProductHistory> allHistory = historyRepository.findByUserIdOrderByViewedAtDesc(userId);
-                // Xóa các history cũ nhất
-                List<UserProductHistory> toDelete = allHistory.subList(MAX_HISTORY_PER_USER, allHistory.size());
-                historyRepository.deleteAll(toDelete);
-            }
+    /**
+     * Vector sở thích của người dùng (dựng từ 20 lượt xem gần nhất nếu chưa có); null nếu không có.
+     */
+    public float[] getTasteVector(String userId) {
+        if (userId == null) {
+            return null;
         }
+        return userTasteVectorService.getTaste(userId, () -> getUserHistory(userId, 20));
     }
 
     /**
-     * Lấy lịch sử sản phẩm của người dùng (danh sách product IDs)
+     * Lấy lịch sử sản phẩm của người dùng (danh sách product IDs, mới nhất trước)
      */
     public List<Long> getUserHistory(String userId) {
-        if (userId == null) {
-            return Collections.emptyList();
-        }
-        
-        List<UserProductHistory> histories = historyRepository.findByUserIdOrderByViewedAtDesc(userId);
-        return histories.stream()
-                .map(h -> h.getProduct().getId())
-                .collect(Collectors.toList());
+        return getUserHistory(userId, MAX_HISTORY_PER_USER);
     }
 
     /**
@@ -98,12 +92,7 @@ public class UserProductHistoryService {
         if (userId == null) {
             return Collections.emptyList();
         }
-        
-        Pageable pageable = PageRequest.of(0, limit);
-        List<UserProductHistory> histories = historyRepository.findByUserIdOrderByViewedAtDesc(userId, pageable);
-        return histories.stream()
-                .map(h -> h.getProduct().getId())
-                .collect(Collectors.toList());
+        return ringOf(userId).newestFirst(limit);
     }
 
     /**
@@ -112,9 +101,19 @@ public class UserProductHistoryService {
     @Transactional
     public void clearUserHistory(String userId) {
         if (userId != null) {
+            productViewTracker.discard(userId);
             List<UserProductHistory> histories = historyRepository.findByUserIdOrderByViewedAtDesc(userId);
             historyRepository.deleteAll(histories);
+            userTasteVectorService.clear(userId);
+            recentViews.put(userId, new RecentIdRing(MAX_HISTORY_PER_USER));
         }
     }
+
+    // Vòng lượt xem của user; lần đầu trong phiên (hoặc sau khi bị loại khỏi cache) nạp từ bảng
+    private RecentIdRing ringOf(String userId) {
+        return recentViews.get(userId, key -> RecentIdRing.of(
+                historyRepository.findRecentProductIds(key, PageRequest.of(0, MAX_HISTORY_PER_USER)),
+                MAX_HISTORY_PER_USER));
+    }
 }
 
@@ -0,0 +1,223 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.UserTasteVector;
+import com.example.learnspring1.repository.UserTasteVectorRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Vector sở thích của từng người dùng, cập nhật dần mỗi lượt xem sản phẩm thay vì tính lại từ lịch sử
+ * mỗi lần gợi ý: trung bình có suy giảm theo cấp số nhân
+ * {@code w' = decay * w + 1; mean' = mean + (v - mean) / w'}, lượt xem gần đây nặng ký hơn.
+ * Giữ trong Caffeine có giới hạn, ghi xuống bảng {@code user_taste_vector} dạng float16 (2 byte mỗi chiều).
+ */
+@Service
+public class UserTasteVectorService {
+
+    private static final String UPSERT_TASTE = "INSERT INTO user_taste_vector "
+            + "(user_id, vector, weight, view_count, updated_at) "
+            + "VALUES (:userId, :vector, :weight, :viewCount, :updatedAt) "
+            + "ON DUPLICATE KEY UPDATE vector = VALUES(vector), weight = VALUES(weight), "
+            + "view_count = VALUES(view_count), updated_at = VALUES(updated_at)";
+
+    private final UserTasteVectorRepository tasteRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ProductEmbeddingStore productEmbeddingStore;
+    private final double decay;
+    private final Cache<String, Taste> cache;
+
+    public UserTasteVectorService(UserTasteVectorRepository tasteRepository,
+            NamedParameterJdbcTemplate jdbcTemplate,
+            ProductEmbeddingStore productEmbeddingStore,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.taste.decay:0.9}") double decay,
+            @Value("${recommendation.taste.cache-max-size:50000}") long cacheMaxSize) {
+        this.tasteRepository = tasteRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.productEmbeddingStore = productEmbeddingStore;
+        this.decay = decay;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterAccess(Duration.ofHours(6))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user.taste-vector");
+    }
+
+    /**
+     * Gộp các lượt xem của nhiều user trong một lần: {@code viewsByUser} là id sản phẩm mỗi user đã xem theo thứ tự
+     * thời gian (cũ trước); lượt xem sản phẩm chưa có embedding bị bỏ qua. Embedding của mọi sản phẩm liên quan
+     * được lấy một lần, vector của các user chưa có trong cache được đọc bằng một câu SELECT, user chưa có vector thì
+     * trước hết dựng từ {@code history} (id đã xem, mới nhất trước) như {@link #getTaste}, và mọi vector mới được
+     * ghi bằng một batch upsert. Chạy trong transaction của người gọi.
+     */
+    public void recordViews(Map<String, List<Long>> viewsByUser, Function<String, List<Long>> history) {
+        if (viewsByUser.isEmpty()) {
+            return;
+        }
+        // Đọc DB trước, ngoài compute: compute giữ khóa của entry trong suốt hàm gộp
+        Map<String, Taste> bases = new HashMap<>();
+        List<String> uncached = new ArrayList<>();
+        for (String userId : viewsByUser.keySet()) {
+            Taste cached = cache.getIfPresent(userId);
+            if (cached != null) {
+                bases.put(userId, cached);
+            } else {
+                uncached.add(userId);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            tasteRepository.findAllById(uncached).forEach(row -> bases.put(row.getUserId(), toTaste(row)));
+        }
+
+        // User chưa có vector: lịch sử gần đây (trừ các lượt đang gộp), từ cũ đến mới, làm hạt giống
+        Map<String, List<Long>> seeds = new HashMap<>();
+        Set<Long> productIds = new LinkedHashSet<>();
+        viewsByUser.forEach((userId, viewed) -> {
+            productIds.addAll(viewed);
+            if (!bases.containsKey(userId)) {
+                List<Long> seed = new ArrayList<>(history.apply(userId));
+                seed.removeAll(viewed);
+                Collections.reverse(seed);
+                seeds.put(userId, seed);
+                productIds.addAll(seed);
+            }
+        });
+        Map<Long, float[]> embeddings = productEmbeddingStore.getEmbeddings(productIds);
+
+        Map<String, Taste> updated = new LinkedHashMap<>();
+        viewsByUser.forEach((userId, viewed) -> {
+            if (viewed.stream().noneMatch(embeddings::containsKey)) {
+                return;
+            }
+            Taste base = bases.containsKey(userId) ? bases.get(userId) : foldAll(null, seeds.get(userId), embeddings);
+            updated.put(userId, cache.asMap().compute(userId,
+                    (key, old) -> foldAll(old != null ? old : base, viewed, embeddings)));
+        });
+        saveAll(updated);
+    }
+
+    /**
+     * Vector sở thích (chưa chuẩn hóa) của user; nếu chưa có thì dựng một lần từ {@code history}
+     * (id đã xem, mới nhất trước) và lưu lại. Trả về null nếu không dựng được.
+     * Trả về bản sao, người gọi được phép sửa.
+     */
+    @Transactional
+    public float[] getTaste(String userId, Supplier<List<Long>> history) {
+        Taste taste = cache.get(userId, this::loadStored);
+        if (taste != null) {
+            return taste.mean().clone();
+        }
+        // Gộp từ cũ đến mới để lượt xem gần nhất nặng ký nhất
+        List<Long> viewed = new ArrayList<>(history.get());
+        Collections.reverse(viewed);
+        Taste built = viewed.isEmpty() ? null : foldAll(null, viewed, productEmbeddingStore.getEmbeddings(viewed));
+        if (built == null) {
+            return null;
+        }
+        cache.put(userId, built);
+        saveAll(Map.of(userId, built));
+        return built.mean().clone();
+    }
+
+    public void clear(String userId) {
+        cache.invalidate(userId);
+        tasteRepository.deleteByUserId(userId);
+    }
+
+    private Taste fold(Taste old, float[] vector) {
+        if (old == null || old.mean().length != vector.length) {
+            return new Taste(vector.clone(), 1.0, 1);
+        }
+        double weight = decay * old.weight() + 1.0;
+        float rate = (float) (1.0 / weight);
+        float[] mean = old.mean().clone();
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] += (vector[i] - mean[i]) * rate;
+        }
+        return new Taste(mean, weight, old.viewCount() + 1);
+    }
+
+    private Taste foldAll(Taste taste, List<Long> productIds, Map<Long, float[]> embeddings) {
+        for (Long productId : productIds) {
+            float[] vector = embeddings.get(productId);
+            if (vector != null) {
+                taste = fold(taste, vector);
+            }
+        }
+        return taste;
+    }
+
+    private Taste loadStored(String userId) {
+        return tasteRepository.findById(userId).map(UserTasteVectorService::toTaste).orElse(null);
+    }
+
+    // Một batch upsert cho mọi user (không SELECT trước như save())
+    private void saveAll(Map<String, Taste> tastes) {
+        if (tastes.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        SqlParameterSource[] rows = new SqlParameterSource[tastes.size()];
+        int i = 0;
+        for (Map.Entry<String, Taste> entry : tastes.entrySet()) {
+            Taste taste = entry.getValue();
+            rows[i++] = new MapSqlParameterSource()
+                    .addValue("userId", entry.getKey())
+                    .addValue("vector", encode(taste.mean()))
+                    .addValue("weight", taste.weight())
+                    .addValue("viewCount", taste.viewCount())
+                    .addValue("updatedAt", now);
+        }
+        jdbcTemplate.batchUpdate(UPSERT_TASTE, rows);
+    }
+
+    private static Taste toTaste(UserTasteVector row) {
+        return new Taste(decode(row.getVector()), row.getWeight(), row.getViewCount());
+    }
+
+    private static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : vector) {
+            buffer.putShort(Float.floatToFloat16(value));
+        }
+        return buffer.array();
+    }
+
+    private static float[] decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[bytes.length / Short.BYTES];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = Float.float16ToFloat(buffer.getShort());
+        }
+        return vector;
+    }
+
+    private record Taste(float[] mean, double weight, long viewCount) {
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.learnspring1.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.learnspring1.event.ProductChangedEvent;
+import com.example.learnspring1.event.ProductEmbeddingsChangedEvent;
+import com.example.learnspring1.event.ProductsImportedEvent;
+import com.example.learnspring1.utils.collection.MappedVectorStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Cache nhiều tầng cho tìm kiếm vector:
+ * <ul>
+ * <li>embedding của câu truy vấn đã chuẩn hóa: Caffeine (W-TinyLFU, có giới hạn) ở tầng 1,
+ * file memory-mapped ở tầng 2 để giữ lại qua các lần khởi động;</li>
+ * <li>danh sách id kết quả theo (query, categoryId, limit) với TTL ngắn; bị xóa hết khi sản phẩm được
+ * thêm/sửa/xóa/import hoặc embedding đổi, để sản phẩm đã ẩn không còn xuất hiện tới hết TTL.</li>
+ * </ul>
+ * Các miss đồng thời cho cùng một key chỉ gọi loader một lần (single-flight qua {@link AsyncCache}),
+ * loader chạy trên virtual thread nên chờ HTTP không chiếm thread của pool chung.
+ * Hit ratio được đăng ký vào Micrometer (cache.gets, cache.evictions, ... với tag cache=...).
+ */
+@Slf4j
+@Component
+public class VectorQueryCache {
+
+    private final AsyncCache<String, float[]> embeddings;
+    private final AsyncCache<ResultKey, List<Long>> results;
+    private final ExecutorService loaderExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Path diskPath;
+    private final int diskMaxEntries;
+    private final Map<Long, Integer> diskRecords = new HashMap<>();
+    private MappedVectorStore diskStore;
+    private boolean diskDisabled;
+
+    public VectorQueryCache(MeterRegistry meterRegistry,
+            @Value("${ai.embedding-cache.max-size:10000}") long embeddingMaxSize,
+            @Value("${ai.embedding-cache.disk-path:data/query-embeddings.bin}") String diskPath,
+            @Value("${ai.embedding-cache.disk-max-entries:100000}") int diskMaxEntries,
+            @Value("${ai.vector-result-cache.max-size:5000}") long resultMaxSize,
+            @Value("${ai.vector-result-cache.ttl-seconds:60}") long resultTtlSeconds) {
+        this.embeddings = Caffeine.newBuilder()
+                .maximumSize(embeddingMaxSize)
+                .executor(loaderExecutor)
+                .recordStats()
+                .buildAsync();
+        this.results = Caffeine.newBuilder()
+                .maximumSize(resultMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(resultTtlSeconds))
+                .executor(loaderExecutor)
+                .recordStats()
+                .buildAsync();
+        this.diskPath = diskPath.isBlank() ? null : Path.of(diskPath);
+        this.diskMaxEntries = diskMaxEntries;
+        CaffeineCacheMetrics.monitor(meterRegistry, embeddings.synchronous(), "vector.query-embedding");
+        CaffeineCacheMetrics.monitor(meterRegistry, results.synchronous(), "vector.query-result");
+    }
+
+    /**
+     * Embedding của {@code text}: tầng 1, rồi file, cuối cùng mới gọi {@code loader} (và ghi xuống file).
+     */
+    public float[] getEmbedding(String text, Function<String, float[]> loader) {
+        return join(embeddings.get(normalize(text), key -> {
+            float[] stored = readDisk(key);
+            if (stored != null) {
+                return stored;
+            }
+            float[] loaded = loader.apply(key);
+            writeDisk(key, loaded);
+            return loaded;
+        }));
+    }
+
+    /**
+     * Id sản phẩm đã xếp hạng cho (query, categoryId, limit), giữ trong TTL ngắn.
+     */
+    public List<Long> getResults(String query, Long categoryId, int limit, Function<String, List<Long>> loader) {
+        ResultKey key = new ResultKey(normalize(query), categoryId, limit);
+        return join(results.get(key, k -> List.copyOf(loader.apply(k.query()))));
+    }
+
+    public void invalidateResults() {
+        results.synchronous().invalidateAll();
+    }
+
+    // Đổi tồn kho/ảnh (VARIANT_CHANGED, IMAGE_CHANGED) không đổi danh sách id nên giữ cache
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        switch (event.changeType()) {
+            case CREATED, UPDATED, DELETED -> invalidateResults();
+            default -> {
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductsImported(ProductsImportedEvent event) {
+        invalidateResults();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEmbeddingsChanged(ProductEmbeddingsChangedEvent event) {
+        invalidateResults();
+    }
+
+    public Stats stats() {
+        CacheStats embeddingStats = embeddings.synchronous().stats();
+        CacheStats resultStats = results.synchronous().stats();
+        return new Stats(embeddings.synchronous().estimatedSize(), embeddingStats.hitRate(),
+                embeddingStats.missCount(), diskEntries(),
+                results.synchronous().estimatedSize(), resultStats.hitRate(), resultStats.missCount());
+    }
+
+    @PreDestroy
+    public void close() {
+        loaderExecutor.shutdown();
+        synchronized (diskRecords) {
+            if (diskStore != null) {
+                try {
+                    diskStore.close();
+                } catch (IOException e) {
+                    log.warn("Could not close query embedding file: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Chữ thường, gộp khoảng trắng; giữ nguyên dấu vì "bút" và "bụt" là hai truy vấn khác nhau
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private float[] readDisk(String key) {
+        synchronized (diskRecords) {
+            if (!openDisk()) {
+                return null;
+            }
+            Integer record = diskRecords.get(hash(key));
+            return record != null ? diskStore.read(record) : null;
+        }
+    }
+
+    private void writeDisk(String key, float[] vector) {
+        synchronized (diskRecords) {
+            if (!openDisk()) {
+                return;
+            }
+            try {
+                // Đầy hoặc đổi model (khác dimension) thì bắt đầu file mới; tầng 1 vẫn giữ các key nóng.
+                // File mới thay file cũ bằng rename, file cũ chỉ đóng sau khi thay xong
+                if (diskStore.dimension() != vector.length || diskRecords.size() >= diskMaxEntries) {
+                    MappedVectorStore previous = diskStore;
+                    diskStore = MappedVectorStore.create(diskPath, vector.length, store -> {
+                    });
+                    diskRecords.clear();
+                    closeQuietly(previous);
+                }
+                long hash = hash(key);
+                Integer existing = diskRecords.get(hash);
+                if (existing != null) {
+                    diskStore.write(existing, hash, 0L, vector);
+                } else {
+                    diskRecords.put(hash, diskStore.append(hash, 0L, vector));
+                }
+            } catch (IOException e) {
+                log.warn("Could not write query embedding file, disk tier disabled: {}", e.getMessage());
+                diskDisabled = true;
+            }
+        }
+    }
+
+    private static void closeQuietly(MappedVectorStore store) {
+        try {
+            store.close();
+        } catch (IOException e) {
+            log.warn("Could not close previous query embedding file: {}", e.getMessage());
+        }
+    }
+
+    private boolean openDisk() {
+        if (diskDisabled || diskPath == null) {
+            return false;
+        }
+        if (diskStore != null) {
+            return true;
+        }
+        try {
+            diskStore = MappedVectorStore.open(diskPath);
+            diskStore.forEach((index, key, tag, vector) -> diskRecords.put(key, index));
+            log.info("Query embedding file loaded: {} entries", diskRecords.size());
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not open query embedding file, disk tier disabled: {}", e.getMessage());
+            diskDisabled = true;
+            return false;
+        }
+    }
+
+    private int diskEntries() {
+        synchronized (diskRecords) {
+            return diskRecords.size();
+        }
+    }
+
+    // FNV-1a 64 bit + trộn cuối; file chỉ lưu hash nên va chạm (~n²/2^65) coi như không xảy ra
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Trả lại đúng exception của loader thay vì CompletionException
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record ResultKey(String query, Long categoryId, int limit) {
+    }
+
+    public record Stats(long embeddingEntries, double embeddingHitRate, long embeddingMisses, int diskEntries,
+            long resultEntries, double resultHitRate, long resultMisses) {
+    }
+}
@@ -4,6 +4,7 @@ import com.example.learnspring1.domain.*;
 import com.example.learnspring1.domain.dto.CartItemRequestDTO;
 import com.example.learnspring1.domain.dto.CartPromotionPreviewDTO;
 import com.example.learnspring1.domain.dto.CartResponseDTO;
+import com.example.learnspring1.event.ProductEngagementEvent;
 import com.example.learnspring1.repository.CartItemRepository;
 import com.example.learnspring1.repository.CartRepository;
 import com.example.learnspring1.repository.ProductRepository;
@@ -11,6 +12,7 @@ import com.example.learnspring1.repository.ProductVariantRepository;
 import com.example.learnspring1.service.CartService;
 import com.example.learnspring1.service.PromotionService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -30,6 +32,7 @@ public class CartServiceImpl implements CartService {
     private final ProductVariantRepository productVariantRepository;
     private final PromotionService promotionService;
     private final PromotionCalculator promotionCalculator;
+    private final ApplicationEventPublisher eventPublisher;
 
     private ProductVariant resolveVariantOrDefault(Product product, Long variantId) {
         // Nếu product có variantId -> lấy đúng variant
@@ -115,6 +118,7 @@ public class CartServiceImpl implements CartService {
                     .build();
             cartItemRepository.save(newItem);
         }
+        eventPublisher.publishEvent(ProductEngagementEvent.addedToCart(product.getId()));
 
         // Reload cart để có items mới nhất
         cart = cartRepository.findById(cart.getId())
@@ -1,10 +1,7 @@
 package com.example.learnspring1.service.impl;
 
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -20,9 +17,11 @@ import com.example.learnspring1.service.CategoryService;
 public class CategoryServiceImpl implements CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final CategoryTreeCache categoryTreeCache;
 
-    public CategoryServiceImpl(CategoryRepository categoryRepository) {
+    public CategoryServiceImpl(CategoryRepository categoryRepository, CategoryTreeCache categoryTreeCache) {
         this.categoryRepository = categoryRepository;
+        this.categoryTreeCache = categoryTreeCache;
     }
 
     @Override
@@ -50,7 +49,9 @@ public class CategoryServiceImpl implements CategoryService {
             category.setParent(parent);
         }
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        categoryTreeCache.refresh();
+        return saved;
     }
 
     @Override
@@ -124,28 +125,15 @@ public class CategoryServiceImpl implements CategoryService {
                 existing.setParent(null);
             }
 
-            return categoryRepository.save(existing);
+            Category saved = categoryRepository.save(existing);
+            categoryTreeCache.refresh();
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Category not found with id " + id));
     }
 
-    // Helper method để kiểm tra circular reference
+    // Circular nếu parent mới nằm trong subtree của chính category (kiểm tra trên snapshot, không query)
     private boolean isCircularReference(Long categoryId, Long parentId) {
-        Category parent = categoryRepository.findById(parentId).orElse(null);
-        if (parent == null) {
-            return false;
-        }
-
-        // Nếu parent có parent là categoryId thì là circular
-        if (parent.getParent() != null && parent.getParent().getId().equals(categoryId)) {
-            return true;
-        }
-
-        // Recursive check
-        if (parent.getParent() != null) {
-            return isCircularReference(categoryId, parent.getParent().getId());
-        }
-
-        return false;
+        return categoryTreeCache.get().isAncestorOrSelf(categoryId, parentId);
     }
 
     @Override
@@ -154,61 +142,16 @@ public class CategoryServiceImpl implements CategoryService {
                 .orElseThrow(() -> new java.util.NoSuchElementException("Category not found with id " + id));
         category.softDelete();
         categoryRepository.save(category);
+        categoryTreeCache.refresh();
     }
 
     @Override
     public List<CategoryDTO> getNestedCategories(Boolean isActive) {
-        List<Category> rootCategories = categoryRepository.findRootCategories(isActive);
-        return rootCategories.stream()
-                .map(this::toNestedDTO)
-                .collect(Collectors.toList());
-    }
-
-    private CategoryDTO toNestedDTO(Category category) {
-        CategoryDTO dto = CategoryDTO.builder()
-                .id(category.getId())
-                .name(category.getName())
-                .thumbnailUrl(category.getThumbnailUrl())
-                .description(category.getDescription())
-                .isActive(category.getIsActive())
-                .parentId(category.getParent() != null ? category.getParent().getId() : null)
-                .parentName(category.getParent() != null ? category.getParent().getName() : null)
-                .sortOrder(category.getSortOrder())
-                .createdAt(category.getCreatedAt())
-                .updatedAt(category.getUpdatedAt())
-                .createdBy(category.getCreatedBy())
-                .updatedBy(category.getUpdatedBy())
-                .deletedBy(category.getDeletedBy())
-                .build();
-
-        // Recursively map children
-        if (category.getChildren() != null && !category.getChildren().isEmpty()) {
-            List<CategoryDTO> childrenDTOs = category.getChildren().stream()
-                    .filter(child -> child.getIsActive() != null && child.getIsActive())
-                    .filter(child -> child.getDeletedBy() == null)
-                    .sorted(Comparator.comparing(Category::getSortOrder,
-                            Comparator.nullsLast(Comparator.naturalOrder()))
-                            .thenComparing(Category::getName))
-                    .map(this::toNestedDTO)
-                    .collect(Collectors.toList());
-            dto.setChildren(childrenDTOs);
-        }
-
-        return dto;
+        return categoryTreeCache.get().getNestedCategories(isActive);
     }
 
     @Override
     public List<Long> getAllDescendantIds(Long categoryId) {
-        List<Long> result = new ArrayList<>();
-        result.add(categoryId); // Include the category itself
-
-        // Get all children (active only)
-        List<Category> children = categoryRepository.findChildrenByParentId(categoryId, true);
-        for (Category child : children) {
-            // Recursively get all descendants
-            result.addAll(getAllDescendantIds(child.getId()));
-        }
-
-        return result;
+        return categoryTreeCache.get().getDescendantIds(categoryId);
     }
 }
@@ -0,0 +1,61 @@
+package com.example.learnspring1.service.impl;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.example.learnspring1.event.CategoryTreeChangedEvent;
+import com.example.learnspring1.repository.CategoryRepository;
+import com.example.learnspring1.service.CatalogVersionService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Giữ {@link CategoryTreeSnapshot} hiện tại trong bộ nhớ.
+ * Snapshot được dựng lười ở lần đọc đầu tiên và dựng lại toàn bộ (1 query)
+ * mỗi khi category thay đổi; reader luôn thấy một snapshot hoàn chỉnh.
+ */
+@Slf4j
+@Component
+public class CategoryTreeCache {
+
+    private final CategoryRepository categoryRepository;
+    private final CatalogVersionService catalogVersionService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile CategoryTreeSnapshot snapshot;
+
+    public CategoryTreeCache(CategoryRepository categoryRepository, CatalogVersionService catalogVersionService,
+            ApplicationEventPublisher eventPublisher) {
+        this.categoryRepository = categoryRepository;
+        this.catalogVersionService = catalogVersionService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public CategoryTreeSnapshot get() {
+        CategoryTreeSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = load();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Dựng lại snapshot sau khi category được tạo/sửa/xóa (đã lưu xuống database).
+     */
+    public synchronized void refresh() {
+        snapshot = load();
+        catalogVersionService.invalidateCategories();
+        eventPublisher.publishEvent(new CategoryTreeChangedEvent());
+    }
+
+    private CategoryTreeSnapshot load() {
+        CategoryTreeSnapshot built = CategoryTreeSnapshot.build(categoryRepository.findAllWithParent());
+        log.debug("Category tree snapshot rebuilt with {} nodes", built.size());
+        return built;
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.learnspring1.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.learnspring1.domain.Category;
+import com.example.learnspring1.domain.dto.CategoryDTO;
+
+/**
+ * Ảnh chụp bất biến của toàn bộ cây category.
+ * Mỗi node được đánh số pre-order (enter/exit) nên "X có phải con cháu của Y"
+ * chỉ là một phép so sánh khoảng, không cần query database.
+ */
+public final class CategoryTreeSnapshot {
+
+    private static final Comparator<Category> CHILD_ORDER = Comparator
+            .comparing(Category::getSortOrder, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Category::getName);
+
+    // Root trong query cũ dùng ORDER BY sort_order ASC (MariaDB đặt NULL lên đầu)
+    private static final Comparator<Category> ROOT_ORDER = Comparator
+            .comparing(Category::getSortOrder, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(Category::getName);
+
+    private final Map<Long, Integer> indexById;
+    private final long[] ids;
+    private final String[] names;
+    private final int[] parentIndex;
+    // enter[i]: vị trí pre-order của node i; exit[i]: vị trí pre-order lớn nhất trong subtree của i
+    private final int[] enter;
+    private final int[] exit;
+    // order[pos]: index của node đứng ở vị trí pre-order pos
+    private final int[] order;
+    // visible[i]: node active và chưa bị soft delete
+    private final boolean[] visible;
+    // Con trực tiếp đang hiển thị (active, chưa xóa), đã sắp xếp
+    private final List<List<Long>> visibleChildIds;
+    private final List<Long> visibleRootIds;
+
+    private final List<CategoryDTO> nestedAll;
+    private final List<CategoryDTO> nestedActive;
+    private final List<CategoryDTO> nestedInactive;
+
+    private CategoryTreeSnapshot(List<Category> categories) {
+        int n = categories.size();
+        this.indexById = new HashMap<>(n * 2);
+        this.ids = new long[n];
+        this.names = new String[n];
+        this.parentIndex = new int[n];
+        this.enter = new int[n];
+        this.exit = new int[n];
+        this.order = new int[n];
+        this.visible = new boolean[n];
+
+        for (int i = 0; i < n; i++) {
+            Category category = categories.get(i);
+            ids[i] = category.getId();
+            names[i] = category.getName();
+            indexById.put(category.getId(), i);
+            visible[i] = Boolean.TRUE.equals(category.getIsActive()) && category.getDeletedBy() == null;
+        }
+
+        List<List<Integer>> children = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            children.add(new ArrayList<>());
+        }
+        List<Integer> roots = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Category parent = categories.get(i).getParent();
+            Integer p = parent != null ? indexById.get(parent.getId()) : null;
+            parentIndex[i] = p != null ? p : -1;
+            if (p == null) {
+                roots.add(i);
+            } else {
+                children.get(p).add(i);
+            }
+        }
+        for (List<Integer> list : children) {
+            list.sort((a, b) -> CHILD_ORDER.compare(categories.get(a), categories.get(b)));
+        }
+        roots.sort((a, b) -> ROOT_ORDER.compare(categories.get(a), categories.get(b)));
+
+        this.visibleChildIds = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<Long> visibleKids = new ArrayList<>();
+            for (int child : children.get(i)) {
+                if (visible[child]) {
+                    visibleKids.add(ids[child]);
+                }
+            }
+            visibleChildIds.add(Collections.unmodifiableList(visibleKids));
+        }
+        List<Long> rootIds = new ArrayList<>();
+        for (int root : roots) {
+            if (visible[root]) {
+                rootIds.add(ids[root]);
+            }
+        }
+        this.visibleRootIds = Collections.unmodifiableList(rootIds);
+
+        // Đánh số pre-order bằng stack (không đệ quy để tránh tràn stack với cây sâu).
+        // Node nằm trong chu trình (dữ liệu lỗi) không đi tới được từ root sẽ có enter = -1.
+        java.util.Arrays.fill(enter, -1);
+        int counter = 0;
+        int[] stack = new int[n];
+        int[] childCursor = new int[n];
+        for (int root : roots) {
+            int top = 0;
+            stack[top] = root;
+            enter[root] = counter;
+            order[counter++] = root;
+            while (top >= 0) {
+                int node = stack[top];
+                List<Integer> kids = children.get(node);
+                if (childCursor[node] < kids.size()) {
+                    int child = kids.get(childCursor[node]++);
+                    enter[child] = counter;
+                    order[counter++] = child;
+                    stack[++top] = child;
+                } else {
+                    exit[node] = counter - 1;
+                    top--;
+                }
+            }
+        }
+
+        List<CategoryDTO> dtoByIndex = new ArrayList<>(Collections.nCopies(n, null));
+        // Duyệt ngược pre-order: con luôn được map trước cha
+        for (int pos = counter - 1; pos >= 0; pos--) {
+            int i = order[pos];
+            CategoryDTO dto = toDTO(categories.get(i));
+            List<CategoryDTO> childDTOs = new ArrayList<>();
+            for (int child : children.get(i)) {
+                if (visible[child]) {
+                    childDTOs.add(dtoByIndex.get(child));
+                }
+            }
+            if (!childDTOs.isEmpty()) {
+                dto.setChildren(Collections.unmodifiableList(childDTOs));
+            }
+            dtoByIndex.set(i, dto);
+        }
+
+        List<CategoryDTO> all = new ArrayList<>();
+        List<CategoryDTO> active = new ArrayList<>();
+        List<CategoryDTO> inactive = new ArrayList<>();
+        for (int root : roots) {
+            Category category = categories.get(root);
+            if (category.getDeletedBy() != null) {
+                continue;
+            }
+            all.add(dtoByIndex.get(root));
+            if (Boolean.TRUE.equals(category.getIsActive())) {
+                active.add(dtoByIndex.get(root));
+            } else {
+                inactive.add(dtoByIndex.get(root));
+            }
+        }
+        this.nestedAll = Collections.unmodifiableList(all);
+        this.nestedActive = Collections.unmodifiableList(active);
+        this.nestedInactive = Collections.unmodifiableList(inactive);
+    }
+
+    /**
+     * Dựng snapshot từ danh sách category (parent phải được fetch sẵn).
+     */
+    public static CategoryTreeSnapshot build(List<Category> categories) {
+        return new CategoryTreeSnapshot(categories);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean contains(Long categoryId) {
+        return categoryId != null && indexById.containsKey(categoryId);
+    }
+
+    public String getName(Long categoryId) {
+        Integer index = categoryId != null ? indexById.get(categoryId) : null;
+        return index != null ? names[index] : null;
+    }
+
+    /**
+     * Đường dẫn tên từ root xuống category, ví dụ "Văn phòng phẩm > Bút > Bút gel".
+     * Trả về {@code null} nếu category không có trong snapshot.
+     */
+    public String getPath(Long categoryId, String separator) {
+        Integer index = categoryId != null ? indexById.get(categoryId) : null;
+        if (index == null) {
+            return null;
+        }
+        List<String> parts = new ArrayList<>();
+        int current = index;
+        // Giới hạn n bước để không lặp vô hạn nếu dữ liệu parent bị vòng
+        for (int steps = 0; current >= 0 && steps <= ids.length; steps++) {
+            parts.add(names[current]);
+            current = parentIndex[current];
+        }
+        Collections.reverse(parts);
+        return String.join(separator, parts);
+    }
+
+    /**
+     * Con trực tiếp đang active của category; {@code null} trả về các root đang active.
+     */
+    public List<Long> getVisibleChildIds(Long categoryId) {
+        if (categoryId == null) {
+            return visibleRootIds;
+        }
+        Integer index = indexById.get(categoryId);
+        return index != null ? visibleChildIds.get(index) : Collections.emptyList();
+    }
+
+    /**
+     * Kiểm tra {@code descendantId} có nằm trong subtree của {@code ancestorId}
+     * (tính cả chính nó) hay không, O(1).
+     */
+    public boolean isAncestorOrSelf(Long ancestorId, Long descendantId) {
+        Integer a = ancestorId != null ? indexById.get(ancestorId) : null;
+        Integer d = descendantId != null ? indexById.get(descendantId) : null;
+        if (a == null || d == null) {
+            return false;
+        }
+        if (enter[a] < 0 || enter[d] < 0) {
+            return isAncestorByParentWalk(a, d);
+        }
+        return enter[a] <= enter[d] && enter[d] <= exit[a];
+    }
+
+    // Fallback cho node nằm trong chu trình: đi ngược parent trong bộ nhớ, giới hạn n bước
+    private boolean isAncestorByParentWalk(int ancestor, int node) {
+        int current = node;
+        for (int steps = 0; current >= 0 && steps <= ids.length; steps++) {
+            if (current == ancestor) {
+                return true;
+            }
+            current = parentIndex[current];
+        }
+        return false;
+    }
+
+    /**
+     * Lấy id của category và toàn bộ con cháu đang active.
+     * Giống hành vi cũ: dừng đi xuống khi gặp node inactive/đã xóa.
+     */
+    public List<Long> getDescendantIds(Long categoryId) {
+        Integer index = categoryId != null ? indexById.get(categoryId) : null;
+        if (index == null || enter[index] < 0) {
+            List<Long> result = new ArrayList<>(1);
+            result.add(categoryId);
+            return result;
+        }
+
+        int start = enter[index];
+        int end = exit[index];
+        List<Long> result = new ArrayList<>(end - start + 1);
+        result.add(categoryId);
+        int pos = start + 1;
+        while (pos <= end) {
+            int node = order[pos];
+            if (visible[node]) {
+                result.add(ids[node]);
+                pos++;
+            } else {
+                // Bỏ qua cả subtree của node inactive
+                pos = exit[node] + 1;
+            }
+        }
+        return result;
+    }
+
+    public List<CategoryDTO> getNestedCategories(Boolean isActive) {
+        if (isActive == null) {
+            return nestedAll;
+        }
+        return isActive ? nestedActive : nestedInactive;
+    }
+
+    private static CategoryDTO toDTO(Category category) {
+        return CategoryDTO.builder()
+                .id(category.getId())
+                .name(category.getName())
+                .thumbnailUrl(category.getThumbnailUrl())
+                .description(category.getDescription())
+                .isActive(category.getIsActive())
+                .parentId(category.getParent() != null ? category.getParent().getId() : null)
+                .parentName(category.getParent() != null ? category.getParent().getName() : null)
+                .sortOrder(category.getSortOrder())
+                .createdAt(category.getCreatedAt())
+                .updatedAt(category.getUpdatedAt())
+                .createdBy(category.getCreatedBy())
+                .updatedBy(category.getUpdatedBy())
+                .deletedBy(category.getDeletedBy())
+                .build();
+    }
+}
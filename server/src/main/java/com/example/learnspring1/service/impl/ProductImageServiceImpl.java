@@ -1,8 +1,10 @@
 package com.example.learnspring1.service.impl;
 
 import com.example.learnspring1.domain.ProductImage;
+import com.example.learnspring1.event.ProductChangedEvent;
 import com.example.learnspring1.repository.ProductImageRepository;
 import com.example.learnspring1.service.ProductImageService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -11,14 +13,26 @@ import java.util.Optional;
 public class ProductImageServiceImpl implements ProductImageService {
 
     private final ProductImageRepository productImageRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ProductImageServiceImpl(ProductImageRepository productImageRepository) {
+    public ProductImageServiceImpl(ProductImageRepository productImageRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.productImageRepository = productImageRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    private void publishImageChanged(ProductImage image) {
+        if (image.getProduct() != null && image.getProduct().getId() != null) {
+            eventPublisher.publishEvent(new ProductChangedEvent(image.getProduct().getId(),
+                    ProductChangedEvent.ChangeType.IMAGE_CHANGED));
+        }
     }
 
     @Override
     public ProductImage create(ProductImage image) {
-        return productImageRepository.save(image);
+        ProductImage saved = productImageRepository.save(image);
+        publishImageChanged(saved);
+        return saved;
     }
 
     @Override
@@ -29,13 +43,19 @@ public class ProductImageServiceImpl implements ProductImageService {
     @Override
     public ProductImage update(Long id, ProductImage image) {
         return productImageRepository.findById(id).map(existing -> {
+            if (image.getProduct() != null && existing.getProduct() != null
+                    && !existing.getProduct().getId().equals(image.getProduct().getId())) {
+                publishImageChanged(existing);
+            }
             existing.setImageUrl(image.getImageUrl());
             existing.setSortOrder(image.getSortOrder());
             existing.setIsPrimary(image.getIsPrimary() != null ? image.getIsPrimary() : existing.getIsPrimary());
             if (image.getProduct() != null) {
                 existing.setProduct(image.getProduct());
             }
-            return productImageRepository.save(existing);
+            ProductImage saved = productImageRepository.save(existing);
+            publishImageChanged(saved);
+            return saved;
         }).orElseThrow(() -> new RuntimeException("ProductImage not found with id " + id));
     }
 
@@ -45,6 +65,7 @@ public class ProductImageServiceImpl implements ProductImageService {
             .orElseThrow(() -> new java.util.NoSuchElementException("ProductImage not found with id " + id));
         image.softDelete();
         productImageRepository.save(image);
+        publishImageChanged(image);
     }
 
     @Override
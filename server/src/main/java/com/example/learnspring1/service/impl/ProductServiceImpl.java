@@ -4,21 +4,38 @@ import com.example.learnspring1.domain.Category;
 import com.example.learnspring1.domain.Order;
 import com.example.learnspring1.domain.Product;
 import com.example.learnspring1.domain.ProductVariant;
-import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
 import com.example.learnspring1.domain.dto.ProductResponseDTO;
+import com.example.learnspring1.event.ProductChangedEvent;
 import com.example.learnspring1.repository.CategoryRepository;
 import com.example.learnspring1.repository.OrderItemRepository;
+import com.example.learnspring1.repository.ProductListingRepository;
 import com.example.learnspring1.repository.ProductRepository;
 import com.example.learnspring1.repository.ProductVariantRepository;
+import com.example.learnspring1.service.AiCallGuard;
 import com.example.learnspring1.service.AiVectorService;
+import com.example.learnspring1.service.BestSellerLeaderboard;
 import com.example.learnspring1.service.CategoryService;
+import com.example.learnspring1.service.HybridSearchService;
+import com.example.learnspring1.service.ProductCardAssembler;
+import com.example.learnspring1.service.ProductDetailCache;
+import com.example.learnspring1.service.ProductEmbeddingStore;
 import com.example.learnspring1.service.ProductService;
+import com.example.learnspring1.service.ProductVectorIndex;
+import com.example.learnspring1.service.SimilarProductsService;
+import com.example.learnspring1.service.TrendingProductsService;
+import com.example.learnspring1.utils.VectorMath;
+import org.hibernate.Hibernate;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -36,82 +53,69 @@ import java.util.stream.Collectors;
 @Service
 public class ProductServiceImpl implements ProductService {
 
+    // Trường sort chỉ có trong bảng đọc product_listing
+    private static final Set<String> LISTING_SORT_FIELDS = Set.of("minPrice", "maxPrice", "totalStock",
+            "avgRating", "reviewCount");
+
     private final ProductRepository productRepository;
     private final OrderItemRepository orderItemRepository;
     private final CategoryService categoryService;
     private final CategoryRepository categoryRepository;
     private final ProductVariantRepository productVariantRepository;
     private final AiVectorService aiVectorService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductDetailCache productDetailCache;
+    private final BestSellerLeaderboard bestSellerLeaderboard;
+    private final ProductCardAssembler productCardAssembler;
+    private final ProductVariantSync productVariantSync;
+    private final ProductListingRepository productListingRepository;
+    private final ProductVectorIndex productVectorIndex;
+    private final HybridSearchService hybridSearchService;
+    private final SimilarProductsService similarProductsService;
+    private final ProductEmbeddingStore productEmbeddingStore;
+    private final AiCallGuard aiCallGuard;
+    private final TrendingProductsService trendingProductsService;
+    private final TransactionTemplate transactionTemplate;
 
     public ProductServiceImpl(ProductRepository productRepository,
             OrderItemRepository orderItemRepository,
             CategoryService categoryService,
             CategoryRepository categoryRepository,
             ProductVariantRepository productVariantRepository,
-            AiVectorService aiVectorService) {
+            AiVectorService aiVectorService,
+            ApplicationEventPublisher eventPublisher,
+            ProductDetailCache productDetailCache,
+            BestSellerLeaderboard bestSellerLeaderboard,
+            ProductCardAssembler productCardAssembler,
+            ProductVariantSync productVariantSync,
+            ProductListingRepository productListingRepository,
+            ProductVectorIndex productVectorIndex,
+            HybridSearchService hybridSearchService,
+            SimilarProductsService similarProductsService,
+            ProductEmbeddingStore productEmbeddingStore,
+            AiCallGuard aiCallGuard,
+            TrendingProductsService trendingProductsService,
+            PlatformTransactionManager transactionManager) {
         this.productRepository = productRepository;
         this.orderItemRepository = orderItemRepository;
         this.categoryService = categoryService;
         this.categoryRepository = categoryRepository;
         this.productVariantRepository = productVariantRepository;
         this.aiVectorService = aiVectorService;
-    }
-
-    private void ensureDefaultVariant(Product product) {
-        List<ProductVariant> variants = productVariantRepository.findByProductId(product.getId());
-        if (variants != null && !variants.isEmpty()) {
-            return;
-        }
-
-        // Xử lý giá: ưu tiên discountPrice, nếu không có thì dùng price, nếu không có
-        // thì 0
-        BigDecimal variantPrice = product.getDiscountPrice() != null
-                ? product.getDiscountPrice()
-                : (product.getPrice() != null ? product.getPrice() : BigDecimal.ZERO);
-
-        ProductVariant defaultVariant = ProductVariant.builder()
-                .product(product)
-                .variantType(VariantType.OTHER)
-                .variantValue("Default")
-                .colorCode(null)
-                .imageUrl(product.getThumbnailUrl())
-                .price(variantPrice)
-                .stockQuantity(0)
-                .sku(product.getSku() != null ? product.getSku() : ("SKU-" + product.getId()))
-                .sortOrder(0)
-                .isActive(true)
-                .isDefault(true)
-                .build();
-
-        productVariantRepository.save(defaultVariant);
-    }
-
-    private void syncDefaultVariant(Product product) {
-        List<ProductVariant> variants = productVariantRepository.findByProductId(product.getId());
-        if (variants == null || variants.isEmpty()) {
-            ensureDefaultVariant(product);
-            return;
-        }
-
-        // Nếu chỉ có default variant hoặc tất cả là default, sync giá/tồn cho default
-        variants.stream()
-                .filter(v -> Boolean.TRUE.equals(v.getIsDefault()))
-                .findFirst()
-                .ifPresent(v -> {
-                    // Xử lý giá: ưu tiên discountPrice, nếu không có thì dùng price, nếu không có
-                    // thì giữ nguyên giá variant
-                    BigDecimal newPrice = product.getDiscountPrice() != null
-                            ? product.getDiscountPrice()
-                            : (product.getPrice() != null ? product.getPrice() : v.getPrice());
-                    v.setPrice(newPrice);
-                    if (product.getThumbnailUrl() != null) {
-                        v.setImageUrl(product.getThumbnailUrl());
-                    }
-                    if (product.getSku() != null) {
-                        v.setSku(product.getSku());
-                    }
-                    productVariantRepository.save(v);
-                });
+        this.eventPublisher = eventPublisher;
+        this.productDetailCache = productDetailCache;
+        this.bestSellerLeaderboard = bestSellerLeaderboard;
+        this.productCardAssembler = productCardAssembler;
+        this.productVariantSync = productVariantSync;
+        this.productListingRepository = productListingRepository;
+        this.productVectorIndex = productVectorIndex;
+        this.hybridSearchService = hybridSearchService;
+        this.similarProductsService = similarProductsService;
+        this.productEmbeddingStore = productEmbeddingStore;
+        this.aiCallGuard = aiCallGuard;
+        this.trendingProductsService = trendingProductsService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
     }
 
     @Override
@@ -149,9 +153,12 @@ public class ProductServiceImpl implements ProductService {
             productVariantRepository.saveAll(variantsToSave);
         } else {
             // Nếu không có variant, tạo default variant
-            ensureDefaultVariant(saved);
+            productVariantSync.createDefault(saved);
         }
 
+        eventPublisher.publishEvent(
+                new ProductChangedEvent(saved.getId(), ProductChangedEvent.ChangeType.CREATED));
+
         // Reload để có variants
         return productRepository.findById(saved.getId())
                 .orElseThrow(() -> new RuntimeException("Failed to reload product after creation"));
@@ -193,6 +200,68 @@ public class ProductServiceImpl implements ProductService {
                 name, sku, brand, categoryId, categoryIds, isFeatured, isActive, minPrice, maxPrice, search, pageable);
     }
 
+    @Override
+    public Page<ProductCardDTO> getProductCardsPage(Pageable pageable) {
+        Page<ProductCardDTO> page = productRepository.findActiveProductCards(pageable);
+        productCardAssembler.assemble(page.getContent());
+        return page;
+    }
+
+    private static boolean usesListingSort(Sort sort) {
+        for (Sort.Order order : sort) {
+            if (LISTING_SORT_FIELDS.contains(order.getProperty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "id" của client tương ứng với khóa productId của bảng đọc
+    private static Pageable toListingPageable(Pageable pageable) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : pageable.getSort()) {
+            orders.add("id".equals(order.getProperty()) ? order.withProperty("productId") : order);
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(orders));
+    }
+
+    @Override
+    public Page<ProductCardDTO> getProductCardsPageWithFilters(Pageable pageable,
+            Long id,
+            String name,
+            String sku,
+            String brand,
+            Long categoryId,
+            Boolean isFeatured,
+            Boolean isActive,
+            BigDecimal minPrice,
+            BigDecimal maxPrice,
+            Boolean inStock,
+            String search) {
+        Page<ProductCardDTO> page;
+        if (id != null) {
+            page = productRepository.findProductCardsByIdOnly(String.valueOf(id), pageable);
+        } else {
+            List<Long> categoryIds = new ArrayList<>();
+            if (categoryId != null) {
+                categoryIds = categoryService.getAllDescendantIds(categoryId);
+            }
+            if (inStock != null || usesListingSort(pageable.getSort())) {
+                // Lọc/sort theo dữ liệu gom sẵn (giá thực, tồn kho, đánh giá): trang id từ product_listing
+                Page<Long> idPage = productListingRepository.findProductIdsWithFilters(
+                        name, sku, brand, categoryId, categoryIds, isFeatured, isActive, inStock, minPrice, maxPrice,
+                        search, toListingPageable(pageable));
+                List<ProductCardDTO> cards = productCardAssembler.loadInOrder(idPage.getContent());
+                return new PageImpl<>(cards, pageable, idPage.getTotalElements());
+            }
+            page = productRepository.findProductCardsWithFilters(
+                    name, sku, brand, categoryId, categoryIds, isFeatured, isActive, minPrice, maxPrice, search,
+                    pageable);
+        }
+        productCardAssembler.assemble(page.getContent());
+        return page;
+    }
+
     @Override
     public List<Product> getProductsWithFilters(String name, String sku, String brand, Long categoryId,
             Boolean isFeatured, Boolean isActive) {
@@ -213,7 +282,18 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Optional<ProductResponseDTO> getProductByIdWithImagesAndSoldCount(Long id) {
-        return productRepository.findByIdWithImagesAndSold(id);
+        return productDetailCache.get(id, this::loadProductDetail);
+    }
+
+    // Dựng DTO trong 1 transaction và initialize hết các collection lazy để DTO dùng được sau khi cache
+    private Optional<ProductResponseDTO> loadProductDetail(Long id) {
+        return transactionTemplate.execute(status -> productRepository.findByIdWithImages(id)
+                .map(product -> {
+                    Hibernate.initialize(product.getVariants());
+                    Hibernate.initialize(product.getCategories());
+                    long soldCount = product.getSoldCount() != null ? product.getSoldCount() : 0L;
+                    return new ProductResponseDTO(product, soldCount);
+                }));
     }
 
     @Override
@@ -251,28 +331,10 @@ public class ProductServiceImpl implements ProductService {
             existing.setIsFeatured(product.getIsFeatured());
             Product updated = productRepository.save(existing);
 
-            // Kiểm tra và đảm bảo có ít nhất 1 variant active sau khi update
-            List<ProductVariant> currentVariants = productVariantRepository.findByProductId(id);
-            List<ProductVariant> activeVariants = currentVariants.stream()
-                    .filter(v -> Boolean.TRUE.equals(v.getIsActive()) && v.getDeletedBy() == null)
-                    .collect(Collectors.toList());
-
-            if (activeVariants.isEmpty()) {
-                // Nếu không còn variant active nào, tạo default variant mới
-                ensureDefaultVariant(updated);
-            } else {
-                // Đảm bảo có ít nhất 1 variant là default
-                boolean hasDefault = activeVariants.stream()
-                        .anyMatch(v -> Boolean.TRUE.equals(v.getIsDefault()));
-                if (!hasDefault) {
-                    ProductVariant firstActive = activeVariants.get(0);
-                    firstActive.setIsDefault(true);
-                    productVariantRepository.save(firstActive);
-                }
-                // Đồng bộ default variant khi sản phẩm không có biến thể tùy chọn
-                syncDefaultVariant(updated);
-            }
+            // Đảm bảo còn variant active, có default và default đồng bộ giá/ảnh/sku với product
+            productVariantSync.syncAfterUpdate(updated);
 
+            eventPublisher.publishEvent(new ProductChangedEvent(id, ProductChangedEvent.ChangeType.UPDATED));
             return updated;
         }).orElseThrow(() -> new RuntimeException("Product not found with id " + id));
     }
@@ -286,26 +348,90 @@ public class ProductServiceImpl implements ProductService {
         product.softDelete();
         productRepository.save(product);
 
-        // Soft delete tất cả variants của product này (chưa bị xóa)
-        List<ProductVariant> variants = productVariantRepository.findByProductId(id);
-        for (ProductVariant variant : variants) {
-            if (variant.getDeletedBy() == null) {
-                variant.softDelete(); // Method tự động lấy user từ SecurityUtil
-                productVariantRepository.save(variant);
-            }
-        }
+        // Soft delete tất cả variants của product này (chưa bị xóa) bằng 1 câu UPDATE
+        productVariantSync.softDeleteAll(id);
+
+        eventPublisher.publishEvent(new ProductChangedEvent(id, ProductChangedEvent.ChangeType.DELETED));
     }
 
     @Override
     public Page<Product> getBestSellers(Pageable pageable) {
-        // Best seller: dựa trên tổng quantity của OrderItem trong 90 ngày gần nhất
-        // và chỉ tính các đơn hàng COMPLETED.
-        Instant fromDate = Instant.now().minus(90, ChronoUnit.DAYS);
-        return orderItemRepository.findBestSellers(Order.OrderStatus.COMPLETED, fromDate, pageable);
+        Page<Long> ids = getBestSellerIds(pageable);
+        return new PageImpl<>(findAllInOrder(ids.getContent()), pageable, ids.getTotalElements());
+    }
+
+    @Override
+    public Page<ProductCardDTO> getBestSellerCards(Pageable pageable) {
+        Page<Long> ids = getBestSellerIds(pageable);
+        return new PageImpl<>(productCardAssembler.loadInOrder(ids.getContent()), pageable, ids.getTotalElements());
+    }
+
+    // Best seller: dựa trên tổng quantity của OrderItem trong 90 ngày gần nhất
+    // và chỉ tính các đơn hàng COMPLETED. Thứ hạng lấy từ leaderboard trong bộ nhớ.
+    private Page<Long> getBestSellerIds(Pageable pageable) {
+        BestSellerLeaderboard.Snapshot top = bestSellerLeaderboard.snapshot();
+        if (!top.covers(pageable.getOffset(), pageable.getPageSize())) {
+            // Trang nằm ngoài top-K giữ trong bộ nhớ: dùng query tổng hợp
+            Instant fromDate = Instant.now().minus(BestSellerLeaderboard.WINDOW_DAYS, ChronoUnit.DAYS);
+            return orderItemRepository.findBestSellerIds(Order.OrderStatus.COMPLETED, fromDate,
+                    PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+        }
+        return new PageImpl<>(top.slice(pageable.getOffset(), pageable.getPageSize()), pageable,
+                top.distinctProducts());
+    }
+
+    // findAllById không giữ thứ tự: sắp lại theo danh sách id
+    private List<Product> findAllInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Product> productMap = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, p -> p));
+        List<Product> ordered = new ArrayList<>(ids.size());
+        for (Long productId : ids) {
+            Product product = productMap.get(productId);
+            if (product != null) {
+                ordered.add(product);
+            }
+        }
+        return ordered;
     }
 
     @Override
     public List<Product> suggestProducts(String query, Long categoryId, int limit) {
+        List<Long> ids = collectSuggestionCards(query, categoryId, limit).stream()
+                .map(ProductCardDTO::getId)
+                .collect(Collectors.toList());
+        return findAllInOrder(ids);
+    }
+
+    @Override
+    public List<ProductCardDTO> suggestProductCards(String query, Long categoryId, int limit) {
+        return productCardAssembler.assemble(collectSuggestionCards(query, categoryId, limit));
+    }
+
+    @Override
+    public List<ProductCardDTO> getSimilarProductCards(Long productId, int limit) {
+        // Lấy cả danh sách K láng giềng: sản phẩm đã ẩn bị bỏ nên cần dư để đủ limit
+        List<Long> ids = similarProductsService.getSimilarIds(productId, Integer.MAX_VALUE);
+        return productCardAssembler.loadInOrder(ids).stream()
+                .filter(card -> Boolean.TRUE.equals(card.getIsActive()))
+                .limit(Math.max(0, limit))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ProductCardDTO> getTrendingProductCards(int limit) {
+        // Lấy dư để còn đủ limit sau khi bỏ sản phẩm đã ẩn
+        List<Long> ids = trendingProductsService.getTrendingIds(Math.max(0, limit) * 2);
+        return productCardAssembler.loadInOrder(ids).stream()
+                .filter(card -> Boolean.TRUE.equals(card.getIsActive()))
+                .limit(Math.max(0, limit))
+                .collect(Collectors.toList());
+    }
+
+    // Chọn card gợi ý (chưa gắn variants/ảnh/category): nổi bật khớp truy vấn -> best seller -> mới nhất
+    private List<ProductCardDTO> collectSuggestionCards(String query, Long categoryId, int limit) {
         int size = Math.max(1, Math.min(limit, 20));
 
         // Lấy toàn bộ id con của category (nếu có) để ưu tiên phù hợp ngữ cảnh
@@ -319,7 +445,7 @@ public class ProductServiceImpl implements ProductService {
                 size,
                 Sort.by(Sort.Direction.DESC, "isFeatured").and(Sort.by(Sort.Direction.DESC, "createdAt")));
 
-        Page<Product> primaryCandidates = productRepository.findProductsWithFiltersPaged(
+        Page<ProductCardDTO> primaryCandidates = productRepository.findProductCardsWithFilters(
                 null, // name
                 null, // sku
                 null, // brand
@@ -333,211 +459,159 @@ public class ProductServiceImpl implements ProductService {
                 primaryPageable);
 
         Set<Long> seenIds = new HashSet<>();
-        List<Product> suggestions = new ArrayList<>();
+        List<ProductCardDTO> suggestions = new ArrayList<>();
 
-        primaryCandidates.getContent().forEach(product -> {
-            if (product.getId() != null && seenIds.add(product.getId())) {
-                suggestions.add(product);
+        primaryCandidates.getContent().forEach(card -> {
+            if (card.getId() != null && seenIds.add(card.getId())) {
+                suggestions.add(card);
             }
         });
 
         if (suggestions.size() < size) {
-            Page<Product> bestSellerCandidates = getBestSellers(
-                    PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "id")));
-            bestSellerCandidates.getContent().forEach(product -> {
-                if (product.getId() != null && seenIds.add(product.getId())) {
-                    suggestions.add(product);
+            List<Long> bestSellerIds = getBestSellerIds(PageRequest.of(0, size)).getContent().stream()
+                    .filter(id -> !seenIds.contains(id))
+                    .collect(Collectors.toList());
+            if (!bestSellerIds.isEmpty()) {
+                Map<Long, ProductCardDTO> cards = productRepository.findProductCardsByIds(bestSellerIds).stream()
+                        .collect(Collectors.toMap(ProductCardDTO::getId, c -> c));
+                for (Long id : bestSellerIds) {
+                    ProductCardDTO card = cards.get(id);
+                    if (card != null && seenIds.add(id)) {
+                        suggestions.add(card);
+                    }
                 }
-            });
+            }
         }
 
         if (suggestions.size() < size) {
-            Page<Product> activeFallback = productRepository.findByIsActiveTrue(
+            Page<ProductCardDTO> activeFallback = productRepository.findActiveProductCards(
                     PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "createdAt")));
-            activeFallback.getContent().forEach(product -> {
-                if (product.getId() != null && seenIds.add(product.getId())) {
-                    suggestions.add(product);
+            activeFallback.getContent().forEach(card -> {
+                if (card.getId() != null && seenIds.add(card.getId())) {
+                    suggestions.add(card);
                 }
             });
         }
 
-        return suggestions.subList(0, Math.min(suggestions.size(), size));
-    }
-
-    /**
-     * Mở rộng query với synonyms để cải thiện kết quả tìm kiếm
-     */
-    private String expandQueryWithSynonyms(String query) {
-        if (query == null || query.isBlank()) {
-            return query;
-        }
-
-        String lowerQuery = query.toLowerCase().trim();
-
-        // Map synonyms: từ khóa -> các từ đồng nghĩa
-        Map<String, String> synonyms = Map.of(
-                "cặp", "cặp balo túi sách cặp học sinh ba lô",
-                "balo", "balo cặp túi sách ba lô",
-                "túi", "túi balo cặp túi sách",
-                "bút", "bút viết bút bi bút mực",
-                "sổ", "sổ tay vở sổ ghi chép",
-                "chuột", "chuột máy tính mouse",
-                "bàn phím", "bàn phím keyboard",
-                "màu", "màu vẽ màu sáp màu nước",
-                "cọ", "cọ vẽ brush",
-                "giấy", "giấy vẽ giấy màu");
-
-        // Tìm synonyms và thêm vào query
-        for (Map.Entry<String, String> entry : synonyms.entrySet()) {
-            if (lowerQuery.contains(entry.getKey())) {
-                return query + " " + entry.getValue();
-            }
-        }
-
-        return query;
+        return new ArrayList<>(suggestions.subList(0, Math.min(suggestions.size(), size)));
     }
 
     @Override
-    public List<Product> suggestProductsByVector(String query, Long categoryId, int limit) {
+    public List<ProductCardDTO> suggestProductCardsByVector(String query, Long categoryId, int limit) {
         int size = Math.max(1, Math.min(limit, 20));
         if (query == null || query.isBlank()) {
-            return suggestProducts("", categoryId, size);
+            return suggestProductCards("", categoryId, size);
         }
 
-        // Mở rộng query với synonyms để cải thiện kết quả
-        String expandedQuery = expandQueryWithSynonyms(query.trim());
-        List<Double> embedding = aiVectorService.embedWithGemini(expandedQuery);
-        var chromaResp = aiVectorService.queryChroma(embedding, categoryId, size);
-        if (chromaResp == null || chromaResp.ids == null || chromaResp.ids.isEmpty()) {
-            return suggestProducts(query, categoryId, size);
-        }
-
-        // Filter and rerank by distance threshold (auto-filters low quality matches)
-        List<String> idStrings = chromaResp.getFilteredAndRankedIds(
-                aiVectorService.getDistanceThreshold());
-
-        List<Long> ids = idStrings.stream()
-                .map(id -> {
-                    try {
-                        return Long.parseLong(id);
-                    } catch (NumberFormatException e) {
-                        return null;
-                    }
-                })
-                .filter(v -> v != null)
-                .collect(Collectors.toList());
+        List<Long> ids = hybridSearchService.search(query.trim(), categoryId, size);
 
+        // Chỉ khi cả BM25 lẫn vector đều không có kết quả
         if (ids.isEmpty()) {
-            return suggestProducts(query, categoryId, size);
+            return suggestProductCards(query, categoryId, size);
         }
 
-        List<Product> fetched = productRepository.findAllById(ids);
-        List<Product> ordered = new ArrayList<>();
-        for (Long id : ids) {
-            fetched.stream().filter(p -> p.getId().equals(id)).findFirst().ifPresent(ordered::add);
-            if (ordered.size() >= size) {
-                break;
-            }
-        }
-        return ordered;
+        List<ProductCardDTO> cards = productCardAssembler.loadInOrder(ids);
+        return cards.size() > size ? new ArrayList<>(cards.subList(0, size)) : cards;
     }
 
     @Override
-    public List<Product> suggestProductsByUserHistory(List<Long> viewedProductIds, Long categoryId, int limit) {
+    public List<ProductCardDTO> suggestProductCardsByUserHistory(List<Long> viewedProductIds, Long categoryId,
+            int limit) {
         int size = Math.max(1, Math.min(limit, 20));
 
-        if (viewedProductIds == null || viewedProductIds.isEmpty()) {
-            return getBestSellers(PageRequest.of(0, size)).getContent();
+        if (viewedProductIds == null || viewedProductIds.isEmpty() || !vectorSearchAvailable()) {
+            return getBestSellerCards(PageRequest.of(0, size)).getContent();
         }
 
         try {
-            List<String> productIdStrings = viewedProductIds.stream()
-                    .map(String::valueOf)
-                    .collect(Collectors.toList());
-
-            List<List<Double>> embeddings;
-            try {
-                embeddings = aiVectorService.getEmbeddingsByProductIds(productIdStrings);
-            } catch (Exception e) {
-                return getBestSellers(PageRequest.of(0, size)).getContent();
-            }
-
-            if (embeddings == null || embeddings.isEmpty()) {
-                return getBestSellers(PageRequest.of(0, size)).getContent();
-            }
-
-            List<List<Double>> validEmbeddings = embeddings.stream()
-                    .filter(e -> e != null && !e.isEmpty())
+            List<float[]> validEmbeddings = productEmbeddingStore.getEmbeddings(viewedProductIds).values().stream()
+                    .filter(e -> e.length > 0)
                     .collect(Collectors.toList());
 
             if (validEmbeddings.isEmpty()) {
-                return getBestSellers(PageRequest.of(0, size)).getContent();
+                return getBestSellerCards(PageRequest.of(0, size)).getContent();
             }
 
-            List<Double> averageEmbedding = aiVectorService.averageVectors(validEmbeddings);
-            var chromaResp = aiVectorService.queryChroma(averageEmbedding, categoryId, size * 5);
+            return suggestProductCardsByTaste(VectorMath.average(validEmbeddings), viewedProductIds, categoryId, size);
+        } catch (Exception e) {
+            return getBestSellerCards(PageRequest.of(0, size)).getContent();
+        }
+    }
 
-            if (chromaResp == null || chromaResp.ids == null || chromaResp.ids.isEmpty()) {
-                return getBestSellers(PageRequest.of(0, size)).getContent();
+    @Override
+    public List<ProductCardDTO> suggestProductCardsByTaste(float[] tasteVector, List<Long> excludedProductIds,
+            Long categoryId, int limit) {
+        int size = Math.max(1, Math.min(limit, 20));
+        if (tasteVector == null || tasteVector.length == 0 || !vectorSearchAvailable()) {
+            return getBestSellerCards(PageRequest.of(0, size)).getContent();
+        }
+        try {
+            List<Long> ids = suggestIdsNear(tasteVector,
+                    excludedProductIds == null ? Set.of() : new HashSet<>(excludedProductIds), categoryId, size);
+            if (ids.isEmpty()) {
+                return getBestSellerCards(PageRequest.of(0, size)).getContent();
             }
+            return productCardAssembler.loadInOrder(ids).stream()
+                    .filter(card -> Boolean.TRUE.equals(card.getIsActive()))
+                    .limit(size)
+                    .collect(Collectors.toList());
+        } catch (Exception e) {
+            return getBestSellerCards(PageRequest.of(0, size)).getContent();
+        }
+    }
 
-            List<String> idStrings = chromaResp.ids.get(0);
-            List<Double> distances = chromaResp.distances != null && !chromaResp.distances.isEmpty()
-                    ? chromaResp.distances.get(0)
-                    : Collections.emptyList();
-
-            List<Long> ids = new ArrayList<>();
-            for (int i = 0; i < idStrings.size() && ids.size() < size * 2; i++) {
-                try {
-                    Long productId = Long.parseLong(idStrings.get(i));
-                    if (viewedProductIds.contains(productId)) {
-                        continue;
-                    }
-                    if (i < distances.size() && distances.get(i) > 0.6) {
-                        continue;
-                    }
-                    ids.add(productId);
-                } catch (NumberFormatException e) {
-                    // Skip invalid IDs
-                }
-            }
+    // Index trong tiến trình không cần gọi ra ngoài; không có index thì mạch ChromaDB mở là đi thẳng best-seller
+    private boolean vectorSearchAvailable() {
+        return productVectorIndex.isReady() || aiCallGuard.isAvailable(AiCallGuard.CHROMA_QUERY);
+    }
 
-            if (!distances.isEmpty() && ids.size() > 1) {
-                Map<Long, Double> distanceMap = new java.util.HashMap<>();
-                for (int i = 0; i < idStrings.size(); i++) {
-                    try {
-                        Long pid = Long.parseLong(idStrings.get(i));
-                        if (ids.contains(pid) && i < distances.size()) {
-                            distanceMap.put(pid, distances.get(i));
-                        }
-                    } catch (NumberFormatException ignored) {
-                    }
+    // Một lần tìm láng giềng (index trong tiến trình, không thì ChromaDB), bỏ sản phẩm đã xem và quá xa
+    private List<Long> suggestIdsNear(float[] vector, Set<Long> excluded, Long categoryId, int size) {
+        List<Long> ids = new ArrayList<>();
+        if (productVectorIndex.isReady()) {
+            // Kết quả đã theo khoảng cách
+            for (ProductVectorIndex.Hit hit : productVectorIndex.search(vector, categoryId, size * 5)) {
+                // Index trong tiến trình trả L2² như ChromaDB nên dùng cùng ngưỡng với nhánh dưới
+                if (excluded.contains(hit.productId()) || hit.distance() > 0.6) {
+                    continue;
+                }
+                ids.add(hit.productId());
+                if (ids.size() >= size * 2) {
+                    break;
                 }
-                ids.sort(Comparator.comparingDouble(pid -> distanceMap.getOrDefault(pid, 999.0)));
             }
+            return ids;
+        }
 
-            if (ids.isEmpty()) {
-                return getBestSellers(PageRequest.of(0, size)).getContent();
-            }
+        var chromaResp = aiVectorService.queryChroma(vector, categoryId, size * 5);
+        if (chromaResp == null || chromaResp.ids == null || chromaResp.ids.isEmpty()) {
+            return ids;
+        }
 
-            List<Product> fetched = productRepository.findAllById(ids);
-            Map<Long, Product> productMap = fetched.stream()
-                    .collect(Collectors.toMap(Product::getId, p -> p));
+        List<String> idStrings = chromaResp.ids.get(0);
+        List<Double> distances = chromaResp.distances != null && !chromaResp.distances.isEmpty()
+                ? chromaResp.distances.get(0)
+                : Collections.emptyList();
 
-            List<Product> ordered = new ArrayList<>();
-            for (Long id : ids) {
-                Product p = productMap.get(id);
-                if (p != null && Boolean.TRUE.equals(p.getIsActive())) {
-                    ordered.add(p);
+        Map<Long, Double> distanceMap = new java.util.HashMap<>();
+        for (int i = 0; i < idStrings.size() && ids.size() < size * 2; i++) {
+            try {
+                Long productId = Long.parseLong(idStrings.get(i));
+                if (excluded.contains(productId)) {
+                    continue;
                 }
-                if (ordered.size() >= size) {
-                    break;
+                if (i < distances.size() && distances.get(i) > 0.6) {
+                    continue;
+                }
+                ids.add(productId);
+                if (i < distances.size()) {
+                    distanceMap.put(productId, distances.get(i));
                 }
+            } catch (NumberFormatException e) {
+                // Skip invalid IDs
             }
-
-            return ordered;
-        } catch (Exception e) {
-            return getBestSellers(PageRequest.of(0, size)).getContent();
         }
+        ids.sort(Comparator.comparingDouble(pid -> distanceMap.getOrDefault(pid, 999.0)));
+        return ids;
     }
 }
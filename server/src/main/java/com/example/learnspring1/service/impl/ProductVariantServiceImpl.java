@@ -4,9 +4,11 @@ import com.example.learnspring1.domain.Product;
 import com.example.learnspring1.domain.ProductVariant;
 import com.example.learnspring1.domain.VariantType;
 import com.example.learnspring1.domain.dto.ProductVariantDTO;
+import com.example.learnspring1.event.ProductChangedEvent;
 import com.example.learnspring1.repository.ProductRepository;
 import com.example.learnspring1.repository.ProductVariantRepository;
 import com.example.learnspring1.service.ProductVariantService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -20,11 +22,21 @@ public class ProductVariantServiceImpl implements ProductVariantService {
 
     private final ProductVariantRepository variantRepository;
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public ProductVariantServiceImpl(ProductVariantRepository variantRepository,
-            ProductRepository productRepository) {
+            ProductRepository productRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.variantRepository = variantRepository;
         this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    private void publishVariantChanged(Long productId) {
+        if (productId != null) {
+            eventPublisher.publishEvent(
+                    new ProductChangedEvent(productId, ProductChangedEvent.ChangeType.VARIANT_CHANGED));
+        }
     }
 
     /**
@@ -77,6 +89,7 @@ public class ProductVariantServiceImpl implements ProductVariantService {
         if (Boolean.TRUE.equals(saved.getIsDefault())) {
             enforceSingleDefault(saved.getProduct().getId(), saved.getId());
         }
+        publishVariantChanged(saved.getProduct() != null ? saved.getProduct().getId() : null);
         return saved;
     }
 
@@ -151,6 +164,7 @@ public class ProductVariantServiceImpl implements ProductVariantService {
         if (Boolean.TRUE.equals(saved.getIsDefault())) {
             enforceSingleDefault(saved.getProduct().getId(), saved.getId());
         }
+        publishVariantChanged(saved.getProduct().getId());
         return saved;
     }
 
@@ -160,6 +174,7 @@ public class ProductVariantServiceImpl implements ProductVariantService {
         ProductVariant existing = variantRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy variant với ID: " + id));
 
+        Long previousProductId = existing.getProduct() != null ? existing.getProduct().getId() : null;
         if (variantDTO.getProductId() != null && !variantDTO.getProductId().equals(existing.getProduct().getId())) {
             Product product = productRepository.findById(variantDTO.getProductId())
                     .orElseThrow(() -> new IllegalArgumentException(
@@ -182,6 +197,10 @@ public class ProductVariantServiceImpl implements ProductVariantService {
         if (Boolean.TRUE.equals(saved.getIsDefault())) {
             enforceSingleDefault(saved.getProduct().getId(), saved.getId());
         }
+        if (previousProductId != null && !previousProductId.equals(saved.getProduct().getId())) {
+            publishVariantChanged(previousProductId);
+        }
+        publishVariantChanged(saved.getProduct().getId());
         return convertToDTO(saved);
     }
 
@@ -196,6 +215,7 @@ public class ProductVariantServiceImpl implements ProductVariantService {
         if (productId != null && Boolean.TRUE.equals(variant.getIsDefault())) {
             ensureDefaultAfterDeletion(productId);
         }
+        publishVariantChanged(productId);
     }
 
     @Override
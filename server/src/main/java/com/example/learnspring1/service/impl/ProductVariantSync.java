@@ -0,0 +1,138 @@
+package com.example.learnspring1.service.impl;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.domain.ProductVariant;
+import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.repository.ProductVariantRepository;
+import com.example.learnspring1.utils.SecurityUtil;
+
+/**
+ * Đồng bộ variants của một product với trạng thái mong muốn.
+ * Variants chỉ được load một lần, so sánh với trạng thái đích (có default, giá/ảnh/sku của
+ * default theo product) và chỉ những variant thực sự đổi mới được ghi, gom trong một lần saveAll.
+ */
+@Component
+public class ProductVariantSync {
+
+    private final ProductVariantRepository productVariantRepository;
+
+    public ProductVariantSync(ProductVariantRepository productVariantRepository) {
+        this.productVariantRepository = productVariantRepository;
+    }
+
+    /**
+     * Tạo default variant cho product vừa tạo mà không kèm variant (không cần query lại).
+     */
+    public ProductVariant createDefault(Product product) {
+        return productVariantRepository.save(buildDefault(product));
+    }
+
+    /**
+     * Sau khi product được cập nhật: đảm bảo còn ít nhất 1 variant active, có đúng một default
+     * trong số variant active, và default variant mang giá/ảnh/sku của product.
+     * Tối đa 1 SELECT + 1 lần ghi theo lô.
+     */
+    @Transactional
+    public void syncAfterUpdate(Product product) {
+        List<ProductVariant> variants = productVariantRepository.findByProductId(product.getId());
+        List<ProductVariant> active = new ArrayList<>(variants.size());
+        for (ProductVariant variant : variants) {
+            if (Boolean.TRUE.equals(variant.getIsActive()) && variant.getDeletedBy() == null) {
+                active.add(variant);
+            }
+        }
+
+        if (active.isEmpty()) {
+            // Không còn variant active nào: tạo default variant mới
+            productVariantRepository.save(buildDefault(product));
+            return;
+        }
+
+        List<ProductVariant> dirty = new ArrayList<>(2);
+        ProductVariant defaultVariant = null;
+        for (ProductVariant variant : active) {
+            if (Boolean.TRUE.equals(variant.getIsDefault())) {
+                defaultVariant = variant;
+                break;
+            }
+        }
+        if (defaultVariant == null) {
+            defaultVariant = active.get(0);
+            defaultVariant.setIsDefault(true);
+            dirty.add(defaultVariant);
+        }
+
+        // Xử lý giá: ưu tiên discountPrice, nếu không có thì dùng price, nếu không có
+        // thì giữ nguyên giá variant
+        BigDecimal newPrice = product.getDiscountPrice() != null
+                ? product.getDiscountPrice()
+                : (product.getPrice() != null ? product.getPrice() : defaultVariant.getPrice());
+        boolean changed = false;
+        if (!sameAmount(defaultVariant.getPrice(), newPrice)) {
+            defaultVariant.setPrice(newPrice);
+            changed = true;
+        }
+        if (product.getThumbnailUrl() != null && !product.getThumbnailUrl().equals(defaultVariant.getImageUrl())) {
+            defaultVariant.setImageUrl(product.getThumbnailUrl());
+            changed = true;
+        }
+        if (product.getSku() != null && !product.getSku().equals(defaultVariant.getSku())) {
+            defaultVariant.setSku(product.getSku());
+            changed = true;
+        }
+        if (changed && !dirty.contains(defaultVariant)) {
+            dirty.add(defaultVariant);
+        }
+
+        if (!dirty.isEmpty()) {
+            productVariantRepository.saveAll(dirty);
+        }
+    }
+
+    /**
+     * Soft delete toàn bộ variant chưa xóa của product bằng một câu UPDATE.
+     */
+    @Transactional
+    public int softDeleteAll(Long productId) {
+        String user = SecurityUtil.getCurrentUserLogin().orElse("system");
+        return productVariantRepository.softDeleteByProductId(productId, user, Instant.now());
+    }
+
+    private static ProductVariant buildDefault(Product product) {
+        // Xử lý giá: ưu tiên discountPrice, nếu không có thì dùng price, nếu không có
+        // thì 0
+        BigDecimal variantPrice = product.getDiscountPrice() != null
+                ? product.getDiscountPrice()
+                : (product.getPrice() != null ? product.getPrice() : BigDecimal.ZERO);
+
+        return ProductVariant.builder()
+                .product(product)
+                .variantType(VariantType.OTHER)
+                .variantValue("Default")
+                .colorCode(null)
+                .imageUrl(product.getThumbnailUrl())
+                .price(variantPrice)
+                .stockQuantity(0)
+                .sku(product.getSku() != null ? product.getSku() : ("SKU-" + product.getId()))
+                .sortOrder(0)
+                .isActive(true)
+                .isDefault(true)
+                .build();
+    }
+
+    // So sánh theo giá trị (19,4 từ DB và 0 chữ số thập phân từ request vẫn là cùng một giá)
+    private static boolean sameAmount(BigDecimal a, BigDecimal b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.compareTo(b) == 0;
+    }
+}
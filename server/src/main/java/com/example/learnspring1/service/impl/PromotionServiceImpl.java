@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -21,6 +22,7 @@ import com.example.learnspring1.domain.PromotionConditionOperator;
 import com.example.learnspring1.domain.PromotionDiscountType;
 import com.example.learnspring1.domain.PromotionGiftItem;
 import com.example.learnspring1.domain.dto.PromotionRequestDTO;
+import com.example.learnspring1.event.PromotionChangedEvent;
 import com.example.learnspring1.repository.ProductRepository;
 import com.example.learnspring1.repository.PromotionRepository;
 import com.example.learnspring1.service.PromotionService;
@@ -30,10 +32,13 @@ public class PromotionServiceImpl implements PromotionService {
 
     private final PromotionRepository promotionRepository;
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PromotionServiceImpl(PromotionRepository promotionRepository, ProductRepository productRepository) {
+    public PromotionServiceImpl(PromotionRepository promotionRepository, ProductRepository productRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.promotionRepository = promotionRepository;
         this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Override
@@ -62,7 +67,9 @@ public class PromotionServiceImpl implements PromotionService {
         buildConditions(promotion, safeRequest.getConditions());
         buildGiftItems(promotion, safeRequest);
 
-        return promotionRepository.save(promotion);
+        Promotion saved = promotionRepository.save(promotion);
+        eventPublisher.publishEvent(new PromotionChangedEvent(saved.getId()));
+        return saved;
     }
 
     @Override
@@ -123,7 +130,9 @@ public class PromotionServiceImpl implements PromotionService {
         buildConditions(existing, safeRequest.getConditions());
         buildGiftItems(existing, safeRequest);
         
-        return promotionRepository.save(existing);
+        Promotion saved = promotionRepository.save(existing);
+        eventPublisher.publishEvent(new PromotionChangedEvent(id));
+        return saved;
     }
 
     @Override
@@ -158,6 +167,7 @@ public class PromotionServiceImpl implements PromotionService {
                 .orElseThrow(() -> new NoSuchElementException("Promotion not found with id " + id));
         promotion.softDelete();
         promotionRepository.save(promotion);
+        eventPublisher.publishEvent(new PromotionChangedEvent(id));
     }
 
     private void initializePromotion(Promotion promotion) {
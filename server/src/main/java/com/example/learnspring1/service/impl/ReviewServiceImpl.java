@@ -4,11 +4,13 @@ import com.example.learnspring1.domain.Product;
 import com.example.learnspring1.domain.ProductReview;
 import com.example.learnspring1.domain.dto.CreateReviewRequestDTO; // Import đúng DTO
 import com.example.learnspring1.domain.dto.ReviewStatsDTO;
+import com.example.learnspring1.event.ReviewChangedEvent;
 import com.example.learnspring1.repository.ProductRepository;
 import com.example.learnspring1.repository.ReviewRepository;
 import com.example.learnspring1.service.ReviewService;
 import com.example.learnspring1.utils.SecurityUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -22,6 +24,7 @@ public class ReviewServiceImpl implements ReviewService {
 
     private final ReviewRepository reviewRepository;
     private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
@@ -44,7 +47,9 @@ public class ReviewServiceImpl implements ReviewService {
                 .userFullName(request.getUserFullName() != null ? request.getUserFullName() : currentUser)
                 .build();
 
-        return reviewRepository.save(review);
+        ProductReview saved = reviewRepository.save(review);
+        eventPublisher.publishEvent(new ReviewChangedEvent(product.getId()));
+        return saved;
     }
 
     // ĐÃ XÓA hàm createReview thừa trả về null ở đây
@@ -75,6 +80,7 @@ public class ReviewServiceImpl implements ReviewService {
                 .orElseThrow(() -> new NoSuchElementException("Review not found"));
         review.softDelete();
         reviewRepository.save(review);
+        eventPublisher.publishEvent(new ReviewChangedEvent(review.getProduct().getId()));
     }
 
     @Override
@@ -0,0 +1,139 @@
+package com.example.learnspring1.utils;
+
+/**
+ * Circuit breaker theo cửa sổ trượt {@code windowSize} lời gọi gần nhất: khi đã có ít nhất {@code minCalls}
+ * kết quả và tỉ lệ lỗi ≥ {@code failureRateThreshold} thì mở mạch trong {@code openMillis}; hết thời gian
+ * chuyển sang nửa mở, cho đúng một lời gọi thử: thành công thì đóng (xóa cửa sổ), lỗi thì mở lại.
+ * Thread-safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    // Vòng kết quả gần nhất: true = lỗi
+    private final boolean[] window;
+    private int position;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int windowSize, int minCalls, double failureRateThreshold, long openMillis) {
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minCalls = Math.max(1, Math.min(minCalls, window.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = Math.max(0, openMillis) * 1_000_000L;
+    }
+
+    /**
+     * Có được gọi không. Ở trạng thái nửa mở chỉ lời gọi thử đầu tiên được phép; người nhận phép phải báo lại
+     * bằng {@link #onSuccess}, {@link #onFailure} hoặc {@link #onIgnored}.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (refreshState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minCalls && failureRate() >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Lời gọi đã được phép nhưng không chạy (bị từ chối ở chỗ khác): không tính vào cửa sổ, trả lại lượt thử.
+     */
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State state() {
+        return refreshState();
+    }
+
+    public synchronized double failureRate() {
+        return recorded == 0 ? 0 : (double) failures / recorded;
+    }
+
+    public synchronized int recordedCalls() {
+        return recorded;
+    }
+
+    /**
+     * Thời gian (ms) còn lại trước khi cho lời gọi thử; 0 nếu mạch không mở.
+     */
+    public synchronized long remainingOpenMillis() {
+        if (refreshState() != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, (openedAt + openNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    private State refreshState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        trialInFlight = false;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+    }
+}
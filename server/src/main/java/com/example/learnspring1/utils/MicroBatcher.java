@@ -0,0 +1,120 @@
+package com.example.learnspring1.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Gom các lời gọi đơn lẻ đồng thời thành lô: phần tử đầu tiên mở một cửa sổ {@code linger}, lô được gửi khi
+ * hết cửa sổ hoặc đủ {@code maxBatch} phần tử (key trùng trong lô chỉ gửi một lần), kết quả trả về đúng
+ * future của từng caller. Tối đa {@code maxConcurrent} lô chạy cùng lúc; khi đủ, luồng gom chờ nên các
+ * yêu cầu mới tiếp tục dồn vào lô sau thay vì mở thêm kết nối.
+ *
+ * @param <K> đầu vào (dùng làm key loại trùng, cần equals/hashCode)
+ * @param <V> kết quả
+ */
+public final class MicroBatcher<K, V> implements AutoCloseable {
+
+    private final Function<List<K>, List<V>> batchCall;
+    private final int maxBatch;
+    private final long lingerNanos;
+    private final Semaphore permits;
+    private final LinkedBlockingQueue<Pending<K, V>> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread collector;
+    private volatile boolean closed;
+
+    /**
+     * @param batchCall gọi một lô, trả kết quả theo đúng thứ tự đầu vào
+     */
+    public MicroBatcher(String name, int maxBatch, long lingerMillis, int maxConcurrent,
+            Function<List<K>, List<V>> batchCall) {
+        this.batchCall = batchCall;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.permits = new Semaphore(Math.max(1, maxConcurrent));
+        this.collector = Thread.ofPlatform().daemon().name(name + "-batcher").start(this::collectLoop);
+    }
+
+    public CompletableFuture<V> submit(K key) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+            return future;
+        }
+        queue.add(new Pending<>(key, future));
+        return future;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        collector.interrupt();
+        executor.shutdown();
+        Pending<K, V> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+    }
+
+    private void collectLoop() {
+        while (!closed) {
+            try {
+                List<Pending<K, V>> batch = new ArrayList<>(maxBatch);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<K, V> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        run(batch);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void run(List<Pending<K, V>> batch) {
+        Map<K, List<CompletableFuture<V>>> waiters = new LinkedHashMap<>();
+        for (Pending<K, V> pending : batch) {
+            waiters.computeIfAbsent(pending.key(), key -> new ArrayList<>(1)).add(pending.future());
+        }
+        List<K> keys = new ArrayList<>(waiters.keySet());
+        try {
+            List<V> results = batchCall.apply(keys);
+            if (results == null || results.size() != keys.size()) {
+                throw new IllegalStateException("Batch call returned " + (results == null ? 0 : results.size())
+                        + " results for " + keys.size() + " inputs");
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                V result = results.get(i);
+                waiters.get(keys.get(i)).forEach(future -> future.complete(result));
+            }
+        } catch (Throwable e) {
+            waiters.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(e)));
+        }
+    }
+
+    private record Pending<K, V>(K key, CompletableFuture<V> future) {
+    }
+}
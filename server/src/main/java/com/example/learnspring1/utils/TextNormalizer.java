@@ -0,0 +1,90 @@
+package com.example.learnspring1.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Chuẩn hóa chuỗi tiếng Việt để so khớp không dấu: "Bút Gel Thiên Long" -> "but gel thien long".
+ */
+public final class TextNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Bỏ dấu (kể cả đ/Đ), chữ thường, ký tự không phải chữ/số thành khoảng trắng, gộp khoảng trắng.
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        StringBuilder sb = new StringBuilder(stripped.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bỏ dấu (kể cả đ/Đ) và chữ thường nhưng giữ nguyên các ký tự khác, gần với collation ai_ci của MariaDB,
+     * để so khớp kiểu {@code LIKE %x%} trong bộ nhớ cho cùng kết quả với SQL.
+     */
+    public static String foldCase(String text) {
+        if (text == null || text.isEmpty()) {
+            return text;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        StringBuilder sb = new StringBuilder(stripped.length());
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            sb.append(c == 'đ' || c == 'Đ' ? 'd' : Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Các từ của chuỗi sau khi fold ("Bút bi Thiên Long" -> [but, bi, thien, long]).
+     */
+    public static List<String> tokens(String text) {
+        String folded = fold(text);
+        return folded.isEmpty() ? List.of() : List.of(folded.split(" "));
+    }
+
+    /**
+     * Các hậu tố bắt đầu tại đầu mỗi từ của chuỗi đã fold (tối đa {@code maxWords}),
+     * để tìm "gel" vẫn ra "but gel".
+     */
+    public static List<String> wordStarts(String folded, int maxWords) {
+        List<String> result = new ArrayList<>();
+        if (folded.isEmpty()) {
+            return result;
+        }
+        result.add(folded);
+        for (int i = 0; i < folded.length() && result.size() < maxWords; i++) {
+            if (folded.charAt(i) == ' ' && i + 1 < folded.length()) {
+                result.add(folded.substring(i + 1));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.learnspring1.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Phép toán trên vector embedding dạng float[] (không boxing).
+ * Dùng JDK Vector API (SIMD) khi JVM chạy với {@code --add-modules jdk.incubator.vector},
+ * ngược lại dùng vòng lặp thường; kết quả hai cách chỉ khác nhau ở sai số làm tròn.
+ * Bản SIMD nằm ở source set {@code simd} (chỉ nó được biên dịch với module incubator) và được nạp
+ * bằng tên lớp, nên code chính không phụ thuộc vào module đó.
+ */
+public final class VectorMath {
+
+    private static final Ops OPS = loadOps();
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimd() {
+        return !(OPS instanceof ScalarOps);
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return OPS.dot(a, b);
+    }
+
+    /**
+     * Chuẩn hóa về độ dài 1 (trả về bản sao); vector toàn 0 giữ nguyên.
+     */
+    public static float[] normalize(float[] vector) {
+        float[] result = Arrays.copyOf(vector, vector.length);
+        normalizeInPlace(result);
+        return result;
+    }
+
+    /**
+     * Trung bình các vector rồi chuẩn hóa; bỏ qua vector null/rỗng và vector khác số chiều với vector hợp lệ đầu tiên.
+     * Kết quả luôn có độ dài 1, giống hai bản trước đây ({@code AiVectorService.averageVectors} chia cho số
+     * lượng rồi chuẩn hóa, {@code ProductVectorIndex.average} chuẩn hóa tổng): vector trung bình chỉ dùng làm
+     * truy vấn theo hướng trên index vector đơn vị, độ dài không mang thông tin.
+     */
+    public static float[] average(List<float[]> vectors) {
+        float[] sum = null;
+        for (float[] vector : vectors) {
+            if (vector == null || vector.length == 0) {
+                continue;
+            }
+            if (sum == null) {
+                sum = Arrays.copyOf(vector, vector.length);
+            } else if (vector.length == sum.length) {
+                OPS.addTo(sum, vector);
+            }
+        }
+        if (sum == null) {
+            throw new IllegalArgumentException("No valid vectors found");
+        }
+        // Chia cho số lượng không đổi hướng nên chuẩn hóa thẳng tổng
+        normalizeInPlace(sum);
+        return sum;
+    }
+
+    private static void normalizeInPlace(float[] vector) {
+        float norm = OPS.dot(vector, vector);
+        if (norm > 0) {
+            OPS.scale(vector, (float) (1.0 / Math.sqrt(norm)));
+        }
+    }
+
+    private static Ops loadOps() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Ops) Class.forName(VectorMath.class.getPackageName() + ".SimdVectorOps")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Thiếu lớp SIMD hoặc module có mặt nhưng không dùng được: quay về vòng lặp thường
+            }
+        }
+        return new ScalarOps();
+    }
+
+    interface Ops {
+        float dot(float[] a, float[] b);
+
+        void addTo(float[] target, float[] vector);
+
+        void scale(float[] vector, float factor);
+    }
+
+    static final class ScalarOps implements Ops {
+
+        @Override
+        public float dot(float[] a, float[] b) {
+            float sum = 0f;
+            for (int i = 0; i < a.length; i++) {
+                sum += a[i] * b[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public void addTo(float[] target, float[] vector) {
+            for (int i = 0; i < target.length; i++) {
+                target[i] += vector[i];
+            }
+        }
+
+        @Override
+        public void scale(float[] vector, float factor) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= factor;
+            }
+        }
+    }
+}
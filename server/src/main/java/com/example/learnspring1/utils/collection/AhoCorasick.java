@@ -0,0 +1,134 @@
+package com.example.learnspring1.utils.collection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Automaton Aho-Corasick trên tập mẫu (chuỗi đã fold): một lượt quét văn bản tìm mọi lần xuất hiện của mọi mẫu,
+ * thời gian tuyến tính theo độ dài văn bản + số kết quả, không phụ thuộc số mẫu.
+ * Cạnh chuyển lưu trong một {@link LongLongHashMap} (node, ký tự) -> node con, không map riêng từng node.
+ * Bất biến, thread-safe sau khi build.
+ */
+public final class AhoCorasick {
+
+    private final LongLongHashMap transitions;
+    private final int[] fail;
+    // Mẫu đúng bằng chuỗi của node (-1 nếu không có; mẫu trùng nhau giữ cái đầu) và node gần nhất trên chuỗi fail có mẫu
+    private final int[] output;
+    private final int[] outputLink;
+    private final int[] patternLengths;
+
+    private AhoCorasick(LongLongHashMap transitions, int[] fail, int[] output, int[] outputLink,
+            int[] patternLengths) {
+        this.transitions = transitions;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.patternLengths = patternLengths;
+    }
+
+    /**
+     * Dựng automaton; chỉ số mẫu trong kết quả là vị trí trong {@code patterns}. Mẫu rỗng bị bỏ qua.
+     */
+    public static AhoCorasick build(List<String> patterns) {
+        LongLongHashMap transitions = new LongLongHashMap(patterns.size() * 8);
+        List<Integer> outputs = new ArrayList<>();
+        outputs.add(-1);
+        int[] lengths = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            lengths[p] = pattern.length();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                long key = edge(node, pattern.charAt(i));
+                long child = transitions.get(key);
+                if (child == 0) {
+                    child = outputs.size();
+                    outputs.add(-1);
+                    transitions.put(key, child);
+                }
+                node = (int) child;
+            }
+            if (outputs.get(node) < 0) {
+                outputs.set(node, p);
+            }
+        }
+
+        int nodes = outputs.size();
+        int[] output = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            output[i] = outputs.get(i);
+        }
+        int[] fail = new int[nodes];
+        int[] outputLink = new int[nodes];
+        Arrays.fill(outputLink, -1);
+
+        // Gom cạnh theo node cha để duyệt BFS
+        List<List<long[]>> childrenOf = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            childrenOf.add(new ArrayList<>(2));
+        }
+        transitions.forEach((key, child) ->
+                childrenOf.get((int) (key >>> 16) - 1).add(new long[] { key & 0xFFFF, child }));
+
+        AhoCorasick automaton = new AhoCorasick(transitions, fail, output, outputLink, lengths);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (long[] edge : childrenOf.get(0)) {
+            queue.add((int) edge[1]);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (long[] edge : childrenOf.get(node)) {
+                char c = (char) edge[0];
+                int child = (int) edge[1];
+                fail[child] = automaton.next(fail[node], c);
+                int suffix = fail[child];
+                outputLink[child] = output[suffix] >= 0 ? suffix : outputLink[suffix];
+                queue.add(child);
+            }
+        }
+        return automaton;
+    }
+
+    /**
+     * Gọi {@code visitor} cho mỗi lần xuất hiện (theo vị trí kết thúc tăng dần).
+     */
+    public void forEachMatch(CharSequence text, MatchVisitor visitor) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            for (int hit = output[node] >= 0 ? node : outputLink[node]; hit > 0; hit = outputLink[hit]) {
+                int pattern = output[hit];
+                visitor.visit(pattern, i + 1 - patternLengths[pattern], i + 1);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        while (true) {
+            long child = transitions.get(edge(node, c));
+            if (child != 0) {
+                return (int) child;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = fail[node];
+        }
+    }
+
+    // Cộng 1 vào node để key không bao giờ là 0 (ô trống của LongLongHashMap)
+    private static long edge(int node, char c) {
+        return ((long) (node + 1) << 16) | c;
+    }
+
+    @FunctionalInterface
+    public interface MatchVisitor {
+        void visit(int pattern, int start, int end);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.learnspring1.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index bất biến chấm điểm theo Okapi BM25.
+ * Document là số nguyên 0..n-1 do caller đánh (chỉ số vào mảng dữ liệu của caller), nội dung là danh sách term
+ * đã chuẩn hóa. Posting list lưu (doc, tf) dạng mảng nguyên thủy; tra cứu cộng điểm vào mảng float theo doc
+ * nên không tạo object cho mỗi posting. Thread-safe sau khi build.
+ */
+public final class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final Map<String, Postings> postings;
+    private final int[] docLengths;
+    private final float averageLength;
+
+    private Bm25Index(Map<String, Postings> postings, int[] docLengths) {
+        this.postings = postings;
+        this.docLengths = docLengths;
+        long total = 0;
+        for (int length : docLengths) {
+            total += length;
+        }
+        this.averageLength = docLengths.length == 0 ? 0f : (float) total / docLengths.length;
+    }
+
+    public static Builder builder(int documentCount) {
+        return new Builder(documentCount);
+    }
+
+    public int documentCount() {
+        return docLengths.length;
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Top-k document theo điểm BM25 giảm dần; term trùng trong truy vấn chỉ tính một lần.
+     *
+     * @param filter chỉ giữ document thỏa điều kiện, {@code null} = không lọc
+     */
+    public List<Hit> search(List<String> queryTerms, int k, IntPredicate filter) {
+        int n = docLengths.length;
+        if (n == 0 || queryTerms.isEmpty() || k <= 0) {
+            return List.of();
+        }
+        float[] scores = null;
+        int[] touched = null;
+        int touchedCount = 0;
+        for (String term : new LinkedHashSet<>(queryTerms)) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            if (scores == null) {
+                scores = new float[n];
+                touched = new int[16];
+            }
+            float idf = (float) Math.log(1 + (n - list.docs.length + 0.5) / (list.docs.length + 0.5));
+            for (int i = 0; i < list.docs.length; i++) {
+                int doc = list.docs[i];
+                float tf = list.freqs[i];
+                float norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                if (scores[doc] == 0f) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = doc;
+                }
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        if (scores == null) {
+            return List.of();
+        }
+
+        // Chọn top-k bằng sắp xếp phần đã chạm (thường nhỏ hơn nhiều so với n)
+        List<Hit> hits = new ArrayList<>(Math.min(touchedCount, 64));
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (filter == null || filter.test(doc)) {
+                hits.add(new Hit(doc, scores[doc]));
+            }
+        }
+        hits.sort((a, b) -> {
+            int byScore = Float.compare(b.score(), a.score());
+            return byScore != 0 ? byScore : Integer.compare(a.doc(), b.doc());
+        });
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    public static final class Builder {
+
+        private final int[] docLengths;
+        private final Map<String, PostingsBuilder> terms = new HashMap<>();
+
+        private Builder(int documentCount) {
+            this.docLengths = new int[documentCount];
+        }
+
+        /**
+         * Thêm nội dung cho document; gọi nhiều lần cho cùng doc (nhiều field) thì cộng dồn.
+         * Document phải được thêm theo thứ tự tăng dần.
+         */
+        public Builder add(int doc, List<String> docTerms) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : docTerms) {
+                if (!term.isEmpty()) {
+                    frequencies.merge(term, 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                terms.computeIfAbsent(entry.getKey(), t -> new PostingsBuilder()).add(doc, entry.getValue());
+                docLengths[doc] += entry.getValue();
+            }
+            return this;
+        }
+
+        public Bm25Index build() {
+            Map<String, Postings> frozen = new HashMap<>(terms.size() * 2);
+            for (Map.Entry<String, PostingsBuilder> entry : terms.entrySet()) {
+                frozen.put(entry.getKey(), entry.getValue().freeze());
+            }
+            return new Bm25Index(frozen, docLengths);
+        }
+    }
+
+    private static final class PostingsBuilder {
+        private int[] docs = new int[2];
+        private int[] freqs = new int[2];
+        private int size;
+
+        private void add(int doc, int freq) {
+            if (size > 0 && docs[size - 1] == doc) {
+                freqs[size - 1] += freq;
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+
+        private Postings freeze() {
+            return new Postings(Arrays.copyOf(docs, size), Arrays.copyOf(freqs, size));
+        }
+    }
+
+    private record Postings(int[] docs, int[] freqs) {
+    }
+
+    public record Hit(int doc, float score) {
+    }
+}
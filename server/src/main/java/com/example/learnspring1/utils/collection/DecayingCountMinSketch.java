@@ -0,0 +1,97 @@
+package com.example.learnspring1.utils.collection;
+
+/**
+ * Count-min sketch trên key long với bộ đếm double để nhân hệ số suy giảm: {@code depth} hàng × {@code width}
+ * ô, bộ nhớ cố định bất kể có bao nhiêu key. Ước lượng không bao giờ thấp hơn giá trị thật; cập nhật kiểu
+ * conservative (chỉ nâng các ô đang nhỏ hơn giá trị mới) để giảm phần đếm dư do va chạm.
+ * {@link #decay} nhân mọi ô với cùng một hệ số, nên số đếm là tổng có suy giảm theo thời gian.
+ * Không thread-safe.
+ */
+public final class DecayingCountMinSketch {
+
+    private final int depth;
+    private final int mask;
+    private final double[] counts;
+    private final long[] seeds;
+    private double total;
+
+    /**
+     * @param width làm tròn lên lũy thừa của 2
+     */
+    public DecayingCountMinSketch(int depth, int width) {
+        this.depth = Math.max(1, depth);
+        int columns = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.mask = columns - 1;
+        this.counts = new double[this.depth * columns];
+        this.seeds = new long[this.depth];
+        long seed = 0x5DEECE66DL;
+        for (int row = 0; row < this.depth; row++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            seeds[row] = seed | 1;
+        }
+    }
+
+    /**
+     * Cộng {@code weight} cho key, trả về ước lượng mới của key.
+     */
+    public double add(long key, double weight) {
+        double estimate = estimate(key) + weight;
+        int columns = mask + 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * columns + column(key, row);
+            if (counts[index] < estimate) {
+                counts[index] = estimate;
+            }
+        }
+        total += weight;
+        return estimate;
+    }
+
+    public double estimate(long key) {
+        double min = Double.MAX_VALUE;
+        int columns = mask + 1;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counts[row * columns + column(key, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Nhân mọi bộ đếm với {@code factor} (0..1).
+     */
+    public void decay(double factor) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] *= factor;
+        }
+        total *= factor;
+    }
+
+    /**
+     * Tổng trọng số đã cộng (cùng suy giảm).
+     */
+    public double total() {
+        return total;
+    }
+
+    public int width() {
+        return mask + 1;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    private int column(long key, int row) {
+        return (int) mix(key * seeds[row]) & mask;
+    }
+
+    // fmix64 của MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE53B7C53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.learnspring1.utils.collection;
+
+/**
+ * Tập ứng viên heavy hitter kích thước cố định trên key long (khác 0): giữ {@code capacity} key có điểm cao
+ * nhất từng được báo. Key mới chỉ vào được khi điểm cao hơn key thấp nhất, và khi đó đẩy key thấp nhất ra.
+ * Điểm do nơi gọi tính (vd. ước lượng từ {@link DecayingCountMinSketch}). {@link #decay} nhân mọi điểm
+ * với cùng hệ số. Không thread-safe.
+ */
+public final class HeavyHitters {
+
+    private final long[] keys;
+    private final double[] scores;
+    // key -> vị trí + 1
+    private final LongLongHashMap slots;
+    private int size;
+    // Vị trí key điểm thấp nhất; -1 = cần tìm lại
+    private int minSlot = -1;
+
+    public HeavyHitters(int capacity) {
+        int slotsCapacity = Math.max(1, capacity);
+        this.keys = new long[slotsCapacity];
+        this.scores = new double[slotsCapacity];
+        this.slots = new LongLongHashMap(slotsCapacity);
+    }
+
+    /**
+     * Báo điểm hiện tại của key; trả về true nếu key đang nằm trong tập sau lần báo này.
+     */
+    public boolean offer(long key, double score) {
+        long slot = slots.get(key);
+        if (slot != 0) {
+            int index = (int) slot - 1;
+            scores[index] = score;
+            if (index == minSlot) {
+                minSlot = -1;
+            } else if (minSlot >= 0 && score < scores[minSlot]) {
+                minSlot = index;
+            }
+            return true;
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            scores[size] = score;
+            slots.put(key, ++size);
+            minSlot = -1;
+            return true;
+        }
+        int min = minSlot();
+        if (score <= scores[min]) {
+            return false;
+        }
+        slots.remove(keys[min]);
+        keys[min] = key;
+        scores[min] = score;
+        slots.put(key, min + 1);
+        minSlot = -1;
+        return true;
+    }
+
+    public void decay(double factor) {
+        for (int i = 0; i < size; i++) {
+            scores[i] *= factor;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    public double scoreAt(int index) {
+        return scores[index];
+    }
+
+    private int minSlot() {
+        if (minSlot < 0) {
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (scores[i] < scores[min]) {
+                    min = i;
+                }
+            }
+            minSlot = min;
+        }
+        return minSlot;
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.learnspring1.utils.collection;
+
+import com.example.learnspring1.utils.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Đồ thị HNSW (Hierarchical Navigable Small World) cho tìm kiếm láng giềng gần đúng theo cosine.
+ * Vector phải được chuẩn hóa (độ dài 1) trước khi thêm/tra. Khoảng cách trả về là bình phương khoảng cách
+ * Euclid (L2² = 2 - 2·dot, trong [0, 4]), cùng thang với ChromaDB (space "l2" mặc định) để các ngưỡng
+ * khoảng cách đã chỉnh trên ChromaDB dùng được nguyên cho cả hai đường; thứ tự giống hệt 1 - dot.
+ * Node được đánh số 0..size-1 theo thứ tự thêm; xóa chỉ đánh dấu (node vẫn giữ để đồ thị liên thông).
+ * Bộ lọc được áp dụng trong lúc duyệt đồ thị: node không khớp vẫn được đi qua nhưng không vào kết quả.
+ * Một writer (add/markDeleted) và nhiều reader đồng thời (khóa đọc/ghi).
+ */
+public final class HnswIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int MAX_LEVEL = 16;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[][] vectors;
+    // links[node][level] = danh sách láng giềng ở tầng đó
+    private int[][][] links;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimension, int m, int efConstruction, int expectedSize) {
+        this.dimension = dimension;
+        this.m = Math.max(4, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(this.m, efConstruction);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        int capacity = Math.max(16, expectedSize);
+        this.vectors = new float[capacity][];
+        this.links = new int[capacity][][];
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int liveCount() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isDeleted(int node) {
+        lock.readLock().lock();
+        try {
+            return deleted.get(node);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vector đã lưu của node (không được sửa mảng trả về).
+     */
+    public float[] vector(int node) {
+        lock.readLock().lock();
+        try {
+            return node >= 0 && node < size ? vectors[node] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Thêm vector (đã chuẩn hóa) và trả về số node của nó.
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            int node = size;
+            ensureCapacity(node + 1);
+            int level = randomLevel();
+            vectors[node] = vector;
+            links[node] = new int[level + 1][];
+            Arrays.fill(links[node], EMPTY);
+            size++;
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            int ep = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                ep = greedyClosest(vector, ep, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                long[] found = ascending(searchLayer(vector, ep, efConstruction, l, null));
+                int[] selected = selectNeighbors(found, m);
+                links[node][l] = selected;
+                int maxConnections = l == 0 ? maxM0 : m;
+                for (int neighbor : selected) {
+                    connect(neighbor, node, l, maxConnections);
+                }
+                ep = nodeOf(found[0]);
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void markDeleted(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node >= 0 && node < size && !deleted.get(node)) {
+                deleted.set(node);
+                deletedCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * k láng giềng gần nhất còn sống và khớp {@code filter} (null = không lọc), khoảng cách tăng dần.
+     * {@code ef} càng lớn thì recall càng cao và càng chậm.
+     */
+    public List<Neighbor> search(float[] query, int k, int ef, IntPredicate filter) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int ep = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                ep = greedyClosest(query, ep, l);
+            }
+            IntPredicate accept = filter == null
+                    ? node -> !deleted.get(node)
+                    : node -> !deleted.get(node) && filter.test(node);
+            long[] found = ascending(searchLayer(query, ep, Math.max(ef, k), 0, accept));
+            List<Neighbor> result = new ArrayList<>(Math.min(k, found.length));
+            for (int i = 0; i < found.length && i < k; i++) {
+                result.add(new Neighbor(nodeOf(found[i]), distanceOf(found[i])));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm chính xác bằng cách so với mọi node (dùng để đo recall của {@link #search}).
+     */
+    public List<Neighbor> bruteForce(float[] query, int k, IntPredicate filter) {
+        lock.readLock().lock();
+        try {
+            LongHeap best = new LongHeap(k + 1);
+            for (int node = 0; node < size; node++) {
+                if (deleted.get(node) || (filter != null && !filter.test(node))) {
+                    continue;
+                }
+                float d = distance(query, vectors[node]);
+                if (best.size() < k || d < distanceOfMax(best.peek())) {
+                    best.push(maxKey(d, node));
+                    if (best.size() > k) {
+                        best.pop();
+                    }
+                }
+            }
+            long[] found = ascending(best);
+            List<Neighbor> result = new ArrayList<>(found.length);
+            for (long key : found) {
+                result.add(new Neighbor(nodeOf(key), distanceOf(key)));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // L2² của hai vector độ dài 1
+    private static float distance(float[] a, float[] b) {
+        return Math.max(0f, 2f - 2f * VectorMath.dot(a, b));
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return Math.min(MAX_LEVEL, (int) Math.floor(-Math.log(u) * levelMultiplier));
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= vectors.length) {
+            return;
+        }
+        int capacity = Math.max(required, vectors.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    private int greedyClosest(float[] query, int entry, int level) {
+        int current = entry;
+        float currentDistance = distance(query, vectors[current]);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int neighbor : neighbors(current, level)) {
+                float d = distance(query, vectors[neighbor]);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private int[] neighbors(int node, int level) {
+        int[][] nodeLinks = links[node];
+        return level < nodeLinks.length ? nodeLinks[level] : EMPTY;
+    }
+
+    // Trả về heap "max" (phần tử đầu là kết quả xa nhất) chứa tối đa ef node được accept
+    private LongHeap searchLayer(float[] query, int entry, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        LongHeap candidates = new LongHeap(ef * 2);
+        LongHeap results = new LongHeap(ef + 1);
+
+        float entryDistance = distance(query, vectors[entry]);
+        visited.set(entry);
+        candidates.push(key(entryDistance, entry));
+        if (accept == null || accept.test(entry)) {
+            results.push(maxKey(entryDistance, entry));
+        }
+
+        while (!candidates.isEmpty()) {
+            long candidate = candidates.pop();
+            if (results.size() >= ef && distanceOf(candidate) > distanceOfMax(results.peek())) {
+                break;
+            }
+            for (int neighbor : neighbors(nodeOf(candidate), level)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float d = distance(query, vectors[neighbor]);
+                if (results.size() < ef || d < distanceOfMax(results.peek())) {
+                    candidates.push(key(d, neighbor));
+                    if (accept == null || accept.test(neighbor)) {
+                        results.push(maxKey(d, neighbor));
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Heuristic chọn láng giềng đa dạng: chỉ giữ ứng viên gần điểm gốc hơn mọi láng giềng đã chọn
+    private int[] selectNeighbors(long[] sortedCandidates, int max) {
+        int[] selected = new int[Math.min(max, sortedCandidates.length)];
+        int count = 0;
+        for (int i = 0; i < sortedCandidates.length && count < selected.length; i++) {
+            int candidate = nodeOf(sortedCandidates[i]);
+            float candidateDistance = distanceOf(sortedCandidates[i]);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(vectors[candidate], vectors[selected[j]]) < candidateDistance) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int node, int newNeighbor, int level, int maxConnections) {
+        int[] current = links[node][level];
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = newNeighbor;
+        if (extended.length <= maxConnections) {
+            links[node][level] = extended;
+            return;
+        }
+        // Quá số cạnh cho phép: chọn lại bằng heuristic trên tập cũ + node mới
+        long[] candidates = new long[extended.length];
+        for (int i = 0; i < extended.length; i++) {
+            candidates[i] = key(distance(vectors[node], vectors[extended[i]]), extended[i]);
+        }
+        Arrays.sort(candidates);
+        links[node][level] = selectNeighbors(candidates, maxConnections);
+    }
+
+    // Khóa sắp xếp: khoảng cách (>= 0 nên thứ tự bit giống thứ tự số) ở 32 bit cao, node ở 32 bit thấp
+    private static long key(float distance, int node) {
+        return ((long) Float.floatToRawIntBits(distance) << 32) | (node & 0xffffffffL);
+    }
+
+    private static long maxKey(float distance, int node) {
+        return ((long) (Integer.MAX_VALUE - Float.floatToRawIntBits(distance)) << 32) | (node & 0xffffffffL);
+    }
+
+    private static int nodeOf(long key) {
+        return (int) key;
+    }
+
+    private static float distanceOf(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    private static float distanceOfMax(long key) {
+        return Float.intBitsToFloat(Integer.MAX_VALUE - (int) (key >>> 32));
+    }
+
+    // Rút hết heap "max" thành mảng khóa thường theo khoảng cách tăng dần
+    private static long[] ascending(LongHeap maxHeap) {
+        long[] result = new long[maxHeap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            long top = maxHeap.pop();
+            result[i] = key(distanceOfMax(top), nodeOf(top));
+        }
+        return result;
+    }
+
+    public record Neighbor(int node, float distance) {
+    }
+
+    // Min-heap trên long nguyên thủy
+    private static final class LongHeap {
+        private long[] items;
+        private int size;
+
+        LongHeap(int capacity) {
+            items = new long[Math.max(4, capacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return items[0];
+        }
+
+        void push(long value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (items[parent] <= value) {
+                    break;
+                }
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = value;
+        }
+
+        long pop() {
+            long top = items[0];
+            long last = items[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && items[child + 1] < items[child]) {
+                    child++;
+                }
+                if (last <= items[child]) {
+                    break;
+                }
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = last;
+            return top;
+        }
+    }
+}
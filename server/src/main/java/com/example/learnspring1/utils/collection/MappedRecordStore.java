@@ -0,0 +1,220 @@
+package com.example.learnspring1.utils.collection;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+/**
+ * Phần chung của các file bản ghi kích thước cố định ánh xạ bộ nhớ (memory-mapped): header 32 byte
+ * (magic, version, dimension, count), mỗi bản ghi gồm key (long), cờ (int) rồi phần dữ liệu do lớp con mã hóa.
+ * Ghi đè/đánh dấu xóa tại chỗ, thêm mới ở cuối; bản ghi được ghi trước, số lượng trong header cập nhật sau,
+ * nên file bị ngắt giữa chừng vẫn đọc được. Dựng lại toàn bộ thì ghi file tạm rồi rename ({@link #replaceFile}).
+ * Lớp con chỉ lo mã hóa/giải mã phần dữ liệu.
+ * Không thread-safe: caller phải tự đồng bộ.
+ */
+public abstract class MappedRecordStore implements Closeable {
+
+    protected static final int HEADER_BYTES = 32;
+    // key (8) + cờ (4)
+    protected static final int RECORD_HEADER_BYTES = 12;
+    private static final int FLAG_DELETED = 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final FileChannel channel;
+    private final int magic;
+    private final int version;
+    private MappedByteBuffer buffer;
+    private int dimension;
+    private int recordBytes;
+    private int count;
+    private int capacity;
+
+    protected MappedRecordStore(FileChannel channel, int magic, int version) {
+        this.channel = channel;
+        this.magic = magic;
+        this.version = version;
+    }
+
+    protected static FileChannel openChannel(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Số byte phần dữ liệu của một bản ghi với {@code dimension} cho trước.
+     */
+    protected abstract int payloadBytes(int dimension);
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Số byte file đang chiếm cho các bản ghi (kể cả bản ghi đã xóa).
+     */
+    public long dataBytes() {
+        return (long) count * recordBytes;
+    }
+
+    /**
+     * Dựng file mới (dimension cho trước, {@code writer} ghi các bản ghi) ở file tạm cạnh {@code path}, thay file
+     * cũ bằng một lần rename nguyên tử rồi mở lại. File đang dùng không bị cắt ngắn hay ghi đè khi còn được ánh xạ:
+     * nếu dựng hoặc rename lỗi, file cũ còn nguyên và caller tiếp tục dùng store cũ. Store cũ chỉ nên đóng
+     * sau khi hàm trả về; số thứ tự bản ghi do {@code writer} nhận được vẫn đúng với store trả về.
+     */
+    protected static <S extends MappedRecordStore> S replaceFile(Path path, int newDimension, Opener<S> opener,
+            Writer<S> writer) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try {
+            try (S store = opener.open(temporary)) {
+                ((MappedRecordStore) store).initialize(newDimension);
+                writer.write(store);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return opener.open(path);
+    }
+
+    public long key(int index) {
+        return buffer.getLong(position(index));
+    }
+
+    public boolean isDeleted(int index) {
+        return (buffer.getInt(position(index) + 8) & FLAG_DELETED) != 0;
+    }
+
+    public void markDeleted(int index) {
+        int position = position(index) + 8;
+        buffer.putInt(position, buffer.getInt(position) | FLAG_DELETED);
+    }
+
+    public void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Đọc header của file đã mở. File không đúng định dạng được coi như rỗng với dimension 0.
+     */
+    protected void readHeader() throws IOException {
+        if (channel.size() >= HEADER_BYTES) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int storedDimension = header.getInt(8);
+            int storedCount = header.getInt(12);
+            if (header.getInt(0) == magic && header.getInt(4) == version && storedDimension > 0 && storedCount >= 0) {
+                int storedRecordBytes = RECORD_HEADER_BYTES + payloadBytes(storedDimension);
+                if (channel.size() >= HEADER_BYTES + (long) storedCount * storedRecordBytes) {
+                    dimension = storedDimension;
+                    recordBytes = storedRecordBytes;
+                    count = storedCount;
+                    map(Math.max(INITIAL_CAPACITY, storedCount));
+                    return;
+                }
+            }
+        }
+        dimension = 0;
+        count = 0;
+    }
+
+    /**
+     * Thêm bản ghi ở cuối: {@code writer} ghi bản ghi tại chỉ số được cấp, header cập nhật sau.
+     */
+    protected int appendRecord(IntConsumer writer) throws IOException {
+        if (count == capacity) {
+            map(capacity * 2);
+        }
+        int index = count;
+        writer.accept(index);
+        count++;
+        writeHeader();
+        return index;
+    }
+
+    /**
+     * Ghi key, bỏ cờ xóa và trả về vị trí phần dữ liệu của bản ghi {@code index}.
+     */
+    protected int beginWrite(int index, long key, int vectorLength) {
+        if (vectorLength != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vectorLength);
+        }
+        int position = position(index);
+        buffer.putLong(position, key);
+        buffer.putInt(position + 8, 0);
+        return position + RECORD_HEADER_BYTES;
+    }
+
+    protected int payloadPosition(int index) {
+        return position(index) + RECORD_HEADER_BYTES;
+    }
+
+    // Buffer đổi sau mỗi lần ánh xạ lại, lớp con không được giữ tham chiếu
+    protected MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    private int position(int index) {
+        return HEADER_BYTES + index * recordBytes;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, magic);
+        buffer.putInt(4, version);
+        buffer.putInt(8, dimension);
+        buffer.putInt(12, count);
+    }
+
+    // Chỉ dùng cho file vừa tạo (rỗng, chưa ai ánh xạ)
+    private void initialize(int newDimension) throws IOException {
+        dimension = newDimension;
+        recordBytes = RECORD_HEADER_BYTES + payloadBytes(newDimension);
+        count = 0;
+        map(INITIAL_CAPACITY);
+        writeHeader();
+    }
+
+    // Ánh xạ lại với sức chứa mới (file tự giãn khi map READ_WRITE vượt kích thước hiện tại)
+    private void map(int newCapacity) throws IOException {
+        long bytes = HEADER_BYTES + (long) newCapacity * recordBytes;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Mapped record store exceeds 2GB mapping limit");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = newCapacity;
+    }
+
+    @FunctionalInterface
+    protected interface Opener<S extends MappedRecordStore> {
+        S open(Path path) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Writer<S extends MappedRecordStore> {
+        void write(S store) throws IOException;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.learnspring1.utils.collection;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * File vector ánh xạ bộ nhớ (memory-mapped): dữ liệu mỗi bản ghi gồm tag (long) và float[dimension].
+ * Khởi động chỉ cần đọc lại file, không tải lại từ nguồn; cách ghi và header xem {@link MappedRecordStore}.
+ * Không thread-safe: caller phải tự đồng bộ.
+ */
+public final class MappedVectorStore extends MappedRecordStore {
+
+    private static final int MAGIC = 0x50564543; // "PVEC"
+    // 2: bố cục bản ghi chung với MappedRecordStore (key, cờ, tag); file version 1 được dựng lại từ ChromaDB
+    private static final int VERSION = 2;
+
+    private MappedVectorStore(FileChannel channel) {
+        super(channel, MAGIC, VERSION);
+    }
+
+    /**
+     * Mở (hoặc tạo) file. File không đúng định dạng được coi như rỗng với dimension 0.
+     */
+    public static MappedVectorStore open(Path path) throws IOException {
+        MappedVectorStore store = new MappedVectorStore(openChannel(path));
+        store.readHeader();
+        return store;
+    }
+
+    /**
+     * Thay file bằng file mới chỉ gồm các bản ghi {@code writer} ghi vào, xem {@link MappedRecordStore#replaceFile}.
+     */
+    public static MappedVectorStore create(Path path, int dimension, Writer<MappedVectorStore> writer) throws IOException {
+        return replaceFile(path, dimension, MappedVectorStore::open, writer);
+    }
+
+    @Override
+    protected int payloadBytes(int dimension) {
+        return 8 + 4 * dimension;
+    }
+
+    public int append(long key, long tag, float[] vector) throws IOException {
+        return appendRecord(index -> write(index, key, tag, vector));
+    }
+
+    public void write(int index, long key, long tag, float[] vector) {
+        int position = beginWrite(index, key, vector.length);
+        buffer().putLong(position, tag);
+        buffer().slice(position + 8, 4 * vector.length)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .put(vector);
+    }
+
+    public long tag(int index) {
+        return buffer().getLong(payloadPosition(index));
+    }
+
+    public float[] read(int index) {
+        float[] vector = new float[dimension()];
+        buffer().slice(payloadPosition(index) + 8, 4 * vector.length)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asFloatBuffer()
+                .get(vector);
+        return vector;
+    }
+
+    /**
+     * Duyệt mọi bản ghi chưa xóa theo thứ tự lưu.
+     */
+    public void forEach(RecordVisitor visitor) {
+        for (int index = 0; index < count(); index++) {
+            if (!isDeleted(index)) {
+                visitor.visit(index, key(index), tag(index), read(index));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(int index, long key, long tag, float[] vector);
+    }
+}
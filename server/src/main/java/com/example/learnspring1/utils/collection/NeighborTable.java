@@ -0,0 +1,231 @@
+package com.example.learnspring1.utils.collection;
+
+import com.example.learnspring1.utils.VectorMath;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Bảng top-K láng giềng gần nhất (cosine) tính sẵn cho mọi vector, lưu dạng mảng nguyên thủy phẳng:
+ * hàng i chiếm ô [i*k, i*k + counts[i]) của {@code neighbors}/{@code scores}, sắp theo điểm giảm dần.
+ * Tính bằng nhân ma trận theo khối (một khối hàng × một khối cột vừa cache), các khối hàng chạy song song.
+ * Bất biến; {@link #update} tạo bảng mới và chỉ tính lại những hàng bị ảnh hưởng.
+ */
+public final class NeighborTable {
+
+    private static final int BLOCK = 64;
+
+    private final int k;
+    private final long[] keys;
+    private final Map<Long, Integer> rowByKey;
+    private final long[] neighbors;
+    private final float[] scores;
+    private final int[] counts;
+
+    private NeighborTable(int k, long[] keys, long[] neighbors, float[] scores, int[] counts) {
+        this.k = k;
+        this.keys = keys;
+        this.neighbors = neighbors;
+        this.scores = scores;
+        this.counts = counts;
+        this.rowByKey = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            rowByKey.put(keys[i], i);
+        }
+    }
+
+    /**
+     * Tính toàn bộ bảng.
+     *
+     * @param vectors vector đã chuẩn hóa, cùng thứ tự với {@code keys}
+     */
+    public static NeighborTable compute(long[] keys, float[][] vectors, int k) {
+        NeighborTable table = new NeighborTable(k, keys, new long[keys.length * k], new float[keys.length * k],
+                new int[keys.length]);
+        int[] all = IntStream.range(0, keys.length).toArray();
+        table.computeRows(all, vectors);
+        return table;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Tối đa {@code limit} láng giềng của {@code key} (gần nhất trước); mảng rỗng nếu không có.
+     */
+    public long[] neighbors(long key, int limit) {
+        Integer row = rowByKey.get(key);
+        if (row == null) {
+            return new long[0];
+        }
+        int count = Math.min(limit, counts[row]);
+        return Arrays.copyOfRange(neighbors, row * k, row * k + count);
+    }
+
+    /**
+     * Bảng mới cho tập vector mới, trong đó chỉ {@code changed} (thêm/đổi vector) và các key đã biến mất
+     * khác với bảng này. Hàng của key đổi/mới được tính lại toàn bộ; hàng khác chỉ so thêm với các vector đổi,
+     * trừ khi danh sách cũ chứa key đổi/đã xóa (khi đó láng giềng thứ K có thể là bất kỳ ai, phải tính lại).
+     */
+    public NeighborTable update(long[] newKeys, float[][] vectors, Set<Long> changed) {
+        int n = newKeys.length;
+        NeighborTable next = new NeighborTable(k, newKeys, new long[n * k], new float[n * k], new int[n]);
+
+        // Key không còn ở vị trí cũ với vector cũ: đã đổi hoặc đã bị xóa
+        Set<Long> stale = new HashSet<>(changed);
+        for (long key : keys) {
+            if (!next.rowByKey.containsKey(key)) {
+                stale.add(key);
+            }
+        }
+        int[] changedRows = IntStream.range(0, n)
+                .filter(i -> changed.contains(newKeys[i]) || !rowByKey.containsKey(newKeys[i]))
+                .toArray();
+
+        boolean[] recompute = new boolean[n];
+        for (int row : changedRows) {
+            recompute[row] = true;
+        }
+        IntStream.range(0, n).parallel().forEach(i -> {
+            if (recompute[i]) {
+                return;
+            }
+            int oldRow = rowByKey.get(newKeys[i]);
+            int oldOffset = oldRow * k;
+            for (int j = 0; j < counts[oldRow]; j++) {
+                if (stale.contains(neighbors[oldOffset + j])) {
+                    recompute[i] = true;
+                    return;
+                }
+            }
+            TopK top = new TopK(k);
+            for (int j = 0; j < counts[oldRow]; j++) {
+                top.offer(neighbors[oldOffset + j], scores[oldOffset + j]);
+            }
+            for (int row : changedRows) {
+                top.offer(newKeys[row], VectorMath.dot(vectors[i], vectors[row]));
+            }
+            next.store(i, top);
+        });
+
+        int[] rows = IntStream.range(0, n).filter(i -> recompute[i]).toArray();
+        next.computeRows(rows, vectors);
+        return next;
+    }
+
+    // Nhân ma trận theo khối: mỗi task giữ một khối hàng, duyệt lần lượt các khối cột
+    private void computeRows(int[] rows, float[][] vectors) {
+        int n = vectors.length;
+        int rowBlocks = (rows.length + BLOCK - 1) / BLOCK;
+        IntStream.range(0, rowBlocks).parallel().forEach(block -> {
+            int from = block * BLOCK;
+            int to = Math.min(rows.length, from + BLOCK);
+            TopK[] tops = new TopK[to - from];
+            for (int r = 0; r < tops.length; r++) {
+                tops[r] = new TopK(k);
+            }
+            for (int colStart = 0; colStart < n; colStart += BLOCK) {
+                int colEnd = Math.min(n, colStart + BLOCK);
+                for (int r = from; r < to; r++) {
+                    int i = rows[r];
+                    float[] vector = vectors[i];
+                    TopK top = tops[r - from];
+                    for (int j = colStart; j < colEnd; j++) {
+                        if (j != i) {
+                            top.offer(keys[j], VectorMath.dot(vector, vectors[j]));
+                        }
+                    }
+                }
+            }
+            for (int r = from; r < to; r++) {
+                store(rows[r], tops[r - from]);
+            }
+        });
+    }
+
+    private void store(int row, TopK top) {
+        counts[row] = top.drainDescending(neighbors, scores, row * k);
+    }
+
+    // Min-heap cỡ k theo điểm: phần tử đầu là láng giềng yếu nhất đang giữ
+    private static final class TopK {
+        private final long[] ids;
+        private final float[] values;
+        private int size;
+
+        private TopK(int k) {
+            this.ids = new long[k];
+            this.values = new float[k];
+        }
+
+        private void offer(long id, float value) {
+            if (size < ids.length) {
+                ids[size] = id;
+                values[size] = value;
+                siftUp(size++);
+            } else if (ids.length > 0 && value > values[0]) {
+                ids[0] = id;
+                values[0] = value;
+                siftDown(0);
+            }
+        }
+
+        // Ghi ra theo điểm giảm dần bắt đầu tại offset; trả về số phần tử
+        private int drainDescending(long[] targetIds, float[] targetValues, int offset) {
+            int count = size;
+            while (size > 0) {
+                int last = --size;
+                targetIds[offset + last] = ids[0];
+                targetValues[offset + last] = values[0];
+                ids[0] = ids[last];
+                values[0] = values[last];
+                siftDown(0);
+            }
+            return count;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (values[parent] <= values[index]) {
+                    return;
+                }
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int left = 2 * index + 1;
+                if (left >= size) {
+                    return;
+                }
+                int smallest = left + 1 < size && values[left + 1] < values[left] ? left + 1 : left;
+                if (values[index] <= values[smallest]) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            float value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+    }
+}
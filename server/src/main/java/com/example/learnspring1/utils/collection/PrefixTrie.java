@@ -0,0 +1,208 @@
+package com.example.learnspring1.utils.collection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trie nén (radix) bất biến, mỗi node lưu sẵn top-K entry có trọng số cao nhất trong subtree.
+ * Tra một tiền tố chỉ là đi xuống tối đa {@code prefix.length()} cạnh rồi trả mảng top-K của node,
+ * không phải duyệt subtree. Entry là số nguyên do caller đánh (chỉ số vào mảng dữ liệu của caller);
+ * một entry có thể được thêm dưới nhiều key, kết quả đã loại trùng.
+ * Thread-safe sau khi build.
+ */
+public final class PrefixTrie {
+
+    private static final int[] EMPTY = new int[0];
+
+    // Node 0 là root; mỗi node giữ nhãn cạnh đi vào, con sắp theo ký tự đầu của nhãn
+    private final String[] labels;
+    private final char[][] childFirstChars;
+    private final int[][] children;
+    private final int[][] top;
+
+    private PrefixTrie(List<String> labels, List<char[]> childFirstChars, List<int[]> children, List<int[]> top) {
+        this.labels = labels.toArray(new String[0]);
+        this.childFirstChars = childFirstChars.toArray(new char[0][]);
+        this.children = children.toArray(new int[0][]);
+        this.top = top.toArray(new int[0][]);
+    }
+
+    public static Builder builder(int k, long[] weights) {
+        return new Builder(k, weights);
+    }
+
+    public int nodeCount() {
+        return labels.length;
+    }
+
+    /**
+     * Top-K entry (trọng số giảm dần) có key bắt đầu bằng {@code prefix}; mảng rỗng nếu không có.
+     * Không được sửa mảng trả về.
+     */
+    public int[] topK(String prefix) {
+        int node = 0;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int slot = Arrays.binarySearch(childFirstChars[node], prefix.charAt(pos));
+            if (slot < 0) {
+                return EMPTY;
+            }
+            int child = children[node][slot];
+            String label = labels[child];
+            int length = Math.min(label.length(), prefix.length() - pos);
+            if (!label.regionMatches(0, prefix, pos, length)) {
+                return EMPTY;
+            }
+            pos += length;
+            node = child;
+        }
+        return top[node];
+    }
+
+    public static final class Builder {
+
+        private final int k;
+        private final long[] weights;
+        private final BuildNode root = new BuildNode();
+
+        private Builder(int k, long[] weights) {
+            this.k = k;
+            this.weights = weights;
+        }
+
+        public Builder add(String key, int entry) {
+            if (key == null || key.isEmpty()) {
+                return this;
+            }
+            BuildNode node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.child(key.charAt(i));
+            }
+            node.addTerminal(entry);
+            return this;
+        }
+
+        public PrefixTrie build() {
+            List<String> labels = new ArrayList<>();
+            List<char[]> firstChars = new ArrayList<>();
+            List<int[]> children = new ArrayList<>();
+            List<int[]> top = new ArrayList<>();
+            freeze(root, "", labels, firstChars, children, top);
+            return new PrefixTrie(labels, firstChars, children, top);
+        }
+
+        // Gộp chuỗi node chỉ có một con và không có entry thành một cạnh, rồi tính top-K từ dưới lên
+        private int freeze(BuildNode node, String label, List<String> labels, List<char[]> firstChars,
+                List<int[]> children, List<int[]> top) {
+            StringBuilder edge = new StringBuilder(label);
+            while (node != root && node.terminalCount == 0 && node.childCount == 1) {
+                edge.append(node.childChars[0]);
+                node = node.childNodes[0];
+            }
+
+            int index = labels.size();
+            labels.add(edge.toString());
+            firstChars.add(null);
+            children.add(null);
+            top.add(null);
+
+            // Con đã sắp theo ký tự ngay khi thêm
+            char[] keys = Arrays.copyOf(node.childChars, node.childCount);
+            int[] childIndexes = new int[keys.length];
+            int candidateCount = node.terminalCount;
+            for (int i = 0; i < keys.length; i++) {
+                childIndexes[i] = freeze(node.childNodes[i], String.valueOf(keys[i]), labels, firstChars,
+                        children, top);
+                candidateCount += top.get(childIndexes[i]).length;
+            }
+
+            int[] candidates = new int[candidateCount];
+            System.arraycopy(node.terminals, 0, candidates, 0, node.terminalCount);
+            int offset = node.terminalCount;
+            for (int childIndex : childIndexes) {
+                int[] childTop = top.get(childIndex);
+                System.arraycopy(childTop, 0, candidates, offset, childTop.length);
+                offset += childTop.length;
+            }
+
+            firstChars.set(index, keys);
+            children.set(index, childIndexes);
+            top.set(index, selectTop(candidates));
+            // Node dựng xong thì bỏ để GC thu hồi sớm khi trie lớn
+            node.childChars = null;
+            node.childNodes = null;
+            node.terminals = null;
+            return index;
+        }
+
+        private int[] selectTop(int[] candidates) {
+            if (candidates.length == 0) {
+                return EMPTY;
+            }
+            Integer[] boxed = new Integer[candidates.length];
+            for (int i = 0; i < candidates.length; i++) {
+                boxed[i] = candidates[i];
+            }
+            // Trọng số giảm dần, cùng trọng số thì entry nhỏ hơn trước; entry trùng nằm cạnh nhau
+            Arrays.sort(boxed, (a, b) -> {
+                int byWeight = Long.compare(weights[b], weights[a]);
+                return byWeight != 0 ? byWeight : Integer.compare(a, b);
+            });
+            int[] result = new int[Math.min(k, boxed.length)];
+            int size = 0;
+            for (int i = 0; i < boxed.length && size < result.length; i++) {
+                if (size > 0 && result[size - 1] == boxed[i]) {
+                    continue;
+                }
+                result[size++] = boxed[i];
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+    }
+
+    // Con lưu trong 2 mảng song song sắp theo ký tự (đa số node chỉ có 1-2 con),
+    // thay vì HashMap<Character, ...> với một Character và một Entry cho mỗi cạnh
+    private static final class BuildNode {
+        private static final char[] NO_CHARS = new char[0];
+        private static final BuildNode[] NO_NODES = new BuildNode[0];
+
+        private char[] childChars = NO_CHARS;
+        private BuildNode[] childNodes = NO_NODES;
+        private int childCount;
+        private int[] terminals = EMPTY;
+        private int terminalCount;
+
+        private BuildNode child(char c) {
+            int slot = Arrays.binarySearch(childChars, 0, childCount, c);
+            if (slot >= 0) {
+                return childNodes[slot];
+            }
+            int insert = -slot - 1;
+            if (childCount == childChars.length) {
+                int capacity = Math.max(2, childCount * 2);
+                childChars = Arrays.copyOf(childChars, capacity);
+                childNodes = Arrays.copyOf(childNodes, capacity);
+            }
+            System.arraycopy(childChars, insert, childChars, insert + 1, childCount - insert);
+            System.arraycopy(childNodes, insert, childNodes, insert + 1, childCount - insert);
+            BuildNode created = new BuildNode();
+            childChars[insert] = c;
+            childNodes[insert] = created;
+            childCount++;
+            return created;
+        }
+
+        private void addTerminal(int entry) {
+            for (int i = 0; i < terminalCount; i++) {
+                if (terminals[i] == entry) {
+                    return;
+                }
+            }
+            if (terminalCount == terminals.length) {
+                terminals = Arrays.copyOf(terminals, Math.max(2, terminalCount * 2));
+            }
+            terminals[terminalCount++] = entry;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.learnspring1.utils.collection;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * File vector lượng tử hóa int8 ánh xạ bộ nhớ: dữ liệu mỗi bản ghi gồm scale, offset (float) và byte[dimension],
+ * giá trị gốc xấp xỉ {@code (q + 128) * scale + offset} với scale/offset riêng từng vector
+ * (min-max của chính vector đó). Nhỏ hơn float[] 4 lần, nằm ngoài heap; cách ghi xem {@link MappedRecordStore}.
+ * Không thread-safe: caller phải tự đồng bộ.
+ */
+public final class QuantizedVectorStore extends MappedRecordStore {
+
+    private static final int MAGIC = 0x51564543; // "QVEC"
+    private static final int VERSION = 1;
+
+    private QuantizedVectorStore(FileChannel channel) {
+        super(channel, MAGIC, VERSION);
+    }
+
+    /**
+     * Mở (hoặc tạo) file. File không đúng định dạng được coi như rỗng với dimension 0.
+     */
+    public static QuantizedVectorStore open(Path path) throws IOException {
+        QuantizedVectorStore store = new QuantizedVectorStore(openChannel(path));
+        store.readHeader();
+        return store;
+    }
+
+    /**
+     * Thay file bằng file mới chỉ gồm các bản ghi {@code writer} ghi vào, xem {@link MappedRecordStore#replaceFile}.
+     */
+    public static QuantizedVectorStore create(Path path, int dimension, Writer<QuantizedVectorStore> writer) throws IOException {
+        return replaceFile(path, dimension, QuantizedVectorStore::open, writer);
+    }
+
+    @Override
+    protected int payloadBytes(int dimension) {
+        return 8 + dimension;
+    }
+
+    public int append(long key, float[] vector) throws IOException {
+        return appendRecord(index -> write(index, key, vector));
+    }
+
+    /**
+     * Lượng tử hóa và ghi đè bản ghi {@code index} (bỏ cờ xóa nếu có).
+     */
+    public void write(int index, long key, float[] vector) {
+        encode(vector, buffer(), beginWrite(index, key, vector.length));
+    }
+
+    /**
+     * Vector đã giải lượng tử của bản ghi {@code index}.
+     */
+    public float[] read(int index) {
+        return decode(buffer(), payloadPosition(index), dimension());
+    }
+
+    /**
+     * Vector sau khi lượng tử hóa rồi giải lượng tử, đúng như khi ghi rồi đọc lại từ file.
+     */
+    public static float[] roundTrip(float[] vector) {
+        ByteBuffer scratch = ByteBuffer.allocate(8 + vector.length).order(ByteOrder.LITTLE_ENDIAN);
+        encode(vector, scratch, 0);
+        return decode(scratch, 0, vector.length);
+    }
+
+    private static void encode(float[] vector, ByteBuffer target, int position) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float value : vector) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        float scale = max > min ? (max - min) / 255f : 0f;
+        target.putFloat(position, scale);
+        target.putFloat(position + 4, min);
+        int data = position + 8;
+        for (int i = 0; i < vector.length; i++) {
+            int level = scale > 0 ? Math.round((vector[i] - min) / scale) : 0;
+            target.put(data + i, (byte) (Math.min(255, Math.max(0, level)) - 128));
+        }
+    }
+
+    private static float[] decode(ByteBuffer source, int position, int dimension) {
+        float scale = source.getFloat(position);
+        float offset = source.getFloat(position + 4);
+        int data = position + 8;
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (source.get(data + i) + 128) * scale + offset;
+        }
+        return vector;
+    }
+}
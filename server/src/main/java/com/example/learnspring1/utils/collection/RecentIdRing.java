@@ -0,0 +1,84 @@
+package com.example.learnspring1.utils.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vòng {@code long[]} cố định giữ tối đa {@code capacity} id gần nhất, không trùng: thêm id đã có thì đưa nó
+ * lên mới nhất, đầy thì id cũ nhất bị đè. Mọi thao tác O(capacity) trên một mảng nguyên thủy, không boxing.
+ * Thread-safe.
+ */
+public final class RecentIdRing {
+
+    private final long[] ids;
+    // Ô sẽ ghi tiếp; id mới nhất ở head - 1
+    private int head;
+    private int size;
+
+    public RecentIdRing(int capacity) {
+        this.ids = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Vòng từ danh sách mới nhất trước (phần vượt sức chứa bị bỏ).
+     */
+    public static RecentIdRing of(List<Long> newestFirst, int capacity) {
+        RecentIdRing ring = new RecentIdRing(capacity);
+        for (int i = Math.min(newestFirst.size(), ring.ids.length) - 1; i >= 0; i--) {
+            ring.add(newestFirst.get(i));
+        }
+        return ring;
+    }
+
+    public synchronized void add(long id) {
+        int existing = indexOf(id);
+        if (existing == 0) {
+            return;
+        }
+        if (existing > 0) {
+            // Dời các id mới hơn lùi một ô để lấp chỗ của id cũ, rồi ghi id lên đầu
+            for (int i = existing; i > 0; i--) {
+                ids[slot(i)] = ids[slot(i - 1)];
+            }
+            ids[slot(0)] = id;
+            return;
+        }
+        ids[head] = id;
+        head = (head + 1) % ids.length;
+        size = Math.min(size + 1, ids.length);
+    }
+
+    /**
+     * Tối đa {@code limit} id, mới nhất trước.
+     */
+    public synchronized List<Long> newestFirst(int limit) {
+        int count = Math.min(Math.max(0, limit), size);
+        List<Long> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(ids[slot(i)]);
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    private int indexOf(long id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[slot(i)] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Vị trí trong mảng của id thứ i tính từ mới nhất
+    private int slot(int i) {
+        return Math.floorMod(head - 1 - i, ids.length);
+    }
+}
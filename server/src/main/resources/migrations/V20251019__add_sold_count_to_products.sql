@@ -0,0 +1,12 @@
+ALTER TABLE products
+  ADD COLUMN IF NOT EXISTS sold_count BIGINT NOT NULL DEFAULT 0;
+
+-- Backfill từ lịch sử đơn hàng đã giao/hoàn thành
+UPDATE products p
+SET p.sold_count = (
+  SELECT COALESCE(SUM(oi.quantity), 0)
+  FROM order_items oi
+  JOIN orders o ON o.id = oi.order_id
+  WHERE oi.product_id = p.id
+    AND o.status IN ('DELIVERED', 'COMPLETED')
+);
@@ -0,0 +1,35 @@
+CREATE TABLE IF NOT EXISTS product_listing (
+  product_id BIGINT NOT NULL PRIMARY KEY,
+  name VARCHAR(200) NOT NULL,
+  sku VARCHAR(100),
+  brand VARCHAR(150),
+  price DECIMAL(19, 4),
+  discount_price DECIMAL(19, 4),
+  min_price DECIMAL(19, 4),
+  max_price DECIMAL(19, 4),
+  total_stock BIGINT NOT NULL DEFAULT 0,
+  has_stock BIT NOT NULL DEFAULT 0,
+  sold_count BIGINT NOT NULL DEFAULT 0,
+  avg_rating DECIMAL(3, 2) NOT NULL DEFAULT 0,
+  review_count BIGINT NOT NULL DEFAULT 0,
+  primary_category_id BIGINT,
+  category_path VARCHAR(500),
+  is_active BIT NOT NULL,
+  is_featured BIT NOT NULL,
+  created_at DATETIME(6),
+  updated_at DATETIME(6),
+  refreshed_at DATETIME(6) NOT NULL
+);
+
+-- Mỗi index phục vụ một kiểu sort/lọc của /products/advanced (lọc is_active trước rồi sort)
+CREATE INDEX IF NOT EXISTS idx_product_listing_active_created ON product_listing (is_active, created_at);
+CREATE INDEX IF NOT EXISTS idx_product_listing_active_min_price ON product_listing (is_active, min_price);
+CREATE INDEX IF NOT EXISTS idx_product_listing_active_sold ON product_listing (is_active, sold_count);
+CREATE INDEX IF NOT EXISTS idx_product_listing_active_rating ON product_listing (is_active, avg_rating);
+CREATE INDEX IF NOT EXISTS idx_product_listing_active_stock ON product_listing (is_active, has_stock, min_price);
+CREATE INDEX IF NOT EXISTS idx_product_listing_featured ON product_listing (is_featured, is_active);
+CREATE INDEX IF NOT EXISTS idx_product_listing_brand ON product_listing (brand);
+CREATE INDEX IF NOT EXISTS idx_product_listing_primary_category ON product_listing (primary_category_id);
+
+-- Dữ liệu được nạp bởi lần rebuild đầu tiên khi ứng dụng khởi động (bảng rỗng)
+-- hoặc bằng POST /products/listing/rebuild
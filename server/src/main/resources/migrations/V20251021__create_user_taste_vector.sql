@@ -0,0 +1,11 @@
+CREATE TABLE IF NOT EXISTS user_taste_vector (
+  user_id VARCHAR(100) NOT NULL PRIMARY KEY,
+  -- float16 little-endian, mỗi chiều 2 byte
+  vector BLOB NOT NULL,
+  weight DOUBLE NOT NULL,
+  view_count BIGINT NOT NULL DEFAULT 0,
+  updated_at DATETIME(6) NOT NULL
+);
+
+-- Dữ liệu được tạo dần khi người dùng xem sản phẩm; người dùng đã có lịch sử
+-- được dựng từ user_product_history ở lần gợi ý đầu tiên
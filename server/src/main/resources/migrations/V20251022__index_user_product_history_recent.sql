@@ -0,0 +1,3 @@
+-- Lịch sử mới nhất của một user và câu xóa cắt bớt (ROW_NUMBER theo viewed_at) đọc thẳng theo index này
+CREATE INDEX IF NOT EXISTS idx_user_product_history_user_viewed
+  ON user_product_history (user_id, viewed_at, id);
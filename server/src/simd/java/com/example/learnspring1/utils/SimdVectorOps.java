@@ -0,0 +1,53 @@
+package com.example.learnspring1.utils;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Bản SIMD của {@link VectorMath.Ops}; chỉ được nạp khi module jdk.incubator.vector có mặt.
+ */
+final class SimdVectorOps implements VectorMath.Ops {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(a.length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void addTo(float[] target, float[] vector) {
+        int upper = SPECIES.loopBound(target.length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, target, i).add(FloatVector.fromArray(SPECIES, vector, i))
+                    .intoArray(target, i);
+        }
+        for (; i < target.length; i++) {
+            target[i] += vector[i];
+        }
+    }
+
+    @Override
+    public void scale(float[] vector, float factor) {
+        int upper = SPECIES.loopBound(vector.length);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, vector, i).mul(factor).intoArray(vector, i);
+        }
+        for (; i < vector.length; i++) {
+            vector[i] *= factor;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.learnspring1.domain;
+
+import com.example.learnspring1.repository.ProductRepository;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nhóm lazy "text" của {@link Product}: load product không đọc description/specifications,
+ * lần truy cập đầu đọc cả hai bằng một SELECT. Số byte một trang product kéo về được đo trên chính câu SQL
+ * Hibernate sinh ra cho đường lazy và đường eager.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ProductLazyTextTest {
+
+    private static final int PRODUCTS = 50;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private SqlCapture sqlCapture;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void seed() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        for (int i = 0; i < PRODUCTS; i++) {
+            entityManager.persist(Product.builder()
+                    .name("Bút gel " + i)
+                    .sku("GEL-" + i)
+                    .price(BigDecimal.valueOf(12_000))
+                    .description("Mực gel khô nhanh, ngòi 0.5mm, thân nhựa trong. ".repeat(80))
+                    .specifications("Chiều dài: 14cm; Màu mực: xanh; Xuất xứ: Việt Nam. ".repeat(40))
+                    .build());
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void loadingProductsSkipsTextGroupUntilAccessed() {
+        statistics.clear();
+        List<Product> products = productRepository.findAll();
+        assertThat(products).hasSize(PRODUCTS);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+        for (Product product : products) {
+            assertThat(Hibernate.isPropertyInitialized(product, "description")).isFalse();
+            assertThat(Hibernate.isPropertyInitialized(product, "specifications")).isFalse();
+        }
+
+        // Lần truy cập đầu: 1 SELECT cho cả nhóm, kể cả cột chưa được gọi
+        statistics.clear();
+        Product first = products.get(0);
+        assertThat(first.getDescription()).isNotBlank();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+        assertThat(Hibernate.isPropertyInitialized(first, "specifications")).isTrue();
+        first.getSpecifications();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+    }
+
+    @Test
+    void productPageFetchesOnlyNonTextBytes() {
+        // Câu SELECT thật của hai đường: trang product (lazy) và cùng trang kéo cả nhóm text như khi không lazy
+        sqlCapture.clear();
+        productRepository.findAll();
+        String lazySql = sqlCapture.lastSelect();
+        entityManager.clear();
+        sqlCapture.clear();
+        entityManager.getEntityManager()
+                .createQuery("select p, p.description, p.specifications from Product p", Object[].class)
+                .getResultList();
+        String eagerSql = sqlCapture.lastSelect();
+
+        long lazyBytes = fetchedBytes(lazySql);
+        long eagerBytes = fetchedBytes(eagerSql);
+        long textBytes = ((Number) entityManager.getEntityManager().createNativeQuery(
+                "SELECT SUM(OCTET_LENGTH(description) + OCTET_LENGTH(specifications)) FROM products")
+                .getSingleResult()).longValue();
+
+        assertThat(lazySql).doesNotContain("description").doesNotContain("specifications");
+        // Phần tiết kiệm đúng bằng hai cột text của cả trang, và chiếm phần lớn dữ liệu của trang eager
+        assertThat(eagerBytes - lazyBytes).isEqualTo(textBytes);
+        assertThat(lazyBytes).isLessThan(eagerBytes / 10);
+    }
+
+    // Chạy lại câu SQL trên cùng connection (thấy dữ liệu chưa commit của test) và cộng số byte các giá trị trả về:
+    // chuỗi theo UTF-8, còn lại ước lượng 8 byte mỗi giá trị khác null
+    private long fetchedBytes(String sql) {
+        return entityManager.getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            long total = 0;
+            try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(sql)) {
+                int columns = rows.getMetaData().getColumnCount();
+                while (rows.next()) {
+                    for (int column = 1; column <= columns; column++) {
+                        Object value = rows.getObject(column);
+                        if (value instanceof String text) {
+                            total += text.getBytes(StandardCharsets.UTF_8).length;
+                        } else if (value instanceof Clob clob) {
+                            total += clob.getSubString(1, (int) clob.length()).getBytes(StandardCharsets.UTF_8).length;
+                        } else if (value != null) {
+                            total += 8;
+                        }
+                    }
+                }
+            }
+            return total;
+        });
+    }
+
+    @TestConfiguration
+    static class SqlCaptureConfig {
+
+        @Bean
+        SqlCapture sqlCapture() {
+            return new SqlCapture();
+        }
+
+        @Bean
+        HibernatePropertiesCustomizer sqlCaptureCustomizer(SqlCapture sqlCapture) {
+            return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlCapture);
+        }
+    }
+
+    static class SqlCapture implements StatementInspector {
+        private final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+
+        void clear() {
+            statements.clear();
+        }
+
+        String lastSelect() {
+            return statements.stream()
+                    .filter(sql -> sql.stripLeading().toLowerCase(Locale.ROOT).startsWith("select"))
+                    .reduce((first, second) -> second)
+                    .orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.learnspring1.repository;
+
+import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.domain.ProductVariant;
+import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cùng bộ lọc giá cho cùng tập sản phẩm dù request đi đường entity (sort theo name) hay đường
+ * product_listing (sort theo minPrice), như ProductServiceImpl.getProductCardsPageWithFilters chọn.
+ */
+@DataJpaTest
+class ProductPriceFilterTest {
+
+    // Giống ProductListingProjector (bản rút gọn cho H2): min_price = variant active rẻ nhất, không có thì giá giảm/giá gốc
+    private static final String PROJECT_LISTING = "INSERT INTO product_listing (product_id, name, sku, brand, price, "
+            + "discount_price, min_price, max_price, total_stock, has_stock, sold_count, avg_rating, review_count, "
+            + "is_active, is_featured, refreshed_at) "
+            + "SELECT p.id, p.name, p.sku, p.brand, p.price, p.discount_price, "
+            + "COALESCE(v.min_price, p.discount_price, p.price), COALESCE(v.max_price, p.discount_price, p.price), "
+            + "0, FALSE, 0, 0, 0, p.is_active, p.is_featured, CURRENT_TIMESTAMP FROM products p "
+            + "LEFT JOIN (SELECT product_id, MIN(price) AS min_price, MAX(price) AS max_price FROM product_variants "
+            + "WHERE is_active = TRUE AND deleted_by IS NULL GROUP BY product_id) v ON v.product_id = p.id "
+            + "WHERE p.deleted_by IS NULL";
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductListingRepository productListingRepository;
+
+    @BeforeEach
+    void seed() {
+        // Giá gốc trong khoảng lọc nhưng mọi variant đều ngoài khoảng, và ngược lại
+        Product baseOnly = product("BASE", 50_000, null);
+        variant(baseOnly, "BASE-1", 120_000, true);
+        Product variantOnly = product("VAR", 200_000, null);
+        variant(variantOnly, "VAR-1", 60_000, true);
+        variant(variantOnly, "VAR-2", 250_000, true);
+        // Variant rẻ đã tắt không được tính
+        Product inactiveVariant = product("OFF", 150_000, null);
+        variant(inactiveVariant, "OFF-1", 40_000, false);
+        variant(inactiveVariant, "OFF-2", 150_000, true);
+        // Không có variant: giá giảm trước giá gốc
+        product("DISC", 300_000, 80_000);
+        product("PLAIN", 90_000, null);
+        entityManager.flush();
+        entityManager.getEntityManager().createNativeQuery(PROJECT_LISTING).executeUpdate();
+        entityManager.clear();
+    }
+
+    @Test
+    void priceFilterGivesSameProductsOnEntityAndListingPaths() {
+        BigDecimal minPrice = BigDecimal.valueOf(55_000);
+        BigDecimal maxPrice = BigDecimal.valueOf(100_000);
+
+        List<Long> entityPath = productRepository.findProductCardsWithFilters(null, null, null, null, List.of(),
+                        null, null, minPrice, maxPrice, null, PageRequest.of(0, 50, Sort.by("name")))
+                .map(ProductCardDTO::getId)
+                .getContent();
+        List<Long> listingPath = productListingRepository.findProductIdsWithFilters(null, null, null, null,
+                        List.of(), null, null, null, minPrice, maxPrice, null,
+                        PageRequest.of(0, 50, Sort.by("minPrice")))
+                .getContent();
+
+        assertThat(entityPath).containsExactlyInAnyOrderElementsOf(listingPath);
+        assertThat(skus(entityPath)).containsExactlyInAnyOrder("VAR", "DISC", "PLAIN");
+    }
+
+    private List<String> skus(List<Long> ids) {
+        return productRepository.findAllById(ids).stream().map(Product::getSku).toList();
+    }
+
+    private Product product(String sku, long price, Integer discountPrice) {
+        return entityManager.persist(Product.builder()
+                .name("Sổ tay " + sku)
+                .sku(sku)
+                .price(BigDecimal.valueOf(price))
+                .discountPrice(discountPrice != null ? BigDecimal.valueOf(discountPrice) : null)
+                .build());
+    }
+
+    private void variant(Product product, String sku, long price, boolean active) {
+        entityManager.persist(ProductVariant.builder()
+                .product(product)
+                .variantType(VariantType.OTHER)
+                .variantValue(sku)
+                .price(BigDecimal.valueOf(price))
+                .stockQuantity(5)
+                .sku(sku)
+                .isActive(active)
+                .build());
+    }
+}
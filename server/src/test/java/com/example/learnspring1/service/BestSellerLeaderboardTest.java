@@ -0,0 +1,156 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.Order;
+import com.example.learnspring1.event.OrderStatusChangedEvent;
+import com.example.learnspring1.repository.OrderItemRepository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BestSellerLeaderboardTest {
+
+    private final OrderItemRepository repository = mock(OrderItemRepository.class);
+    // orderId -> [[productId, quantity], ...]
+    private final Map<Long, long[][]> items = new HashMap<>();
+    private final Map<Long, Instant> createdAt = new HashMap<>();
+    private final Set<Long> completed = new HashSet<>();
+
+    @Test
+    void incrementalTopKMatchesFullSort() {
+        when(repository.sumQuantityByProductForOrder(anyLong())).thenAnswer(call -> itemRows(call.<Long>getArgument(0)));
+        when(repository.findQuantitiesByProductAndOrderSince(any(), any())).thenAnswer(call -> completedRows());
+        BestSellerLeaderboard leaderboard = new BestSellerLeaderboard(repository, 20);
+        leaderboard.snapshot();
+
+        Random random = new Random(42);
+        long nextOrderId = 1;
+        for (int step = 0; step < 20_000; step++) {
+            long orderId;
+            if (completed.isEmpty() || random.nextInt(10) < 7) {
+                orderId = nextOrderId++;
+                createOrder(orderId, random, 400);
+            } else {
+                orderId = 1 + random.nextInt((int) nextOrderId - 1);
+            }
+            boolean toCompleted = !completed.contains(orderId);
+            setCompleted(orderId, toCompleted);
+            leaderboard.onOrderStatusChanged(event(orderId, toCompleted));
+
+            if (step % 50 == 0) {
+                assertMatchesFullSort(leaderboard.snapshot(), 20);
+            }
+        }
+        assertMatchesFullSort(leaderboard.snapshot(), 20);
+    }
+
+    @Test
+    void eventsDuringFirstLoadAreAppliedOnce() {
+        Instant now = Instant.now();
+        for (long orderId = 1; orderId <= 4; orderId++) {
+            items.put(orderId, new long[][] { { orderId * 10, 5 } });
+            createdAt.put(orderId, now);
+        }
+        completed.addAll(List.of(1L, 3L));
+        when(repository.sumQuantityByProductForOrder(anyLong())).thenAnswer(call -> itemRows(call.<Long>getArgument(0)));
+
+        BestSellerLeaderboard leaderboard = new BestSellerLeaderboard(repository, 10);
+        when(repository.findQuantitiesByProductAndOrderSince(any(), any())).thenAnswer(call -> {
+            // Đơn 2 commit trước lúc đọc nhưng event tới trong lúc load
+            completed.add(2L);
+            List<Object[]> rows = completedRows();
+            leaderboard.onOrderStatusChanged(event(2L, true));
+            // Commit sau lúc đọc
+            setCompleted(4L, true);
+            leaderboard.onOrderStatusChanged(event(4L, true));
+            setCompleted(3L, false);
+            leaderboard.onOrderStatusChanged(event(3L, false));
+            setCompleted(4L, false);
+            leaderboard.onOrderStatusChanged(event(4L, false));
+            setCompleted(4L, true);
+            leaderboard.onOrderStatusChanged(event(4L, true));
+            return rows;
+        });
+
+        BestSellerLeaderboard.Snapshot snapshot = leaderboard.snapshot();
+
+        assertThat(snapshot.productIds()).containsExactly(10L, 20L, 40L);
+        assertThat(snapshot.quantities()).containsExactly(5L, 5L, 5L);
+        assertThat(snapshot.distinctProducts()).isEqualTo(3);
+    }
+
+    private void createOrder(long orderId, Random random, int productCount) {
+        int lines = 1 + random.nextInt(3);
+        Set<Long> productIds = new HashSet<>();
+        while (productIds.size() < lines) {
+            productIds.add(1 + (long) Math.min(productCount - 1, (int) Math.abs(random.nextGaussian() * productCount / 3)));
+        }
+        items.put(orderId, productIds.stream().map(id -> new long[] { id, 1 + random.nextInt(5) }).toArray(long[][]::new));
+        createdAt.put(orderId, Instant.now().minusSeconds(random.nextInt(86_400 * 30)));
+    }
+
+    private void setCompleted(long orderId, boolean value) {
+        if (value) {
+            completed.add(orderId);
+        } else {
+            completed.remove(orderId);
+        }
+    }
+
+    private OrderStatusChangedEvent event(long orderId, boolean toCompleted) {
+        return new OrderStatusChangedEvent(orderId,
+                toCompleted ? Order.OrderStatus.PAID : Order.OrderStatus.COMPLETED,
+                toCompleted ? Order.OrderStatus.COMPLETED : Order.OrderStatus.CANCELLED,
+                createdAt.get(orderId));
+    }
+
+    private List<Object[]> itemRows(long orderId) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long[] line : items.get(orderId)) {
+            rows.add(new Object[] { line[0], line[1] });
+        }
+        return rows;
+    }
+
+    private List<Object[]> completedRows() {
+        List<Object[]> rows = new ArrayList<>();
+        for (Long orderId : completed) {
+            for (long[] line : items.get(orderId)) {
+                rows.add(new Object[] { line[0], createdAt.get(orderId), line[1], orderId });
+            }
+        }
+        return rows;
+    }
+
+    private void assertMatchesFullSort(BestSellerLeaderboard.Snapshot snapshot, int k) {
+        Map<Long, Long> totals = new HashMap<>();
+        for (Long orderId : completed) {
+            for (long[] line : items.get(orderId)) {
+                totals.merge(line[0], line[1], Long::sum);
+            }
+        }
+        List<Map.Entry<Long, Long>> expected = new ArrayList<>(totals.entrySet());
+        expected.sort((a, b) -> !a.getValue().equals(b.getValue())
+                ? Long.compare(b.getValue(), a.getValue())
+                : Long.compare(a.getKey(), b.getKey()));
+        long[] expectedIds = expected.stream().limit(k).mapToLong(Map.Entry::getKey).toArray();
+        long[] expectedQuantities = expected.stream().limit(k).mapToLong(Map.Entry::getValue).toArray();
+
+        assertThat(snapshot.productIds()).containsExactly(expectedIds);
+        assertThat(snapshot.quantities()).containsExactly(expectedQuantities);
+        assertThat(snapshot.distinctProducts()).isEqualTo(expected.size());
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.learnspring1.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link GeminiEmbeddingClient} với {@code ai.gemini.base-url} trỏ vào MockWebServer:
+ * định dạng request, gom lô, thử lại khi 429/503 trong ngân sách của lô, không thử lại lỗi khác và 4xx
+ * không làm mở mạch.
+ */
+class GeminiEmbeddingClientTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private MockWebServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private GeminiEmbeddingClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    void embedBatchPostsOneBatchRequestAndKeepsOrder() throws Exception {
+        server.setDispatcher(embeddingsDispatcher(() -> 200));
+        client = client(32, 5, 4);
+
+        List<float[]> embeddings = client.embedBatch(List.of("bút gel", "giấy A4", "sổ tay"));
+
+        assertThat(embeddings).hasSize(3);
+        assertThat(embeddings.get(0)[0]).isEqualTo(0f);
+        assertThat(embeddings.get(2)[0]).isEqualTo(2f);
+        RecordedRequest request = server.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/v1beta/models/text-embedding-004:batchEmbedContents?key=test-key");
+        JsonNode body = JSON.readTree(request.getBody().readUtf8());
+        assertThat(body.get("requests").size()).isEqualTo(3);
+        assertThat(body.get("requests").get(1).get("content").get("parts").get(0).get("text").asText())
+                .isEqualTo("giấy A4");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentEmbedCallsShareOneRequest() throws Exception {
+        server.setDispatcher(embeddingsDispatcher(() -> 200));
+        // Lô đầy (3) thì gửi ngay, không chờ hết linger
+        client = client(3, 10_000, 4);
+
+        List<CompletableFuture<float[]>> futures = new ArrayList<>();
+        for (String text : List.of("a", "b", "c")) {
+            futures.add(CompletableFuture.supplyAsync(() -> client.embed(text)));
+        }
+        for (CompletableFuture<float[]> future : futures) {
+            assertThat(future.get()).hasSize(4);
+        }
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(JSON.readTree(server.takeRequest().getBody().readUtf8()).get("requests").size()).isEqualTo(3);
+    }
+
+    @Test
+    void retriesThrottledResponsesHonouringRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+        server.setDispatcher(embeddingsDispatcher(() -> calls.incrementAndGet() <= 2 ? 429 : 200));
+        client = client(32, 5, 4);
+
+        List<float[]> embeddings = client.embedBatch(List.of("bút chì"));
+
+        assertThat(embeddings).hasSize(1);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+        assertThat(meterRegistry.get("ai.embedding.throttled").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void givesUpAfterMaxAttemptsOnPersistent503() {
+        server.setDispatcher(embeddingsDispatcher(() -> 503));
+        client = client(32, 5, 3);
+
+        assertThatThrownBy(() -> client.embedBatch(List.of("thước kẻ")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Code: 503");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        server.setDispatcher(embeddingsDispatcher(() -> 400));
+        client = client(32, 5, 4);
+
+        assertThatThrownBy(() -> client.embedBatch(List.of("gôm")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Code: 400");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheCircuit() {
+        server.setDispatcher(embeddingsDispatcher(() -> 400));
+        client = client(32, 5, 4);
+
+        // Quá min-calls (10) của breaker, toàn bộ là 4xx
+        for (int i = 0; i < 15; i++) {
+            assertThatThrownBy(() -> client.embedBatch(List.of("tẩy")))
+                    .isInstanceOf(AiCallGuard.RequestRejectedException.class);
+        }
+
+        assertThat(server.getRequestCount()).isEqualTo(15);
+        assertThat(meterRegistry.get("ai.call").tag("lane", AiCallGuard.GEMINI).tag("outcome", "client_error")
+                .counter().count()).isEqualTo(15.0);
+        // 0 = mạch đóng
+        assertThat(meterRegistry.get("ai.call.circuit.state").tag("lane", AiCallGuard.GEMINI).gauge().value())
+                .isEqualTo(0.0);
+    }
+
+    @Test
+    void retryAfterBeyondTheBatchBudgetFailsWithoutWaiting() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(429).setHeader("Retry-After", "30");
+            }
+        });
+        client = client(32, 5, 4);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> client.embedBatch(List.of("bìa còng")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Code: 429");
+
+        // Ngân sách cả lô là 5 s: chờ 30 s rồi mới hết giờ thì vô ích
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat((System.nanoTime() - started) / 1_000_000).isLessThan(2_000L);
+    }
+
+    @Test
+    void concurrentCallersUnderLatencyAndThrottlingEachGetTheirOwnResult() throws Exception {
+        // Server giả: 40 ms mỗi request, cứ request thứ 5 trả 429
+        AtomicInteger calls = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(40);
+                if (calls.incrementAndGet() % 5 == 0) {
+                    return new MockResponse().setResponseCode(429).setHeader("Retry-After", "0");
+                }
+                try {
+                    StringBuilder body = new StringBuilder("{\"embeddings\":[");
+                    JsonNode requests = JSON.readTree(request.getBody().readUtf8()).get("requests");
+                    for (int i = 0; i < requests.size(); i++) {
+                        String text = requests.get(i).get("content").get("parts").get(0).get("text").asText();
+                        body.append(i > 0 ? "," : "").append("{\"values\":[").append(text.substring(1)).append(",1]}");
+                    }
+                    return new MockResponse().setHeader("Content-Type", "application/json")
+                            .setBody(body.append("]}").toString());
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        });
+        client = client(32, 5, 6);
+
+        int callers = 2_000;
+        int distinctTexts = 500;
+        long started = System.nanoTime();
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(callers);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < callers; c++) {
+                String text = "t" + (c % distinctTexts);
+                futures.add(CompletableFuture.supplyAsync(() -> client.embed(text), executor));
+            }
+            for (int c = 0; c < callers; c++) {
+                assertThat((double) futures.get(c).get()[0]).isEqualTo((double) (c % distinctTexts));
+            }
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+
+        int httpCalls = server.getRequestCount();
+        double meanBatch = meterRegistry.get("ai.embedding.batch.size").summary().mean();
+        // Một request mỗi lời gọi sẽ cần 2000 request; gom lô phải giảm ít nhất 10 lần
+        assertThat(httpCalls).isLessThan(callers / 10);
+        assertThat(meanBatch).isGreaterThan(5.0);
+        // Mọi 429 của server đều được đếm và thử lại (không caller nào nhận lỗi)
+        assertThat(meterRegistry.get("ai.embedding.throttled").counter().count()).isEqualTo((double) (httpCalls / 5));
+        // Không gom lô thì 2000 request x 40 ms chia cho 4 luồng gửi mất 20 s
+        assertThat(elapsedMs).isLessThan(callers * 40L / 4);
+    }
+
+    private GeminiEmbeddingClient client(int maxBatch, long lingerMs, int maxAttempts) {
+        AiCallGuard guard = new AiCallGuard(new MockEnvironment(), meterRegistry);
+        String baseUrl = server.url("/").toString().replaceAll("/$", "");
+        return new GeminiEmbeddingClient(meterRegistry, guard, "test-key", baseUrl, maxBatch, lingerMs, 4,
+                maxAttempts, 1, 5_000);
+    }
+
+    // Trả đúng số embedding theo số văn bản trong request; embedding thứ i = [i, 1, 1, 1].
+    // Mã trả về lấy từ statusPerRequest (gọi một lần mỗi request), kèm Retry-After: 0 để test không phải chờ
+    private static Dispatcher embeddingsDispatcher(IntSupplier statusPerRequest) {
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                int status = statusPerRequest.getAsInt();
+                if (status != 200) {
+                    return new MockResponse().setResponseCode(status).setHeader("Retry-After", "0")
+                            .setBody("{\"error\":{\"code\":" + status + "}}");
+                }
+                try {
+                    int count = JSON.readTree(request.getBody().readUtf8()).get("requests").size();
+                    StringBuilder body = new StringBuilder("{\"embeddings\":[");
+                    for (int i = 0; i < count; i++) {
+                        body.append(i > 0 ? "," : "").append("{\"values\":[").append(i).append(",1,1,1]}");
+                    }
+                    return new MockResponse().setHeader("Content-Type", "application/json")
+                            .setBody(body.append("]}").toString());
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.domain.Category;
+import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.domain.ProductImage;
+import com.example.learnspring1.domain.ProductVariant;
+import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.domain.dto.ProductCardDTO;
+import com.example.learnspring1.repository.ProductRepository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Số câu SQL cho một trang danh sách: card + {@link ProductCardAssembler} so với trả thẳng entity Product
+ * (Jackson chạm vào categories/variants/images và description/specifications như khi API trả entity).
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(ProductCardAssembler.class)
+class ProductCardQueryCountTest {
+
+    private static final int PRODUCTS = 60;
+    private static final int[] PAGE_SIZES = { 5, 20, 50 };
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCardAssembler productCardAssembler;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void seed() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        Category category = entityManager.persist(Category.builder().name("Bút viết").build());
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = entityManager.persist(Product.builder()
+                    .name("Bút gel " + i)
+                    .sku("SKU-" + i)
+                    .price(BigDecimal.valueOf(10_000 + i))
+                    .description("Mô tả dài ".repeat(200))
+                    .specifications("Thông số ".repeat(200))
+                    .categories(new ArrayList<>(List.of(category)))
+                    .build());
+            for (int v = 0; v < 3; v++) {
+                entityManager.persist(ProductVariant.builder()
+                        .product(product)
+                        .variantType(VariantType.OTHER)
+                        .variantValue("Loại " + v)
+                        .price(product.getPrice())
+                        .stockQuantity(v)
+                        .sku("SKU-" + i + "-" + v)
+                        .sortOrder(v)
+                        .isDefault(v == 0)
+                        .build());
+            }
+            entityManager.persist(ProductImage.builder()
+                    .product(product)
+                    .imageUrl("https://cdn.example.com/" + i + ".png")
+                    .sortOrder(0)
+                    .isPrimary(true)
+                    .build());
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void cardPageStatementCountDoesNotGrowWithPageSize() {
+        Map<Integer, Long> cardStatements = new LinkedHashMap<>();
+        Map<Integer, Long> entityStatements = new LinkedHashMap<>();
+        for (int size : PAGE_SIZES) {
+            PageRequest page = PageRequest.of(0, size, Sort.by("id"));
+            cardStatements.put(size, countStatements(() -> {
+                List<ProductCardDTO> cards = productRepository.findActiveProductCards(page).getContent();
+                productCardAssembler.assemble(cards);
+                assertThat(cards).hasSize(size);
+                assertThat(cards.get(0).getVariants()).hasSize(3);
+                assertThat(cards.get(0).getImages()).hasSize(1);
+                assertThat(cards.get(0).getCategories()).hasSize(1);
+            }));
+            entityStatements.put(size, countStatements(() -> {
+                for (Product product : productRepository.findAll(page).getContent()) {
+                    touchLikeJackson(product);
+                }
+            }));
+        }
+        int smallest = PAGE_SIZES[0];
+        int largest = PAGE_SIZES[PAGE_SIZES.length - 1];
+        for (int size : PAGE_SIZES) {
+            // trang + count + variants + ảnh chính + category, trang nào cũng vậy
+            assertThat(cardStatements.get(size)).isEqualTo(cardStatements.get(smallest));
+            assertThat(cardStatements.get(size)).isLessThanOrEqualTo(5L);
+            // Serialize entity: ít nhất một câu lazy load cho mỗi sản phẩm trong trang
+            assertThat(entityStatements.get(size)).isGreaterThanOrEqualTo((long) size);
+        }
+        assertThat(entityStatements.get(largest)).isGreaterThan(entityStatements.get(smallest));
+    }
+
+    private long countStatements(Runnable action) {
+        entityManager.clear();
+        statistics.clear();
+        action.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    // Các getter Jackson gọi khi serialize Product trước đây
+    private static void touchLikeJackson(Product product) {
+        product.getDescription();
+        product.getSpecifications();
+        product.getCategories().size();
+        product.getImages().size();
+        product.getTotalStockQuantity();
+        product.getHasStock();
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.repository.ProductRepository;
+import com.example.learnspring1.service.impl.CategoryTreeCache;
+import com.example.learnspring1.utils.VectorMath;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link ProductEmbeddingIndexer} với embedding lấy từ Gemini giả (MockWebServer): mỗi lần flush
+ * xử lý có giới hạn số lô, lỗi Gemini chỉ được thử lại một lớp (trong {@link GeminiEmbeddingClient}),
+ * và vector embed trước khi {@link ProductVectorIndex} nạp xong không bị mất.
+ */
+class ProductEmbeddingIndexerTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int BATCH_SIZE = 10;
+    private static final int EMBED_BATCH_SIZE = 5;
+    private static final int MAX_BATCHES_PER_FLUSH = 2;
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final AiVectorService aiVectorService = mock(AiVectorService.class);
+    private final ProductVectorIndex productVectorIndex = mock(ProductVectorIndex.class);
+
+    @TempDir
+    Path directory;
+
+    private MockWebServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private GeminiEmbeddingClient client;
+    private ProductEmbeddingIndexer indexer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (indexer != null) {
+            indexer.shutdown();
+        }
+        if (client != null) {
+            client.close();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    void flushProcessesAtMostMaxBatchesPerTick() {
+        start(() -> 200);
+        when(productRepository.findAllIdsForIndexing()).thenReturn(LongStream.rangeClosed(1, 45).boxed().toList());
+
+        assertThat(indexer.reindexAll()).isEqualTo(45);
+        indexer.flush();
+
+        // 2 lô x 10 sản phẩm, mỗi lô 2 request Gemini (5 văn bản/request)
+        assertThat(indexer.pendingCount()).isEqualTo(45 - MAX_BATCHES_PER_FLUSH * BATCH_SIZE);
+        assertThat(server.getRequestCount()).isEqualTo(MAX_BATCHES_PER_FLUSH * BATCH_SIZE / EMBED_BATCH_SIZE);
+        verify(aiVectorService, times(4)).upsertChroma(anyList(), anyList(), anyList(), anyList());
+
+        indexer.flush();
+        indexer.flush();
+        assertThat(indexer.pendingCount()).isZero();
+        assertThat(meterRegistry.get("vector.indexer.indexed").counter().count()).isEqualTo(45.0);
+    }
+
+    @Test
+    void geminiErrorIsNotRetriedAgainByIndexer() {
+        start(() -> 400);
+        when(productRepository.findAllIdsForIndexing()).thenReturn(LongStream.rangeClosed(1, 5).boxed().toList());
+
+        indexer.reindexAll();
+        indexer.flush();
+
+        // Một chunk, một request: client không thử lại 400 và indexer không bọc thêm lớp thử lại
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(indexer.pendingCount()).isEqualTo(5);
+        verify(aiVectorService, never()).upsertChroma(anyList(), anyList(), anyList(), anyList());
+    }
+
+    @Test
+    void throttledEmbedIsRetriedOnlyByClient() {
+        int[] calls = { 0 };
+        start(() -> ++calls[0] == 1 ? 429 : 200);
+        when(productRepository.findAllIdsForIndexing()).thenReturn(LongStream.rangeClosed(1, 5).boxed().toList());
+
+        indexer.reindexAll();
+        indexer.flush();
+
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        assertThat(indexer.pendingCount()).isZero();
+    }
+
+    @Test
+    void embeddingsIndexedBeforeVectorIndexLoadsAreAppliedAfterLoad() throws IOException {
+        ProductVectorIndex localIndex = new ProductVectorIndex(aiVectorService, mock(CategoryTreeCache.class),
+                mock(ApplicationEventPublisher.class), directory.resolve("vectors.bin").toString(), 8, 50, 32, 200,
+                0.3);
+        start(() -> 200, localIndex);
+        when(productRepository.findAllIdsForIndexing()).thenReturn(List.of(1L, 2L));
+
+        indexer.reindexAll();
+        indexer.flush();
+        assertThat(localIndex.isReady()).isFalse();
+
+        // ChromaDB trả về bản cũ của sản phẩm 1 và một sản phẩm khác; bản vừa embed phải thắng
+        AiVectorService.ChromaGetResponse page = new AiVectorService.ChromaGetResponse();
+        page.ids = List.of("1", "7");
+        page.embeddings = List.of(new float[] { 0, 0, 0, 1 }, new float[] { 0, 0, 1, 0 });
+        Map<String, Object> metadata = Map.of("categoryId", 3L);
+        page.metadatas = List.of(metadata, metadata);
+        when(aiVectorService.getEmbeddingsPage(anyInt(), anyInt())).thenReturn(page);
+        localIndex.syncFromChroma();
+
+        assertThat(localIndex.size()).isEqualTo(3);
+        assertThat(localIndex.getVectors(List.of(1L)).get(0))
+                .containsExactly(VectorMath.normalize(new float[] { 0, 1, 1, 1 }));
+        assertThat(localIndex.getVectors(List.of(2L)).get(0))
+                .containsExactly(VectorMath.normalize(new float[] { 1, 1, 1, 1 }));
+        localIndex.close();
+    }
+
+    private void start(IntSupplier statusPerRequest) {
+        start(statusPerRequest, productVectorIndex);
+    }
+
+    private void start(IntSupplier statusPerRequest, ProductVectorIndex vectorIndex) {
+        server.setDispatcher(embeddingsDispatcher(statusPerRequest));
+        AiCallGuard guard = new AiCallGuard(new MockEnvironment(), meterRegistry);
+        String baseUrl = server.url("/").toString().replaceAll("/$", "");
+        client = new GeminiEmbeddingClient(meterRegistry, guard, "test-key", baseUrl, 100, 5, 4, 3, 1, 5_000);
+        when(aiVectorService.embedBatchWithGemini(anyList()))
+                .thenAnswer(call -> client.embedBatch(call.<List<String>>getArgument(0)));
+        when(productRepository.findEmbeddingSourceRows(any()))
+                .thenAnswer(call -> sourceRows(call.<Collection<Long>>getArgument(0)));
+        indexer = new ProductEmbeddingIndexer(productRepository, aiVectorService, vectorIndex, meterRegistry,
+                BATCH_SIZE, EMBED_BATCH_SIZE, MAX_BATCHES_PER_FLUSH, 2, 3, 1);
+    }
+
+    // Cùng thứ tự cột với ProductRepository.findEmbeddingSourceRows
+    private static List<Object[]> sourceRows(Collection<Long> ids) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Long id : ids) {
+            rows.add(new Object[] { id, "Bút bi " + id, "Thiên Long", "Ngòi 0.5mm", "Mực xanh",
+                    BigDecimal.valueOf(5_000), null, 3L });
+        }
+        return rows;
+    }
+
+    // Embedding thứ i trong request = [i, 1, 1, 1]; mã trả về lấy từ statusPerRequest (một lần mỗi request)
+    private static Dispatcher embeddingsDispatcher(IntSupplier statusPerRequest) {
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                int status = statusPerRequest.getAsInt();
+                if (status != 200) {
+                    return new MockResponse().setResponseCode(status).setHeader("Retry-After", "0")
+                            .setBody("{\"error\":{\"code\":" + status + "}}");
+                }
+                try {
+                    int count = JSON.readTree(request.getBody().readUtf8()).get("requests").size();
+                    StringBuilder body = new StringBuilder("{\"embeddings\":[");
+                    for (int i = 0; i < count; i++) {
+                        body.append(i > 0 ? "," : "").append("{\"values\":[").append(i).append(",1,1,1]}");
+                    }
+                    return new MockResponse().setHeader("Content-Type", "application/json")
+                            .setBody(body.append("]}").toString());
+                } catch (IOException e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        };
+    }
+}
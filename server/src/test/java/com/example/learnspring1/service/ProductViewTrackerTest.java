@@ -0,0 +1,107 @@
+package com.example.learnspring1.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link ProductViewTracker#flush}: một dòng hỏng không chặn cả lô và bị bỏ sau số lần thử giới hạn;
+ * lỗi kết nối DB đưa lại cả lô mà không tính lần thử.
+ */
+class ProductViewTrackerTest {
+
+    private static final long BAD_PRODUCT = 13L;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Long> writtenProducts = new ArrayList<>();
+    private final AtomicBoolean databaseDown = new AtomicBoolean();
+    private ProductViewTracker tracker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // Lô có dòng trỏ tới product không tồn tại thì lỗi cả lô, như khi vi phạm khóa ngoại
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenAnswer(call -> {
+            if (databaseDown.get()) {
+                throw new CannotGetJdbcConnectionException("connection refused");
+            }
+            SqlParameterSource[] rows = call.getArgument(1);
+            List<Long> products = new ArrayList<>();
+            for (SqlParameterSource row : rows) {
+                products.add((Long) row.getValue("productId"));
+            }
+            if (products.contains(BAD_PRODUCT)) {
+                throw new DataIntegrityViolationException("foreign key violation");
+            }
+            writtenProducts.addAll(products);
+            return new int[rows.length];
+        });
+        when(jdbcTemplate.update(anyString(), any(SqlParameterSource.class))).thenReturn(0);
+        tracker = new ProductViewTracker(jdbcTemplate, mock(PlatformTransactionManager.class),
+                mock(UserTasteVectorService.class), mock(ObjectProvider.class), meterRegistry, 1_000, 3);
+    }
+
+    @Test
+    void badRowIsIsolatedAndDroppedAfterMaxAttempts() {
+        for (long product = 1; product <= 20; product++) {
+            tracker.record("alice", product);
+        }
+
+        tracker.flush();
+
+        assertThat(writtenProducts).hasSize(19).doesNotContain(BAD_PRODUCT);
+        assertThat(buffered()).isEqualTo(1.0);
+
+        tracker.flush();
+        tracker.flush();
+
+        assertThat(buffered()).isZero();
+        assertThat(meterRegistry.get("product.views.failed").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("product.views.written").counter().count()).isEqualTo(19.0);
+
+        // Hàng đợi không còn bị dòng hỏng chặn
+        tracker.record("bob", 42L);
+        tracker.flush();
+        assertThat(writtenProducts).contains(42L);
+    }
+
+    @Test
+    void connectionFailureRequeuesWholeBatchWithoutCountingAttempts() {
+        for (long product = 1; product <= 5; product++) {
+            tracker.record("alice", product);
+        }
+        databaseDown.set(true);
+        for (int i = 0; i < 5; i++) {
+            tracker.flush();
+        }
+        assertThat(buffered()).isEqualTo(5.0);
+        assertThat(meterRegistry.get("product.views.failed").counter().count()).isZero();
+
+        databaseDown.set(false);
+        tracker.flush();
+        assertThat(writtenProducts).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+        assertThat(buffered()).isZero();
+    }
+
+    private double buffered() {
+        return meterRegistry.get("product.views.buffered").gauge().value();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.learnspring1.service;
+
+import com.example.learnspring1.repository.UserTasteVectorRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link UserTasteVectorService#recordViews}: một lần lấy embedding và một batch ghi cho cả lần flush,
+ * user mới được dựng từ lịch sử gần đây.
+ */
+class UserTasteVectorServiceTest {
+
+    private final UserTasteVectorRepository tasteRepository = mock(UserTasteVectorRepository.class);
+    private final NamedParameterJdbcTemplate jdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+    private final ProductEmbeddingStore productEmbeddingStore = mock(ProductEmbeddingStore.class);
+    private final UserTasteVectorService service = new UserTasteVectorService(tasteRepository, jdbcTemplate,
+            productEmbeddingStore, new SimpleMeterRegistry(), 0.9, 1_000);
+
+    @Test
+    void recordViewsFetchesEmbeddingsOnceAndWritesOneBatch() {
+        // Sản phẩm i có embedding one-hot ở chiều i; sản phẩm 9 chưa có embedding
+        when(productEmbeddingStore.getEmbeddings(any())).thenAnswer(call -> {
+            Map<Long, float[]> result = new LinkedHashMap<>();
+            for (Long id : call.<Collection<Long>>getArgument(0)) {
+                if (id != 9L) {
+                    float[] vector = new float[4];
+                    vector[id.intValue()] = 1f;
+                    result.put(id, vector);
+                }
+            }
+            return result;
+        });
+        when(tasteRepository.findAllById(any())).thenReturn(List.of());
+        when(jdbcTemplate.batchUpdate(anyString(), any(SqlParameterSource[].class))).thenReturn(new int[0]);
+
+        Map<String, List<Long>> views = new LinkedHashMap<>();
+        views.put("alice", List.of(1L, 2L));
+        views.put("bob", List.of(3L));
+        views.put("carol", List.of(9L));
+        // Lịch sử (mới nhất trước) đã có các lượt đang gộp; chúng không được tính hai lần
+        Map<String, List<Long>> history = Map.of(
+                "alice", List.of(2L, 1L, 0L),
+                "bob", List.of(3L),
+                "carol", List.of(9L));
+
+        service.recordViews(views, history::get);
+
+        verify(productEmbeddingStore, times(1)).getEmbeddings(any());
+        verify(tasteRepository, times(1)).findAllById(any());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(SqlParameterSource[].class));
+
+        // alice: 0 (từ lịch sử) rồi 1, 2; lượt mới nhất nặng ký nhất
+        float[] alice = service.getTaste("alice", List::of);
+        assertThat((double) alice[2]).isGreaterThan((double) alice[1]);
+        assertThat((double) alice[1]).isGreaterThan((double) alice[0]);
+        assertThat((double) alice[0]).isGreaterThan(0.0);
+        assertThat(service.getTaste("bob", List::of)).containsExactly(0f, 0f, 0f, 1f);
+
+        // Bản sao: sửa kết quả không đổi vector trong cache
+        alice[0] = 42f;
+        assertThat((double) service.getTaste("alice", List::of)[0]).isLessThan(1.0);
+    }
+}
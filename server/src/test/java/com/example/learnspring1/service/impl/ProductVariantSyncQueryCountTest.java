@@ -0,0 +1,154 @@
+package com.example.learnspring1.service.impl;
+
+import com.example.learnspring1.config.JpaBatchConfig;
+import com.example.learnspring1.domain.Product;
+import com.example.learnspring1.domain.ProductVariant;
+import com.example.learnspring1.domain.VariantType;
+import com.example.learnspring1.repository.ProductVariantRepository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Số câu SQL khi cập nhật/xóa product theo số variant: {@link ProductVariantSync} (1 SELECT + 1 batch
+ * khi cập nhật, 1 UPDATE khi xóa) so với cách cũ (load rồi save/softDelete từng variant).
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({ ProductVariantSync.class, JpaBatchConfig.class })
+class ProductVariantSyncQueryCountTest {
+
+    private static final int[] VARIANT_COUNTS = { 1, 10, 40 };
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductVariantRepository productVariantRepository;
+
+    @Autowired
+    private ProductVariantSync productVariantSync;
+
+    private Statistics statistics;
+    private final Map<Integer, Long> productIds = new LinkedHashMap<>();
+
+    @BeforeEach
+    void seed() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        for (int count : VARIANT_COUNTS) {
+            Product product = entityManager.persist(Product.builder()
+                    .name("Sổ tay " + count)
+                    .sku("NB-" + count)
+                    .price(BigDecimal.valueOf(25_000))
+                    .build());
+            for (int v = 0; v < count; v++) {
+                entityManager.persist(ProductVariant.builder()
+                        .product(product)
+                        .variantType(VariantType.OTHER)
+                        .variantValue("Loại " + v)
+                        .price(product.getPrice())
+                        .stockQuantity(5)
+                        .sku(v == 0 ? product.getSku() : product.getSku() + "-" + v)
+                        .sortOrder(v)
+                        .isDefault(v == 0)
+                        .build());
+            }
+            productIds.put(count, product.getId());
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void updateStatementCountDoesNotGrowWithVariantCount() {
+        Map<Integer, Long> unchanged = new LinkedHashMap<>();
+        Map<Integer, Long> priceChanged = new LinkedHashMap<>();
+        for (int count : VARIANT_COUNTS) {
+            Product product = detachedProduct(count);
+            unchanged.put(count, countStatements(() -> productVariantSync.syncAfterUpdate(product)));
+
+            product.setPrice(BigDecimal.valueOf(19_000));
+            priceChanged.put(count, countStatements(() -> productVariantSync.syncAfterUpdate(product)));
+            assertThat(defaultVariantPrice(count)).isEqualByComparingTo("19000");
+        }
+        for (int count : VARIANT_COUNTS) {
+            // chỉ SELECT variants; giá cùng giá trị khác scale không sinh UPDATE
+            assertThat(unchanged.get(count)).isEqualTo(1L);
+            // SELECT variants + UPDATE default variant
+            assertThat(priceChanged.get(count)).isEqualTo(2L);
+        }
+    }
+
+    @Test
+    void deleteStatementCountDoesNotGrowWithVariantCount() {
+        Map<Integer, Long> perVariant = new LinkedHashMap<>();
+        Map<Integer, Long> bulk = new LinkedHashMap<>();
+        for (int count : VARIANT_COUNTS) {
+            Long productId = productIds.get(count);
+
+            // Cách cũ: load rồi softDelete + save từng variant
+            entityManager.clear();
+            perVariant.put(count, countStatements(() -> {
+                for (ProductVariant variant : productVariantRepository.findByProductId(productId)) {
+                    variant.softDelete();
+                    productVariantRepository.save(variant);
+                }
+            }));
+            restoreVariants(productId);
+
+            entityManager.clear();
+            bulk.put(count, countStatements(() -> productVariantSync.softDeleteAll(productId)));
+            assertThat(productVariantRepository.findByProductIdAndIsActiveTrue(productId)).isEmpty();
+        }
+        int largest = VARIANT_COUNTS[VARIANT_COUNTS.length - 1];
+        for (int count : VARIANT_COUNTS) {
+            assertThat(bulk.get(count)).isEqualTo(1L);
+            // Cách cũ: SELECT variants rồi UPDATE từng variant (JpaBatchConfig gom thành một batch)
+            assertThat(perVariant.get(count)).isGreaterThanOrEqualTo(2L);
+        }
+        assertThat(perVariant.get(largest)).isGreaterThan(bulk.get(largest));
+    }
+
+    private void restoreVariants(Long productId) {
+        entityManager.getEntityManager()
+                .createQuery("UPDATE ProductVariant v SET v.isActive = true, v.deletedBy = null "
+                        + "WHERE v.product.id = :productId")
+                .setParameter("productId", productId)
+                .executeUpdate();
+    }
+
+    private Product detachedProduct(int count) {
+        entityManager.clear();
+        Product product = entityManager.find(Product.class, productIds.get(count));
+        // Tách khỏi persistence context để flush chỉ ghi variants, không ghi product
+        entityManager.detach(product);
+        return product;
+    }
+
+    private BigDecimal defaultVariantPrice(int count) {
+        entityManager.clear();
+        return productVariantRepository.findByProductIdAndIsDefaultTrue(productIds.get(count))
+                .map(ProductVariant::getPrice)
+                .orElseThrow();
+    }
+
+    // Đếm số PreparedStatement, kể cả lúc flush (test chạy trong transaction nên cần flush tay)
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        entityManager.flush();
+        return statistics.getPrepareStatementCount();
+    }
+}
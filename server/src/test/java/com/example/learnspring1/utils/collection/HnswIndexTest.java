@@ -0,0 +1,95 @@
+package com.example.learnspring1.utils.collection;
+
+import com.example.learnspring1.utils.VectorMath;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Recall của {@link HnswIndex} so với tìm vét cạn trên dữ liệu phân cụm, cùng với lọc và node đã xóa.
+ */
+class HnswIndexTest {
+
+    private static final int SIZE = 5_000;
+    private static final int DIMENSION = 64;
+    private static final int CLUSTERS = 40;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Test
+    void searchMatchesBruteForceWithDeletesAndFilter() {
+        Random random = new Random(1);
+        float[][] centers = new float[CLUSTERS][DIMENSION];
+        for (float[] center : centers) {
+            for (int i = 0; i < DIMENSION; i++) {
+                center[i] = (float) random.nextGaussian();
+            }
+        }
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100, SIZE);
+        for (int n = 0; n < SIZE; n++) {
+            index.add(sample(centers, random));
+        }
+        for (int n = 0; n < SIZE; n += 7) {
+            index.markDeleted(n);
+        }
+        assertThat(index.liveCount()).isEqualTo(SIZE - (SIZE + 6) / 7);
+
+        double recallSum = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = sample(centers, random);
+            int bucket = q % 3;
+            IntPredicate filter = q % 2 == 0 ? null : node -> node % 5 == bucket;
+
+            List<HnswIndex.Neighbor> approximate = index.search(query, K, 64, filter);
+            List<HnswIndex.Neighbor> exact = index.bruteForce(query, K, filter);
+
+            Set<Integer> expected = new HashSet<>();
+            for (HnswIndex.Neighbor neighbor : exact) {
+                expected.add(neighbor.node());
+            }
+            int found = 0;
+            for (HnswIndex.Neighbor neighbor : approximate) {
+                assertThat(neighbor.node() % 7 == 0).isFalse();
+                assertThat(filter == null || filter.test(neighbor.node())).isTrue();
+                if (expected.contains(neighbor.node())) {
+                    found++;
+                }
+            }
+            recallSum += (double) found / expected.size();
+        }
+        assertThat(recallSum / QUERIES).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void distanceIsSquaredEuclideanOfUnitVectors() {
+        HnswIndex index = new HnswIndex(3, 16, 100, 4);
+        index.add(VectorMath.normalize(new float[] { 1, 0, 0 }));
+        index.add(VectorMath.normalize(new float[] { 0, 1, 0 }));
+        index.add(VectorMath.normalize(new float[] { -1, 0, 0 }));
+
+        List<HnswIndex.Neighbor> hits = index.search(VectorMath.normalize(new float[] { 1, 0, 0 }), 3, 16, null);
+
+        // Cùng thang với ChromaDB space "l2": trùng = 0, vuông góc = 2, ngược chiều = 4
+        assertThat(hits).hasSize(3);
+        assertThat((double) hits.get(0).distance()).isCloseTo(0.0, within(1e-6));
+        assertThat((double) hits.get(1).distance()).isCloseTo(2.0, within(1e-6));
+        assertThat((double) hits.get(2).distance()).isCloseTo(4.0, within(1e-6));
+    }
+
+    private static float[] sample(float[][] centers, Random random) {
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = center[i] + (float) random.nextGaussian() * 0.8f;
+        }
+        return VectorMath.normalize(vector);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.learnspring1.utils.collection;
+
+import com.example.learnspring1.utils.VectorMath;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link NeighborTable#update} sau nhiều lượt thêm/đổi/xóa ngẫu nhiên phải cho đúng bảng
+ * {@link NeighborTable#compute} tính lại từ đầu trên cùng tập vector.
+ */
+class NeighborTableTest {
+
+    private static final int DIMENSION = 16;
+    private static final int INITIAL = 300;
+    private static final int K = 10;
+    private static final int ROUNDS = 40;
+
+    @Test
+    void incrementalUpdatesMatchFullRecompute() {
+        Random random = new Random(17);
+        Map<Long, float[]> vectors = new LinkedHashMap<>();
+        long nextKey = 1;
+        for (int i = 0; i < INITIAL; i++) {
+            vectors.put(nextKey++, randomUnit(random));
+        }
+        NeighborTable table = NeighborTable.compute(keys(vectors), values(vectors), K);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            Set<Long> changed = new HashSet<>();
+            List<Long> present = new ArrayList<>(vectors.keySet());
+            // Lượt nhỏ (vài vector) xen với lượt lớn và lượt chỉ xóa (changed rỗng)
+            int edits = round % 7 == 3 ? 0 : round % 5 == 0 ? 40 : 1 + random.nextInt(4);
+            for (int e = 0; e < edits; e++) {
+                switch (random.nextInt(3)) {
+                    case 0 -> {
+                        Long key = present.get(random.nextInt(present.size()));
+                        vectors.put(key, randomUnit(random));
+                        changed.add(key);
+                    }
+                    case 1 -> {
+                        vectors.put(nextKey, randomUnit(random));
+                        changed.add(nextKey++);
+                    }
+                    default -> {
+                        Long key = present.get(random.nextInt(present.size()));
+                        vectors.remove(key);
+                        changed.remove(key);
+                    }
+                }
+                present = new ArrayList<>(vectors.keySet());
+            }
+            if (edits == 0) {
+                vectors.remove(present.get(random.nextInt(present.size())));
+            }
+
+            long[] keys = keys(vectors);
+            float[][] values = values(vectors);
+            table = table.update(keys, values, changed);
+            NeighborTable expected = NeighborTable.compute(keys, values, K);
+
+            assertThat(table.size()).isEqualTo(expected.size());
+            for (long key : keys) {
+                assertThat(table.neighbors(key, K)).containsExactly(expected.neighbors(key, K));
+            }
+        }
+    }
+
+    private static long[] keys(Map<Long, float[]> vectors) {
+        return vectors.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static float[][] values(Map<Long, float[]> vectors) {
+        return vectors.values().toArray(new float[0][]);
+    }
+
+    private static float[] randomUnit(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorMath.normalize(vector);
+    }
+}